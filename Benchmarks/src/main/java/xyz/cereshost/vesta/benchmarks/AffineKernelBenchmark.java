@@ -0,0 +1,91 @@
+package xyz.cereshost.vesta.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.cereshost.vesta.core.ia.utils.AffineKernel;
+import xyz.cereshost.vesta.core.ia.utils.XNormalizer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalización robusta de un lote {@code [samples, lookBack, features]}: {@link XNormalizer#transform(float[][][])}
+ * (copia elemento a elemento) contra {@link AffineKernel} en su bucle escalar y con la Vector API.
+ * <p>
+ * Los métodos del kernel trabajan en el sitio, así que cada invocación copia antes el bloque plano original; la
+ * copia también se mide en {@code copyOnly} para poder restarla.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class AffineKernelBenchmark {
+
+    @Param({"4096"})
+    private int samples;
+    @Param({"30"})
+    private int lookBack;
+    @Param({"24"})
+    private int features;
+
+    private float[][][] x;
+    private float[] flat;
+    private float[] work;
+    private XNormalizer normalizer;
+    private AffineKernel scalar;
+    private AffineKernel simd;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(7);
+        x = new float[samples][lookBack][features];
+        for (float[][] sample : x) {
+            for (float[] row : sample) {
+                for (int f = 0; f < features; f++) row[f] = (float) (random.nextGaussian() * (f + 1) + f);
+            }
+        }
+        normalizer = new XNormalizer();
+        normalizer.fit(x);
+        flat = new float[samples * lookBack * features];
+        int i = 0;
+        for (float[][] sample : x) {
+            for (float[] row : sample) {
+                System.arraycopy(row, 0, flat, i, features);
+                i += features;
+            }
+        }
+        work = new float[flat.length];
+        scalar = new AffineKernel(normalizer.getMedians(), normalizer.getIqrs(), false);
+        simd = new AffineKernel(normalizer.getMedians(), normalizer.getIqrs(), true);
+        if (!AffineKernel.SIMD) {
+            System.err.println("jdk.incubator.vector no está cargado, 'simd' usa el bucle escalar");
+        }
+    }
+
+    @Benchmark
+    public float[][][] baseline() {
+        return normalizer.transform(x);
+    }
+
+    @Benchmark
+    public float[] copyOnly() {
+        System.arraycopy(flat, 0, work, 0, flat.length);
+        return work;
+    }
+
+    @Benchmark
+    public float[] scalar() {
+        System.arraycopy(flat, 0, work, 0, flat.length);
+        scalar.apply(work, 0, work.length);
+        return work;
+    }
+
+    @Benchmark
+    public float[] simd() {
+        System.arraycopy(flat, 0, work, 0, flat.length);
+        simd.apply(work, 0, work.length);
+        return work;
+    }
+}
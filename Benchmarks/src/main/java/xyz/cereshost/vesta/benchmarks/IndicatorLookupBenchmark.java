@@ -0,0 +1,119 @@
+package xyz.cereshost.vesta.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.cereshost.vesta.core.market.*;
+import xyz.cereshost.vesta.core.utils.candle.CandleColumns;
+import xyz.cereshost.vesta.core.utils.candle.CandlesBuilder;
+import xyz.cereshost.vesta.core.utils.candle.IndicatorKey;
+import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura de tres indicadores sobre una ventana de 90 velas, por {@link String} contra {@link IndicatorKey}.
+ * Los métodos {@code alternating*} leen de dos secuencias con diccionarios distintos en la misma pasada, que es lo que
+ * pasa cuando varias estrategias o modelos comparten las claves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class IndicatorLookupBenchmark {
+
+    private static final int LOOK_BACK = 90;
+    private static final IndicatorKey EMA = IndicatorKey.of("ema");
+    private static final IndicatorKey RSI = IndicatorKey.of("rsi");
+    private static final IndicatorKey ATR = IndicatorKey.of("atr");
+
+    private SequenceCandles window;
+    private SequenceCandles otherWindow;
+
+    @Setup
+    public void setup() {
+        Market market = randomMarket(2_000);
+        SequenceCandles a = new CandlesBuilder().addEMAIndicator("ema", 12).addRSIIndicator("rsi", 14).addATRIndicator("atr", 14).build(market);
+        // Mismos nombres en otras columnas
+        SequenceCandles b = new CandlesBuilder().addATRIndicator("atr", 14).addRSIIndicator("rsi", 14).addEMAIndicator("ema", 12).build(market);
+        window = a.subSequence(a.size() - LOOK_BACK, a.size());
+        otherWindow = b.subSequence(b.size() - LOOK_BACK, b.size());
+    }
+
+    @Benchmark
+    public double byName() {
+        return readByName(window);
+    }
+
+    @Benchmark
+    public double byKey() {
+        return readByKey(window);
+    }
+
+    @Benchmark
+    public double byKeyCursor() {
+        return readByCursor(window);
+    }
+
+    @Benchmark
+    public double alternatingByName() {
+        return readByName(window) + readByName(otherWindow);
+    }
+
+    @Benchmark
+    public double alternatingByKey() {
+        return readByKey(window) + readByKey(otherWindow);
+    }
+
+    private static double readByName(SequenceCandles candles) {
+        double sum = 0;
+        for (int i = 0; i < candles.size(); i++) {
+            var candle = candles.getCandle(i);
+            sum += candle.get("ema") + candle.get("rsi") + candle.get("atr");
+        }
+        return sum;
+    }
+
+    private static double readByKey(SequenceCandles candles) {
+        double sum = 0;
+        for (int i = 0; i < candles.size(); i++) {
+            var candle = candles.getCandle(i);
+            sum += candle.get(EMA) + candle.get(RSI) + candle.get(ATR);
+        }
+        return sum;
+    }
+
+    private static double readByCursor(SequenceCandles candles) {
+        CandleColumns.Cursor cursor = candles.cursor();
+        int ema = candles.column(EMA), rsi = candles.column(RSI), atr = candles.column(ATR);
+        double sum = 0;
+        for (int i = 0; i < candles.size(); i++) {
+            cursor.at(i);
+            sum += cursor.get(ema) + cursor.get(rsi) + cursor.get(atr);
+        }
+        return sum;
+    }
+
+    static Market randomMarket(int size) {
+        Random random = new Random(13);
+        List<Candle> candles = new ArrayList<>();
+        long start = 1735689600000L;
+        double close = 3000;
+        for (int i = 0; i < size; i++) {
+            double open = close;
+            close = open + random.nextGaussian() * 4;
+            double high = Math.max(open, close) + random.nextDouble() * 2;
+            double low = Math.min(open, close) - random.nextDouble() * 2;
+            double base = 10 + random.nextDouble() * 90;
+            candles.add(new Candle(TimeFrameMarket.ONE_MINUTE, start + i * 60_000L, open, high, low, close,
+                    new Volumen(base * close, base, base * close / 2, base * close / 2, 0, 0.5)));
+        }
+        Market market = new Market(Symbol.valueOf("ETHUSDC"));
+        // addCandles vacía la colección que recibe
+        market.addCandles(new ArrayList<>(candles));
+        return market;
+    }
+}
@@ -9,6 +9,7 @@ import xyz.cereshost.vesta.common.Vesta;
 import xyz.cereshost.vesta.core.command.HanderCommand;
 import xyz.cereshost.vesta.core.command.commnads.*;
 import xyz.cereshost.vesta.core.ia.PredictionEngine;
+import xyz.cereshost.vesta.core.ia.utils.Precision;
 import xyz.cereshost.vesta.core.ia.utils.XNormalizer;
 import xyz.cereshost.vesta.core.ia.utils.YNormalizer;
 import xyz.cereshost.vesta.core.io.IOMarket;
@@ -68,8 +69,12 @@ public class Main {
             case "backtest" -> {
                 Vesta.info("🔙 Ejecutando backtest...");
                 Pair<XNormalizer, YNormalizer> pair = IOdata.loadNormalizers();
-                PredictionEngine engine = new PredictionEngine(pair.getKey(), pair.getValue(), IOdata.loadModel(Device.gpu()));
-                TradingTelemetry telemetry = new BackTestEngine(engine, new BetaStrategy()).run();
+                // backtest [FP32|BF16|FP16]
+                Precision precision = args.length > 1 ? Precision.valueOf(args[1].toUpperCase()) : Precision.FP32;
+                TradingTelemetry telemetry;
+                try (PredictionEngine engine = new PredictionEngine(pair.getKey(), pair.getValue(), IOdata.loadModel(Device.gpu()), precision)) {
+                    telemetry = new BackTestEngine(engine, new BetaStrategy()).run();
+                }
                 TradingTelemetry.Summary summary = telemetry.getSummary();
                 DecimalFormat decimalFormat = new DecimalFormat("###,###,###,###,##0.00");
 
@@ -90,7 +95,9 @@ public class Main {
                 List<Integer> indexes = List.of(120, 180, 240, 300, 360, 420, 480);
                 //for (int i = 300; i < 400; i+=5) indexes.add(i);
                 for (int i : indexes) {
-                    showPredictionSnapshot(market, new PredictionEngine(pair.getKey(), pair.getValue(), IOdata.loadModel(Device.gpu())), i, 20);
+                    try (PredictionEngine engine = new PredictionEngine(pair.getKey(), pair.getValue(), IOdata.loadModel(Device.gpu()))) {
+                        showPredictionSnapshot(market, engine, i, 20);
+                    }
                 }
             }
         }
@@ -9,6 +9,7 @@ import xyz.cereshost.vesta.core.command.BaseCommand;
 import xyz.cereshost.vesta.core.command.Flags;
 import xyz.cereshost.vesta.core.ia.PredictionEngine;
 import xyz.cereshost.vesta.core.ia.VestaEngine;
+import xyz.cereshost.vesta.core.ia.utils.Precision;
 import xyz.cereshost.vesta.core.ia.utils.XNormalizer;
 import xyz.cereshost.vesta.core.ia.utils.YNormalizer;
 import xyz.cereshost.vesta.core.io.IOMarket;
@@ -39,8 +40,15 @@ public class FastSetupPrediction extends BaseCommand implements Flags {
             case "CPU" -> model = IOdata.loadModel(Device.cpu());
             default -> throw new IllegalArgumentException("Flags Device invalida");
         }
+        Precision precision = Precision.valueOf(arguments.getFlagString("precision", "FP32").toUpperCase());
+        boolean int8 = arguments.getFlagBolean("int8");
+        if (int8 && precision != Precision.FP32) {
+            throw new IllegalArgumentException("Flags int8 y precision no se pueden combinar");
+        }
         Pair<XNormalizer, YNormalizer> pair = IOdata.loadNormalizers();
-        PredictionEngine engine = new PredictionEngine(pair.getKey(), pair.getValue(), model);
+        PredictionEngine engine = int8
+                ? new PredictionEngine(pair.getKey(), pair.getValue(), model, IOdata.loadQuantizedModel(model))
+                : new PredictionEngine(pair.getKey(), pair.getValue(), model, precision);
 
         Symbol symbol = Symbol.valueOf(arguments.getFlagString("symbol", "SOLUSDC"));
         TimeFrameMarket timeFrameMarket = TimeFrameMarket.parse(arguments.getFlagString("timeframe", "1m"));
@@ -53,7 +61,9 @@ public class FastSetupPrediction extends BaseCommand implements Flags {
 
         int horizon = Math.max(1, arguments.getFlagInteger("maxHorizon", 15));
         int candlesAgo = arguments.getFlagInteger("offset", 0);
-        showPredictionSnapshotRealMarket(market, engine, candlesAgo, horizon);
+        try (engine) {
+            showPredictionSnapshotRealMarket(market, engine, candlesAgo, horizon);
+        }
     }
 
     private static final String VALUE_SHOW = "close";
@@ -63,6 +73,8 @@ public class FastSetupPrediction extends BaseCommand implements Flags {
     public List<Flag> getFlags() {
         return List.of(
                 new Flag("device", TypeValue.STRING, "GPU", "CPU"),
+                new Flag("int8", TypeValue.BOOLEAN),
+                new Flag("precision", TypeValue.STRING, Precision.values()),
                 new Flag("symbol", TypeValue.STRING, SymbolFutures.values()),
                 new Flag("timeframe", TypeValue.STRING, Utils.enumsToStrings(TimeFrameMarket.values())),
                 new Flag("limitTrade", TypeValue.INTEGER),
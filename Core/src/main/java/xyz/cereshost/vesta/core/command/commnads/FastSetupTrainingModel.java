@@ -8,6 +8,9 @@ import xyz.cereshost.vesta.core.command.Arguments;
 import xyz.cereshost.vesta.core.command.BaseCommand;
 import xyz.cereshost.vesta.core.command.Flags;
 import xyz.cereshost.vesta.core.ia.VestaEngine;
+import xyz.cereshost.vesta.core.ia.utils.Precision;
+import xyz.cereshost.vesta.core.ia.utils.TrainingData;
+import xyz.cereshost.vesta.core.ia.utils.XNormalizer;
 import xyz.cereshost.vesta.core.utils.Utils;
 
 import java.util.ArrayList;
@@ -27,6 +30,10 @@ public class FastSetupTrainingModel extends BaseCommand implements Flags {
         }
         TimeFrameMarket timeFrameMarket = TimeFrameMarket.parse(arguments.getFlagString("timeframe", "1m"));
         List<TypeMarket> typeMarkets = symbols.stream().map(s -> new TypeMarket(s, timeFrameMarket)).toList();
+        VestaEngine.setNormalizeInFlight(arguments.getFlagInteger("normalizeInFlight", TrainingData.DEFAULT_NORMALIZE_IN_FLIGHT));
+        VestaEngine.setSketchError(arguments.getFlagFloat("sketchError", (float) XNormalizer.DEFAULT_SKETCH_ERROR));
+        VestaEngine.setInt8Export(arguments.getFlagBolean("int8"));
+        VestaEngine.setPrecision(Precision.valueOf(arguments.getFlagString("precision", "FP32").toUpperCase()));
         VestaEngine.trainingModel(typeMarkets);
     }
 
@@ -34,7 +41,11 @@ public class FastSetupTrainingModel extends BaseCommand implements Flags {
     public List<Flag> getFlags() {
         return List.of(
                 new Flag("symbol", TypeValue.STRING, Utils.enumsToStrings(SymbolFutures.values())),
-                new Flag("timeframe", TypeValue.STRING)
+                new Flag("timeframe", TypeValue.STRING),
+                new Flag("precision", TypeValue.STRING, Precision.values()),
+                new Flag("int8", TypeValue.BOOLEAN),
+                new Flag("normalizeInFlight", TypeValue.INTEGER),
+                new Flag("sketchError", TypeValue.FLOAT)
         );
     }
 }
@@ -5,30 +5,38 @@ import ai.djl.Model;
 import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
 import ai.djl.ndarray.types.Shape;
+import ai.djl.training.ParameterStore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.experimental.Delegate;
 import org.jetbrains.annotations.NotNull;
-import xyz.cereshost.vesta.common.Vesta;
-import xyz.cereshost.vesta.core.ia.utils.EngineUtils;
+import org.jetbrains.annotations.Nullable;
+import xyz.cereshost.vesta.core.ia.blocks.CausalMaskManager;
+import xyz.cereshost.vesta.core.ia.blocks.RolloutCache;
+import xyz.cereshost.vesta.core.ia.utils.Int8ParameterStore;
+import xyz.cereshost.vesta.core.ia.utils.Precision;
+import xyz.cereshost.vesta.core.ia.utils.PrecisionParameterStore;
 import xyz.cereshost.vesta.core.ia.utils.XNormalizer;
 import xyz.cereshost.vesta.core.ia.utils.YNormalizer;
 import xyz.cereshost.vesta.core.market.DireccionOperation;
 import xyz.cereshost.vesta.core.utils.BuilderData;
+import xyz.cereshost.vesta.core.utils.candle.CandleColumns;
 import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
 
 @Getter
-public class PredictionEngine {
+public class PredictionEngine implements AutoCloseable {
 
     private static final int MODEL_OUTPUTS = BuilderData.OUTPUTS;
-    private static final int REQUIRED_AUTOREGRESSIVE_FEATURES = BuilderData.FEATURES;
 
     private final Model model;
     private final XNormalizer xNormalizer;
@@ -36,66 +44,97 @@ public class PredictionEngine {
     private final int lookBack;
     private final int features;
     private final Device device;
+    private final ParameterStore parameterStore;
+    /**
+     * Precisión de los forwards, ya resuelta para el dispositivo del modelo
+     */
+    private final Precision precision;
+    /**
+     * Si es {@code true} los pasos de {@link #predict(List, int)} abren un {@link RolloutCache}
+     */
+    @Setter
+    private boolean incrementalRollout = true;
 
     public PredictionEngine(XNormalizer xNormalizer, YNormalizer yNormalizer, Model model) {
-        this.device = Device.gpu();
+        this(xNormalizer, yNormalizer, model, Precision.FP32);
+    }
+
+    /**
+     * @param precision precisión de inferencia; los pesos se convierten una vez y se reutilizan entre predicciones.
+     *                  Si el dispositivo no la soporta se usa la más cercana
+     */
+    public PredictionEngine(XNormalizer xNormalizer, YNormalizer yNormalizer, Model model, @NotNull Precision precision) {
+        this(xNormalizer, yNormalizer, model, precision.resolve(model.getNDManager().getDevice()), null);
+    }
+
+    /**
+     * Inferencia con los pesos {@code int8} de {@link xyz.cereshost.vesta.core.io.IOdata#loadQuantizedModel}, pensada
+     * para las máquinas sin GPU: las capas lineales grandes con pocas filas (el head) leen 4 veces menos memoria por
+     * tick.
+     */
+    public PredictionEngine(XNormalizer xNormalizer, YNormalizer yNormalizer, Model model, @NotNull Int8ParameterStore quantized) {
+        this(xNormalizer, yNormalizer, model, Precision.FP32, quantized);
+    }
+
+    private PredictionEngine(XNormalizer xNormalizer, YNormalizer yNormalizer, Model model, @NotNull Precision precision,
+                             @Nullable ParameterStore store) {
+        this.device = model.getNDManager().getDevice();
         this.model = model;
         this.xNormalizer = xNormalizer;
         this.yNormalizer = yNormalizer;
         this.lookBack = VestaEngine.LOOK_BACK; // Integer.parseInt(model.getProperty("lookBack"));
         this.features = BuilderData.FEATURES; //Integer.parseInt(model.getProperty("features"));
+        this.precision = precision;
+        if (store == null) {
+            store = new ParameterStore(model.getNDManager(), false);
+            if (precision != Precision.FP32) store = new PrecisionParameterStore(store, precision.getDataType());
+        }
+        this.parameterStore = store;
     }
 
     /**
-     * Hace la inferencia en el modelo.
-     * Devuelve los valores desnormalizados para un unico ejemplo (batch=1).
-     * Formato: [close, high, low, volumen, ema]
+     * Libera las máscaras causales del modelo. El modelo no se cierra: es de quien lo cargó.
      */
-    private float[] predictRaw(float[][][] inputSequence) {
-        if (inputSequence == null || inputSequence.length == 0) {
-            throw new IllegalArgumentException("inputSequence no puede ser null o vacio");
-        }
-        if (inputSequence[0] == null || inputSequence[0].length == 0 || inputSequence[0][0] == null) {
-            throw new IllegalArgumentException("inputSequence tiene dimensiones invalidas");
-        }
-        NDManager manager = model.getNDManager();
-        int batchSize = inputSequence.length;
-        int sequenceLength = inputSequence[0].length;
-        int actualFeatures = inputSequence[0][0].length;
-        if (batchSize != 1) {
-            throw new IllegalArgumentException("predictRaw solo soporta batch=1. Batch recibido: " + batchSize);
-        }
-        //debugInputData(inputSequence);
-        // Validación de dimensiones
-        if (actualFeatures != features) {
-            Vesta.warning("⚠️ Advertencia de dimensiones: El modelo espera " + features +
-                    " features, pero recibió " + actualFeatures);
-        }
-
-        // 1. Normalizar entrada (RobustScaling)
-        float[][][] normalizedInput = xNormalizer.transform(inputSequence);
-
-        // 2. Aplanar para DJL
-        float[] flatInput = EngineUtils.flatten3DArray(normalizedInput);
-        NDArray inputArray = manager.create(flatInput, new Shape(batchSize, sequenceLength, actualFeatures));
-
-        // 3. Forward Pass
-        var block = model.getBlock();
-        var parameterStore = new ai.djl.training.ParameterStore(manager, false);
-        NDList output = block.forward(parameterStore, new NDList(inputArray), false);
-
-        NDArray prediction = output.singletonOrThrow();
-        float[] normalizedOutput = prediction.toFloatArray();
+    @Override
+    public void close() {
+        CausalMaskManager.reclaim(model.getBlock(), parameterStore.getManager());
+    }
 
-        // Verificar la forma de la salida
-        long[] shape = prediction.getShape().getShape();
-        if (shape[shape.length - 1] != MODEL_OUTPUTS) {
-            throw new RuntimeException("El modelo debe tener " + MODEL_OUTPUTS + " salidas. Forma actual: " + prediction.getShape());
+    /**
+     * Hace la inferencia en el modelo para {@code batch} ventanas en un solo forward.
+     * Los NDArray viven en un sub-manager que se cierra al terminar.
+     *
+     * @param input ventanas sin normalizar, planas con forma {@code [batch, lookBack, features]}; no se modifica
+     * @return una fila desnormalizada por ventana
+     */
+    private float[][] predictRaw(float[] input, int batch) {
+        if (input.length != batch * lookBack * features) {
+            throw new IllegalArgumentException("La entrada no tiene la forma [" + batch + ", " + lookBack + ", " + features + "]");
         }
-
-        float[][] output2D = new float[1][MODEL_OUTPUTS];
-        System.arraycopy(normalizedOutput, 0, output2D[0], 0, output2D[0].length);
-        return yNormalizer.inverseTransform(output2D)[0];
+        // 1. Normalizar una copia plana (RobustScaling)
+        float[] normalized = input.clone();
+        xNormalizer.transformInPlace(normalized, features);
+
+        float[][] output2D = new float[batch][MODEL_OUTPUTS];
+        try (NDManager scope = model.getNDManager().newSubManager()) {
+            NDArray inputArray = scope.create(normalized, new Shape(batch, lookBack, features))
+                    .toType(precision.getDataType(), false);
+
+            // 2. Forward Pass
+            NDList output = model.getBlock().forward(parameterStore, new NDList(inputArray), false);
+            NDArray prediction = output.singletonOrThrow().toType(DataType.FLOAT32, false);
+
+            // Verificar la forma de la salida
+            long[] shape = prediction.getShape().getShape();
+            if (shape[shape.length - 1] != MODEL_OUTPUTS) {
+                throw new RuntimeException("El modelo debe tener " + MODEL_OUTPUTS + " salidas. Forma actual: " + prediction.getShape());
+            }
+            float[] normalizedOutput = prediction.toFloatArray();
+            for (int b = 0; b < batch; b++) {
+                System.arraycopy(normalizedOutput, b * MODEL_OUTPUTS, output2D[b], 0, MODEL_OUTPUTS);
+            }
+        }
+        return yNormalizer.inverseTransform(output2D);
     }
 
     public SequenceCandlesPrediction predictNextPriceDetail(SequenceCandles candles) {
@@ -103,50 +142,105 @@ public class PredictionEngine {
     }
 
     public SequenceCandlesPrediction predictNextPriceDetail(SequenceCandles candles, int futureCandles) {
-        if (futureCandles <= 0) {
-            return new SequenceCandlesPrediction(List.of());
-        }
-        SequenceCandles sortedCandles = candles.copy();
-        sortedCandles.sort(Comparator.comparingLong(SequenceCandles.CandleContainer::getOpenTime));
+        return predict(List.of(candles), futureCandles).getFirst();
+    }
 
-        if (sortedCandles.size() < lookBack + 1) {
-            throw new RuntimeException("Historial insuficiente. Se necesitan " + (lookBack + 1) + " velas.");
-        }
+    public List<SequenceCandlesPrediction> predict(List<SequenceCandles> windows) {
+        return predict(windows, 20);
+    }
 
-        SequenceCandles subList = sortedCandles.subSequence((sortedCandles.size() - (lookBack + 1)), sortedCandles.size());
+    /**
+     * Predice varias series a la vez (símbolos distintos o ventanas del mismo), con un solo forward por paso para
+     * todas. El resultado de cada una es el mismo que con {@link #predictNextPriceDetail(SequenceCandles, int)}.
+     *
+     * @return una predicción por serie, en el mismo orden
+     */
+    public List<SequenceCandlesPrediction> predict(List<SequenceCandles> windows, int futureCandles) {
+        int batch = windows.size();
+        if (futureCandles <= 0 || batch == 0) {
+            List<SequenceCandlesPrediction> empty = new ArrayList<>(batch);
+            for (int b = 0; b < batch; b++) empty.add(new SequenceCandlesPrediction(List.of()));
+            return empty;
+        }
 
         // Construir entrada inicial
-        float[][][] X = new float[1][Math.toIntExact(lookBack)][Math.toIntExact(features - 2)];
-        for (int j = 0; j < lookBack; j++) {
-            X[0][j] = BuilderData.buildTrendInputs(subList.getCandle(j + 1), subList.getCandle(j));
+        int stride = lookBack * features;
+        float[] X = new float[batch * stride];
+        for (int b = 0; b < batch; b++) {
+            fillWindow(windows.get(b), X, b * stride);
         }
 
-        if (X[0][0].length < REQUIRED_AUTOREGRESSIVE_FEATURES) {
-            throw new IllegalStateException(
-                    "Se requieren al menos " + REQUIRED_AUTOREGRESSIVE_FEATURES + " features para inyectar la prediccion."
-            );
+        List<List<PredictedCandle>> results = new ArrayList<>(batch);
+        for (int b = 0; b < batch; b++) results.add(new ArrayList<>(futureCandles));
+
+        // Entre pasos la ventana sólo se desplaza, los bloques de atención reutilizan lo ya proyectado
+        RolloutCache cache = incrementalRollout ? RolloutCache.open(model.getNDManager()) : null;
+        try {
+            for (int step = 0; step < futureCandles; step++) {
+                // Inferencia
+                float[][] rawPredictions = predictRaw(X, batch); // Output del modelo
+                for (int b = 0; b < batch; b++) {
+                    results.get(b).add(new PredictedCandle(rawPredictions[b]));
+
+                    // Shift de ventana y agregar la prediccion como nueva entrada; las features que el modelo no
+                    // predice quedan en 0
+                    int base = b * stride;
+                    System.arraycopy(X, base + features, X, base, stride - features);
+                    int last = base + stride - features;
+                    Arrays.fill(X, last, last + features, 0f);
+                    System.arraycopy(rawPredictions[b], 0, X, last, Math.min(MODEL_OUTPUTS, features));
+                }
+            }
+        } finally {
+            if (cache != null) cache.close();
         }
 
-        List<PredictedCandle> results = new ArrayList<>(futureCandles);
+        List<SequenceCandlesPrediction> predictions = new ArrayList<>(batch);
+        for (List<PredictedCandle> result : results) predictions.add(new SequenceCandlesPrediction(result));
+        return predictions;
+    }
 
+    /**
+     * Escribe las entradas de las últimas {@code lookBack} velas de {@code candles} en {@code out} desde
+     * {@code offset}.
+     */
+    private void fillWindow(SequenceCandles candles, float[] out, int offset) {
+        SequenceCandles sortedCandles = isSorted(candles) ? candles : sorted(candles);
 
-        for (int step = 0; step < futureCandles; step++) {
-            // Inferencia
-            float[] rawPredictions = predictRaw(X); // Output del modelo
-            PredictedCandle predicted = new PredictedCandle(
-                    rawPredictions
-            );
-            results.add(predicted);
+        if (sortedCandles.size() < lookBack + 1) {
+            throw new RuntimeException("Historial insuficiente. Se necesitan " + (lookBack + 1) + " velas.");
+        }
 
-            // Shift de ventana y agregar la prediccion como nueva entrada
-            for (int t = 0; t < lookBack - 1; t++) {
-                X[0][t] = X[0][t + 1];
+        // Copia de la ventana: sus columnas son lookBack + 1 filas y no las de toda la secuencia
+        SequenceCandles subList = sortedCandles.subSequence((sortedCandles.size() - (lookBack + 1)), sortedCandles.size()).copy();
+        CandleColumns.Cursor curr = subList.cursor();
+        CandleColumns.Cursor prev = subList.cursor();
+        int efficiencyColumn = subList.column(BuilderData.TREND_EFFICIENCY);
+        for (int j = 0; j < lookBack; j++) {
+            if (curr.at(j + 1).getMetrics() == null || prev.at(j).getMetrics() == null) {
+                throw new IllegalArgumentException("Faltan métricas en la vela " + curr.getOpenTime() + " de la ventana");
             }
-            X[0][lookBack - 1] = rawPredictions;
+            BuilderData.buildTrendInputs(curr, prev, efficiencyColumn, out, offset + j * features);
+        }
+    }
+
+    private static boolean isSorted(@NotNull SequenceCandles candles) {
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < candles.size(); i++) {
+            long openTime = candles.get(i).getOpenTime();
+            if (openTime < previous) return false;
+            previous = openTime;
         }
+        return true;
+    }
 
-        return new SequenceCandlesPrediction(results);
+    private static @NotNull SequenceCandles sorted(@NotNull SequenceCandles candles) {
+        SequenceCandles copy = SequenceCandles.empty();
+        copy.addAll(candles);
+        copy.sort(Comparator.comparingLong(SequenceCandles.CandleContainer::getOpenTime));
+        return copy;
     }
+
     @Data
     @AllArgsConstructor
     public static class SequenceCandlesPrediction implements List<PredictedCandle> {
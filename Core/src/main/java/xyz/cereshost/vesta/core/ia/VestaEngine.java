@@ -7,9 +7,9 @@ import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDArrays;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
 import ai.djl.ndarray.types.Shape;
 import ai.djl.nn.*;
-import ai.djl.nn.core.Linear;
 import ai.djl.pytorch.engine.PtModel;
 import ai.djl.pytorch.engine.PtNDManager;
 import ai.djl.pytorch.jni.JniUtils;
@@ -24,21 +24,32 @@ import ai.djl.training.listener.EvaluatorTrainingListener;
 import ai.djl.training.listener.LoggingTrainingListener;
 import ai.djl.training.optimizer.Optimizer;
 import ai.djl.training.tracker.Tracker;
-import ai.djl.util.Pair;
 import lombok.Getter;
 import lombok.Setter;
 import org.jetbrains.annotations.NotNull;
 import xyz.cereshost.vesta.core.market.TypeMarket;
 import xyz.cereshost.vesta.core.Main;
 import xyz.cereshost.vesta.common.Vesta;
+import xyz.cereshost.vesta.core.ia.blocks.CausalMaskManager;
+import xyz.cereshost.vesta.core.ia.blocks.MixedPrecisionBlock;
+import xyz.cereshost.vesta.core.ia.blocks.QuantizableLinear;
 import xyz.cereshost.vesta.core.ia.blocks.TemporalTransformerBlock;
 import xyz.cereshost.vesta.core.io.IOdata;
 import xyz.cereshost.vesta.core.ia.metrics.MetricsListener;
 import xyz.cereshost.vesta.core.utils.BuilderData;
+import xyz.cereshost.vesta.core.ia.utils.BoundedPipeline;
 import xyz.cereshost.vesta.core.ia.utils.EngineUtils;
+import xyz.cereshost.vesta.core.ia.utils.Int8ParameterStore;
+import xyz.cereshost.vesta.core.ia.utils.Precision;
+import xyz.cereshost.vesta.core.ia.utils.QuantizationCheck;
+import xyz.cereshost.vesta.core.ia.utils.TrainingCache;
 import xyz.cereshost.vesta.core.ia.utils.TrainingData;
+import xyz.cereshost.vesta.core.ia.utils.XNormalizer;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.List;
 import java.util.concurrent.*;
 
@@ -50,22 +61,50 @@ public class VestaEngine {
     public static final int BACH_SIZE = 4;
     public static final int SPLIT_DATA = 2;
     public static final int EPOCH = SPLIT_DATA * 4;
+    /**
+     * Partes adelantadas por cada etapa de CPU del pipeline de entrenamiento; en el dispositivo sólo se adelanta una
+     */
+    public static final int PIPELINE_DEPTH = 2;
+    /**
+     * Muestras de validación con las que se compara el modelo {@code int8} al exportarlo
+     */
+    public static final int INT8_CHECK_SAMPLES = 4096;
 
+    /**
+     * Precisión de los forwards de entrenamiento; si el dispositivo no la soporta se usa la más cercana
+     */
+    @Getter @Setter
+    private static Precision precision = Precision.FP32;
+    /**
+     * Si es {@code true} al terminar de entrenar se cuantiza el modelo y se guardan los pesos {@code int8}
+     * que lee {@code fsp -int8}
+     */
     @Getter @Setter
-    private static NDManager rootManager;
+    private static boolean int8Export = false;
+    /**
+     * Archivos del cache que se ajustan a la vez al calcular la normalización desde disco
+     */
+    @Getter @Setter
+    private static int normalizeInFlight = TrainingData.DEFAULT_NORMALIZE_IN_FLIGHT;
+    /**
+     * Error de rango de los sketches al calcular la normalización desde disco
+     */
+    @Getter @Setter
+    private static double sketchError = XNormalizer.DEFAULT_SKETCH_ERROR;
 
     public static final ExecutorService EXECUTOR_BUILD = Executors.newScheduledThreadPool(6);
     public static final ExecutorService EXECUTOR_AUXILIAR_BUILD = Executors.newScheduledThreadPool(10);
     public static final ExecutorService EXECUTOR_READ_CACHE_BUILD = Executors.newScheduledThreadPool(2);
     public static final ExecutorService EXECUTOR_WRITE_CACHE_BUILD = Executors.newScheduledThreadPool(6);
     public static final ExecutorService EXECUTOR_TRAINING = Executors.newScheduledThreadPool(8);
+    public static final ExecutorService EXECUTOR_DOWNLOAD = Executors.newScheduledThreadPool(4);
+    public static final ExecutorService EXECUTOR_PIPELINE = Executors.newCachedThreadPool();
 
     private static int countEpoch = 0;
 
     /**
      * Entrena un modelo con múltiples símbolos combinados
      */
-    @SuppressWarnings("UnusedAssignment")
     public static void trainingModel(@NotNull List<TypeMarket> typeMarket) throws IOException {
         Engine torch = Engine.getEngine("PyTorch");
         JniUtils.setGraphExecutorOptimize(false);
@@ -92,6 +131,8 @@ public class VestaEngine {
                 IOdata.saveCacheProperties(data.getCacheProperties(typeMarket));
 
             }
+            data.setNormalizeInFlight(normalizeInFlight);
+            data.setSketchError(sketchError);
             data.prepareNormalize();
 
             IOdata.saveYNormalizer(data.getYNormalizer());
@@ -104,7 +145,9 @@ public class VestaEngine {
 
             System.gc();
 
-            model.setBlock(getSequentialBlock());
+            Precision trainingPrecision = precision.resolve(device);
+            Vesta.info("Precisión: " + trainingPrecision);
+            model.setBlock(MixedPrecisionBlock.wrap(getSequentialBlock(), trainingPrecision));
 
             int maxMonthTraining = Main.MAX_MONTH_TRAINING - 1;
             int maxUpdates = estimateMaxUpdates(data, BACH_SIZE, maxMonthTraining);
@@ -113,7 +156,7 @@ public class VestaEngine {
             Vesta.info("Max Updates: %,d~", maxUpdates);
 
             // Configuración de entrenamiento
-            TrainingConfig config = new DefaultTrainingConfig(new VestaLoss())
+            TrainingConfig config = new DefaultTrainingConfig(new VestaLoss(trainingPrecision.getLossScale()))
                     .optOptimizer(Optimizer.adamW()
                             .optLearningRateTracker(Tracker.cosine()
                                     .setBaseValue( .000_000_8f)
@@ -121,6 +164,8 @@ public class VestaEngine {
                                     .setMaxUpdates(70_000)
                                     .build())
                             .optWeightDecays(0)
+                            // Deshace el escalado de la loss
+                            .setRescaleGrad(1f / trainingPrecision.getLossScale())
                             .build())
                     .optDevices(Engine.getInstance().getDevices())
 //                    .addEvaluator(new MAEEvaluator())
@@ -131,7 +176,8 @@ public class VestaEngine {
                             new EvaluatorTrainingListener(),
                             new LoggingTrainingListener()
                     )
-                    .addTrainingListeners(new MetricsListener());
+                    .addTrainingListeners(new MetricsListener())
+                    .addTrainingListeners(CausalMaskManager.reclaimOnEpoch());
 //                    .addTrainingListeners(new AutoStopListener());
 
             int batchSize = BACH_SIZE;
@@ -146,12 +192,11 @@ public class VestaEngine {
             model.setProperty("features", String.valueOf(BuilderData.FEATURES));
             Vesta.info("🧠 Total de parámetros: %,d", totalParams);
             Vesta.info("Iniciando entrenamiento con " + EPOCH* AUXILIAR_EPOCH *maxMonthTraining + " epochs...");
-            rootManager = manager;
             NDManager managerTraining = manager.newSubManager();
             System.gc();
-            data.preLoad(3, TrainingData.ModeData.RAMDOM, SPLIT_DATA);
-            ChunkDataset sampleTraining = computeDataset(data.nextTrainingData(), batchSize, managerTraining);
-            ChunkDataset sampleVal = computeDataset(data.nextValidationData(), 64, managerTraining);
+            data.preLoad(TrainingData.ModeData.RAMDOM, SPLIT_DATA);
+            // La validación es la misma en todos los meses, se sube una sola vez
+            ChunkDataset sampleVal = computeDataset(pin(data.nextValidationData()), 64, managerTraining);
 
 //            ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
 //            executorService.scheduleAtFixedRate(() -> {
@@ -163,34 +208,24 @@ public class VestaEngine {
 //            }, 4, 4, TimeUnit.MINUTES);
 
 
-            try{
+            try (BoundedPipeline<ChunkDataset> pipeline = trainingPipeline(data, batchSize, managerTraining)) {
                 for (int epoch = 0; epoch < EPOCH; epoch++) {
                     for (int idx = 0; idx < maxMonthTraining; idx++) {
-                        CompletableFuture<ChunkDataset> sampleTrainingNext = CompletableFuture.supplyAsync(() ->
-                                computeDataset(data.nextTrainingData(), batchSize, managerTraining), EXECUTOR_AUXILIAR_BUILD);
-                        CompletableFuture<ChunkDataset> sampleValNext = CompletableFuture.supplyAsync(() ->
-                                computeDataset(data.nextValidationData(), batchSize, managerTraining), EXECUTOR_AUXILIAR_BUILD);
+                        long waited = pipeline.getConsumerWaitNanos();
+                        ChunkDataset sampleTraining = pipeline.take();
+                        waited = pipeline.getConsumerWaitNanos() - waited;
+                        if (waited > 100_000_000L) {
+                            Vesta.warning("Mes no listo, se esperó %,d ms", waited / 1_000_000);
+                        }
 
                         EasyTrain.fit(trainer, AUXILIAR_EPOCH, sampleTraining.dataset(), sampleVal.dataset());
-                        NDArray xT = sampleTraining.x();
-                        NDArray yT = sampleTraining.y();
-                        NDArray xV = sampleVal.x();
-                        NDArray yV = sampleVal.y();
                         countEpoch++;
                         EXECUTOR_TRAINING.submit(() -> {
-                            xT.close();
-                            yT.close();
-                            xV.close();
-                            yV.close();
+                            closeDataset(sampleTraining);
                             EngineUtils.clearCacheFloats();
                         });
-                        if(!sampleTrainingNext.isDone() || !sampleValNext.isDone()) Vesta.warning("Mes no listo procesando...");
-                        sampleTraining = sampleTrainingNext.get();
-                        sampleTrainingNext = null;
-                        sampleVal = sampleValNext.get();
-                        sampleValNext = null;
+                        Vesta.info(pipeline.report());
                         if (stop) break;
-                        //sampleVal = sampleValNext.get();
                     }
                     if (stop) break;
                 }
@@ -199,10 +234,12 @@ public class VestaEngine {
             }
             stop = true;
             managerTraining.close();
+            TrainingCache validation = int8Export ? data.nextValidationData() : null;
             data.closePosTraining();
             System.gc();
             // Guardar modelo (igual que antes)
             IOdata.saveModel(model);
+            if (validation != null) exportInt8(model, validation);
 
 //            Pair<float[][][], float[][]> pairTest = data.getTestNormalize();
 //
@@ -231,12 +268,24 @@ public class VestaEngine {
 //            return new TrainingTestsResults(evaluate, simResult);
         }
     }
+
+    /**
+     * Cuantiza las capas lineales a {@code int8}, compara con el modelo en {@code FLOAT32} sobre la validación y
+     * guarda los pesos para la inferencia en CPU
+     */
+    private static void exportInt8(@NotNull Model model, @NotNull TrainingCache validation) throws IOException {
+        Block block = model.getBlock() instanceof MixedPrecisionBlock mixed ? mixed.getBlock() : model.getBlock();
+        Int8ParameterStore int8 = Int8ParameterStore.quantize(block, model.getNDManager());
+        Vesta.info(QuantizationCheck.run(block, int8, validation, INT8_CHECK_SAMPLES, 64, 20).toString());
+        IOdata.saveQuantizedModel(model, int8);
+    }
+
     @SuppressWarnings("DuplicatedCode")
     public static @NotNull SequentialBlock getSequentialBlock() {
         SequentialBlock mainBlock = new SequentialBlock();
 
         TTLHeader(mainBlock);
-        mainBlock.add(Linear.builder().setUnits(1024*2).build());
+        mainBlock.add(QuantizableLinear.builder().setUnits(1024*2).build());
 
 //        ParallelBlock branches = new ParallelBlock(list -> {
 //            NDArray out0 = list.get(0).singletonOrThrow();
@@ -280,11 +329,11 @@ public class VestaEngine {
 //                .add(Linear.builder().setUnits(32).build());
 
         return new SequentialBlock()
-                .add(Linear.builder().setUnits(1024*2).build())
-                .add(Linear.builder().setUnits(1024*2).build())
-                .add(Linear.builder().setUnits(1024*2).build())
-                .add(Linear.builder().setUnits(1024*2).build())
-                .add(Linear.builder().setUnits(1).build());
+                .add(QuantizableLinear.builder().setUnits(1024*2).build())
+                .add(QuantizableLinear.builder().setUnits(1024*2).build())
+                .add(QuantizableLinear.builder().setUnits(1024*2).build())
+                .add(QuantizableLinear.builder().setUnits(1024*2).build())
+                .add(QuantizableLinear.builder().setUnits(1).build());
     }
 
     private static SequentialBlock getZeroHead() {
@@ -324,6 +373,7 @@ public class VestaEngine {
                         .setFeedForwardDim(1024*2)
                         .setDropoutRate(.04f)
                         .setAttentionProbsDropoutProb(.04f)
+                        .setFusedQkv(true)
                         .setMaxSequenceLength(VestaEngine.SHORT_LOOK_BACK)
                         .build())
                 .add(new LambdaBlock(ndArrays -> {
@@ -348,6 +398,7 @@ public class VestaEngine {
                         .setFeedForwardDim(1024*2)
                         .setDropoutRate(.04f)
                         .setAttentionProbsDropoutProb(.04f)
+                        .setFusedQkv(true)
                         .setMaxSequenceLength(VestaEngine.LOOK_BACK)
                         .build())
                 .add(new LambdaBlock(ndArrays -> {
@@ -364,9 +415,39 @@ public class VestaEngine {
         return block;
     }
 
-    private static ChunkDataset computeDataset(Pair<float[][][], float[][]> pairNormalize, int batchSize, NDManager manager) {
-        NDArray X_train = EngineUtils.concat3DArrayToNDArray(pairNormalize.getKey(), manager, 1024);
-        NDArray y_train = manager.create(pairNormalize.getValue());
+    /**
+     * Lectura del disco, normalización, copia a memoria directa y subida al dispositivo, cada una en su hilo.
+     * <p>
+     * La etapa {@code dispositivo} crea los {@code NDArray} desde su propio hilo en un submanager de {@code manager}
+     * que sólo usa ella; el entrenamiento los cierra desde otros hilos con {@link #closeDataset}, y el submanager se
+     * libera al cerrar {@code manager}.
+     */
+    private static @NotNull BoundedPipeline<ChunkDataset> trainingPipeline(TrainingData data, int batchSize, NDManager manager) {
+        NDManager deviceManager = manager.newSubManager();
+        return BoundedPipeline.source("lectura", PIPELINE_DEPTH, data::nextTrainingRaw)
+                .then("normalizar", PIPELINE_DEPTH, data::normalize)
+                .then("memoria", PIPELINE_DEPTH, VestaEngine::pin)
+                .then("dispositivo", 1, pinned -> computeDataset(pinned, batchSize, deviceManager))
+                .onDiscard(VestaEngine::closeDataset)
+                .start(EXECUTOR_PIPELINE);
+    }
+
+    /**
+     * Copia la parte a buffers directos en el orden nativo, que {@code NDManager.create} usa sin volver a copiar
+     */
+    private static @NotNull PinnedChunk pin(@NotNull TrainingCache cache) {
+        return new PinnedChunk(direct(cache.getX()), cache.getXShape(), direct(cache.getY()), cache.getYShape());
+    }
+
+    private static @NotNull ByteBuffer direct(@NotNull FloatBuffer values) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(values.remaining() * Float.BYTES).order(ByteOrder.nativeOrder());
+        buffer.asFloatBuffer().put(values.duplicate());
+        return buffer;
+    }
+
+    private static ChunkDataset computeDataset(PinnedChunk chunk, int batchSize, NDManager manager) {
+        NDArray X_train = manager.create(chunk.x(), chunk.xShape(), DataType.FLOAT32);
+        NDArray y_train = manager.create(chunk.y(), chunk.yShape(), DataType.FLOAT32);
 //        Arrays.fill(pairNormalize.getValue(), null);
 //        Arrays.fill(pairNormalize.getKey(), null);
 //        System.err.println(Arrays.deepToString(pairNormalize.getValue()));
@@ -395,5 +476,12 @@ public class VestaEngine {
         stop = true;
     }
 
+    private static void closeDataset(@NotNull ChunkDataset chunk) {
+        chunk.x().close();
+        chunk.y().close();
+    }
+
+    private record PinnedChunk(ByteBuffer x, Shape xShape, ByteBuffer y, Shape yShape) {}
+
     private record ChunkDataset(NDArray x, NDArray y, ArrayDataset dataset) {}
 }
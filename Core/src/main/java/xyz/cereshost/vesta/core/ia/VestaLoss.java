@@ -4,6 +4,7 @@ import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.index.NDIndex;
 import ai.djl.training.loss.Loss;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import xyz.cereshost.vesta.core.ia.utils.EngineUtils;
 
@@ -23,9 +24,20 @@ public class VestaLoss extends Loss {
     // Debug: fuerza target constante para up/down/firstHit
 
     private volatile CompletableFuture<LossReport> dataRequest = null;
+    /**
+     * Factor por el que se multiplican los gradientes en el backward; el optimizador lo deshace con
+     * {@code setRescaleGrad(1 / lossScale)}
+     */
+    @Getter
+    private final float lossScale;
 
     public VestaLoss() {
+        this(1f);
+    }
+
+    public VestaLoss(float lossScale) {
         super("Vesta Loss");
+        this.lossScale = lossScale;
     }
 
     @SneakyThrows
@@ -62,7 +74,16 @@ public class VestaLoss extends Loss {
             ));
             dataRequest = null;
         }
-        return totalLoss;
+        return scaleGradient(totalLoss);
+    }
+
+    /**
+     * Mismo valor que {@code loss}, pero su gradiente es {@code lossScale} veces mayor. Así los reportes de la loss
+     * no cambian y en {@code FLOAT16} los gradientes pequeños no se pierden.
+     */
+    private NDArray scaleGradient(NDArray loss) {
+        if (lossScale == 1f) return loss;
+        return loss.mul(lossScale).sub(loss.mul(lossScale - 1f).stopGradient());
     }
 
     public NDArray computeDistance(NDArray trueND, NDArray predND) {
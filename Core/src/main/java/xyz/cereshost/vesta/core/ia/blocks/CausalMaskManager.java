@@ -1,183 +1,139 @@
 package xyz.cereshost.vesta.core.ia.blocks;
 
-import ai.djl.Device;
 import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDManager;
 import ai.djl.ndarray.types.DataType;
 import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.training.Trainer;
+import ai.djl.training.listener.TrainingListener;
+import ai.djl.training.listener.TrainingListenerAdapter;
 import org.jetbrains.annotations.NotNull;
 import xyz.cereshost.vesta.core.ia.utils.EngineUtils;
 
-import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * CausalMaskManager:
- * - crea las máscaras en un subManager dedicado (uno por key device:T:dtype)
- * - expone getMaskAndDerived(rootMgr, T, dtype) -> {mask, invMask, negInf}
- * - soporta update y clearSubManagers() para cerrar subManagers y liberar RAM
+ * - cada {@link TemporalTransformerBlock} tiene el suyo, así que dos modelos cargados no comparten máscaras
+ * - las máscaras se guardan por dueño, T y dtype; el dueño es el manager del {@code ParameterStore} del forward
+ *   (el del Trainer en entrenamiento, el del modelo en {@link xyz.cereshost.vesta.core.ia.PredictionEngine})
+ * - expone getMaskAndDerived(owner, T, dtype) -> {mask, invMask, negInf}, creados en un subManager del dueño
+ * - las lecturas no toman locks; sólo la primera vez de cada forma se construye la máscara
+ * - nunca se liberan durante un forward: cada dueño libera las suyas con {@link #reclaim(Block, NDManager)}
+ *   en un punto seguro, sin tocar las de otro Trainer o PredictionEngine que esté corriendo en otro hilo
  * Uso recomendado:
- * - Al inicio del forward: NDArray[] triple = CausalMaskManager.getMaskAndDerived(rootMgr, T, dtype);
- * - Si necesitas la máscara en tu subManager local: maskCopy = triple[0].toDevice(localSubMgr.getDevice(), false);
- * - Al final de cada epoch (desde hilo principal cuando no haya forwards en vuelo):
- *      CausalMaskManager.clearSubManagers();
+ * - En entrenamiento, agregar {@link #reclaimOnEpoch()} a los listeners del Trainer
+ * - En inferencia, cerrar el {@link xyz.cereshost.vesta.core.ia.PredictionEngine} al terminar
  */
 public final class CausalMaskManager {
 
-    private static final ConcurrentHashMap<String, MaskHolder> CACHE = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<MaskKey, Masks> cache = new ConcurrentHashMap<>();
 
-    private CausalMaskManager() {}
+    private record MaskKey(NDManager owner, int T, DataType dtype) {}
 
-    private static String key(Device device, int T, DataType dtype) {
-        return device.toString() + ":" + T + ":" + dtype.toString();
-    }
+    /**
+     * @param subManager creado con owner.newSubManager(), dueño de los tres arrays
+     * @param mask       [1,1,T,T] float
+     * @param invMask    1 - mask
+     * @param negInf     scalar -1e9
+     */
+    private record Masks(NDManager subManager, NDArray mask, NDArray invMask, NDArray negInf) {
 
-    private static final class MaskHolder {
-        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-        // Aquí guardamos el subManager y los NDArrays creados en dicho subManager
-        volatile NDManager rootManager;   // root manager asociado a este cache
-        volatile NDManager subManager;    // creado con rootMgr.newSubManager()
-        volatile NDArray mask;            // [1,1,T,T] float en subManager
-        volatile NDArray invMask;         // 1 - mask en subManager
-        volatile NDArray negInf;          // scalar -1e9 en subManager
-        final Device device;
-        final int T;
-        final DataType dtype;
-
-        MaskHolder(Device device, int T, DataType dtype) {
-            this.device = device;
-            this.T = T;
-            this.dtype = dtype;
+        boolean isOpen() {
+            return subManager.isOpen();
         }
+    }
 
-        void closeAllAndSubManager() {
-            try { if (mask != null) mask.close(); } catch (Exception ignored) {}
-            try { if (invMask != null) invMask.close(); } catch (Exception ignored) {}
-            try { if (negInf != null) negInf.close(); } catch (Exception ignored) {}
-            try { if (subManager != null) subManager.close(); } catch (Exception ignored) {}
-            mask = null;
-            invMask = null;
-            negInf = null;
-            subManager = null;
-            rootManager = null;
+    /**
+     * Devuelve {mask, invMask, negInf}. Si no existen, los crea **en un subManager** de {@code owner}.
+     *
+     * Nota: No cerrar los NDArrays devueltos aquí (están gestionados por el manager interno).
+     */
+    public NDArray[] getMaskAndDerived(@NotNull NDManager owner, int T, DataType dtype) {
+        Objects.requireNonNull(owner, "owner");
+        MaskKey key = new MaskKey(owner, T, dtype);
+        // Fast path sin locks
+        Masks masks = cache.get(key);
+        if (masks == null || !masks.isOpen()) {
+            // Sólo bloquea esta clave, y sólo hasta crearla; si se cerró el dueño se vuelve a crear
+            masks = cache.compute(key, (k, old) -> old != null && old.isOpen() ? old : create(k));
         }
+        return new NDArray[]{masks.mask(), masks.invMask(), masks.negInf()};
     }
 
-    private static MaskHolder getOrCreateHolder(Device device, int T, DataType dtype) {
-        String k = key(device, T, dtype);
-        return CACHE.computeIfAbsent(k, kk -> new MaskHolder(device, T, dtype));
+    private static Masks create(MaskKey key) {
+        // create mask in the subManager to avoid populating the owner's memory
+        NDManager mgr = key.owner().newSubManager();
+        NDArray idx = mgr.arange(key.T());
+        NDArray iIdx = idx.expandDims(0);
+        NDArray jIdx = idx.expandDims(1);
+        NDArray mask2d = iIdx.lte(jIdx); // [T,T] boolean (keep past & present)
+        // expand to [1,1,T,T] and convert dtype
+        NDArray mask4d = mask2d.expandDims(0).expandDims(0).toType(key.dtype(), false);
+
+        // derived arrays
+        NDArray inv = mask4d.mul(EngineUtils.floatToNDArray(-1f, mgr)).add(EngineUtils.floatToNDArray(1f, mgr));
+        NDArray neg = mgr.full(new Shape(1), -1e9f).toType(key.dtype(), false);
+        return new Masks(mgr, mask4d, inv, neg);
     }
 
-    private static int idxForRemoveCache = 1;
-
     /**
-     * Devuelve {mask, invMask, negInf}. Si no existen, los crea **en un subManager** (subManager = rootMgr.newSubManager()).
-     * Los NDArrays están creados en dicho subManager.
-     *
-     * Nota: No cerrar los NDArrays devueltos aquí (están gestionados por el manager interno).
+     * Cierra las máscaras creadas para {@code owner}. Llamar sólo cuando ese dueño NO tenga forwards en vuelo
+     * (fin de epoch o fin de las predicciones); las de otros dueños no se tocan y la próxima llamada
+     * recreará las que hagan falta.
      */
-    public static NDArray[] getMaskAndDerived(@NotNull NDManager rootMgr, int T, DataType dtype, int oftenCache) {
-        Objects.requireNonNull(rootMgr, "root manager");
-        if ((idxForRemoveCache % oftenCache) == 0) clearSubManagers();
-        idxForRemoveCache++;
-
-        Device device = rootMgr.getDevice();
-        MaskHolder holder = getOrCreateHolder(device, T, dtype);
-        // Fast read path
-        holder.lock.readLock().lock();
-        try {
-            if (holder.subManager != null
-                    && holder.rootManager == rootMgr
-                    && holder.mask != null && holder.invMask != null && holder.negInf != null) {
-                return new NDArray[]{holder.mask, holder.invMask, holder.negInf};
+    public void reclaim(@NotNull NDManager owner) {
+        for (MaskKey key : cache.keySet()) {
+            if (key.owner() == owner) {
+                close(cache.remove(key));
             }
-        } finally {
-            holder.lock.readLock().unlock();
         }
+    }
 
-        // Need to create -> take write lock
-        holder.lock.writeLock().lock();
-        try {
-            // double-check
-            if (holder.subManager == null
-                    || holder.rootManager != rootMgr
-                    || holder.mask == null || holder.invMask == null || holder.negInf == null) {
-                // Create a subManager using the provided root manager to ensure correct device/context
-                // If holder already had a subManager but arrays missing, reuse it; otherwise create new
-                if (holder.subManager != null && holder.rootManager != rootMgr) {
-                    holder.closeAllAndSubManager();
-                }
-                if (holder.subManager == null) {
-                    holder.subManager = rootMgr.newSubManager();
-                }
-                holder.rootManager = rootMgr;
-                NDManager mgr = holder.subManager;
-
-                // create mask in the subManager to avoid populating root manager memory
-                NDArray idx = mgr.arange(T);
-                NDArray iIdx = idx.expandDims(0);
-                NDArray jIdx = idx.expandDims(1);
-                NDArray mask2d = iIdx.lte(jIdx); // [T,T] boolean (keep past & present)
-                // expand to [1,1,T,T] and convert dtype
-                NDArray mask4d = mask2d.expandDims(0).expandDims(0).toType(dtype, false);
-
-                // derived arrays
-                NDArray inv = mask4d.mul(EngineUtils.floatToNDArray(-1f, mgr)).add(EngineUtils.floatToNDArray(1f, mgr));
-                NDArray neg = mgr.full(new Shape(1), -1e9f).toType(dtype, false);
-
-                // if there were old arrays, close them (safe because we hold write lock)
-                try {
-                    if (holder.mask != null) holder.mask.close();
-                    if (holder.invMask != null) holder.invMask.close();
-                    if (holder.negInf != null) holder.negInf.close();
-                } catch (Exception ignored) {}
-
-                holder.mask = mask4d;
-                holder.invMask = inv;
-                holder.negInf = neg;
-            }
-            return new NDArray[]{holder.mask, holder.invMask, holder.negInf};
-        } finally {
-            holder.lock.writeLock().unlock();
+    /**
+     * Cierra las máscaras de todos los dueños. Sólo para el shutdown, cuando ya no queda nadie haciendo forwards.
+     */
+    public void reclaim() {
+        for (MaskKey key : cache.keySet()) {
+            close(cache.remove(key));
         }
     }
 
     /**
-     * Cierra todos los subManagers y sus NDArrays. Llamar al final de epoch cuando NO haya forwards en vuelo.
-     * Esto libera la RAM asociada a las máscaras (las entradas en CACHE permanecen; la próxima llamada recreará
-     * subManagers/mascaras según sea necesario).
+     * Libera las máscaras de {@code owner} en todos los {@link TemporalTransformerBlock} de {@code block}.
      */
-    public static void clearSubManagers() {
-        for (Map.Entry<String, MaskHolder> e : CACHE.entrySet()) {
-            MaskHolder h = e.getValue();
-            // use write lock to ensure no readers are active
-            h.lock.writeLock().lock();
-            try {
-                if (h.subManager != null) {
-                    h.closeAllAndSubManager(); // total arrays and subManager
-                }
-            } finally {
-                h.lock.writeLock().unlock();
-            }
+    public static void reclaim(@NotNull Block block, @NotNull NDManager owner) {
+        if (block instanceof TemporalTransformerBlock transformer) {
+            transformer.getCausalMasks().reclaim(owner);
+        }
+        for (Block child : block.getChildren().values()) {
+            reclaim(child, owner);
+        }
+    }
+
+    private static void close(Masks masks) {
+        if (masks != null) {
+            try { masks.subManager().close(); } catch (Exception ignored) {}
         }
-//        System.gc();
     }
 
     /**
-     * Cierra TODO: subManagers y borra la cache completa. Use en shutdown completo.
+     * Listener que libera las máscaras del {@link Trainer} al terminar cada epoch, cuando ya no tiene
+     * forwards en vuelo.
      */
-    public static void clearAll() {
-        for (Map.Entry<String, MaskHolder> e : CACHE.entrySet()) {
-            MaskHolder h = e.getValue();
-            h.lock.writeLock().lock();
-            try {
-                h.closeAllAndSubManager();
-            } finally {
-                h.lock.writeLock().unlock();
+    public static @NotNull TrainingListener reclaimOnEpoch() {
+        return new TrainingListenerAdapter() {
+            @Override
+            public void onEpoch(Trainer trainer) {
+                reclaim(trainer.getModel().getBlock(), trainer.getManager());
             }
-        }
-        CACHE.clear();
+
+            @Override
+            public void onTrainingEnd(Trainer trainer) {
+                reclaim(trainer.getModel().getBlock(), trainer.getManager());
+            }
+        };
     }
 }
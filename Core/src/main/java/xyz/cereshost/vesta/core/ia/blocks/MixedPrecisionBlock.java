@@ -0,0 +1,93 @@
+package xyz.cereshost.vesta.core.ia.blocks;
+
+import ai.djl.MalformedModelException;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.AbstractBlock;
+import ai.djl.nn.Block;
+import ai.djl.training.ParameterStore;
+import ai.djl.util.PairList;
+import lombok.Getter;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.core.ia.utils.Precision;
+import xyz.cereshost.vesta.core.ia.utils.PrecisionParameterStore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Ejecuta un bloque con activaciones y pesos en {@code BFLOAT16} o {@code FLOAT16} (estilo autocast), con los pesos
+ * maestros y la salida en {@code FLOAT32} para la loss y el optimizador.
+ * <p>
+ * Se guarda y se carga igual que el bloque envuelto, así que los modelos son intercambiables entre precisiones.
+ * </p>
+ */
+public final class MixedPrecisionBlock extends AbstractBlock {
+
+    private static final byte VERSION = 1;
+
+    @Getter
+    private final Block block;
+    @Getter
+    private final Precision precision;
+
+    private MixedPrecisionBlock(@NotNull Block block, @NotNull Precision precision) {
+        super(VERSION);
+        this.block = addChildBlock("block", block);
+        this.precision = precision;
+    }
+
+    /**
+     * Envuelve {@code block}, o lo devuelve tal cual si la precisión es {@link Precision#FP32}.
+     *
+     * @param precision ya resuelta para el dispositivo con {@link Precision#resolve}
+     */
+    @Contract("_, _ -> !null")
+    public static @NotNull Block wrap(@NotNull Block block, @NotNull Precision precision) {
+        return precision == Precision.FP32 ? block : new MixedPrecisionBlock(block, precision);
+    }
+
+    @Override
+    protected NDList forwardInternal(ParameterStore parameterStore, NDList inputs, boolean training, PairList<String, Object> params) {
+        NDManager scope = inputs.head().getManager();
+        precision.checkSupported(scope.getDevice());
+        DataType dataType = precision.getDataType();
+        NDList output = block.forward(new PrecisionParameterStore(parameterStore, dataType, scope),
+                cast(inputs, dataType), training, params);
+        return cast(output, DataType.FLOAT32);
+    }
+
+    private static NDList cast(NDList list, DataType dataType) {
+        NDList cast = new NDList(list.size());
+        for (NDArray array : list) {
+            cast.add(array.getDataType().isFloating() ? array.toType(dataType, false) : array);
+        }
+        return cast;
+    }
+
+    @Override
+    protected void initializeChildBlocks(NDManager manager, DataType dataType, Shape... inputShapes) {
+        // Los pesos maestros siempre en FLOAT32
+        block.initialize(manager, DataType.FLOAT32, inputShapes);
+    }
+
+    @Override
+    public Shape[] getOutputShapes(Shape[] inputShapes) {
+        return block.getOutputShapes(inputShapes);
+    }
+
+    @Override
+    public void saveParameters(DataOutputStream os) throws IOException {
+        block.saveParameters(os);
+    }
+
+    @Override
+    public void loadParameters(NDManager manager, DataInputStream is) throws IOException, MalformedModelException {
+        block.loadParameters(manager, is);
+    }
+}
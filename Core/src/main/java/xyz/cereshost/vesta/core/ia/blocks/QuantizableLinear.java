@@ -0,0 +1,81 @@
+package xyz.cereshost.vesta.core.ia.blocks;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.core.Linear;
+import ai.djl.training.ParameterStore;
+import ai.djl.util.PairList;
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.core.ia.utils.Int8ParameterStore;
+import xyz.cereshost.vesta.core.ia.utils.Int8Weights;
+
+/**
+ * {@link Linear} que en inferencia con un {@link Int8ParameterStore} multiplica con sus pesos {@code int8}.
+ * <p>
+ * Se guarda y se carga igual que un {@link Linear}, así que los checkpoints no cambian.
+ * </p>
+ */
+public class QuantizableLinear extends Linear {
+
+    /**
+     * Filas a partir de las que el matmul nativo en {@code FLOAT32} (con los pesos ya redondeados) es más rápido que
+     * convertir los pesos {@code int8} en cada fila
+     */
+    public static final int MAX_INT8_ROWS = 8;
+    /**
+     * Pesos por debajo de los que la copia de la entrada y la salida cuesta más de lo que se ahorra en memoria
+     */
+    public static final int MIN_INT8_WEIGHTS = 1 << 19;
+
+    protected QuantizableLinear(@NotNull Builder builder) {
+        super(builder);
+    }
+
+    public static @NotNull Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    protected NDList forwardInternal(ParameterStore parameterStore, NDList inputs, boolean training, PairList<String, Object> params) {
+        NDArray input = inputs.singletonOrThrow();
+        if (training || !(parameterStore instanceof Int8ParameterStore store) || input.getDataType() != DataType.FLOAT32) {
+            return super.forwardInternal(parameterStore, inputs, training, params);
+        }
+        Int8Weights weights = store.getWeights(this);
+        Shape shape = input.getShape();
+        long rows = shape.size() / shape.tail();
+        if (weights == null || rows > MAX_INT8_ROWS || weights.getQuantized().length < MIN_INT8_WEIGHTS) {
+            return super.forwardInternal(parameterStore, inputs, training, params);
+        }
+        float[] output = weights.apply(input.toFloatArray(), (int) rows);
+        return new NDList(input.getManager().create(output, shape.slice(0, shape.dimension() - 1).add(weights.getOutputs())));
+    }
+
+    public static class Builder extends Linear.Builder {
+
+        protected Builder() {
+        }
+
+        @Override
+        public Builder setUnits(long units) {
+            super.setUnits(units);
+            return this;
+        }
+
+        @Override
+        public Builder optBias(boolean bias) {
+            super.optBias(bias);
+            return this;
+        }
+
+        @Override
+        public QuantizableLinear build() {
+            if (units <= 0) {
+                throw new IllegalArgumentException("units debe ser mayor a 0");
+            }
+            return new QuantizableLinear(this);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package xyz.cereshost.vesta.core.ia.blocks;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.nn.Block;
+import lombok.Getter;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Estado entre pasos de una predicción autorregresiva, donde cada forward recibe la ventana anterior desplazada
+ * una fila con una fila nueva al final.
+ * <p>
+ * Mientras está abierta, los {@link TemporalTransformerBlock} del hilo guardan la parte de query, key y value que
+ * sólo depende de cada token; en el paso siguiente proyectan sólo la fila nueva. La parte posicional se suma otra
+ * vez en cada paso, porque con la codificación absoluta cada token cambia de posición al desplazar la ventana.
+ * Si la entrada no es la anterior desplazada se recalcula todo, así que el resultado es siempre el del forward
+ * normal salvo redondeo.
+ * </p>
+ * <pre>{@code
+ * try (RolloutCache cache = RolloutCache.open(model.getNDManager())) {
+ *     for (int step = 0; step < futureCandles; step++) {
+ *         block.forward(parameterStore, window, false);
+ *         // desplazar window
+ *     }
+ * }
+ * }</pre>
+ */
+public final class RolloutCache implements AutoCloseable {
+
+    private static final ThreadLocal<RolloutCache> CURRENT = new ThreadLocal<>();
+
+    private final NDManager manager;
+    private final Map<Block, State> states = new IdentityHashMap<>();
+    @Nullable
+    private final RolloutCache previous;
+    /**
+     * Forwards que sólo proyectaron la fila nueva
+     */
+    @Getter
+    private int incrementalSteps;
+    /**
+     * Forwards que proyectaron la ventana entera
+     */
+    @Getter
+    private int fullSteps;
+
+    private RolloutCache(@NotNull NDManager parent, @Nullable RolloutCache previous) {
+        this.manager = parent.newSubManager();
+        this.previous = previous;
+    }
+
+    /**
+     * Abre un estado para el hilo actual; los arrays guardados viven en un sub-manager de {@code parent}.
+     */
+    @Contract("_ -> new")
+    public static @NotNull RolloutCache open(@NotNull NDManager parent) {
+        RolloutCache cache = new RolloutCache(parent, CURRENT.get());
+        CURRENT.set(cache);
+        return cache;
+    }
+
+    static @Nullable RolloutCache current() {
+        return CURRENT.get();
+    }
+
+    @NotNull
+    State state(@NotNull Block block) {
+        return states.computeIfAbsent(block, b -> new State());
+    }
+
+    @Override
+    public void close() {
+        if (CURRENT.get() == this) {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        }
+        states.clear();
+        manager.close();
+    }
+
+    /**
+     * Lo guardado por un bloque: su última entrada, la parte posicional de q/k/v (con bias) y la parte de cada
+     * token (sin bias).
+     */
+    final class State {
+
+        @Nullable
+        NDArray input;
+        @Nullable
+        NDList positions;
+        @Nullable
+        NDList tokens;
+
+        /**
+         * Presta lo guardado a {@code to} hasta que se cierre, para que lo calculado a partir de ello quede allí
+         */
+        void lend(@NotNull NDManager to) {
+            if (input != null) input.tempAttach(to);
+            if (positions != null) positions.tempAttach(to);
+            if (tokens != null) tokens.tempAttach(to);
+        }
+
+        void setInput(@NotNull NDArray input) {
+            this.input = keep(this.input, input);
+        }
+
+        void setPositions(@NotNull NDList positions) {
+            if (this.positions != null) this.positions.close();
+            positions.attach(manager);
+            this.positions = positions;
+        }
+
+        void setTokens(@NotNull NDList tokens, boolean incremental) {
+            if (this.tokens != null) this.tokens.close();
+            tokens.attach(manager);
+            this.tokens = tokens;
+            if (incremental) incrementalSteps++;
+            else fullSteps++;
+        }
+
+        private NDArray keep(@Nullable NDArray old, @NotNull NDArray array) {
+            if (old != null && old != array) old.close();
+            // Copia propia, el original se cierra con el manager del forward
+            NDArray copy = array.duplicate();
+            copy.attach(manager);
+            return copy;
+        }
+    }
+}
@@ -1,18 +1,27 @@
 package xyz.cereshost.vesta.core.ia.blocks;
 
+import ai.djl.Device;
+import ai.djl.MalformedModelException;
 import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDArrays;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.NDManager;
 import ai.djl.ndarray.types.DataType;
 import ai.djl.ndarray.types.Shape;
 import ai.djl.nn.AbstractBlock;
 import ai.djl.nn.Block;
+import ai.djl.nn.Parameter;
 import ai.djl.nn.core.Linear;
 import ai.djl.nn.norm.Dropout;
 import ai.djl.training.ParameterStore;
+import ai.djl.training.initializer.Initializer;
+import ai.djl.training.initializer.XavierInitializer;
 import ai.djl.util.PairList;
 import xyz.cereshost.vesta.core.ia.utils.EngineUtils;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+
 /**
  * A Block implementing scaled product attention according to <a
  * href="https://arxiv.org/abs/1706.03762">Vaswani et. al.</a>.
@@ -46,6 +55,10 @@ import xyz.cereshost.vesta.core.ia.utils.EngineUtils;
  * </ul>
  *
  * <p>Attention masks must contain a 1 for positions to keep and a 0 for positions to mask.
+ *
+ * <p>With {@link Builder#optFusedQkv(boolean)} the query, key and value projections are packed into
+ * a single (3E, E) weight, so self attention needs one matmul instead of three. Parameters saved
+ * in either layout can be loaded in the other; they are converted in {@link #loadParameters}.
  */
 // We name local variables for tensor dimensions as in the paper and the reference code.
 // While against the general code style, it makes things much easier readable here.
@@ -58,11 +71,26 @@ import xyz.cereshost.vesta.core.ia.utils.EngineUtils;
 public final class ScaledDotProductAttentionOptimizableBlock extends AbstractBlock {
 
     private static final byte VERSION = 1;
+    /** Version written by blocks with a packed query/key/value projection. */
+    private static final byte FUSED_VERSION = 2;
+    /** Initializes each third of the packed weight like a separate (E, E) projection. */
+    private static final Initializer PACKED_INITIALIZER = (manager, shape, dataType) -> {
+        Shape part = new Shape(shape.get(0) / 3, shape.get(1));
+        Initializer xavier = new XavierInitializer();
+        return NDArrays.concat(new NDList(
+                xavier.initialize(manager, part, dataType),
+                xavier.initialize(manager, part, dataType),
+                xavier.initialize(manager, part, dataType)));
+    };
 
+    /** Whether query, key and value share one packed projection. */
+    private final boolean fusedQkv;
     /** Size of the Word-/Token-embeddings we use the attention on. */
     private int embeddingSize;
     /** Number of attention heads. */
     private int headCount;
+    /** Packed projection of queries, keys and values, in that order; only in fused mode. */
+    private Linear qkvProjection;
     /** Pointwise Linear projection of the keys. */
     private Linear keyProjection;
     /** Pointwise Linear projection of the queries. */
@@ -75,14 +103,21 @@ public final class ScaledDotProductAttentionOptimizableBlock extends AbstractBlo
     private Dropout attentionProbsDropout;
 
     private ScaledDotProductAttentionOptimizableBlock(ScaledDotProductAttentionOptimizableBlock.Builder builder) {
-        super(VERSION);
+        super(builder.fusedQkv ? FUSED_VERSION : VERSION);
 
+        this.fusedQkv = builder.fusedQkv;
         this.embeddingSize = builder.embeddingSize;
         this.headCount = builder.headCount;
 
-        this.keyProjection = addChildBlock("keyProjection", buildProjection());
-        this.queryProjection = addChildBlock("queryProjection", buildProjection());
-        this.valueProjection = addChildBlock("valueProjection", buildProjection());
+        if (fusedQkv) {
+            this.qkvProjection = addChildBlock("qkvProjection",
+                    QuantizableLinear.builder().setUnits(3L * embeddingSize).optBias(true).build());
+            qkvProjection.setInitializer(PACKED_INITIALIZER, Parameter.Type.WEIGHT);
+        } else {
+            this.keyProjection = addChildBlock("keyProjection", buildProjection());
+            this.queryProjection = addChildBlock("queryProjection", buildProjection());
+            this.valueProjection = addChildBlock("valueProjection", buildProjection());
+        }
         this.resultProjection = addChildBlock("resultProjection", buildProjection());
 
         this.attentionProbsDropout =
@@ -97,7 +132,7 @@ public final class ScaledDotProductAttentionOptimizableBlock extends AbstractBlo
      * @return a linear projection with bias and an output size equal to the embedding size.
      */
     private Linear buildProjection() {
-        return Linear.builder().setUnits(embeddingSize).optBias(true).build();
+        return QuantizableLinear.builder().setUnits(embeddingSize).optBias(true).build();
     }
 
     /** {@inheritDoc} */
@@ -154,32 +189,16 @@ public final class ScaledDotProductAttentionOptimizableBlock extends AbstractBlo
             NDList inputs,
             boolean training,
             PairList<String, Object> params) {
-        // E=embedding size
-        long E = embeddingSize;
-        // B=batch size
-        long B = inputs.head().getShape().get(0);
-        // N=number of attention heads
-        long N = headCount;
-        // F=from sequence length
-        long F;
-        // T=to sequence length
-        long T;
-        // H=Attention head size (= E / N)
-        long H = E / N;
         // Create key, query & value input based on input size
         NDList flattenedKeyInput;
         NDList flattenedQueryInput;
         NDList flattenedValueInput;
         NDArray attentionMask;
         if (inputs.size() < 3) { // self attention, either masked or unmasked
-            F = inputs.head().getShape().get(1);
-            T = F;
             flattenedKeyInput = new NDList(inputs.head());
             flattenedQueryInput = flattenedKeyInput;
             flattenedValueInput = flattenedKeyInput;
         } else { // attention with separate key, query & value
-            F = inputs.get(0).getShape().get(1);
-            T = inputs.get(1).getShape().get(1);
             flattenedKeyInput = new NDList(inputs.get(0));
             flattenedQueryInput = new NDList(inputs.get(1));
             flattenedValueInput = new NDList(inputs.get(2));
@@ -189,22 +208,196 @@ public final class ScaledDotProductAttentionOptimizableBlock extends AbstractBlo
         } else {
             attentionMask = null;
         }
+        if (fusedQkv) {
+            if (inputs.size() < 3) {
+                // one matmul for the three projections, then split into (B, S, E) each
+                NDList qkv = qkvProjection
+                        .forward(parameterStore, flattenedQueryInput, training, params)
+                        .head()
+                        .split(3, 2);
+                return attend(parameterStore, qkv.get(0), qkv.get(1), qkv.get(2), attentionMask, training);
+            }
+            return attend(parameterStore,
+                    projectPart(parameterStore, flattenedQueryInput.head(), 0, training),
+                    projectPart(parameterStore, flattenedKeyInput.head(), 1, training),
+                    projectPart(parameterStore, flattenedValueInput.head(), 2, training),
+                    attentionMask, training);
+        }
         // apply projection for key, query and value, preserves shape: (B, S, E)
         NDList keys = keyProjection.forward(parameterStore, flattenedKeyInput, training, params);
         NDList queries =
                 queryProjection.forward(parameterStore, flattenedQueryInput, training, params);
         NDList values =
                 valueProjection.forward(parameterStore, flattenedValueInput, training, params);
+        return attend(parameterStore, queries.head(), keys.head(), values.head(), attentionMask, training);
+    }
+
+    /**
+     * Projects the tokens with the query, key and value weights, without the bias. Together with
+     * {@link #projectWithBias} this splits each projection of {@code tokens + positions} into a part
+     * that only depends on the token and can be kept between steps of a rollout.
+     *
+     * @param tokens embeddings of shape (B, S, E)
+     * @return queries, keys and values without bias, each of shape (B, S, E)
+     */
+    NDList projectTokens(ParameterStore parameterStore, NDArray tokens, boolean training) {
+        Device device = tokens.getDevice();
+        if (fusedQkv) {
+            return tokens.matMul(weight(parameterStore, qkvProjection, device, training).transpose()).split(3, 2);
+        }
+        return new NDList(
+                tokens.matMul(weight(parameterStore, queryProjection, device, training).transpose()),
+                tokens.matMul(weight(parameterStore, keyProjection, device, training).transpose()),
+                tokens.matMul(weight(parameterStore, valueProjection, device, training).transpose()));
+    }
+
+    /**
+     * Applies the full query, key and value projections, bias included.
+     *
+     * @param embeddings embeddings of shape (B, S, E)
+     * @return queries, keys and values, each of shape (B, S, E)
+     */
+    NDList projectWithBias(ParameterStore parameterStore, NDArray embeddings, boolean training) {
+        NDList input = new NDList(embeddings);
+        if (fusedQkv) {
+            return qkvProjection.forward(parameterStore, input, training).head().split(3, 2);
+        }
+        return new NDList(
+                queryProjection.forward(parameterStore, input, training).head(),
+                keyProjection.forward(parameterStore, input, training).head(),
+                valueProjection.forward(parameterStore, input, training).head());
+    }
+
+    private static NDArray weight(ParameterStore parameterStore, Linear projection, Device device, boolean training) {
+        return parameterStore.getValue(projection.getParameters().get("weight"), device, training);
+    }
+
+    /**
+     * Applies one third of the packed projection, for attention with separate key, query and value
+     * inputs.
+     *
+     * @param part 0 for queries, 1 for keys, 2 for values
+     */
+    private NDArray projectPart(ParameterStore parameterStore, NDArray input, int part, boolean training) {
+        Device device = input.getDevice();
+        String rows = part * embeddingSize + ":" + (part + 1) * embeddingSize;
+        NDArray weight = weight(parameterStore, qkvProjection, device, training).get(rows);
+        NDArray bias = parameterStore.getValue(qkvProjection.getParameters().get("bias"), device, training).get(rows);
+        return Linear.linear(input, weight, bias).head();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void loadMetadata(byte loadVersion, DataInputStream is)
+            throws IOException, MalformedModelException {
+        if (loadVersion != VERSION && loadVersion != FUSED_VERSION) {
+            throw new MalformedModelException("Unsupported encoding version: " + loadVersion);
+        }
+        readInputShapes(is);
+    }
+
+    /**
+     * Loads parameters saved with either layout. A checkpoint with separate key, query and value
+     * projections is packed when this block is fused, and a packed one is split when it is not.
+     */
+    @Override
+    public void loadParameters(NDManager manager, DataInputStream is)
+            throws IOException, MalformedModelException {
+        byte loadVersion = is.readByte();
+        loadMetadata(loadVersion, is);
+        if ((loadVersion == FUSED_VERSION) == fusedQkv) {
+            for (Block child : children.values()) {
+                child.loadParameters(manager, is);
+            }
+            return;
+        }
+        // The temporary projections and the packed or split arrays only live until they are copied
+        try (NDManager scratch = manager.newSubManager()) {
+            if (fusedQkv) {
+                // Saved in the order key, query, value; packed as query, key, value
+                Linear key = loadProjection(scratch, is);
+                Linear query = loadProjection(scratch, is);
+                Linear value = loadProjection(scratch, is);
+                copyInto(manager, qkvProjection, "weight", NDArrays.concat(new NDList(
+                        array(query, "weight"), array(key, "weight"), array(value, "weight"))));
+                copyInto(manager, qkvProjection, "bias", NDArrays.concat(new NDList(
+                        array(query, "bias"), array(key, "bias"), array(value, "bias"))));
+            } else {
+                Linear packed = loadProjection(scratch, is);
+                NDList weights = array(packed, "weight").split(3);
+                NDList biases = array(packed, "bias").split(3);
+                copyInto(manager, queryProjection, "weight", weights.get(0));
+                copyInto(manager, keyProjection, "weight", weights.get(1));
+                copyInto(manager, valueProjection, "weight", weights.get(2));
+                copyInto(manager, queryProjection, "bias", biases.get(0));
+                copyInto(manager, keyProjection, "bias", biases.get(1));
+                copyInto(manager, valueProjection, "bias", biases.get(2));
+            }
+        }
+        resultProjection.loadParameters(manager, is);
+        attentionProbsDropout.loadParameters(manager, is);
+    }
+
+    private Linear loadProjection(NDManager manager, DataInputStream is)
+            throws IOException, MalformedModelException {
+        // The units are read from the stream
+        Linear projection = buildProjection();
+        projection.loadParameters(manager, is);
+        return projection;
+    }
+
+    private static NDArray array(Linear projection, String name) {
+        return projection.getParameters().get(name).getArray();
+    }
+
+    private void copyInto(NDManager manager, Linear projection, String name, NDArray source) {
+        if (!projection.isInitialized()) {
+            projection.initialize(manager, DataType.FLOAT32, new Shape(-1L, embeddingSize));
+        }
+        NDArray target = array(projection, name);
+        // Same state as a freshly loaded parameter; the trainer enables gradients again
+        target.setRequiresGradient(false);
+        source.copyTo(target);
+    }
+
+    /**
+     * Attention over already projected queries, keys and values.
+     *
+     * @param queries projected queries (B, T, E)
+     * @param keys projected keys (B, F, E)
+     * @param values projected values (B, F, E)
+     * @param attentionMask mask of shape (B, T, F) or an offset of shape (B, N, T, F), may be null
+     * @return the projected attention result (B, T, E)
+     */
+    NDList attend(
+            ParameterStore parameterStore,
+            NDArray queries,
+            NDArray keys,
+            NDArray values,
+            NDArray attentionMask,
+            boolean training) {
+        // E=embedding size
+        long E = embeddingSize;
+        // B=batch size
+        long B = queries.getShape().get(0);
+        // N=number of attention heads
+        long N = headCount;
+        // F=from sequence length
+        long F = keys.getShape().get(1);
+        // T=to sequence length
+        long T = queries.getShape().get(1);
+        // H=Attention head size (= E / N)
+        long H = E / N;
         // reshape to (B, N, S, H) to create separate attention heads
-        NDArray keyHeads = createAttentionHeadsFromEmbeddings(keys.head(), B, F, N, H);
-        NDArray queryHeads = createAttentionHeadsFromEmbeddings(queries.head(), B, T, N, H);
-        NDArray valueHeads = createAttentionHeadsFromEmbeddings(values.head(), B, F, N, H);
+        NDArray keyHeads = createAttentionHeadsFromEmbeddings(keys, B, F, N, H);
+        NDArray queryHeads = createAttentionHeadsFromEmbeddings(queries, B, T, N, H);
+        NDArray valueHeads = createAttentionHeadsFromEmbeddings(values, B, F, N, H);
         // Apply attention by multiplying the key and query vectors: (B, N, T, F)
         // (For each entry in the sequence there is a weight for each other head in the sequence)
         NDArray attentionScores = queryHeads.matMul(keyHeads.transpose(0, 1, 3, 2));
         // Normalize the scores with 1/sqrt(H)
         NDArray normalizedAttentionScores = // Añadir a la cache
-                attentionScores.mul(EngineUtils.floatToNDArray(1f / (float) Math.sqrt(H), inputs.getManager()));
+                attentionScores.mul(EngineUtils.floatToNDArray(1f / (float) Math.sqrt(H), queries.getManager()));
         // Apply masking if requested, mask has shape (B, T, F)
         if (attentionMask != null) {
             NDArray maskOffset;
@@ -231,8 +424,11 @@ public final class ScaledDotProductAttentionOptimizableBlock extends AbstractBlo
             } else {
                 maskOffset = attentionMask;
             }
-            // adding the mask to the scores removes the scores of unwanted positions
-            normalizedAttentionScores = normalizedAttentionScores.add(maskOffset);
+            // adding the mask to the scores removes the scores of unwanted positions; the offset is
+            // cast to the scores type so reduced precision scores stay in that precision
+            normalizedAttentionScores =
+                    normalizedAttentionScores.add(
+                            maskOffset.toType(normalizedAttentionScores.getDataType(), false));
         }
         // Then apply softmax to get a probability distribution, shape (B, N, T, F)
         NDArray attentionProbs = normalizedAttentionScores.softmax(3);
@@ -275,6 +471,8 @@ public final class ScaledDotProductAttentionOptimizableBlock extends AbstractBlo
 
         private float attentionProbsDropoutProb = 0.1f;
 
+        private boolean fusedQkv;
+
         private Builder() {}
 
         /**
@@ -314,6 +512,18 @@ public final class ScaledDotProductAttentionOptimizableBlock extends AbstractBlo
             return this;
         }
 
+        /**
+         * Sets whether the query, key and value projections are packed into a single weight, so
+         * that self attention projects its input with one matmul.
+         *
+         * @param fusedQkv whether to use a packed projection
+         * @return this builder
+         */
+        public ScaledDotProductAttentionOptimizableBlock.Builder optFusedQkv(boolean fusedQkv) {
+            this.fusedQkv = fusedQkv;
+            return this;
+        }
+
         /**
          * Creates a new {@code ScaledDotProductAttentionBlock} with the current configuration.
          *
@@ -14,7 +14,7 @@ import ai.djl.nn.norm.Dropout;
 import ai.djl.nn.norm.LayerNorm;
 import ai.djl.training.ParameterStore;
 import ai.djl.util.PairList;
-import xyz.cereshost.vesta.core.ia.VestaEngine;
+import lombok.Getter;
 import xyz.cereshost.vesta.core.ia.utils.EngineUtils;
 
 
@@ -29,7 +29,6 @@ public class TemporalTransformerBlock extends AbstractBlock {
     // Hiperparámetros configurables
     private final int modelDim;        // Dimensión del modelo (d_model)
     private final int maxSequenceLength; // Longitud máxima de secuencia
-    private final int oftenClearCache; // Cada cuanto limpia la cache
 
     // Sub-bloques componentes
     private final ScaledDotProductAttentionOptimizableBlock attentionBlock;
@@ -42,18 +41,22 @@ public class TemporalTransformerBlock extends AbstractBlock {
     private final Linear inputProjection; // Proyección de entrada para ajustar dimensiones
     private NDManager manager = null;
     private NDArray positionalEncoding = null;
+    /**
+     * Máscaras causales de este bloque, por dueño del forward
+     */
+    @Getter
+    private final CausalMaskManager causalMasks = new CausalMaskManager();
 
     /**
      * Constructor para crear un bloque Temporal Transformer configurable.
      */
     private TemporalTransformerBlock(int modelDim, int numHeads, int ffDim,
                                     float dropoutRate, float attentionProbsDropoutProb,
-                                     int maxSequenceLength, int oftenClearCache
+                                     int maxSequenceLength, boolean fusedQkv
     ) {
         super(VERSION);
         this.modelDim = modelDim;
         this.maxSequenceLength = maxSequenceLength;
-        this.oftenClearCache = oftenClearCache;
 
         // Validación de parámetros
         if (modelDim % numHeads != 0) {
@@ -63,7 +66,7 @@ public class TemporalTransformerBlock extends AbstractBlock {
         }
 
         // 0. Proyección de entrada para ajustar dimensiones
-        this.inputProjection = Linear.builder()
+        this.inputProjection = QuantizableLinear.builder()
                 .setUnits(modelDim)
                 .optBias(true)
                 .build();
@@ -73,10 +76,11 @@ public class TemporalTransformerBlock extends AbstractBlock {
                 .setHeadCount(numHeads)
                 .setEmbeddingSize(modelDim)
                 .optAttentionProbsDropoutProb(attentionProbsDropoutProb)
+                .optFusedQkv(fusedQkv)
                 .build();
 
         // 2. Capa densa para proyección después de la atención
-        this.attentionOutputDense = Linear.builder()
+        this.attentionOutputDense = QuantizableLinear.builder()
                 .setUnits(modelDim)
                 .optBias(true)
                 .build();
@@ -87,10 +91,10 @@ public class TemporalTransformerBlock extends AbstractBlock {
 
         // 4. Capa feed-forward de 2 niveles (FFN)
         this.feedForwardBlock = new SequentialBlock()
-                .add(Linear.builder().setUnits(ffDim).optBias(true).build())
+                .add(QuantizableLinear.builder().setUnits(ffDim).optBias(true).build())
                 .add(Activation::gelu)
                 .add(Dropout.builder().optRate(dropoutRate).build())
-                .add(Linear.builder().setUnits(modelDim).optBias(true).build());
+                .add(QuantizableLinear.builder().setUnits(modelDim).optBias(true).build());
 
         // 5. Dropout para residuos
         this.dropout = Dropout.builder().optRate(dropoutRate).build();
@@ -121,6 +125,8 @@ public class TemporalTransformerBlock extends AbstractBlock {
         layerNorm1.initialize(managerInit, dataType, projectedShape);
         layerNorm2.initialize(managerInit, dataType, projectedShape);
         feedForwardBlock.initialize(managerInit, dataType, projectedShape);
+        // Sin parámetros, pero guarda su forma de entrada al serializar
+        dropout.initialize(managerInit, dataType, projectedShape);
 
     }
 
@@ -156,7 +162,7 @@ public class TemporalTransformerBlock extends AbstractBlock {
                 throw new IllegalArgumentException("Sequence length (" + seqLength + ") exceeds maxSequenceLength (" + maxSequenceLength + ")");
             }
 
-            ensurePositionalEncoding(VestaEngine.getRootManager(), projectedInput.getDataType());
+            ensurePositionalEncoding(parameterStore.getManager(), projectedInput.getDataType());
             NDArray posSlice = positionalEncoding.get(new NDIndex("0:1, 0:" + seqLength + ", :")).toDevice(manager.getDevice(), false);
             NDArray projectedInputWithPos = projectedInput.add(posSlice);
 
@@ -169,12 +175,11 @@ public class TemporalTransformerBlock extends AbstractBlock {
             // === 1. Atención Multi-Cabeza con Máscara Causal ===
             // Tomar slice de la máscara causal según la longitud actual
             NDArray baseMask =
-                    CausalMaskManager
+                    causalMasks
                             .getMaskAndDerived(
-                                    VestaEngine.getRootManager(),
+                                    parameterStore.getManager(),
                                     maskLength,
-                                    inputs.getFirst().getDataType(),
-                                    oftenClearCache
+                                    inputs.getFirst().getDataType()
                             )[0]; // [1,1,T,T]
 
             // Slice correcto (mask 0/1) y expandir a [B, seq, seq]
@@ -190,7 +195,11 @@ public class TemporalTransformerBlock extends AbstractBlock {
             currentMask = currentMask.toDevice(manager.getDevice(), false);
             NDList attentionInput = new NDList(projectedInputWithPos, currentMask);
 
-            NDList attentionOutput = attentionBlock.forward(parameterStore, attentionInput, training);
+            // En una predicción autorregresiva se reutiliza lo proyectado en el paso anterior
+            RolloutCache rollout = training ? null : RolloutCache.current();
+            NDList attentionOutput = rollout == null
+                    ? attentionBlock.forward(parameterStore, attentionInput, training)
+                    : rolloutAttention(parameterStore, rollout.state(this), hiddenStates, projectedInput, posSlice, currentMask);
             attentionContext = attentionOutput.singletonOrThrow();
             // Proyección lineal después de atención
             NDList listAttentionContext = new NDList(attentionContext);
@@ -270,6 +279,43 @@ public class TemporalTransformerBlock extends AbstractBlock {
         }
     }
 
+    /**
+     * Atención con q/k/v separados en parte de token y parte posicional. Si la entrada es la del paso anterior
+     * desplazada una fila, sólo se proyecta la fila nueva y el resto se toma del estado.
+     */
+    private NDList rolloutAttention(ParameterStore parameterStore, RolloutCache.State state, NDArray hiddenStates,
+                                    NDArray projectedInput, NDArray posSlice, NDArray mask) {
+        // Las operaciones sobre lo guardado dejan su resultado en el manager de este forward
+        state.lend(manager);
+        long seqLength = hiddenStates.getShape().get(1);
+        boolean incremental = state.input != null && state.tokens != null && seqLength > 1
+                && state.input.getShape().equals(hiddenStates.getShape())
+                && state.input.get(":, 1:, :").contentEquals(hiddenStates.get(":, :-1, :"));
+
+        NDList tokens;
+        if (incremental) {
+            NDList newRow = attentionBlock.projectTokens(parameterStore, projectedInput.get(":, -1:, :"), false);
+            tokens = new NDList(3);
+            for (int i = 0; i < 3; i++) {
+                tokens.add(state.tokens.get(i).get(":, 1:, :").concat(newRow.get(i), 1));
+            }
+        } else {
+            tokens = attentionBlock.projectTokens(parameterStore, projectedInput, false);
+        }
+        if (state.positions == null || state.positions.head().getShape().get(1) != seqLength) {
+            state.setPositions(attentionBlock.projectWithBias(parameterStore, posSlice, false));
+        }
+
+        NDList output = attentionBlock.attend(parameterStore,
+                tokens.get(0).add(state.positions.get(0)),
+                tokens.get(1).add(state.positions.get(1)),
+                tokens.get(2).add(state.positions.get(2)),
+                mask, false);
+        state.setInput(hiddenStates);
+        state.setTokens(tokens, incremental);
+        return output;
+    }
+
     /**
      * Método auxiliar para cerrar NDArray de forma segura
      */
@@ -283,8 +329,9 @@ public class TemporalTransformerBlock extends AbstractBlock {
         }
     }
 
-    private void ensurePositionalEncoding(NDManager rootManager, DataType dtype) {
-        if (positionalEncoding != null && positionalEncoding.getDataType() == dtype) {
+    private void ensurePositionalEncoding(NDManager owner, DataType dtype) {
+        // Si se cerró el manager en el que se creó (otro Trainer o PredictionEngine) se vuelve a crear
+        if (positionalEncoding != null && !positionalEncoding.isReleased() && positionalEncoding.getDataType() == dtype) {
             return;
         }
         if (positionalEncoding != null) {
@@ -293,7 +340,6 @@ public class TemporalTransformerBlock extends AbstractBlock {
             } catch (Exception ignored) {}
             positionalEncoding = null;
         }
-        NDManager mgr = rootManager != null ? rootManager : NDManager.newBaseManager();
         float[][][] pe = new float[1][maxSequenceLength][modelDim];
         for (int pos = 0; pos < maxSequenceLength; pos++) {
             for (int i = 0; i < modelDim; i += 2) {
@@ -304,7 +350,10 @@ public class TemporalTransformerBlock extends AbstractBlock {
                 }
             }
         }
-        positionalEncoding = EngineUtils.create3D(mgr, pe);
+        NDArray created = EngineUtils.create3D(owner, pe);
+        // En el tipo de las activaciones, para no volver a FLOAT32 al sumarla
+        positionalEncoding = created.toType(dtype, false);
+        if (positionalEncoding != created) created.close();
     }
 
     @Override
@@ -326,7 +375,7 @@ public class TemporalTransformerBlock extends AbstractBlock {
         private float dropoutRate = 0.1f;
         private float attentionProbsDropoutProb = 0.2f;
         private int maxSequenceLength = 45;
-        private int oftenClearCache = 50;
+        private boolean fusedQkv = false;
 
         public Builder setModelDim(int modelDim) {
             this.modelDim = modelDim;
@@ -358,13 +407,16 @@ public class TemporalTransformerBlock extends AbstractBlock {
             return this;
         }
 
-        public Builder setOftenClearCache(int oftenClearCache) {
-            this.oftenClearCache = oftenClearCache;
+        /**
+         * Proyecta query, key y value con un único peso empaquetado (un matmul en vez de tres)
+         */
+        public Builder setFusedQkv(boolean fusedQkv) {
+            this.fusedQkv = fusedQkv;
             return this;
         }
 
         public TemporalTransformerBlock build() {
-            return new TemporalTransformerBlock(modelDim, numHeads, ffDim, dropoutRate, attentionProbsDropoutProb, maxSequenceLength, oftenClearCache);
+            return new TemporalTransformerBlock(modelDim, numHeads, ffDim, dropoutRate, attentionProbsDropoutProb, maxSequenceLength, fusedQkv);
         }
     }
 
@@ -0,0 +1,136 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Aplica {@code x = (x - center[f]) / scale[f]} en el sitio sobre bloques planos donde la feature {@code f} es el
+ * índice dentro de cada fila de {@code center.length} valores.
+ * <p>
+ * Si el módulo {@code jdk.incubator.vector} está cargado (arrancar con {@code --add-modules jdk.incubator.vector})
+ * se usa la Vector API; si no, un bucle escalar. Los dos caminos hacen la misma resta y división en {@code float},
+ * así que el resultado es idéntico bit a bit.
+ * </p>
+ */
+public final class AffineKernel {
+
+    /**
+     * {@code true} si la Vector API está disponible en este proceso
+     */
+    public static final boolean SIMD = simdAvailable();
+
+    /**
+     * Valores por tramo al pasar buffers directos o de solo lectura por el array temporal
+     */
+    private static final int CHUNK = 1 << 14;
+    private static final ThreadLocal<float[]> SCRATCH = ThreadLocal.withInitial(() -> new float[CHUNK]);
+
+    private final float[] center;
+    private final float[] scale;
+    private final boolean simd;
+    // center y scale repetidos hasta un múltiplo del ancho de vector, para cargar lanes sin módulo
+    private final float[] centerPattern;
+    private final float[] scalePattern;
+
+    public AffineKernel(float @NotNull [] center, float @NotNull [] scale) {
+        this(center, scale, SIMD);
+    }
+
+    /**
+     * @param simd {@code false} fuerza el bucle escalar, para comparar los dos caminos
+     */
+    public AffineKernel(float @NotNull [] center, float @NotNull [] scale, boolean simd) {
+        if (center.length == 0 || center.length != scale.length) {
+            throw new IllegalArgumentException("center y scale deben tener el mismo tamaño, mayor a 0");
+        }
+        this.center = center.clone();
+        this.scale = scale.clone();
+        this.simd = simd && SIMD;
+        if (this.simd) {
+            int period = lcm(SimdKernels.lanes(), center.length);
+            centerPattern = new float[period];
+            scalePattern = new float[period];
+            for (int i = 0; i < period; i++) {
+                centerPattern[i] = center[i % center.length];
+                scalePattern[i] = scale[i % center.length];
+            }
+        } else {
+            centerPattern = null;
+            scalePattern = null;
+        }
+    }
+
+    public int getFeatures() {
+        return center.length;
+    }
+
+    /**
+     * Transforma {@code a[from, to)}; {@code from} debe ser el inicio de una fila.
+     */
+    public void apply(float @NotNull [] a, int from, int to) {
+        if ((to - from) % center.length != 0) {
+            throw new IllegalArgumentException("El rango no es un número entero de filas");
+        }
+        if (simd) {
+            SimdKernels.affine(a, from, to, centerPattern, scalePattern);
+        } else {
+            scalar(a, from, to, 0);
+        }
+    }
+
+    /**
+     * Transforma los valores entre la posición y el límite de {@code buffer}, que debe empezar en una fila. Los
+     * buffers con array se tratan directamente; los directos (mapeos) pasan por tramos de un array temporal.
+     */
+    public void apply(@NotNull FloatBuffer buffer) {
+        int from = buffer.position();
+        int to = buffer.limit();
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset();
+            apply(buffer.array(), offset + from, offset + to);
+            return;
+        }
+        float[] scratch = SCRATCH.get();
+        // Tramos de filas completas para que cada uno empiece en la feature 0
+        int step = Math.max(1, scratch.length / center.length) * center.length;
+        if (step > scratch.length) {
+            scratch = new float[step];
+        }
+        for (int i = from; i < to; i += step) {
+            int len = Math.min(step, to - i);
+            buffer.get(i, scratch, 0, len);
+            apply(scratch, 0, len);
+            buffer.put(i, scratch, 0, len);
+        }
+    }
+
+    private void scalar(float[] a, int from, int to, int f) {
+        int features = center.length;
+        for (int i = from; i < to; i++) {
+            a[i] = (a[i] - center[f]) / scale[f];
+            if (++f == features) f = 0;
+        }
+    }
+
+    private static int lcm(int a, int b) {
+        int x = a, y = b;
+        while (y != 0) {
+            int t = x % y;
+            x = y;
+            y = t;
+        }
+        return a / x * b;
+    }
+
+    private static boolean simdAvailable() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return SimdKernels.lanes() > 1;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Cadena de etapas productor/consumidor unidas por colas acotadas. Cada etapa corre en su propio hilo y se bloquea
+ * cuando su cola de salida está llena, así que nunca hay más de {@code depth} elementos adelantados por etapa.
+ * <p>
+ * Por etapa se mide el tiempo trabajando, esperando entrada (<b>sin entrada</b>: lo anterior es más lento) y
+ * esperando sitio en la cola de salida (<b>bloqueada</b>: lo posterior es más lento). Si el consumidor de
+ * {@link #take()} casi no espera, la cadena va por delante de él.
+ * </p>
+ * <pre>{@code
+ * BoundedPipeline<NDArray> pipeline = BoundedPipeline.source("lectura", 2, reader)
+ *         .then("normalizar", 2, normalizer)
+ *         .then("dispositivo", 1, toDevice)
+ *         .onDiscard(NDArray::close)
+ *         .start(executor);
+ * }</pre>
+ * Si la fuente devuelve {@code null} la cadena termina y {@link #take()} devuelve {@code null}. Un error en una
+ * etapa llega al consumidor en el siguiente {@link #take()}.
+ *
+ * @param <T> lo que sale de la última etapa
+ */
+public final class BoundedPipeline<T> implements AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private final List<Stage> stages;
+    private Consumer<? super T> discard = t -> {};
+    private boolean started;
+    private boolean closed;
+    private long consumerWaitNanos;
+    private long taken;
+
+    private BoundedPipeline(List<Stage> stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * Primera etapa, que produce los elementos llamando a {@code supplier}.
+     */
+    @Contract("_, _, _ -> new")
+    public static <T> @NotNull BoundedPipeline<T> source(@NotNull String name, int depth, @NotNull Supplier<? extends T> supplier) {
+        List<Stage> stages = new ArrayList<>();
+        stages.add(new Stage(name, depth, ignored -> supplier.get()));
+        return new BoundedPipeline<>(stages);
+    }
+
+    /**
+     * Agrega una etapa que transforma cada elemento de la anterior.
+     */
+    @SuppressWarnings("unchecked")
+    @Contract("_, _, _ -> new")
+    public <R> @NotNull BoundedPipeline<R> then(@NotNull String name, int depth, @NotNull Function<? super T, ? extends R> function) {
+        if (started) {
+            throw new IllegalStateException("La cadena ya fue iniciada");
+        }
+        List<Stage> next = new ArrayList<>(stages);
+        next.add(new Stage(name, depth, value -> function.apply((T) value)));
+        return new BoundedPipeline<>(next);
+    }
+
+    /**
+     * Qué hacer con los elementos ya producidos que nadie tomó al cerrar, por ejemplo cerrar los {@code NDArray}.
+     */
+    @Contract("_ -> this")
+    public @NotNull BoundedPipeline<T> onDiscard(@NotNull Consumer<? super T> discard) {
+        this.discard = discard;
+        return this;
+    }
+
+    /**
+     * Arranca un hilo por etapa en {@code executor}, que debe tener hilos libres para todas a la vez.
+     */
+    @Contract("_ -> this")
+    public @NotNull BoundedPipeline<T> start(@NotNull ExecutorService executor) {
+        if (started) {
+            throw new IllegalStateException("La cadena ya fue iniciada");
+        }
+        started = true;
+        BlockingQueue<Object> input = null;
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            boolean last = i == stages.size() - 1;
+            stage.input = input;
+            stage.future = executor.submit(() -> stage.run(last ? this::discardUnchecked : ignored -> {}));
+            input = stage.output;
+        }
+        return this;
+    }
+
+    /**
+     * Siguiente elemento de la última etapa, esperando si todavía no está listo.
+     *
+     * @return el elemento, o {@code null} si la fuente terminó
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable T take() throws InterruptedException {
+        if (!started) {
+            throw new IllegalStateException("Llama a start() antes de take()");
+        }
+        Stage last = stages.getLast();
+        long start = System.nanoTime();
+        Object value = last.output.take();
+        consumerWaitNanos += System.nanoTime() - start;
+        if (value instanceof Failure failure) {
+            last.output.put(failure);
+            throw new IllegalStateException("Falló la etapa " + failure.stage(), failure.cause());
+        }
+        if (value == END) {
+            last.output.put(END);
+            return null;
+        }
+        taken++;
+        return (T) value;
+    }
+
+    /**
+     * Tiempo total que {@link #take()} estuvo esperando a la cadena.
+     */
+    public long getConsumerWaitNanos() {
+        return consumerWaitNanos;
+    }
+
+    public @NotNull List<StageStats> stats() {
+        List<StageStats> stats = new ArrayList<>(stages.size());
+        for (Stage stage : stages) {
+            stats.add(new StageStats(stage.name, stage.items, stage.busyNanos, stage.starvedNanos,
+                    stage.saturatedNanos, stage.output.size(), stage.depth));
+        }
+        return stats;
+    }
+
+    /**
+     * Resumen de una línea por etapa para el log.
+     */
+    public @NotNull String report() {
+        StringBuilder builder = new StringBuilder(String.format("Pipeline: consumidor esperó %,d ms en %d elementos",
+                consumerWaitNanos / 1_000_000, taken));
+        for (StageStats stats : stats()) {
+            builder.append(String.format("%n  %-12s %4d elementos, cola %d/%d, trabajando %3.0f%%, sin entrada %3.0f%%, bloqueada %3.0f%%",
+                    stats.name(), stats.items(), stats.queued(), stats.depth(),
+                    stats.busyRatio() * 100, stats.starvedRatio() * 100, stats.saturatedRatio() * 100));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Detiene las etapas, espera a que suelten lo que estaban haciendo y descarta lo que quedó en la última cola.
+     * <p>
+     * Se espera a todas las etapas enviadas al executor: las que aún no empezaron se marcan como terminadas para que
+     * no lleguen a correr, y las que ya corren pueden dejar un último resultado en la cola antes de ver
+     * {@code closed}, así que la cola se vacía sólo cuando todas terminaron.
+     * </p>
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (Stage stage : stages) {
+            stage.closed = true;
+            if (stage.future == null) continue;
+            if (stage.started.compareAndSet(false, true)) {
+                // No llegó a empezar y ya no va a empezar
+                stage.done.countDown();
+            }
+            stage.future.cancel(true);
+        }
+        boolean interrupted = false;
+        for (Stage stage : stages) {
+            if (stage.future == null) continue;
+            while (true) {
+                try {
+                    stage.done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        Object value;
+        while ((value = stages.getLast().output.poll()) != null) {
+            if (value != END && !(value instanceof Failure)) {
+                discardUnchecked(value);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void discardUnchecked(Object value) {
+        discard.accept((T) value);
+    }
+
+    /**
+     * @param items          elementos producidos
+     * @param busyNanos      tiempo en la función de la etapa
+     * @param starvedNanos   tiempo esperando a la etapa anterior
+     * @param saturatedNanos tiempo esperando sitio en la cola de salida
+     * @param queued         elementos esperando en la cola de salida ahora
+     * @param depth          tamaño de la cola de salida
+     */
+    public record StageStats(String name, long items, long busyNanos, long starvedNanos, long saturatedNanos, int queued, int depth) {
+
+        public double busyRatio() {
+            return ratio(busyNanos);
+        }
+
+        public double starvedRatio() {
+            return ratio(starvedNanos);
+        }
+
+        public double saturatedRatio() {
+            return ratio(saturatedNanos);
+        }
+
+        private double ratio(long nanos) {
+            long total = busyNanos + starvedNanos + saturatedNanos;
+            return total == 0 ? 0 : (double) nanos / total;
+        }
+    }
+
+    private record Failure(String stage, Throwable cause) {}
+
+    private static final class Stage {
+
+        private final String name;
+        private final int depth;
+        private final Function<Object, Object> function;
+        private final BlockingQueue<Object> output;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private BlockingQueue<Object> input;
+        private Future<?> future;
+        // Lo reclama el hilo de la etapa al arrancar o close() si la etapa todavía no arrancó
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile boolean closed;
+
+        // Sólo los escribe el hilo de la etapa
+        private volatile long items;
+        private volatile long busyNanos;
+        private volatile long starvedNanos;
+        private volatile long saturatedNanos;
+
+        private Stage(String name, int depth, Function<Object, Object> function) {
+            if (depth < 1) {
+                throw new IllegalArgumentException("depth debe ser al menos 1");
+            }
+            this.name = name;
+            this.depth = depth;
+            this.function = function;
+            this.output = new ArrayBlockingQueue<>(depth);
+        }
+
+        @SuppressWarnings("NonAtomicOperationOnVolatileField")
+        private void run(Consumer<Object> discardOnInterrupt) {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                while (!closed) {
+                    long t0 = System.nanoTime();
+                    Object value = input == null ? null : input.take();
+                    long t1 = System.nanoTime();
+                    starvedNanos += t1 - t0;
+                    if (value == END || value instanceof Failure) {
+                        output.put(value);
+                        return;
+                    }
+
+                    Object result;
+                    try {
+                        result = function.apply(value);
+                    } catch (Throwable e) {
+                        output.put(new Failure(name, e));
+                        return;
+                    }
+                    long t2 = System.nanoTime();
+                    busyNanos += t2 - t1;
+                    if (result == null) {
+                        output.put(END);
+                        return;
+                    }
+
+                    try {
+                        output.put(result);
+                    } catch (InterruptedException e) {
+                        discardOnInterrupt.accept(result);
+                        throw e;
+                    }
+                    saturatedNanos += System.nanoTime() - t2;
+                    items++;
+                }
+            } catch (InterruptedException ignored) {
+                // close() canceló la etapa
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import lombok.Getter;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Las muestras de entrenamiento como ventanas deslizantes sobre una sola tabla de features.
+ * <p>
+ * Cada vela tiene su fila de {@code features} calculada una vez en {@link #getRows()} y cada muestra es solo el
+ * índice de su primera fila: la muestra {@code s} son las filas {@code start(s) .. start(s) + lookBack - 1}, que
+ * están contiguas, así que copiarla es un único {@link System#arraycopy}. Ocupa {@code velas * features} en lugar de
+ * {@code muestras * lookBack * features}.
+ * </p>
+ *
+ * @see xyz.cereshost.vesta.core.utils.BuilderData#buildWindows
+ */
+@Getter
+public final class FeatureWindows {
+
+    private final float[] rows;
+    private final int features;
+    private final int lookBack;
+    @Getter(lombok.AccessLevel.NONE)
+    private final int[] starts;
+    private final float[][] y;
+
+    public FeatureWindows(float @NotNull [] rows, int features, int lookBack, int @NotNull [] starts, float @NotNull [][] y) {
+        if (starts.length != y.length) {
+            throw new IllegalArgumentException("La cantidad de muestras de X e y es diferente");
+        }
+        this.rows = rows;
+        this.features = features;
+        this.lookBack = lookBack;
+        this.starts = starts;
+        this.y = y;
+    }
+
+    public int samples() {
+        return starts.length;
+    }
+
+    /**
+     * Posición en {@link #getRows()} del primer valor de la muestra.
+     */
+    public int offset(int sample) {
+        return starts[sample] * features;
+    }
+
+    /**
+     * Cantidad de valores de una muestra ({@code lookBack * features}).
+     */
+    public int sampleLength() {
+        return lookBack * features;
+    }
+
+    /**
+     * Copia la muestra aplanada en {@code dst} desde {@code dstOffset}.
+     */
+    public void copySample(int sample, float @NotNull [] dst, int dstOffset) {
+        System.arraycopy(rows, offset(sample), dst, dstOffset, sampleLength());
+    }
+
+    /**
+     * Materializa las ventanas en el formato {@code [muestras][lookBack][features]}.
+     */
+    @Contract(pure = true)
+    public float @NotNull [][][] toArray() {
+        float[][][] X = new float[samples()][lookBack][features];
+        for (int s = 0; s < X.length; s++) {
+            int offset = offset(s);
+            for (int j = 0; j < lookBack; j++) {
+                System.arraycopy(rows, offset + j * features, X[s][j], 0, features);
+            }
+        }
+        return X;
+    }
+
+    @Contract(value = "_, _, _ -> new", pure = true)
+    public static @NotNull FeatureWindows empty(int features, int lookBack, int yCols) {
+        return new FeatureWindows(new float[0], features, lookBack, new int[0], new float[0][yCols]);
+    }
+}
@@ -0,0 +1,107 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import ai.djl.Device;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.nn.Parameter;
+import ai.djl.training.ParameterStore;
+import lombok.Getter;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.cereshost.vesta.core.ia.blocks.QuantizableLinear;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ParameterStore} de inferencia con los pesos de cada {@link QuantizableLinear} cuantizados a {@code int8}.
+ * <p>
+ * Las capas grandes con pocas filas multiplican directamente con {@link Int8Weights}; el resto del modelo (las capas
+ * con muchas filas o las proyecciones que leen el peso a mano) recibe los pesos redondeados en {@code FLOAT32}, así
+ * que el resultado es el mismo modelo cuantizado por cualquiera de los dos caminos. Los demás parámetros quedan igual.
+ * </p>
+ */
+public class Int8ParameterStore extends ParameterStore {
+
+    private final ParameterStore delegate;
+    /**
+     * Capas en el orden de {@link #layers(Block)}
+     */
+    @Getter
+    private final Map<QuantizableLinear, Int8Weights> weights;
+    private final Map<Parameter, Int8Weights> byParameter = new HashMap<>();
+    private final Map<Parameter, NDArray> dequantized = new ConcurrentHashMap<>();
+
+    /**
+     * @param manager manager del modelo, donde quedan los pesos redondeados
+     * @param weights pesos de cada capa, en el orden de {@link #layers(Block)}
+     */
+    public Int8ParameterStore(@NotNull NDManager manager, @NotNull Map<QuantizableLinear, Int8Weights> weights) {
+        this.delegate = new ParameterStore(manager, false);
+        this.weights = Collections.unmodifiableMap(new LinkedHashMap<>(weights));
+        weights.forEach((layer, w) -> byParameter.put(layer.getParameters().get("weight"), w));
+    }
+
+    /**
+     * Cuantiza todas las {@link QuantizableLinear} de {@code block}, que ya debe estar inicializado o cargado.
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull Int8ParameterStore quantize(@NotNull Block block, @NotNull NDManager manager) {
+        Map<QuantizableLinear, Int8Weights> weights = new LinkedHashMap<>();
+        for (QuantizableLinear layer : layers(block)) {
+            NDArray weight = layer.getParameters().get("weight").getArray();
+            Parameter bias = layer.getParameters().get("bias");
+            weights.put(layer, Int8Weights.quantize(
+                    weight.toFloatArray(),
+                    bias == null ? null : bias.getArray().toFloatArray(),
+                    Math.toIntExact(weight.getShape().get(0))));
+        }
+        return new Int8ParameterStore(manager, weights);
+    }
+
+    /**
+     * Las {@link QuantizableLinear} de {@code block} en el orden en que se registraron los hijos, que es el mismo con
+     * el que se guardan los parámetros
+     */
+    public static @NotNull List<QuantizableLinear> layers(@NotNull Block block) {
+        List<QuantizableLinear> layers = new ArrayList<>();
+        collect(block, layers);
+        return layers;
+    }
+
+    private static void collect(Block block, List<QuantizableLinear> layers) {
+        if (block instanceof QuantizableLinear layer) {
+            layers.add(layer);
+            return;
+        }
+        for (Block child : block.getChildren().values()) {
+            collect(child, layers);
+        }
+    }
+
+    public @Nullable Int8Weights getWeights(@NotNull QuantizableLinear layer) {
+        return weights.get(layer);
+    }
+
+    @Override
+    public NDArray getValue(Parameter parameter, Device device, boolean training) {
+        Int8Weights w = byParameter.get(parameter);
+        if (w == null || training) {
+            return delegate.getValue(parameter, device, training);
+        }
+        return dequantized.computeIfAbsent(parameter, p -> getManager().create(w.dequantize(), new Shape(w.getOutputs(), w.getInputs())));
+    }
+
+    @Override
+    public NDManager getManager() {
+        return delegate.getManager();
+    }
+}
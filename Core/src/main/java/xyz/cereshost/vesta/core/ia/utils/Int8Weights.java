@@ -0,0 +1,120 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Pesos de una capa lineal cuantizados a {@code int8} con una escala por canal de salida:
+ * {@code w[o, k] ≈ q[o, k] * scales[o]}. El bias se queda en {@code float}.
+ * <p>
+ * Se multiplica sin volver a convertir los pesos a un array {@code float}: con la Vector API cada fila se convierte
+ * en registros (ver {@link AffineKernel#SIMD}), si no con un bucle escalar. Las sumas se hacen en {@code float}, así
+ * que la única pérdida frente a {@code FLOAT32} es el redondeo de los pesos.
+ * </p>
+ */
+@Getter
+public final class Int8Weights {
+
+    private final int inputs;
+    private final int outputs;
+    /**
+     * Pesos {@code [outputs, inputs]} por filas
+     */
+    private final byte[] quantized;
+    private final float[] scales;
+    @Nullable
+    private final float[] bias;
+    private final boolean simd;
+
+    public Int8Weights(int inputs, int outputs, byte @NotNull [] quantized, float @NotNull [] scales, float @Nullable [] bias) {
+        this(inputs, outputs, quantized, scales, bias, AffineKernel.SIMD);
+    }
+
+    /**
+     * @param simd {@code false} fuerza el bucle escalar, para comparar los dos caminos
+     */
+    public Int8Weights(int inputs, int outputs, byte @NotNull [] quantized, float @NotNull [] scales, float @Nullable [] bias, boolean simd) {
+        if (quantized.length != (long) inputs * outputs || scales.length != outputs || (bias != null && bias.length != outputs)) {
+            throw new IllegalArgumentException("Los pesos no tienen la forma [" + outputs + ", " + inputs + "]");
+        }
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.quantized = quantized;
+        this.scales = scales;
+        this.bias = bias;
+        this.simd = simd && AffineKernel.SIMD && SimdKernels.int8Available();
+    }
+
+    /**
+     * Cuantiza simétricamente cada fila: la escala es el máximo absoluto de la fila entre 127.
+     *
+     * @param weight pesos {@code [outputs, inputs]} por filas, como los de {@code Linear}
+     */
+    public static @NotNull Int8Weights quantize(float @NotNull [] weight, float @Nullable [] bias, int outputs) {
+        if (outputs <= 0 || weight.length % outputs != 0) {
+            throw new IllegalArgumentException("Los pesos no tienen " + outputs + " filas");
+        }
+        int inputs = weight.length / outputs;
+        byte[] quantized = new byte[weight.length];
+        float[] scales = new float[outputs];
+        for (int o = 0; o < outputs; o++) {
+            int from = o * inputs;
+            float max = 0f;
+            for (int k = from; k < from + inputs; k++) {
+                max = Math.max(max, Math.abs(weight[k]));
+            }
+            // Una fila de ceros queda en cero con cualquier escala
+            float scale = max == 0f ? 1f : max / 127f;
+            scales[o] = scale;
+            for (int k = from; k < from + inputs; k++) {
+                quantized[k] = (byte) Math.max(-127, Math.min(127, Math.round(weight[k] / scale)));
+            }
+        }
+        return new Int8Weights(inputs, outputs, quantized, scales, bias == null ? null : bias.clone());
+    }
+
+    /**
+     * @param x {@code rows} filas de {@link #getInputs()} valores
+     * @return {@code rows} filas de {@link #getOutputs()} valores
+     */
+    public float @NotNull [] apply(float @NotNull [] x, int rows) {
+        if (x.length != (long) rows * inputs) {
+            throw new IllegalArgumentException("La entrada no tiene la forma [" + rows + ", " + inputs + "]");
+        }
+        float[] y = new float[rows * outputs];
+        if (simd) {
+            SimdKernels.int8Linear(x, rows, inputs, quantized, scales, bias, outputs, y);
+        } else {
+            scalar(x, rows, y);
+        }
+        return y;
+    }
+
+    /**
+     * Los pesos {@code q * scale} en {@code float}, con la forma original
+     */
+    public float @NotNull [] dequantize() {
+        float[] weight = new float[quantized.length];
+        for (int o = 0; o < outputs; o++) {
+            for (int k = o * inputs; k < (o + 1) * inputs; k++) {
+                weight[k] = quantized[k] * scales[o];
+            }
+        }
+        return weight;
+    }
+
+    private void scalar(float[] x, int rows, float[] y) {
+        for (int r = 0; r < rows; r++) {
+            for (int o = 0; o < outputs; o++) {
+                int w = o * inputs;
+                int xr = r * inputs;
+                float sum = 0f;
+                for (int k = 0; k < inputs; k++) {
+                    sum += quantized[w + k] * x[xr + k];
+                }
+                y[r * outputs + o] = sum * scales[o] + (bias == null ? 0f : bias[o]);
+            }
+        }
+    }
+}
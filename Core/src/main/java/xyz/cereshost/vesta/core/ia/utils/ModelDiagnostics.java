@@ -8,6 +8,7 @@ import ai.djl.ndarray.NDManager;
 import ai.djl.training.ParameterStore;
 import ai.djl.util.Pair;
 import xyz.cereshost.vesta.common.Vesta;
+import xyz.cereshost.vesta.core.ia.blocks.CausalMaskManager;
 import xyz.cereshost.vesta.core.io.IOdata;
 
 import java.io.IOException;
@@ -104,6 +105,8 @@ public final class ModelDiagnostics {
             for (int i = 0; i < batch; i++) {
                 ratio[i] = ratioFromMoves(denorm[i][0], denorm[i][1]);
             }
+            // Las máscaras se crearon para este manager, que se cierra aquí
+            CausalMaskManager.reclaim(model.getBlock(), manager);
             return new Predictions(ratio);
         }
     }
@@ -0,0 +1,118 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import ai.djl.Device;
+import ai.djl.engine.Engine;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.core.Linear;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.common.Vesta;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precisión con la que se hacen los forwards. Los pesos maestros siempre quedan en {@code FLOAT32}; en
+ * {@link #BF16} y {@link #FP16} se convierten los pesos y las activaciones al tipo reducido antes de cada operación.
+ * <p>
+ * {@code FLOAT16} tiene poco rango, así que pierde gradientes pequeños si la loss no se escala
+ * ({@link #getLossScale()}); {@code BFLOAT16} tiene el rango de {@code FLOAT32} y no lo necesita.
+ * </p>
+ */
+@Getter
+public enum Precision {
+
+    FP32(DataType.FLOAT32, 1f, null),
+    BF16(DataType.BFLOAT16, 1f, FP32),
+    FP16(DataType.FLOAT16, 1024f, BF16);
+
+    private final DataType dataType;
+    /**
+     * Factor por el que se multiplican los gradientes durante el backward y que el optimizador deshace
+     */
+    private final float lossScale;
+    /**
+     * Qué usar si el dispositivo no soporta esta precisión
+     */
+    private final Precision fallback;
+    private final Map<Device, Boolean> supported = new ConcurrentHashMap<>();
+
+    Precision(DataType dataType, float lossScale, Precision fallback) {
+        this.dataType = dataType;
+        this.lossScale = lossScale;
+        this.fallback = fallback;
+    }
+
+    /**
+     * La precisión más cercana a esta que el engine puede usar en {@code device}; por ejemplo en CPU, donde
+     * PyTorch no tiene matmul en {@code FLOAT16}, se prueba con {@link #BF16} y si tampoco se puede con {@link #FP32}.
+     */
+    public @NotNull Precision resolve(@NotNull Device device) {
+        Precision precision = this;
+        while (precision.fallback != null && !precision.isSupported(device)) {
+            Vesta.warning("%s no está soportado en %s, se usa %s", precision, device, precision.fallback);
+            precision = precision.fallback;
+        }
+        return precision;
+    }
+
+    /**
+     * La precisión que usa {@code dataType}
+     */
+    public static @NotNull Precision of(@NotNull DataType dataType) {
+        for (Precision precision : values()) {
+            if (precision.dataType == dataType) return precision;
+        }
+        throw new IllegalArgumentException("Sin precisión para " + dataType);
+    }
+
+    /**
+     * Lanza {@link IllegalStateException} si no se puede usar en {@code device}, antes de que el engine intente la
+     * conversión: con {@code BFLOAT16} en DJL 0.26 eso aborta el proceso.
+     */
+    public void checkSupported(@NotNull Device device) {
+        if (!isSupported(device)) {
+            throw new IllegalStateException(this + " no está soportado en " + device + ", usa resolve() antes");
+        }
+    }
+
+    public boolean isSupported(@NotNull Device device) {
+        if (this == FP32) return true;
+        if (this == BF16 && !engineMapsBFloat16()) return false;
+        return supported.computeIfAbsent(device, this::probe);
+    }
+
+    /**
+     * El JNI de PyTorch de DJL hasta 0.26 no tiene {@code BFLOAT16} entre sus tipos y aborta el proceso (no lanza una
+     * excepción) al crear o convertir un array a ese tipo, así que en esas versiones ni se prueba.
+     */
+    private static boolean engineMapsBFloat16() {
+        String[] version = Engine.getDjlVersion().split("[.-]");
+        try {
+            int major = Integer.parseInt(version[0]);
+            int minor = Integer.parseInt(version[1]);
+            return major > 0 || minor > 26;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Prueba las operaciones del modelo con arrays pequeños
+     */
+    private boolean probe(Device device) {
+        try (NDManager manager = NDManager.newBaseManager(device)) {
+            NDArray input = manager.ones(new Shape(2, 3, 4)).toType(dataType, false);
+            NDArray weight = manager.ones(new Shape(4, 4)).toType(dataType, false);
+            NDArray bias = manager.zeros(new Shape(4)).toType(dataType, false);
+            NDArray output = Linear.linear(input, weight, bias).head();
+            output.matMul(output.transpose(0, 2, 1)).softmax(-1).toType(DataType.FLOAT32, false).toFloatArray();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
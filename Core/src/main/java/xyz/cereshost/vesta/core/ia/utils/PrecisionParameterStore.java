@@ -0,0 +1,79 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import ai.djl.Device;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.nn.Parameter;
+import ai.djl.training.ParameterStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ParameterStore} que entrega los pesos {@code FLOAT32} convertidos a otro tipo. La conversión es parte del
+ * grafo, así que en entrenamiento los gradientes llegan en {@code FLOAT32} a los pesos maestros.
+ * <p>
+ * Sólo se usa para leer pesos en el forward; la actualización la sigue haciendo el store original.
+ * </p>
+ */
+public class PrecisionParameterStore extends ParameterStore {
+
+    private final ParameterStore delegate;
+    private final DataType dataType;
+    private final Precision precision;
+    @Nullable
+    private final NDManager scope;
+    /**
+     * Un mismo store puede leer el peso en más de un dispositivo, cada copia convertida va por separado
+     */
+    @Nullable
+    private final Map<Key, NDArray> cache;
+
+    /**
+     * @param scope manager donde quedan las conversiones, normalmente el del batch
+     */
+    public PrecisionParameterStore(@NotNull ParameterStore delegate, @NotNull DataType dataType, @NotNull NDManager scope) {
+        this.delegate = delegate;
+        this.dataType = dataType;
+        this.precision = Precision.of(dataType);
+        this.scope = scope;
+        this.cache = null;
+    }
+
+    /**
+     * Convierte cada peso una sola vez y lo reutiliza; sólo para inferencia, los pesos no deben cambiar después.
+     */
+    public PrecisionParameterStore(@NotNull ParameterStore delegate, @NotNull DataType dataType) {
+        this.delegate = delegate;
+        this.dataType = dataType;
+        this.precision = Precision.of(dataType);
+        this.scope = null;
+        this.cache = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public NDArray getValue(Parameter parameter, Device device, boolean training) {
+        precision.checkSupported(device);
+        if (cache != null && !training) {
+            return cache.computeIfAbsent(new Key(parameter, device), k -> cast(delegate.getValue(k.parameter(), k.device(), false)));
+        }
+        NDArray value = delegate.getValue(parameter, device, training);
+        NDArray cast = cast(value);
+        if (cast != value && scope != null) cast.attach(scope);
+        return cast;
+    }
+
+    private NDArray cast(NDArray value) {
+        return value.getDataType() == DataType.FLOAT32 ? value.toType(dataType, false) : value;
+    }
+
+    @Override
+    public NDManager getManager() {
+        return delegate.getManager();
+    }
+
+    private record Key(Parameter parameter, Device device) {}
+}
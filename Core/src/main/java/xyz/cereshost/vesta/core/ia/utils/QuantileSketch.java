@@ -0,0 +1,174 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import lombok.Getter;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Sketch de cuantiles determinista y combinable (compactores por niveles, estilo MRL/KLL sin aleatoriedad).
+ * <p>
+ * Cada nivel guarda hasta {@code k} valores; al llenarse se ordena y la mitad sube al siguiente nivel con el doble
+ * de peso, alternando cuál mitad para que los errores se compensen. El error de rango es como mucho
+ * {@code niveles / k} del total, así que la memoria no depende de cuántos valores se agreguen.
+ * </p>
+ * Con la misma secuencia de {@link #add} y {@link #merge} el resultado es siempre el mismo. Mientras no se compacte
+ * nada los cuantiles son exactos e iguales a {@link XNormalizer#percentileFromSorted}.
+ *
+ * @see #forError(double)
+ */
+public final class QuantileSketch {
+
+    /**
+     * Cantidad máxima de valores que se asume al elegir {@code k} en {@link #forError(double)}
+     */
+    private static final long MAX_COUNT = 1L << 40;
+
+    @Getter
+    private final int k;
+    private float[][] levels = new float[1][];
+    private int[] sizes = new int[1];
+    private boolean[] oddOffset = new boolean[1];
+    @Getter
+    private long count;
+
+    public QuantileSketch(int k) {
+        if (k < 2) {
+            throw new IllegalArgumentException("k debe ser al menos 2");
+        }
+        this.k = k;
+        this.levels[0] = new float[k];
+    }
+
+    /**
+     * Un sketch cuyo error de rango no supera {@code epsilon} (por ejemplo {@code 0.001} = 0.1%) para hasta
+     * 2^40 valores.
+     */
+    @Contract("_ -> new")
+    public static @NotNull QuantileSketch forError(double epsilon) {
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("epsilon debe estar entre 0 y 1");
+        }
+        int k = (int) Math.ceil(1 / epsilon);
+        // niveles = log2(n / k) + 1, se itera porque depende de k
+        for (int i = 0; i < 4; i++) {
+            int levels = Math.max(1, 64 - Long.numberOfLeadingZeros(MAX_COUNT / k)) + 1;
+            k = (int) Math.ceil(levels / epsilon);
+        }
+        return new QuantileSketch(k + (k & 1));
+    }
+
+    public void add(float value) {
+        count++;
+        append(0, value);
+    }
+
+    /**
+     * Agrega los valores de {@code other}; los dos sketches deben tener el mismo {@code k}.
+     */
+    public void merge(@NotNull QuantileSketch other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException("No se pueden combinar sketches con distinto k");
+        }
+        count += other.count;
+        for (int h = 0; h < other.sizes.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+    }
+
+    /**
+     * @param q cuantil entre {@code 0} y {@code 1}
+     * @return el valor aproximado, o {@code NaN} si el sketch está vacío
+     */
+    public float quantile(double q) {
+        if (count == 0) return Float.NaN;
+        int items = 0;
+        for (int size : sizes) items += size;
+        if (items == sizes[0]) {
+            float[] sorted = Arrays.copyOf(levels[0], sizes[0]);
+            Arrays.sort(sorted);
+            return XNormalizer.percentileFromSorted(sorted, q * 100);
+        }
+
+        // Valores con su peso, ordenados por valor
+        long[] packed = new long[items];
+        float[] values = new float[items];
+        int n = 0;
+        for (int h = 0; h < sizes.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = levels[h][i];
+                packed[n] = ((long) sortableBits(levels[h][i]) << 32) | ((long) h << 24) | n;
+                n++;
+            }
+        }
+        Arrays.sort(packed);
+        long total = 0;
+        for (int h = 0; h < sizes.length; h++) total += (long) sizes[h] << h;
+        double target = q * (total - 1);
+        long cumulative = 0;
+        for (long p : packed) {
+            int h = (int) ((p >>> 24) & 0xFF);
+            cumulative += 1L << h;
+            if (cumulative > target) {
+                return values[(int) (p & 0xFFFFFF)];
+            }
+        }
+        return values[(int) (packed[items - 1] & 0xFFFFFF)];
+    }
+
+    private void append(int level, float value) {
+        ensureLevel(level);
+        float[] buffer = levels[level];
+        if (sizes[level] == buffer.length) {
+            buffer = levels[level] = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[sizes[level]++] = value;
+        if (sizes[level] >= k) {
+            compact(level);
+        }
+    }
+
+    private void compact(int level) {
+        float[] buffer = levels[level];
+        int size = sizes[level];
+        Arrays.sort(buffer, 0, size);
+        // Con tamaño impar el mayor se queda en el nivel
+        int pairs = size / 2;
+        int offset = oddOffset[level] ? 1 : 0;
+        oddOffset[level] = !oddOffset[level];
+        float leftover = buffer[size - 1];
+        float[] promoted = new float[pairs];
+        for (int i = 0; i < pairs; i++) {
+            promoted[i] = buffer[2 * i + offset];
+        }
+        sizes[level] = 0;
+        if ((size & 1) == 1) {
+            buffer[sizes[level]++] = leftover;
+        }
+        for (float v : promoted) {
+            append(level + 1, v);
+        }
+    }
+
+    private void ensureLevel(int level) {
+        if (level < levels.length) {
+            if (levels[level] == null) levels[level] = new float[k];
+            return;
+        }
+        levels = Arrays.copyOf(levels, level + 1);
+        sizes = Arrays.copyOf(sizes, level + 1);
+        oddOffset = Arrays.copyOf(oddOffset, level + 1);
+        levels[level] = new float[k];
+    }
+
+    /**
+     * Bits de un float que se ordenan igual que el valor al compararlos como enteros con signo.
+     */
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+}
@@ -0,0 +1,100 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.training.ParameterStore;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Compara el modelo cuantizado con el original en {@code FLOAT32} sobre la validación ya normalizada: error de las
+ * salidas (normalizadas) y latencia de un forward de una sola ventana, que es lo que hace cada tick.
+ */
+public final class QuantizationCheck {
+
+    private QuantizationCheck() {}
+
+    /**
+     * @param meanAbsOutput media del valor absoluto de la salida {@code FLOAT32}, para leer el error en relativo
+     */
+    public record Report(int samples, float maxAbsError, float meanAbsError, float meanAbsOutput,
+                         double fp32TickMillis, double int8TickMillis) {
+
+        public float relativeError() {
+            return meanAbsOutput == 0f ? meanAbsError : meanAbsError / meanAbsOutput;
+        }
+
+        public double speedup() {
+            return fp32TickMillis / int8TickMillis;
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return String.format("int8 vs FP32 en %,d muestras: error máx %.5f, medio %.5f (%.2f%%), tick %.2f ms -> %.2f ms (x%.1f)",
+                    samples, maxAbsError, meanAbsError, relativeError() * 100f, fp32TickMillis, int8TickMillis, speedup());
+        }
+    }
+
+    /**
+     * @param block      bloque sin envolver en {@link xyz.cereshost.vesta.core.ia.blocks.MixedPrecisionBlock}
+     * @param maxSamples muestras de la validación a comparar, desde el principio
+     * @param ticks      forwards de una ventana que se cronometran por camino, después de otros tantos de calentamiento
+     */
+    public static @NotNull Report run(@NotNull Block block, @NotNull Int8ParameterStore int8, @NotNull TrainingCache validation,
+                                      int maxSamples, int batchSize, int ticks) {
+        NDManager manager = int8.getManager();
+        ParameterStore fp32 = new ParameterStore(manager, false);
+        int samples = Math.min(maxSamples, validation.getSamples());
+        int stride = validation.getSeqLen() * validation.getFeatures();
+        FloatBuffer x = validation.getX();
+        int base = x.position();
+
+        float maxError = 0f;
+        double sumError = 0;
+        double sumOutput = 0;
+        int outputs = 0;
+        for (int from = 0; from < samples; from += batchSize) {
+            int batch = Math.min(batchSize, samples - from);
+            float[] window = new float[batch * stride];
+            x.get(base + from * stride, window);
+            float[] expected = forward(block, fp32, manager, window, batch, validation);
+            float[] actual = forward(block, int8, manager, window, batch, validation);
+            for (int i = 0; i < expected.length; i++) {
+                float error = Math.abs(expected[i] - actual[i]);
+                maxError = Math.max(maxError, error);
+                sumError += error;
+                sumOutput += Math.abs(expected[i]);
+            }
+            outputs += expected.length;
+        }
+
+        float[] tick = new float[stride];
+        x.get(base, tick);
+        double fp32Millis = tickMillis(block, fp32, manager, tick, validation, ticks);
+        double int8Millis = tickMillis(block, int8, manager, tick, validation, ticks);
+        return new Report(samples, maxError, (float) (sumError / Math.max(1, outputs)), (float) (sumOutput / Math.max(1, outputs)),
+                fp32Millis, int8Millis);
+    }
+
+    private static double tickMillis(Block block, ParameterStore store, NDManager manager, float[] window, TrainingCache validation, int ticks) {
+        // Los primeros forwards crean las máscaras, convierten los pesos y dan tiempo al JIT con la Vector API
+        for (int i = 0; i < ticks; i++) {
+            forward(block, store, manager, window, 1, validation);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++) {
+            forward(block, store, manager, window, 1, validation);
+        }
+        return (System.nanoTime() - start) / 1e6 / Math.max(1, ticks);
+    }
+
+    private static float[] forward(Block block, ParameterStore store, NDManager manager, float[] window, int batch, TrainingCache validation) {
+        try (NDManager scope = manager.newSubManager()) {
+            NDList input = new NDList(scope.create(window, new Shape(batch, validation.getSeqLen(), validation.getFeatures())));
+            return block.forward(store, input, false).singletonOrThrow().toFloatArray();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Única clase que toca {@code jdk.incubator.vector}; sólo se carga si {@link AffineKernel#SIMD} es {@code true}.
+ */
+final class SimdKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    /**
+     * Bytes con el mismo número de lanes que {@link #SPECIES}, para convertirlos a {@code float} de uno en uno
+     */
+    private static final VectorSpecies<Byte> BYTES = SPECIES.vectorBitSize() >= 256
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 4))
+            : null;
+    /**
+     * Filas de la entrada que comparten cada carga de pesos
+     */
+    private static final int ROWS = 4;
+
+    private SimdKernels() {
+    }
+
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * @param center patrón cuyo tamaño es múltiplo del ancho del vector y del número de features
+     * @param scale  patrón con el mismo tamaño que {@code center}
+     */
+    static void affine(float[] a, int from, int to, float[] center, float[] scale) {
+        int lanes = SPECIES.length();
+        int period = center.length;
+        int upper = from + SPECIES.loopBound(to - from);
+        int i = from;
+        int p = 0;
+        for (; i < upper; i += lanes) {
+            FloatVector.fromArray(SPECIES, a, i)
+                    .sub(FloatVector.fromArray(SPECIES, center, p))
+                    .div(FloatVector.fromArray(SPECIES, scale, p))
+                    .intoArray(a, i);
+            p += lanes;
+            if (p == period) p = 0;
+        }
+        // La cola sigue el patrón donde quedó, que también empieza en la feature correcta
+        for (; i < to; i++) {
+            a[i] = (a[i] - center[p]) / scale[p];
+            p++;
+        }
+    }
+
+    static boolean int8Available() {
+        return BYTES != null;
+    }
+
+    /**
+     * {@code y[r, o] = scales[o] * sum(q[o, k] * x[r, k]) + bias[o]}; cada fila de pesos se convierte a {@code float}
+     * una vez por cada {@link #ROWS} filas de la entrada. Las filas que sobran se hacen de a {@link #ROWS} canales de
+     * salida, para no quedar esperando a una sola cadena de FMA.
+     *
+     * @param bias puede ser {@code null}
+     */
+    static void int8Linear(float[] x, int rows, int in, byte[] q, float[] scales, float[] bias, int out, float[] y) {
+        int lanes = SPECIES.length();
+        int upper = SPECIES.loopBound(in);
+        int blocked = rows - rows % ROWS;
+        for (int o = 0; o < out; o++) {
+            int w = o * in;
+            float b = bias == null ? 0f : bias[o];
+            for (int r = 0; r < blocked; r += ROWS) {
+                int x0 = r * in, x1 = x0 + in, x2 = x1 + in, x3 = x2 + in;
+                FloatVector a0 = FloatVector.zero(SPECIES);
+                FloatVector a1 = a0, a2 = a0, a3 = a0;
+                int k = 0;
+                for (; k < upper; k += lanes) {
+                    FloatVector wv = weights(q, w + k);
+                    a0 = wv.fma(FloatVector.fromArray(SPECIES, x, x0 + k), a0);
+                    a1 = wv.fma(FloatVector.fromArray(SPECIES, x, x1 + k), a1);
+                    a2 = wv.fma(FloatVector.fromArray(SPECIES, x, x2 + k), a2);
+                    a3 = wv.fma(FloatVector.fromArray(SPECIES, x, x3 + k), a3);
+                }
+                float s0 = a0.reduceLanes(VectorOperators.ADD), s1 = a1.reduceLanes(VectorOperators.ADD);
+                float s2 = a2.reduceLanes(VectorOperators.ADD), s3 = a3.reduceLanes(VectorOperators.ADD);
+                for (; k < in; k++) {
+                    float wk = q[w + k];
+                    s0 += wk * x[x0 + k];
+                    s1 += wk * x[x1 + k];
+                    s2 += wk * x[x2 + k];
+                    s3 += wk * x[x3 + k];
+                }
+                y[r * out + o] = s0 * scales[o] + b;
+                y[(r + 1) * out + o] = s1 * scales[o] + b;
+                y[(r + 2) * out + o] = s2 * scales[o] + b;
+                y[(r + 3) * out + o] = s3 * scales[o] + b;
+            }
+        }
+        for (int r = blocked; r < rows; r++) {
+            int xr = r * in;
+            int o = 0;
+            for (; o + ROWS <= out; o += ROWS) {
+                int w0 = o * in, w1 = w0 + in, w2 = w1 + in, w3 = w2 + in;
+                FloatVector a0 = FloatVector.zero(SPECIES);
+                FloatVector a1 = a0, a2 = a0, a3 = a0;
+                int k = 0;
+                for (; k < upper; k += lanes) {
+                    FloatVector xv = FloatVector.fromArray(SPECIES, x, xr + k);
+                    a0 = weights(q, w0 + k).fma(xv, a0);
+                    a1 = weights(q, w1 + k).fma(xv, a1);
+                    a2 = weights(q, w2 + k).fma(xv, a2);
+                    a3 = weights(q, w3 + k).fma(xv, a3);
+                }
+                float s0 = a0.reduceLanes(VectorOperators.ADD), s1 = a1.reduceLanes(VectorOperators.ADD);
+                float s2 = a2.reduceLanes(VectorOperators.ADD), s3 = a3.reduceLanes(VectorOperators.ADD);
+                for (; k < in; k++) {
+                    float xk = x[xr + k];
+                    s0 += q[w0 + k] * xk;
+                    s1 += q[w1 + k] * xk;
+                    s2 += q[w2 + k] * xk;
+                    s3 += q[w3 + k] * xk;
+                }
+                y[r * out + o] = s0 * scales[o] + (bias == null ? 0f : bias[o]);
+                y[r * out + o + 1] = s1 * scales[o + 1] + (bias == null ? 0f : bias[o + 1]);
+                y[r * out + o + 2] = s2 * scales[o + 2] + (bias == null ? 0f : bias[o + 2]);
+                y[r * out + o + 3] = s3 * scales[o + 3] + (bias == null ? 0f : bias[o + 3]);
+            }
+            for (; o < out; o++) {
+                int w = o * in;
+                FloatVector a0 = FloatVector.zero(SPECIES);
+                int k = 0;
+                for (; k < upper; k += lanes) {
+                    a0 = weights(q, w + k).fma(FloatVector.fromArray(SPECIES, x, xr + k), a0);
+                }
+                float s0 = a0.reduceLanes(VectorOperators.ADD);
+                for (; k < in; k++) {
+                    s0 += q[w + k] * x[xr + k];
+                }
+                y[r * out + o] = s0 * scales[o] + (bias == null ? 0f : bias[o]);
+            }
+        }
+    }
+
+    private static FloatVector weights(byte[] q, int offset) {
+        return (FloatVector) ByteVector.fromArray(BYTES, q, offset).convertShape(VectorOperators.B2F, SPECIES, 0);
+    }
+}
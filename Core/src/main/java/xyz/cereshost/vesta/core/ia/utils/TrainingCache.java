@@ -0,0 +1,131 @@
+package xyz.cereshost.vesta.core.ia.utils;
+
+import ai.djl.ndarray.types.Shape;
+import ai.djl.util.Pair;
+import lombok.Getter;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Muestras de entrenamiento en dos bloques contiguos de {@code float}: {@code X} con forma
+ * {@code [samples, seqLen, features]} e {@code y} con forma {@code [samples, yCols]}.
+ * <p>
+ * Normalmente los buffers vienen de {@link xyz.cereshost.vesta.core.io.IOdata#mapTrainingCache mapear} el archivo
+ * de caché, así que pasan a {@code NDManager.create(FloatBuffer, Shape)} sin bucles por elemento ni arrays anidados.
+ * Las escrituras (limpieza de NaN, normalización) son sobre una copia privada del mapeo, el archivo no cambia.
+ * </p>
+ *
+ * @see xyz.cereshost.vesta.core.io.IOdata#mapTrainingCache
+ */
+@Getter
+public final class TrainingCache {
+
+    private final FloatBuffer x;
+    private final FloatBuffer y;
+    private final int samples;
+    private final int seqLen;
+    private final int features;
+    private final int yCols;
+
+    public TrainingCache(@NotNull FloatBuffer x, @NotNull FloatBuffer y, int samples, int seqLen, int features, int yCols) {
+        if (x.remaining() != samples * seqLen * features || y.remaining() != samples * yCols) {
+            throw new IllegalArgumentException("El tamaño de los buffers no coincide con la forma");
+        }
+        this.x = x;
+        this.y = y;
+        this.samples = samples;
+        this.seqLen = seqLen;
+        this.features = features;
+        this.yCols = yCols;
+    }
+
+    public @NotNull Shape getXShape() {
+        return new Shape(samples, seqLen, features);
+    }
+
+    public @NotNull Shape getYShape() {
+        return new Shape(samples, yCols);
+    }
+
+    /**
+     * Una de las {@code numSplits} partes consecutivas, sin copiar. Mismos índices que
+     * {@link EngineUtils#getSingleSplitWithLabels(float[][][], float[][], int, int)}.
+     */
+    @Contract("_, _ -> new")
+    public @NotNull TrainingCache split(int numSplits, int splitIndex) {
+        if (numSplits <= 0) {
+            throw new IllegalArgumentException("numSplits debe ser mayor a 0");
+        }
+        if (splitIndex < 0 || splitIndex >= numSplits) {
+            throw new IllegalArgumentException("splitIndex debe estar entre 0 y " + (numSplits - 1));
+        }
+        int splitSize = samples / numSplits;
+        int remainder = samples % numSplits;
+        int start = splitIndex * splitSize + Math.min(splitIndex, remainder);
+        int length = splitSize + (splitIndex < remainder ? 1 : 0);
+        int stride = seqLen * features;
+        return new TrainingCache(
+                x.slice(x.position() + start * stride, length * stride),
+                y.slice(y.position() + start * yCols, length * yCols),
+                length, seqLen, features, yCols
+        );
+    }
+
+    /**
+     * Cambia los NaN e infinitos por {@code 0}, igual que {@link EngineUtils#cleanNaNValues(float[][][])}.
+     */
+    public void cleanNaNValues() {
+        cleanNaNValues(x);
+        cleanNaNValues(y);
+    }
+
+    private static void cleanNaNValues(@NotNull FloatBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (!Float.isFinite(buffer.get(i))) {
+                buffer.put(i, 0f);
+            }
+        }
+    }
+
+    /**
+     * Copia a arrays anidados para el código que todavía trabaja con {@code float[][][]}.
+     */
+    @Contract(value = " -> new", pure = true)
+    public @NotNull Pair<float[][][], float[][]> toPair() {
+        float[][][] X = new float[samples][seqLen][features];
+        float[][] Y = new float[samples][yCols];
+        int px = x.position();
+        int py = y.position();
+        for (int i = 0; i < samples; i++) {
+            for (int t = 0; t < seqLen; t++) {
+                x.get(px, X[i][t]);
+                px += features;
+            }
+            y.get(py, Y[i]);
+            py += yCols;
+        }
+        return new Pair<>(X, Y);
+    }
+
+    /**
+     * Aplana un par en memoria.
+     */
+    @Contract("_ -> new")
+    public static @NotNull TrainingCache of(@NotNull Pair<float[][][], float[][]> pair) {
+        float[][][] X = pair.getKey();
+        float[][] Y = pair.getValue();
+        int samples = X.length;
+        int seqLen = samples == 0 ? 0 : X[0].length;
+        int features = seqLen == 0 ? 0 : X[0][0].length;
+        int yCols = samples == 0 ? 0 : Y[0].length;
+        FloatBuffer x = FloatBuffer.allocate(samples * seqLen * features);
+        FloatBuffer y = FloatBuffer.allocate(samples * yCols);
+        for (int i = 0; i < samples; i++) {
+            for (float[] row : X[i]) x.put(row, 0, features);
+            y.put(Y[i], 0, yCols);
+        }
+        return new TrainingCache(x.flip(), y.flip(), samples, seqLen, features, yCols);
+    }
+}
@@ -18,7 +18,6 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 
 @SuppressWarnings({"DataFlowIssue", "UnusedAssignment"})
@@ -28,6 +27,7 @@ public class TrainingData {
 
     private static final int INDEX_FOR_VALIDATION = 0;
     private static final int INDEX_FOR_TEST = 0;
+    public static final int DEFAULT_NORMALIZE_IN_FLIGHT = 2;
 
 
     private final boolean loadInRam;
@@ -43,6 +43,14 @@ public class TrainingData {
 
     @Getter(AccessLevel.NONE)
     private int testSize = -1;
+    /**
+     * Archivos que se ajustan a la vez al normalizar desde disco; cada uno solo retiene sus sketches
+     */
+    private int normalizeInFlight = DEFAULT_NORMALIZE_IN_FLIGHT;
+    /**
+     * Error de rango de los sketches con los que se ajusta la X desde disco
+     */
+    private double sketchError = XNormalizer.DEFAULT_SKETCH_ERROR;
 
     public TrainingData(@NotNull Pair<float[][][], float[][]> pair) {
         this.loadInRam = true;
@@ -62,6 +70,20 @@ public class TrainingData {
         this.yCols = ycols;
     }
 
+    public void setNormalizeInFlight(int normalizeInFlight) {
+        if (normalizeInFlight < 1) {
+            throw new IllegalArgumentException("normalizeInFlight debe ser al menos 1");
+        }
+        this.normalizeInFlight = normalizeInFlight;
+    }
+
+    public void setSketchError(double sketchError) {
+        if (!(sketchError > 0 && sketchError < 1)) {
+            throw new IllegalArgumentException("sketchError debe estar entre 0 y 1");
+        }
+        this.sketchError = sketchError;
+    }
+
     public long getSampleSize(){
         return samplesSize;
     }
@@ -75,7 +97,7 @@ public class TrainingData {
             return testSize;
         }else {
             try {
-                testSize = IOdata.loadTrainingCache(files.get(INDEX_FOR_TEST)).getKey().length;
+                testSize = IOdata.mapTrainingCache(files.get(INDEX_FOR_TEST)).getSamples();
                 return testSize;
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -95,7 +117,7 @@ public class TrainingData {
             return valSize;
         }else {
             try {
-                valSize = IOdata.loadTrainingCache(files.get(INDEX_FOR_VALIDATION)).getKey().length;
+                valSize = IOdata.mapTrainingCache(files.get(INDEX_FOR_VALIDATION)).getSamples();
                 return valSize;
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -134,41 +156,56 @@ public class TrainingData {
         if (loadInRam){
             return testNormalize;
         }else {
-            return EngineUtils.getSingleSplitWithLabels(getPairNormalizeFromDisk(files.get(INDEX_FOR_TEST)), splitParts, 0);
+            return getCacheNormalizeFromDisk(files.get(INDEX_FOR_TEST)).split(splitParts, 0).toPair();
         }
     }
 
     public void closePosTraining(){
         trainNormalize = null;
         valNormalize = null;
+        valCache = null;
         pair = null;
-        pairsLoaded.clear();
         splitQueue.clear();
     }
 
     public void closeAll(){
         trainNormalize = null;
         valNormalize = null;
+        valCache = null;
         testNormalize = null;
         pair = null;
-        pairsLoaded.clear();
         splitQueue.clear();
     }
 
-    private @NotNull Pair<float[][][], float[][]> getPairNormalizeFromDisk(@Nullable Path files) {
+    private @NotNull TrainingCache getCacheNormalizeFromDisk(@Nullable Path files) {
+        return normalize(readFromDisk(files));
+    }
 
+    /**
+     * Mapea la caché y limpia los NaN; al recorrerla entera se leen del disco todas sus páginas.
+     */
+    private static @NotNull TrainingCache readFromDisk(@Nullable Path files) {
         try {
-            Pair<float[][][], float[][]> pair = IOdata.loadTrainingCache(files);
-            EngineUtils.cleanNaNValues(pair.getKey());
-            EngineUtils.cleanNaNValues(pair.getValue());
-            float[][][] x = xNormalizer.transform(pair.getKey());
-            float[][] y = yNormalizer.transform(pair.getValue());
-            return new Pair<>(x, y);
+            TrainingCache cache = IOdata.mapTrainingCache(files);
+            cache.cleanNaNValues();
+            return cache;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Normaliza en el sitio un bloque de {@link #nextTrainingRaw()}, sobre el mapeo privado y sin pasar por
+     * {@code float[][][]}. En RAM los datos ya se normalizaron en {@link #prepareNormalize()} y se devuelven igual.
+     * La Y no se toca: {@link YNormalizer#transform(float[][])} es la identidad.
+     */
+    public @NotNull TrainingCache normalize(@NotNull TrainingCache cache) {
+        if (!loadInRam) {
+            xNormalizer.transformInPlace(cache.getX(), cache.getFeatures());
+        }
+        return cache;
+    }
+
     private void computeNormalizeFromROM(){
         List<Path> trainingList = files.subList(1, files.size());
         if (trainingList.isEmpty()) {
@@ -176,47 +213,58 @@ public class TrainingData {
         }
         Vesta.info("Iniciando Normalizacion por cache (streaming)");
         XNormalizer xNormalizer = new XNormalizer();
+        xNormalizer.setSketchError(sketchError);
         YNormalizer yNormalizer = new YNormalizer();
 
-        AtomicInteger idx = new AtomicInteger();
-        Queue<CompletableFuture<Pair<float[][][], float[][]>>> pairFutures = new LinkedList<>();
-
-        for (Path path : trainingList) {
-            pairFutures.add(CompletableFuture.supplyAsync(() -> {
-                Pair<float[][][], float[][]> pair;
-                try {
-                    pair = IOdata.loadTrainingCache(path);
-                    EngineUtils.cleanNaNValues(pair.getKey());
-                    EngineUtils.cleanNaNValues(pair.getValue());
-                    idx.getAndIncrement();
-                    Vesta.info("(%d/%d) Datos cargado de disco", idx.get(), trainingList.size());
-                } catch (IOException e) {
-                    Vesta.sendWaringException("error al crear cargar los datos" , e);
-                    throw new RuntimeException(e);
-                }
-                return pair;
-            }, VestaEngine.EXECUTOR_READ_CACHE_BUILD));
-        }
-        for (int i = 0; i < trainingList.size(); i++) {
-            CompletableFuture<Pair<float[][][], float[][]>> pair = pairFutures.poll();
+        // Como mucho normalizeInFlight archivos en curso y se combinan en el orden de la lista para que el
+        // resultado sea siempre el mismo
+        ArrayDeque<CompletableFuture<PartialFit>> inFlight = new ArrayDeque<>();
+        QuantileSketch[] sketches = null;
+        int submitted = 0;
+        int done = 0;
+        while (done < trainingList.size()) {
+            while (submitted < trainingList.size() && inFlight.size() < normalizeInFlight) {
+                Path path = trainingList.get(submitted++);
+                inFlight.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        TrainingCache cache = IOdata.mapTrainingCache(path);
+                        YNormalizer partialY = new YNormalizer();
+                        partialY.partialFit(cache.getY(), cache.getYCols());
+                        return new PartialFit(xNormalizer.sketch(cache.getX(), cache.getFeatures()), partialY);
+                    } catch (IOException e) {
+                        Vesta.sendWaringException("error al crear cargar los datos" , e);
+                        throw new RuntimeException(e);
+                    }
+                }, VestaEngine.EXECUTOR_READ_CACHE_BUILD));
+            }
             try {
-                Pair<float[][][], float[][]> p = pair.get();
-
-                xNormalizer.partialFit(p.getKey());
-                yNormalizer.partialFit(p.getValue());
-
-//                Arrays.fill(p.getKey(), null);
-//                Arrays.fill(p.getValue(), null);
-                p = null;
-                pair = null;
-            } catch (InterruptedException | ExecutionException e) {
-                Vesta.sendWaringException("error al crear la normalizacion" , e);
+                PartialFit partial = inFlight.pollFirst().get();
+                if (sketches == null) {
+                    sketches = partial.sketches();
+                } else {
+                    for (int f = 0; f < sketches.length; f++) {
+                        sketches[f].merge(partial.sketches()[f]);
+                    }
+                }
+                yNormalizer.merge(partial.y());
+            } catch (InterruptedException e) {
+                inFlight.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Normalizacion interrumpida", e);
+            } catch (ExecutionException e) {
+                // Sin ese archivo las estadísticas no serían las del entrenamiento
+                inFlight.forEach(future -> future.cancel(true));
+                throw new IllegalStateException("No se pudo ajustar la normalizacion de " + trainingList.get(done), e.getCause());
             }
-
+            done++;
+            Vesta.info("(%d/%d) Datos ajustados de disco", done, trainingList.size());
+        }
+        if (sketches == null) {
+            throw new IllegalStateException("No se pudo ajustar la normalizacion.");
         }
 
         Vesta.info("Normalizando X (streaming)");
-        xNormalizer.finishFit();
+        xNormalizer.fitFromSketches(sketches);
         this.xNormalizer = xNormalizer;
         Vesta.info("Normalizando Y (streaming)");
         yNormalizer.finishFit();
@@ -224,6 +272,8 @@ public class TrainingData {
         Vesta.info("Normalizando Terminada");
     }
 
+    private record PartialFit(QuantileSketch[] sketches, YNormalizer y) {}
+
     private record TrainingChunk(int index, float[][][] x, float[][] y) {}
 
     private void computeNormalizeFromRAM(){
@@ -249,9 +299,9 @@ public class TrainingData {
         }
     }
 
-    private int maxLoaded = 1;
-    private ArrayDeque<CompletableFuture<Pair<float[][][], float[][]>>> pairsLoaded = new ArrayDeque<>();
-    private ArrayDeque<Pair<float[][][], float[][]>> splitQueue = new ArrayDeque<>();
+    private ArrayDeque<TrainingCache> splitQueue = new ArrayDeque<>();
+    @Nullable
+    private TrainingCache valCache;
     private int splitParts = 1;
     private int fileCursor = 0;
     @Nullable
@@ -259,43 +309,44 @@ public class TrainingData {
     private AutoStopListener autoStopListener = null;
     private ModeData modeData = null;
 
-    public void preLoad(int amount, @NotNull ModeData mode, int splitParts){
+    /**
+     * Prepara el orden de lectura. La lectura adelantada la hace quien consuma {@link #nextTrainingRaw()}.
+     */
+    public void preLoad(@NotNull ModeData mode, int splitParts){
         this.modeData = mode;
-        maxLoaded = amount;
         this.splitParts = Math.max(1, splitParts);
         splitQueue.clear();
         fileCursor = 0;
         if (mode == ModeData.RAMDOM) {
             this.random = new Random();
         }
-        if (!loadInRam){
-            List<Path> trainingList = files.subList(1, files.size());
-            for (int i = 0; i < amount; i++){
-                int j = (fileCursor + i) % trainingList.size();
-                pairsLoaded.add(CompletableFuture.supplyAsync(() ->
-                    getPairNormalizeFromDisk(trainingList.get(j % trainingList.size()))
-                ));
-            }
-            fileCursor = (fileCursor + amount) % trainingList.size();
-        }
     }
 
     private int indexValidation = 0;
 
     @NotNull
-    public Pair<float[][][], float[][]> nextValidationData() {
+    public TrainingCache nextValidationData() {
         if (loadInRam){
-            return valNormalize;
+            if (valCache == null) valCache = TrainingCache.of(valNormalize);
+            return valCache;
         }else {
             //indexValidation++;
-            if (valNormalize == null) valNormalize = getPairNormalizeFromDisk(files.get(INDEX_FOR_VALIDATION));
-            return EngineUtils.getSingleSplitWithLabels(valNormalize, splitParts, indexValidation % splitParts);
+            if (valCache == null) valCache = getCacheNormalizeFromDisk(files.get(INDEX_FOR_VALIDATION));
+            return valCache.split(splitParts, indexValidation % splitParts);
         }
     }
 
     private int indexTrading = 0;
 
-    public Pair<float[][][], float[][]> nextTrainingData(){
+    public TrainingCache nextTrainingData(){
+        return normalize(nextTrainingRaw());
+    }
+
+    /**
+     * Siguiente parte de entrenamiento sin normalizar, leída del disco en el hilo que llama. Pasa por
+     * {@link #normalize(TrainingCache)} antes de entrenar.
+     */
+    public TrainingCache nextTrainingRaw(){
         if (modeData == null){
             throw new IllegalStateException("ModeData is null");
         }
@@ -309,29 +360,12 @@ public class TrainingData {
             case RAMDOM -> indexTrading = Math.abs(random.nextInt());
             case SECUENCIAL -> indexTrading++;
         }
-        Pair<float[][][], float[][]> result;
+        TrainingCache result;
         if (loadInRam){
-            result = EngineUtils.getSingleSplitWithLabels(trainNormalize.getKey(), trainNormalize.getValue(), splitParts, indexTrading % splitParts);
+            result = TrainingCache.of(EngineUtils.getSingleSplitWithLabels(trainNormalize.getKey(), trainNormalize.getValue(), splitParts, indexTrading % splitParts));
         }else {
-            try {
-                if (pairsLoaded.isEmpty()) {
-                    List<Path> trainingList = files.subList(1, files.size());
-                    int idx = nextTrainingFileIndex(trainingList);
-                    pairsLoaded.add(CompletableFuture.supplyAsync(() ->
-                            getPairNormalizeFromDisk(trainingList.get(idx)), VestaEngine.EXECUTOR_TRAINING)
-                    );
-                }
-                result = pairsLoaded.pollFirst().get();
-                List<Path> trainingList = files.subList(1, files.size());
-                while (pairsLoaded.size() < maxLoaded) {
-                    int idx = nextTrainingFileIndex(trainingList);
-                    pairsLoaded.add(CompletableFuture.supplyAsync(() ->
-                            getPairNormalizeFromDisk(trainingList.get(idx)), VestaEngine.EXECUTOR_TRAINING)
-                    );
-                }
-            } catch (InterruptedException | ExecutionException e) {
-                throw new RuntimeException(e);
-            }
+            List<Path> trainingList = files.subList(1, files.size());
+            result = readFromDisk(trainingList.get(nextTrainingFileIndex(trainingList)));
         }
 
         if (splitParts <= 1) {
@@ -340,9 +374,9 @@ public class TrainingData {
         }else {
             // Una vez que tenga el resultado lo divide y guarde las partes del Piar dividas y retornar una parte de
             // esta division
-            List<Pair<float[][][], float[][]>> splits = new ArrayList<>(splitParts);
+            List<TrainingCache> splits = new ArrayList<>(splitParts);
             for (int i = 0; i < splitParts; i++) {
-                splits.add(EngineUtils.getSingleSplitWithLabels(result, splitParts, i));
+                splits.add(result.split(splitParts, i));
             }
             if (modeData == ModeData.RAMDOM) {
                 if (random == null) {
@@ -407,6 +441,10 @@ public class TrainingData {
     public record splitSample(float[][][] X_train_arr, float[][][] X_val_arr, float[][][] X_test_arr, float[][] y_train_arr, float[][] y_val_arr, float[][] y_test_arr) {
     }
 
+    /**
+     * Ajusta los normalizadores con train y transforma los tres splits. Las {@code X} del split se normalizan en el
+     * sitio y se devuelven en el resultado.
+     */
     public static @NotNull Normalize getNormalize(splitSample split) throws InterruptedException, ExecutionException {
 
         float[][][] X_train_arr = split.X_train_arr;
@@ -422,14 +460,14 @@ public class TrainingData {
         YNormalizer yNormalizer = new YNormalizer();
         yNormalizer.fit(y_train_arr); // fit con train solamente
 
-        // Transformar train/val/test
+        // Transformar train/val/test en el sitio, las filas del split no se vuelven a usar sin normalizar
         CompletableFuture<float[][][]> X_train_norm = new CompletableFuture<>();
         CompletableFuture<float[][][]> X_val_norm = new CompletableFuture<>();
         CompletableFuture<float[][][]> X_test_norm = new CompletableFuture<>();
 
-        VestaEngine.EXECUTOR_AUXILIAR_BUILD.submit(() -> X_train_norm.complete(xNormalizer.transform(X_train_arr)));
-        VestaEngine.EXECUTOR_AUXILIAR_BUILD.submit(() -> X_val_norm.complete(xNormalizer.transform(X_val_arr)));
-        VestaEngine.EXECUTOR_AUXILIAR_BUILD.submit(() -> X_test_norm.complete(xNormalizer.transform(X_test_arr)));
+        VestaEngine.EXECUTOR_AUXILIAR_BUILD.submit(() -> X_train_norm.complete(transformInPlace(xNormalizer, X_train_arr)));
+        VestaEngine.EXECUTOR_AUXILIAR_BUILD.submit(() -> X_val_norm.complete(transformInPlace(xNormalizer, X_val_arr)));
+        VestaEngine.EXECUTOR_AUXILIAR_BUILD.submit(() -> X_test_norm.complete(transformInPlace(xNormalizer, X_test_arr)));
 
         CompletableFuture<float[][]> y_train_norm = new CompletableFuture<>();
         CompletableFuture<float[][]> y_val_norm = new CompletableFuture<>();
@@ -441,6 +479,11 @@ public class TrainingData {
         return new Normalize(xNormalizer, yNormalizer, X_train_norm.get(), X_val_norm.get(), X_test_norm.get(), y_train_norm.get(), y_val_norm.get(), y_test_norm.get());
     }
 
+    private static float[][][] transformInPlace(XNormalizer xNormalizer, float[][][] X) {
+        xNormalizer.transformInPlace(X);
+        return X;
+    }
+
     public IOdata.CacheProperties getCacheProperties(List<TypeMarket> typeMarket) {
         return new IOdata.CacheProperties(lookback, features, yCols, typeMarket, Main.MAX_MONTH_TRAINING, samplesSize);
     }
@@ -3,6 +3,7 @@ package xyz.cereshost.vesta.core.ia.utils;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -11,6 +12,8 @@ import java.util.Random;
  */
 public class XNormalizer implements Normalizer<float[][][]> {
 
+    public static final double DEFAULT_SKETCH_ERROR = 1e-3;
+
     @Getter
     private float[] medians;
 
@@ -23,10 +26,21 @@ public class XNormalizer implements Normalizer<float[][][]> {
     @Setter
     private int reservoirSize = 20000;
 
+    /**
+     * Error de rango máximo de los sketches de {@link #sketch(FloatBuffer, int)}
+     */
+    @Getter
+    @Setter
+    private transient double sketchError = DEFAULT_SKETCH_ERROR;
+
     private transient float[][] reservoirs;
     private transient long[] seen;
     private transient Random random = new Random(1337);
 
+    private transient AffineKernel kernel;
+    private transient float[] kernelMedians;
+    private transient float[] kernelIqrs;
+
     @Override
     public void fit(float[][][] X) {
         if (X == null || X.length == 0) {
@@ -132,6 +146,45 @@ public class XNormalizer implements Normalizer<float[][][]> {
         }
     }
 
+    /**
+     * Un {@link QuantileSketch} por feature con los valores del bloque plano {@code x}; los NaN e infinitos cuentan
+     * como {@code 0}, igual que tras {@link EngineUtils#cleanNaNValues(float[][][])}. Los sketches de varios
+     * bloques se combinan con {@link QuantileSketch#merge} y se terminan con {@link #fitFromSketches}.
+     */
+    public QuantileSketch[] sketch(FloatBuffer x, int features) {
+        QuantileSketch[] sketches = new QuantileSketch[features];
+        for (int f = 0; f < features; f++) {
+            sketches[f] = QuantileSketch.forError(sketchError);
+        }
+        int f = 0;
+        for (int i = x.position(); i < x.limit(); i++) {
+            float v = x.get(i);
+            sketches[f].add(Float.isFinite(v) ? v : 0f);
+            if (++f == features) f = 0;
+        }
+        return sketches;
+    }
+
+    public void fitFromSketches(QuantileSketch[] sketches) {
+        reservoirs = null;
+        seen = null;
+        int features = sketches.length;
+        medians = new float[features];
+        iqrs = new float[features];
+        for (int f = 0; f < features; f++) {
+            if (sketches[f].getCount() == 0) {
+                medians[f] = 0f;
+                iqrs[f] = 1f;
+                continue;
+            }
+            float iqr = sketches[f].quantile(0.75) - sketches[f].quantile(0.25);
+            if (iqr <= 0f) iqr = minIqr;
+
+            medians[f] = sketches[f].quantile(0.5);
+            iqrs[f] = iqr;
+        }
+    }
+
     @Override
     public float[][][] transform(float[][][] X) {
         if (medians == null || iqrs == null) {
@@ -154,6 +207,50 @@ public class XNormalizer implements Normalizer<float[][][]> {
         return out;
     }
 
+    /**
+     * Igual que {@link #transform(float[][][])} pero sobre el bloque plano {@code [samples, lookback, features]}
+     * de {@code x}, escribiendo en el mismo buffer.
+     */
+    public void transformInPlace(FloatBuffer x, int features) {
+        kernel(features).apply(x);
+    }
+
+    /**
+     * Igual que {@link #transformInPlace(FloatBuffer, int)} sobre un array plano.
+     */
+    public void transformInPlace(float[] x, int features) {
+        kernel(features).apply(x, 0, x.length);
+    }
+
+    /**
+     * Igual que {@link #transform(float[][][])} pero escribiendo en las filas de {@code X}, sin reservar otra copia.
+     */
+    public void transformInPlace(float[][][] X) {
+        if (X.length == 0) return;
+        AffineKernel kernel = kernel(X[0][0].length);
+        for (float[][] sample : X) {
+            for (float[] row : sample) {
+                kernel.apply(row, 0, row.length);
+            }
+        }
+    }
+
+    private AffineKernel kernel(int features) {
+        if (medians == null || iqrs == null) {
+            throw new IllegalStateException("Llama a fit() antes de transform()");
+        }
+        if (features != medians.length) {
+            throw new IllegalArgumentException("Se esperaban " + medians.length + " features, se recibieron " + features);
+        }
+        // Se rehace si fit() cambió los arrays
+        if (kernel == null || kernelMedians != medians || kernelIqrs != iqrs) {
+            kernel = new AffineKernel(medians, iqrs);
+            kernelMedians = medians;
+            kernelIqrs = iqrs;
+        }
+        return kernel;
+    }
+
     @Override
     public float[][][] inverseTransform(float[][][] Xnorm) {
         if (medians == null || iqrs == null) {
@@ -1,5 +1,6 @@
 package xyz.cereshost.vesta.core.ia.utils;
 
+import java.nio.FloatBuffer;
 import java.util.List;
 
 /**
@@ -57,6 +58,50 @@ public class YNormalizer implements Normalizer<float[][]> {
         }
     }
 
+    /**
+     * Como {@link #partialFit(float[][])} sobre un bloque plano de {@code cols} columnas; los NaN e infinitos
+     * cuentan como {@code 0}.
+     */
+    public void partialFit(FloatBuffer y, int cols) {
+        if (meanAcc == null || meanAcc.length != cols) {
+            resetAcc(cols);
+        }
+        int col = 0;
+        for (int i = y.position(); i < y.limit(); i++) {
+            float v = y.get(i);
+            if (!Float.isFinite(v)) v = 0f;
+            long c = ++countAcc[col];
+            double delta = v - meanAcc[col];
+            meanAcc[col] += delta / c;
+            m2Acc[col] += delta * (v - meanAcc[col]);
+            if (++col == cols) col = 0;
+        }
+    }
+
+    /**
+     * Suma los acumuladores de otro ajuste parcial (fórmula de Chan), el resultado no depende de cómo se
+     * repartieron los datos salvo por redondeo.
+     */
+    public void merge(YNormalizer other) {
+        if (other.meanAcc == null) return;
+        if (meanAcc == null) {
+            resetAcc(other.numOutputs);
+        }
+        if (other.numOutputs != numOutputs) {
+            throw new IllegalArgumentException("Cantidad de columnas diferente");
+        }
+        for (int col = 0; col < numOutputs; col++) {
+            long na = countAcc[col];
+            long nb = other.countAcc[col];
+            if (nb == 0) continue;
+            long n = na + nb;
+            double delta = other.meanAcc[col] - meanAcc[col];
+            meanAcc[col] += delta * nb / n;
+            m2Acc[col] += other.m2Acc[col] + delta * delta * ((double) na * nb / n);
+            countAcc[col] = n;
+        }
+    }
+
     public void finishFit() {
         means = new float[numOutputs];
         stds = new float[numOutputs];
@@ -0,0 +1,150 @@
+package xyz.cereshost.vesta.core.io;
+
+import lombok.experimental.UtilityClass;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Primitivas del formato binario compacto ({@code BIN_VERSION} 2): varints sin signo,
+ * zigzag para valores con signo, deltas decimales escaladas para precios y volúmenes
+ * y XOR de floats para el precio de los trades.
+ */
+@UtilityClass
+public class BinCodec {
+
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint demasiado largo");
+    }
+
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final int MAX_DECIMALS = 8;
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8};
+    // El anterior escalado queda por debajo de 2^52, así que el nuevo valor tiene margen de ~20x hasta 2^53
+    private static final double BASE_LIMIT = 0x1p52;
+    private static final double SCALED_LIMIT = 0x1p53;
+    private static final int MAX_TRAILING_ZEROS = 15;
+
+    /**
+     * Escribe {@code value} como delta entera contra {@code previous}. La escala es la mayor potencia de 10
+     * (hasta 10^8) que deja {@code previous} por debajo de 2^52, así que el lector la deduce sin guardarla.
+     * Los ceros decimales finales de la delta se guardan aparte en 4 bits: un tick de 0.01 ocupa un byte
+     * aunque la escala sea 10^8. Si el valor no es exacto a esa escala se escribe el double tal cual.
+     * <p>
+     * Cabecera: {@code zigZag(delta) << 5 | ceros << 1}, o {@code 1} seguido del double en bruto.
+     */
+    public static void writeDecimal(DataOutput out, double value, double previous) throws IOException {
+        int decimals = decimalsFor(previous);
+        if (decimals >= 0) {
+            double scale = POW10[decimals];
+            double scaledValue = value * scale;
+            if (Math.abs(scaledValue) < SCALED_LIMIT) {
+                long scaled = Math.round(scaledValue);
+                // compare y no == para no perder el signo de -0.0
+                if (Double.compare(scaled / scale, value) == 0) {
+                    long delta = scaled - Math.round(previous * scale);
+                    int zeros = 0;
+                    while (delta != 0 && zeros < MAX_TRAILING_ZEROS && delta % 10 == 0) {
+                        delta /= 10;
+                        zeros++;
+                    }
+                    writeVarLong(out, zigZag(delta) << 5 | (long) zeros << 1);
+                    return;
+                }
+            }
+        }
+        writeVarLong(out, 1);
+        out.writeDouble(value);
+    }
+
+    public static double readDecimal(DataInput in, double previous) throws IOException {
+        long head = readVarLong(in);
+        if ((head & 1) != 0) {
+            return in.readDouble();
+        }
+        int decimals = decimalsFor(previous);
+        if (decimals < 0) {
+            throw new IOException("Delta decimal sin escala válida para " + previous);
+        }
+        long delta = unZigZag(head >>> 5);
+        for (int zeros = (int) (head >>> 1 & MAX_TRAILING_ZEROS); zeros > 0; zeros--) {
+            delta *= 10;
+        }
+        double scale = POW10[decimals];
+        return (Math.round(previous * scale) + delta) / scale;
+    }
+
+    private static int decimalsFor(double previous) {
+        double magnitude = Math.abs(previous);
+        for (int decimals = MAX_DECIMALS; decimals >= 0; decimals--) {
+            if (magnitude * POW10[decimals] < BASE_LIMIT) {
+                return decimals;
+            }
+        }
+        // También NaN e infinitos
+        return -1;
+    }
+
+    /**
+     * Escribe el XOR entre los bits de {@code value} y {@code previous}
+     */
+    public static void writeXorFloat(DataOutput out, float value, float previous) throws IOException {
+        writeVarLong(out, Integer.toUnsignedLong(Float.floatToRawIntBits(value) ^ Float.floatToRawIntBits(previous)));
+    }
+
+    public static float readXorFloat(DataInput in, float previous) throws IOException {
+        return Float.intBitsToFloat((int) readVarLong(in) ^ Float.floatToRawIntBits(previous));
+    }
+
+    /**
+     * Codifica tiempos crecientes como delta de la delta. Guarda el estado entre registros,
+     * así que hay una instancia por archivo.
+     */
+    public static final class TimeDelta {
+        private long previousTime;
+        private long previousDelta;
+
+        public long encode(long time) {
+            long delta = time - previousTime;
+            long deltaOfDelta = delta - previousDelta;
+            previousTime = time;
+            previousDelta = delta;
+            return zigZag(deltaOfDelta);
+        }
+
+        public long decode(long encoded) {
+            previousDelta += unZigZag(encoded);
+            previousTime += previousDelta;
+            return previousTime;
+        }
+
+        public void reset() {
+            previousTime = 0;
+            previousDelta = 0;
+        }
+    }
+}
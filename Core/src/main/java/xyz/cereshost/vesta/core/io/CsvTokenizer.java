@@ -0,0 +1,213 @@
+package xyz.cereshost.vesta.core.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Tokenizador CSV a nivel de bytes. Recorre las filas de un bloque y parsea los campos
+ * numéricos directamente desde el buffer, sin crear un {@link String} por línea o por campo.
+ * <p>
+ * Las filas vacías o que empiezan por letra (cabecera) se saltan, igual que el lector por líneas.
+ */
+public final class CsvTokenizer {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private final byte[] buffer;
+    private final int end;
+    private int next;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount;
+
+    public CsvTokenizer(byte @NotNull [] buffer, int from, int to) {
+        this.buffer = buffer;
+        this.next = from;
+        this.end = to;
+    }
+
+    /**
+     * Avanza a la siguiente fila con datos.
+     * @return {@code false} si no quedan filas en el bloque
+     */
+    public boolean nextRow() {
+        while (next < end) {
+            int rowStart = next;
+            int rowEnd = rowStart;
+            while (rowEnd < end && buffer[rowEnd] != '\n') rowEnd++;
+            next = rowEnd + 1;
+            if (rowEnd > rowStart && buffer[rowEnd - 1] == '\r') rowEnd--;
+            if (rowEnd == rowStart || Character.isLetter(buffer[rowStart])) {
+                continue; // Skip Header
+            }
+            split(rowStart, rowEnd);
+            return true;
+        }
+        return false;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public long getLong(int field) {
+        int i = starts[field];
+        int to = ends[field];
+        boolean negative = i < to && buffer[i] == '-';
+        if (negative) i++;
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Campo no numerico: " + getString(field));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parsea un decimal del tipo {@code -1234.5678}. La mantisa se acumula como entero y se divide
+     * una sola vez por la potencia de 10, lo que da el mismo redondeo que {@link Double#parseDouble}
+     * mientras quepa en 2^53. Exponentes o mantisas largas caen al parser estándar.
+     */
+    public double getDouble(int field) {
+        int i = starts[field];
+        int to = ends[field];
+        boolean negative = i < to && buffer[i] == '-';
+        if (negative || (i < to && buffer[i] == '+')) i++;
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < to; i++) {
+            byte b = buffer[i];
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                return Double.parseDouble(getString(field));
+            }
+            if (mantissa != 0 || digit != 0) digits++;
+            mantissa = mantissa * 10 + digit;
+            if (decimals >= 0) decimals++;
+        }
+        if (digits > 15 || decimals >= POW10.length) {
+            return Double.parseDouble(getString(field));
+        }
+        double value = decimals > 0 ? mantissa / POW10[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    public float getFloat(int field) {
+        return (float) getDouble(field);
+    }
+
+    public boolean getBoolean(int field) {
+        int i = starts[field];
+        return i < ends[field] && (buffer[i] == 't' || buffer[i] == 'T');
+    }
+
+    /**
+     * Parsea {@code yyyy-MM-dd HH:mm:ss} como UTC y devuelve los milisegundos de época.
+     */
+    public long getUtcDateTimeMillis(int field) {
+        int i = starts[field];
+        if (ends[field] - i < 19) {
+            throw new NumberFormatException("Fecha invalida: " + getString(field));
+        }
+        int year = digits(i, 4);
+        int month = digits(i + 5, 2);
+        int day = digits(i + 8, 2);
+        int hour = digits(i + 11, 2);
+        int minute = digits(i + 14, 2);
+        int second = digits(i + 17, 2);
+        long days = LocalDate.of(year, month, day).toEpochDay();
+        return ((days * 24 + hour) * 60 + minute) * 60_000L + second * 1_000L;
+    }
+
+    public @NotNull String getString(int field) {
+        return new String(buffer, starts[field], ends[field] - starts[field], StandardCharsets.US_ASCII);
+    }
+
+    private int digits(int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            value = value * 10 + (buffer[i] - '0');
+        }
+        return value;
+    }
+
+    private void split(int rowStart, int rowEnd) {
+        fieldCount = 0;
+        int fieldStart = rowStart;
+        for (int i = rowStart; i <= rowEnd; i++) {
+            if (i == rowEnd || buffer[i] == ',') {
+                if (fieldCount == starts.length) {
+                    starts = Arrays.copyOf(starts, fieldCount * 2);
+                    ends = Arrays.copyOf(ends, fieldCount * 2);
+                }
+                starts[fieldCount] = fieldStart;
+                ends[fieldCount] = i;
+                fieldCount++;
+                fieldStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Lee el flujo en bloques de unos {@code chunkBytes} cortados en el último salto de línea,
+     * de modo que cada bloque contiene solo filas completas. Cada bloque es un arreglo nuevo
+     * para poder procesarlo en otro hilo.
+     */
+    public static void readChunks(@NotNull InputStream in, int chunkBytes, @NotNull ChunkConsumer consumer) throws IOException {
+        byte[] chunk = new byte[chunkBytes];
+        int filled = 0;
+        while (true) {
+            int read = in.read(chunk, filled, chunk.length - filled);
+            if (read < 0) {
+                break;
+            }
+            filled += read;
+            if (filled < chunk.length) {
+                continue;
+            }
+            int cut = lastNewLine(chunk, filled);
+            if (cut < 0) {
+                // Fila más larga que el bloque
+                chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                continue;
+            }
+            byte[] nextChunk = new byte[Math.max(chunkBytes, filled - cut - 1)];
+            int remainder = filled - cut - 1;
+            System.arraycopy(chunk, cut + 1, nextChunk, 0, remainder);
+            consumer.accept(chunk, cut + 1);
+            chunk = nextChunk;
+            filled = remainder;
+        }
+        if (filled > 0) {
+            consumer.accept(chunk, filled);
+        }
+    }
+
+    private static int lastNewLine(byte[] chunk, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (chunk[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(byte[] chunk, int length) throws IOException;
+    }
+}
@@ -4,7 +4,6 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.luben.zstd.ZstdInputStream;
-import com.github.luben.zstd.ZstdOutputStream;
 import lombok.experimental.UtilityClass;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
@@ -21,8 +20,7 @@ import xyz.cereshost.vesta.core.market.*;
 import xyz.cereshost.vesta.core.utils.ProgressBar;
 
 import java.io.*;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.LocalDate;
@@ -30,8 +28,11 @@ import java.time.YearMonth;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -39,8 +40,12 @@ import java.util.zip.ZipInputStream;
 @UtilityClass
 public class IOMarket {
 
-    static final int BIN_VERSION = 1;
-    private static final int BATCH_SIZE = 50_000;
+    // v2: tiempos delta-de-delta, deltas decimales escaladas para klines y métricas y XOR de floats para trades
+    // (ver BinCodec). v1 (sin comprimir) se sigue leyendo.
+    static final int BIN_VERSION = 2;
+    private static final int BIN_VERSION_LEGACY = 1;
+    // ~50k filas de trades por bloque
+    private static final int CSV_CHUNK_BYTES = 4 << 20;
     public static final String STORAGE_DIR = "data";
     public static final int BUFFER_READ_MB = 50;
     private static final int ZSTD_LEVEL = 1;
@@ -48,13 +53,18 @@ public class IOMarket {
     private static final String EXT_BIN = ".bin";
     private static final String EXT_ZST = ".zst";
     private static final String EXT_BIN_ZST = ".bin.zst";
+    private static final String EXT_MBIN = ".mbin";
     // Base dinámica de referencia para índices diarios.
     // dayIndex=1 => ayer (dataset diario completo más reciente).
     private static final int DEFAULT_LOOKBACK_DAY_INDEX = 1;
+    private static final MarketDownloader DOWNLOADER = new MarketDownloader(MarketDownloader.BINANCE_VISION, 8, 3, VestaEngine.EXECUTOR_DOWNLOAD);
+    // Un solo hilo convierte cada archivo aunque varios pidan el mismo día
+    private static final ConcurrentHashMap<String, Object> FILE_LOCKS = new ConcurrentHashMap<>();
 
     public static @NotNull Market loadMarketsRecentDays(TypeMarket typeMarket, int days, boolean loadTrades) throws InterruptedException, IOException {
         int normalizedDays = Math.max(1, days);
         Market merged = new Market(typeMarket);
+        logMissingDays(typeMarket, resolveDateFromDayIndex(normalizedDays), resolveDateFromDayIndex(DEFAULT_LOOKBACK_DAY_INDEX));
 
         // Cargar desde el día más antiguo al más reciente para mantener orden temporal.
         for (int dayIndex = normalizedDays; dayIndex >= DEFAULT_LOOKBACK_DAY_INDEX; dayIndex--) {
@@ -85,10 +95,19 @@ public class IOMarket {
                 List<CompletableFuture<Market>> task = new ArrayList<>();
                 Market market = new Market(type);
                 ProgressBar progressBar = new ProgressBar(Math.abs(setupLocal.getStartDay() - setupLocal.getEndDay()) + 1);
+                MarketCatalog catalog = resolveCatalog(type, TypeData.KLINES);
+                logMissingDays(type, resolveDateFromDayIndex(setupLocal.getEndDay()), resolveDateFromDayIndex(setupLocal.getStartDay()));
                 for (int i = setupLocal.getEndDay(); i >= setupLocal.getStartDay(); i--) {
                     int index = i;
-                    task.add(CompletableFuture.supplyAsync(() ->
-                            loadMarketLocal(type, index, setupLocal.isLoadTrades()),
+                    // Con ventana de tiempo se descartan por catálogo los días que no la tocan
+                    if (setupLocal.isUseMappedStore()
+                            && !catalog.mayOverlap(resolveDateFromDayIndex(index), setupLocal.getFromTime(), setupLocal.getToTime())) {
+                        progressBar.increaseValue();
+                        continue;
+                    }
+                    task.add(CompletableFuture.supplyAsync(() -> setupLocal.isUseMappedStore()
+                            ? loadMarketMapped(type, index, setupLocal.isLoadTrades(), setupLocal.getFromTime(), setupLocal.getToTime())
+                            : loadMarketLocal(type, index, setupLocal.isLoadTrades()),
                             VestaEngine.EXECUTOR_AUXILIAR_BUILD
                     ));
                 }
@@ -101,6 +120,8 @@ public class IOMarket {
                             progressBar.printAsync();
                         }
                         market.concat(m);
+                        // El día ya está copiado en el mercado final, se libera para no tener dos copias
+                        m.clear();
                     }catch (InterruptedException | ExecutionException e){
                         Vesta.sendWaringException("error al obtener los datos en el loop", e);
                         e.printStackTrace();
@@ -203,8 +224,9 @@ public class IOMarket {
             Deque<Candle> candles = parseKlinesFromFile(klineFile);
 //            Vesta.info("%d/%02d/%02d (idx=%d) 💾 Leyendo zst local de trades", targetYear, targetMonth, targetDay, normalizedDayIndex);
             Deque<Trade> trades;
+            File tradeFile = null;
             if (loadTrades){
-                File tradeFile = ensureFileCached(typeMarket, TypeData.TRADES, targetDate);
+                tradeFile = ensureFileCached(typeMarket, TypeData.TRADES, targetDate);
                 trades = parseTradesFromFile(tradeFile);
             }else {
                 trades = new ArrayDeque<>();
@@ -221,14 +243,21 @@ public class IOMarket {
             }
             if (candles.isEmpty()) {
                 Vesta.info("Datos incompletos o corruptos para %s en %d/%02d/%02d (idx=%d)", symbol, targetYear, targetMonth, targetDay, normalizedDayIndex);
+                // La entrada del catálogo apunta a un archivo que ya no sirve
+                resolveCatalog(typeMarket, TypeData.KLINES).remove(targetDate);
                 return null;
             }
+            catalogIfAbsent(typeMarket, TypeData.KLINES, targetDate, klineFile, candles, Candle::getOpenTime);
+            if (tradeFile != null) {
+                catalogIfAbsent(typeMarket, TypeData.TRADES, targetDate, tradeFile, trades, Trade::time);
+            }
             int sizeCandles = candles.size();
             int sizeTrades = trades.size();
             int sizeMetrics = metrics.size();
 //            Vesta.info("%d/%02d/%02d (idx=%d) 🔒 Asegurando orden de los datos", targetYear, targetMonth, targetDay, normalizedDayIndex);
             LinkedHashSet<Candle> candlesSorted = Market.sortd(candles, 10_000, Candle::getOpenTime);
-            LinkedHashSet<Trade> tradeSorted = Market.sortd(trades, 10_000, Trade::time);
+            TradeTape tradeSorted = TradeTape.of(trades);
+            tradeSorted.sort();
             LinkedHashSet<Metric> metricSorted = Market.sortd(metrics, 10_000, Metric::getOpenTime);
 
 //            if (loadTrades && !tradeSorted.isEmpty()) {
@@ -285,6 +314,71 @@ public class IOMarket {
 
     }
 
+    /**
+     * Carga un día desde los archivos {@code .mbin} mapeados, leyendo solo la ventana {@code [fromTime, toTime)}.
+     * Si el archivo mapeado no existe se genera a partir de la caché comprimida.
+     */
+    private static Market loadMarketMapped(@NotNull TypeMarket typeMarket, int dayIndex, boolean loadTrades, long fromTime, long toTime){
+        final Symbol symbol = typeMarket.symbol();
+        LocalDate targetDate = resolveDateFromDayIndex(Math.max(1, dayIndex));
+        try {
+            KlinesSerializable klines = new KlinesSerializable();
+            MappedMarketFile klineFile = ensureMappedFile(typeMarket, TypeData.KLINES, targetDate, klines, IOMarket::parseKlinesFromFile);
+            List<Candle> candles = klineFile.read(klines, fromTime, toTime);
+            if (candles.isEmpty()) {
+                return null;
+            }
+            final Market market = new Market(symbol, typeMarket.timeFrameMarket());
+            market.setCandles(new LinkedHashSet<>(candles));
+            if (loadTrades) {
+                MappedMarketFile tradeFile = ensureMappedFile(typeMarket, TypeData.TRADES, targetDate, new TradeSerializable(), IOMarket::parseTradesFromFile);
+                market.setTrade(TradeSerializable.readTape(tradeFile, fromTime, toTime));
+            }
+            try {
+                MetricsSerializable metrics = new MetricsSerializable();
+                MappedMarketFile metricsFile = ensureMappedFile(typeMarket, TypeData.METRICS, targetDate, metrics, IOMarket::parseMetricsFromFile);
+                market.setMetrics(new LinkedHashSet<>(metricsFile.read(metrics, fromTime, toTime)));
+            } catch (IOException metricsException) {
+                Vesta.info("%s (idx=%d) No se pudieron cargar metrics: %s", targetDate, dayIndex, metricsException.getMessage());
+            }
+            return market;
+        } catch (IOException e) {
+            Vesta.sendWaringException("error al cargar los datos mapeados", e);
+            return null;
+        }
+    }
+
+    private static <T> @NotNull MappedMarketFile ensureMappedFile(TypeMarket typeMarket,
+                                                                  @NotNull TypeData type,
+                                                                  @NotNull LocalDate date,
+                                                                  @NotNull ParseSerializable<T> serializable,
+                                                                  @NotNull Function<File, Deque<T>> parser
+    ) throws IOException {
+        String fileName = resolveBaseName(typeMarket, type, date) + EXT_MBIN;
+        File mappedFile = new File(resolveDataDir(typeMarket, type, date), fileName);
+        MarketCatalog catalog = resolveCatalog(typeMarket, type);
+        MarketCatalog.DayEntry known = catalog.get(date, MarketCatalog.Format.MBIN);
+        if (known != null && mappedFile.exists() && !catalog.verify(known, mappedFile)) {
+            Vesta.info("Archivo mapeado distinto al del catalogo, regenerando: " + mappedFile.getName());
+            safeDelete(mappedFile);
+        }
+        if (known != null || (mappedFile.exists() && mappedFile.length() > 0)) {
+            try {
+                return MappedMarketFile.open(mappedFile, serializable);
+            } catch (IOException e) {
+                Vesta.info("Archivo mapeado invalido, regenerando: " + mappedFile.getName());
+                safeDelete(mappedFile);
+            }
+        }
+        File source = ensureFileCached(typeMarket, type, date);
+        LinkedHashSet<T> sorted = Market.sortd(parser.apply(source), 10_000, serializable::timeOf);
+        MappedMarketFile.write(mappedFile, serializable, sorted);
+        MappedMarketFile mapped = MappedMarketFile.open(mappedFile, serializable);
+        catalog.put(MarketCatalog.DayEntry.of(date, catalogFileName(date, fileName), MarketCatalog.Format.MBIN,
+                mapped.getCount(), mapped.getMinTime(), mapped.getMaxTime(), mappedFile));
+        return mapped;
+    }
+
     public static LocalDate resolveDateFromDayIndex(int dayIndex) {
         int normalized = Math.max(1, dayIndex);
         return getReferenceBaseDate().minusDays(normalized - 1L);
@@ -306,29 +400,109 @@ public class IOMarket {
     }
 
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    private static File ensureFileCached(TypeMarket typeMarket, @NotNull TypeData type, @NotNull LocalDate date) throws IOException {
+    private static @NotNull String resolveBaseName(@NotNull TypeMarket typeMarket, @NotNull TypeData type, @NotNull LocalDate date) {
         final Symbol symbol = typeMarket.symbol();
-        final TimeFrameMarket timeFrameMarket = typeMarket.timeFrameMarket();
-
-        String monthStr = String.format("%02d", date.getMonthValue());
-        String dayStr = String.format("%02d", date.getDayOfMonth());
-        String dateStr = String.format("%d-%s-%s", date.getYear(), monthStr, dayStr);
+        String dateStr = String.format("%d-%02d-%02d", date.getYear(), date.getMonthValue(), date.getDayOfMonth());
 
         // Nombre del archivo segun convencion de Binance (daily)
-        String baseName = switch (type){
+        return switch (type){
             case TRADES -> String.format("%s-trades-%s", symbol, dateStr);
-            case KLINES ->  String.format("%s-%s-%s", symbol, timeFrameMarket.getKeyName(), dateStr);
+            case KLINES ->  String.format("%s-%s-%s", symbol, typeMarket.timeFrameMarket().getKeyName(), dateStr);
             case METRICS -> String.format("%s-metrics-%s", symbol, dateStr);
             case DEPTH -> throw new UnsupportedOperationException();
         };
+    }
 
+    private static @NotNull File resolveDataDir(@NotNull TypeMarket typeMarket, @NotNull TypeData type, @NotNull LocalDate date) {
+        // Estructura: ./data/ETHUSDT/klines/2025-12/ETHUSDT-1m-2025-12-01.bin.zst
+        return new File(resolveTypeDir(typeMarket, type), resolveMonthDir(date));
+    }
+
+    private static @NotNull File resolveTypeDir(@NotNull TypeMarket typeMarket, @NotNull TypeData type) {
+        return new File(STORAGE_DIR + File.separator + typeMarket.symbol() + File.separator + type.name().toLowerCase(Locale.ROOT));
+    }
+
+    private static @NotNull String resolveMonthDir(@NotNull LocalDate date) {
+        return date.getYear() + "-" + String.format("%02d", date.getMonthValue());
+    }
+
+    /**
+     * Catálogo del símbolo y tipo. Las klines llevan el intervalo en el nombre porque comparten carpeta.
+     */
+    private static @NotNull MarketCatalog resolveCatalog(@NotNull TypeMarket typeMarket, @NotNull TypeData type) {
+        String name = type == TypeData.KLINES ? "catalog-" + typeMarket.timeFrameMarket().getKeyName() + ".bin" : "catalog.bin";
+        return MarketCatalog.of(new File(resolveTypeDir(typeMarket, type), name));
+    }
+
+    private static @NotNull String catalogFileName(@NotNull LocalDate date, @NotNull String fileName) {
+        return resolveMonthDir(date) + "/" + fileName;
+    }
+
+    /**
+     * Registra en el catálogo un archivo que ya existía en disco antes de tenerlo catalogado.
+     */
+    private static <T> void catalogIfAbsent(@NotNull TypeMarket typeMarket,
+                                            @NotNull TypeData type,
+                                            @NotNull LocalDate date,
+                                            @NotNull File file,
+                                            @NotNull Collection<T> sources,
+                                            @NotNull ToLongFunction<T> timeOf
+    ) {
+        MarketCatalog catalog = resolveCatalog(typeMarket, type);
+        if (sources.isEmpty() || catalog.get(date) != null || !file.exists()) {
+            return;
+        }
+        MarketCatalog.Format format = file.getName().endsWith(EXT_ZST) ? MarketCatalog.Format.BIN_ZST : MarketCatalog.Format.BIN;
+        MarketCatalog.Stats stats = new MarketCatalog.Stats();
+        for (T source : sources) {
+            stats.accept(timeOf.applyAsLong(source));
+        }
+        try {
+            catalog.put(stats.toEntry(date, catalogFileName(date, file.getName()), format, file));
+        } catch (IOException e) {
+            Vesta.info("No se pudo actualizar el catalogo: " + e.getMessage());
+        }
+    }
+
+    private static void logMissingDays(@NotNull TypeMarket typeMarket, @NotNull LocalDate from, @NotNull LocalDate to) {
+        List<LocalDate> missing = findMissingDays(typeMarket, from, to);
+        if (!missing.isEmpty()) {
+            Vesta.info("🗂️ %d dias de %s sin catalogar entre %s y %s, se descargaran o convertiran al cargar", missing.size(), typeMarket.symbol(), from, to);
+        }
+    }
+
+    /**
+     * Días de {@code [from, to]} que no están en el catálogo de klines (huecos o aún sin descargar).
+     */
+    public static @NotNull List<LocalDate> findMissingDays(@NotNull TypeMarket typeMarket, @NotNull LocalDate from, @NotNull LocalDate to) {
+        return resolveCatalog(typeMarket, TypeData.KLINES).findMissingDays(from, to);
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private static File ensureFileCached(TypeMarket typeMarket, @NotNull TypeData type, @NotNull LocalDate date) throws IOException {
+        MarketCatalog catalog = resolveCatalog(typeMarket, type);
+        MarketCatalog.DayEntry known;
+        while ((known = catalog.get(date)) != null) {
+            File file = new File(resolveTypeDir(typeMarket, type), known.fileName());
+            if (file.exists() && file.length() > 0) {
+                if (catalog.verify(known, file)) {
+                    return file;
+                }
+                // Mismo nombre pero otro contenido: se borra para no volver a tomarlo sin catalogar
+                Vesta.info("🗂️ %s no coincide con el checksum del catalogo, se regenera", known.fileName());
+                safeDelete(file);
+            } else {
+                // Se borró a mano o quedó vacío: se olvida y se vuelve a generar
+                Vesta.info("🗂️ %s del catalogo ya no esta en disco, se regenera", known.fileName());
+            }
+            catalog.remove(date, known.format());
+        }
+        String baseName = resolveBaseName(typeMarket, type, date);
         String fileNameZip = baseName + EXT_ZIP;
         String fileNameBin = baseName + EXT_BIN;
         String fileNameBinZst = baseName + EXT_BIN_ZST;
 
-        // Estructura: ./data/ETHUSDT/klines/2025-12/ETHUSDT-1m-2025-12-01.bin.zst
-        File dir = new File(STORAGE_DIR + File.separator + symbol + File.separator + type.name().toLowerCase(Locale.ROOT) + File.separator + date.getYear() + "-" + monthStr);
+        File dir = resolveDataDir(typeMarket, type, date);
         if (!dir.exists()) {
             dir.mkdirs(); // Crea la estructura de carpetas si no existe
         }
@@ -337,6 +511,12 @@ public class IOMarket {
         File targetFileBin = new File(dir, fileNameBin);
         File targetFileBinZst = new File(dir, fileNameBinZst);
 
+        if (targetFileBin.exists() && targetFileBin.length() > 0) {
+            return targetFileBin;
+        } else if (targetFileBinZst.exists() && targetFileBinZst.length() > 0) {
+            return targetFileBinZst;
+        }
+
         ParseSerializable<?> serializable = switch (type){
             case KLINES -> new KlinesSerializable();
             case TRADES -> new TradeSerializable();
@@ -344,37 +524,73 @@ public class IOMarket {
             case DEPTH -> throw new UnsupportedOperationException();
         };
 
-        if (targetFileBin.exists() && targetFileBin.length() > 0) {
-            return targetFileBin;
-        } else if (targetFileBinZst.exists() && targetFileBinZst.length() > 0) {
-            return targetFileBinZst;
-        } else if (targetFileZip.exists() && targetFileZip.length() > 0) {
-            buildSourceBinFromZst(targetFileZip, targetFileBinZst, serializable);
+        synchronized (FILE_LOCKS.computeIfAbsent(targetFileBinZst.getPath(), k -> new Object())) {
+            // Otro hilo pudo terminar la conversión mientras esperábamos
+            if (targetFileBinZst.exists() && targetFileBinZst.length() > 0) {
+                return targetFileBinZst;
+            }
+            if (!targetFileZip.exists() || targetFileZip.length() == 0) {
+                String remotePath = resolveRemotePath(typeMarket, type, fileNameZip);
+                Vesta.info("📥 Descargando nuevo archivo: " + fileNameZip + " (" + MarketDownloader.BINANCE_VISION.resolve(remotePath) + ")");
+                DOWNLOADER.downloadBlocking(remotePath, targetFileZip);
+                Vesta.info("✅ Descargando completada: " + fileNameZip);
+            }
+            MarketCatalog.Stats stats = buildSourceBinFromZst(targetFileZip, targetFileBinZst, serializable);
+            catalog.put(stats.toEntry(date, catalogFileName(date, fileNameBinZst), MarketCatalog.Format.BIN_ZST, targetFileBinZst));
             safeDelete(targetFileZip);
-            return targetFileBinZst;
         }
 
-        // Construir URL de descarga
-        String urlTypePath = type.name().toLowerCase(Locale.ROOT); // URL path segment
-        String urlInterval = type.equals(TypeData.KLINES) ? "/" + timeFrameMarket.getKeyName() : ""; // Trades no tienen intervalo en la URL
-
-        String urlString = String.format("https://data.binance.vision/data/futures/um/daily/%s/%s%s/%s",
-                urlTypePath, symbol, urlInterval, fileNameZip);
+        return targetFileBinZst;
+    }
 
-        Vesta.info("📥 Descargando nuevo archivo: " + fileNameZip + " (" + urlString + ")");
+    private static @NotNull String resolveRemotePath(@NotNull TypeMarket typeMarket, @NotNull TypeData type, @NotNull String fileNameZip) {
+        String urlTypePath = type.name().toLowerCase(Locale.ROOT); // URL path segment
+        String urlInterval = type.equals(TypeData.KLINES) ? "/" + typeMarket.timeFrameMarket().getKeyName() : ""; // Trades no tienen intervalo en la URL
+        return String.format("data/futures/um/daily/%s/%s%s/%s", urlTypePath, typeMarket.symbol(), urlInterval, fileNameZip);
+    }
 
-        try (InputStream in = new URI(urlString).toURL().openStream()) {
-            Files.copy(in, targetFileZip.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException | URISyntaxException e) {
-            // Si falla la descarga, borramos el archivo vacio/corrupto para no romper ejecuciones futuras
-            if (targetFileZip.exists()) targetFileZip.delete();
-            throw new IOException("Fallo al descargar " + urlString, e);
+    /**
+     * Descarga en segundo plano los zips que falten de los meses {@code [fromMonthIndex, toMonthIndex]}.
+     * Solo descarga; la conversión a binario la hace {@link #ensureFileCached} al cargar el día,
+     * que se une a la descarga en curso si aún no ha terminado.
+     */
+    public static @NotNull CompletableFuture<Void> prefetchMonths(@NotNull TypeMarket typeMarket, int fromMonthIndex, int toMonthIndex, boolean loadTrades) {
+        List<TypeData> types = loadTrades
+                ? List.of(TypeData.KLINES, TypeData.METRICS, TypeData.TRADES)
+                : List.of(TypeData.KLINES, TypeData.METRICS);
+        LocalDate lastDay = getReferenceBaseDate();
+        List<CompletableFuture<File>> downloads = new ArrayList<>();
+        for (int month = Math.max(fromMonthIndex, toMonthIndex); month >= Math.min(fromMonthIndex, toMonthIndex); month--) {
+            YearMonth yearMonth = resolveMonthFromIndex(month);
+            for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
+                LocalDate date = yearMonth.atDay(day);
+                if (date.isAfter(lastDay)) {
+                    break;
+                }
+                for (TypeData type : types) {
+                    String baseName = resolveBaseName(typeMarket, type, date);
+                    File dir = resolveDataDir(typeMarket, type, date);
+                    if (new File(dir, baseName + EXT_BIN_ZST).exists() || new File(dir, baseName + EXT_BIN).exists()) {
+                        continue;
+                    }
+                    try {
+                        Files.createDirectories(dir.toPath());
+                    } catch (IOException e) {
+                        continue;
+                    }
+                    String fileNameZip = baseName + EXT_ZIP;
+                    downloads.add(DOWNLOADER.download(resolveRemotePath(typeMarket, type, fileNameZip), new File(dir, fileNameZip))
+                            .exceptionally(error -> {
+                                Vesta.info("No se pudo precargar %s: %s", fileNameZip, error.getMessage());
+                                return null;
+                            }));
+                }
+            }
         }
-        Vesta.info("✅ Descargando completada: " + fileNameZip);
-        buildSourceBinFromZst(targetFileZip, targetFileBinZst, serializable);
-        safeDelete(targetFileZip);
-
-        return targetFileBinZst;
+        if (!downloads.isEmpty()) {
+            Vesta.info("📥 Precargando %d archivos de %s", downloads.size(), typeMarket.symbol());
+        }
+        return CompletableFuture.allOf(downloads.toArray(CompletableFuture[]::new));
     }
 
     /**
@@ -477,6 +693,8 @@ public class IOMarket {
     public <T> void drainTask(Deque<FutureTask<List<T>>> tasks, Deque<T> list) {
         try {
             FutureTask<List<T>> task = tasks.removeFirst();
+            // Si el pool aún no lo ha tomado se ejecuta aquí, evita bloquear cuando el llamador corre en el mismo pool
+            task.run();
             List<T> trades = task.get();
             if (trades != null && !trades.isEmpty()) {
                 list.addAll(trades);
@@ -494,30 +712,18 @@ public class IOMarket {
 
         int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
         int maxInFlight = threads * 2;
-        int batchSize = BATCH_SIZE;
         Deque<FutureTask<List<T>>> tasks = new ArrayDeque<>(maxInFlight);
 
         try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(file), (1 << 20) * BUFFER_READ_MB))) {
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
                 if (!entry.isDirectory() && entry.getName().endsWith(".csv")) {
-                    BufferedReader br = new BufferedReader(new InputStreamReader(zis), (1 << 20) * BUFFER_READ_MB);
-                    String line;
-                    List<String> batch = new ArrayList<>(batchSize);
-                    while ((line = br.readLine()) != null) {
-                        if (line.isEmpty() || Character.isLetter(line.charAt(0))) continue; // Skip Header
-                        batch.add(line);
-                        if (batch.size() >= batchSize) {
-                            SerializableCSV.submitBatch(tasks, batch);
-                            batch = new ArrayList<>(batchSize);
-                            if (tasks.size() >= maxInFlight) {
-                                drainTask(tasks, list);
-                            }
+                    CsvTokenizer.readChunks(zis, CSV_CHUNK_BYTES, (chunk, length) -> {
+                        SerializableCSV.submitChunk(tasks, chunk, length);
+                        if (tasks.size() >= maxInFlight) {
+                            drainTask(tasks, list);
                         }
-                    }
-                    if (!batch.isEmpty()) {
-                        SerializableCSV.submitBatch(tasks, batch);
-                    }
+                    });
                 }
             }
         } catch (Exception e) {
@@ -602,10 +808,10 @@ public class IOMarket {
             return null;
         }
         int version = in.readInt();
-        if (version != BIN_VERSION) {
+        if (version != BIN_VERSION && version != BIN_VERSION_LEGACY) {
             return null;
         }
-        parseMethod.readMetaDataBin(in);
+        parseMethod.readMetaDataBin(in, version);
         Deque<T> list = new ArrayDeque<>(5_000);
         while (true) {
             try {
@@ -623,9 +829,15 @@ public class IOMarket {
 
     @Contract("_ -> new")
     private static @NotNull DataInputStream openBinInputStream(File binFile) throws IOException {
-        InputStream in = new BufferedInputStream(new FileInputStream(binFile), (1 << 20) * BUFFER_READ_MB);
-        if (binFile.getName().endsWith(EXT_ZST)) {
-            in = new ZstdInputStream(in);
+        InputStream in;
+        if (binFile.getName().endsWith(EXT_ZST) && ZstdFrameInputStream.isFramed(binFile)) {
+            // Frames independientes: se descomprimen en paralelo y se concatenan en orden
+            in = new ZstdFrameInputStream(binFile, VestaEngine.EXECUTOR_AUXILIAR_BUILD);
+        } else {
+            in = new BufferedInputStream(new FileInputStream(binFile), (1 << 20) * BUFFER_READ_MB);
+            if (binFile.getName().endsWith(EXT_ZST)) {
+                in = new ZstdInputStream(in);
+            }
         }
         // Ensure mark/reset support for optional metadata reads.
         in = new BufferedInputStream(in, 8 * 1024);
@@ -635,10 +847,7 @@ public class IOMarket {
     private static @NotNull DataOutputStream openBinOutputStream(File binFile, boolean useZstd) throws IOException {
         OutputStream out = new BufferedOutputStream(new FileOutputStream(binFile), (1 << 20) * BUFFER_READ_MB);
         if (useZstd) {
-            ZstdOutputStream zOut = new ZstdOutputStream(out);
-            zOut.setLevel(ZSTD_LEVEL);
-            zOut.setWorkers(Math.min(8, Runtime.getRuntime().availableProcessors()));
-            out = zOut;
+            out = new ZstdFrameOutputStream(out, ZSTD_LEVEL, VestaEngine.EXECUTOR_AUXILIAR_BUILD);
         }
         return new DataOutputStream(out);
     }
@@ -678,34 +887,74 @@ public class IOMarket {
         }
     }
 
-    private static <T> void buildSourceBinFromZst(File zipFile, @NotNull File binFile, ParseSerializable<T> serializable) throws IOException {
-        if (binFile.getParentFile() != null) {
-            Files.createDirectories(binFile.getParentFile().toPath());
+    /**
+     * Convierte el zip a un temporal y lo mueve de forma atómica a {@code binFile}, así que quien lo vea sin el lock
+     * (el camino rápido de {@link #ensureFileCached}) nunca lee un archivo a medias.
+     */
+    private static <T> MarketCatalog.@NotNull Stats buildSourceBinFromZst(File zipFile, @NotNull File binFile, ParseSerializable<T> serializable) throws IOException {
+        Path parent = binFile.getAbsoluteFile().getParentFile().toPath();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, binFile.getName(), ".tmp");
+        try {
+            MarketCatalog.Stats stats = writeSourceBin(zipFile, temp.toFile(), binFile.getName().endsWith(EXT_ZST), serializable);
+            Files.move(temp, binFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return stats;
+        } finally {
+            Files.deleteIfExists(temp);
         }
+    }
+
+    private static <T> MarketCatalog.@NotNull Stats writeSourceBin(File zipFile, @NotNull File binFile, boolean useZstd, ParseSerializable<T> serializable) throws IOException {
+        int maxInFlight = Math.max(1, Runtime.getRuntime().availableProcessors()) * 2;
+        Deque<FutureTask<ParseSerializable.ParsedChunk>> tasks = new ArrayDeque<>(maxInFlight);
+        MarketCatalog.Stats stats = new MarketCatalog.Stats();
         try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(zipFile), (1 << 20) * BUFFER_READ_MB));
-             DataOutputStream out = openBinOutputStream(binFile, binFile.getName().endsWith(EXT_ZST))) {
+             DataOutputStream out = openBinOutputStream(binFile, useZstd)) {
             out.writeInt(serializable.getMagic());
             out.writeInt(BIN_VERSION);
-            boolean hasMeta = false;
+            boolean[] hasMeta = {false};
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
                 if (!entry.isDirectory() && entry.getName().endsWith(".csv")) {
-                    BufferedReader br = new BufferedReader(new InputStreamReader(zis), (1 << 20) * BUFFER_READ_MB);
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        if (line.isEmpty() || Character.isLetter(line.charAt(0))) continue; // Skip Header
-                        T source = serializable.parseLine(line);
-                        if (source == null) {
-                            continue;
+                    CsvTokenizer.readChunks(zis, CSV_CHUNK_BYTES, (chunk, length) -> {
+                        if (!hasMeta[0]) {
+                            // La cabecera del CSV u otras filas sin datos no cuentan: los metadatos salen de la
+                            // primera fila que se pueda leer, y si el bloque no tiene ninguna se busca en el siguiente
+                            CsvTokenizer first = new CsvTokenizer(chunk, 0, length);
+                            T source = null;
+                            while (source == null && first.nextRow()) {
+                                source = serializable.parseRow(first);
+                            }
+                            if (source != null) {
+                                serializable.writeMetaDataBin(out, source);
+                                hasMeta[0] = true;
+                            }
                         }
-                        if (!hasMeta) {
-                            serializable.writeMetaDataBin(out, source);
-                            hasMeta = true;
+                        // Sin metadatos el bloque no tiene filas válidas y no escribe nada, pero nunca se descarta
+                        tasks.addLast(serializable.submitChunkBin(chunk, length));
+                        if (tasks.size() >= maxInFlight) {
+                            drainBinTask(tasks, out, stats);
                         }
-                        serializable.writeBin(out, source);
-                    }
+                    });
                 }
             }
+            while (!tasks.isEmpty()) {
+                drainBinTask(tasks, out, stats);
+            }
+        }
+        return stats;
+    }
+
+    private static void drainBinTask(@NotNull Deque<FutureTask<ParseSerializable.ParsedChunk>> tasks,
+                                     @NotNull DataOutputStream out,
+                                     MarketCatalog.@NotNull Stats stats
+    ) throws IOException {
+        FutureTask<ParseSerializable.ParsedChunk> task = tasks.removeFirst();
+        task.run();
+        try {
+            task.get().writeBin(out, stats);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Error convirtiendo csv a binario", e);
         }
     }
 
@@ -739,7 +988,7 @@ public class IOMarket {
         String name = binZstPath.getFileName().toString();
         String outName = name.endsWith(EXT_ZST) ? name.substring(0, name.length() - EXT_ZST.length()) : name;
         Path outputPath = binZstPath.getParent().resolve(outName);
-        try (InputStream in = new ZstdInputStream(new BufferedInputStream(Files.newInputStream(binZstPath), (1 << 20) * BUFFER_READ_MB));
+        try (InputStream in = openBinInputStream(binZstPath.toFile());
              OutputStream out = new BufferedOutputStream(Files.newOutputStream(
                      outputPath,
                      StandardOpenOption.CREATE,
@@ -780,23 +1029,31 @@ public class IOMarket {
     ////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     public interface SerializableBin<T> {
+        /**
+         * Escribe la metadata y reinicia el estado del codificador, se llama una vez por archivo.
+         */
         void writeMetaDataBin(DataOutput out, @NotNull T source)throws IOException;
         void writeBin(DataOutput out, T source) throws IOException;
         T readBin(DataInputStream in) throws IOException;
-        void readMetaDataBin(DataInputStream in) throws IOException;
+        /**
+         * Lee la metadata y reinicia el estado del decodificador para la {@code version} del archivo.
+         */
+        void readMetaDataBin(DataInputStream in, int version) throws IOException;
         int getMagic();
     }
 
     public interface SerializableCSV<T> {
-        T parseLine(String line);
+        T parseRow(CsvTokenizer row);
 
-        default void submitBatch(Deque<FutureTask<List<T>>> tasks, List<String> batch) {
-            List<String> batchCopy = new ArrayList<>(batch);
+        default void submitChunk(Deque<FutureTask<List<T>>> tasks, byte[] chunk, int length) {
             FutureTask<List<T>> task = new FutureTask<>(() -> {
-                List<T> sources = new ArrayList<>(batchCopy.size());
-                for (String line : batchCopy) {
-                    T source = parseLine(line);
-                    sources.add(source);
+                List<T> sources = new ArrayList<>();
+                CsvTokenizer row = new CsvTokenizer(chunk, 0, length);
+                while (row.nextRow()) {
+                    T source = parseRow(row);
+                    if (source != null) {
+                        sources.add(source);
+                    }
                 }
                 return sources;
             });
@@ -805,6 +1062,22 @@ public class IOMarket {
         }
     }
 
+    /**
+     * Registro de ancho fijo para {@link MappedMarketFile}. El tiempo lo escribe el archivo,
+     * el payload empieza justo después.
+     */
+    public interface SerializableMapped<T> {
+        int getMagic();
+        int getRecordWidth();
+        long timeOf(T source);
+        void writeRecord(ByteBuffer out, T source);
+        T readRecord(ByteBuffer in, int offset, long time);
+        default int getMappedMeta(@NotNull T source) {
+            return 0;
+        }
+        default void readMappedMeta(int meta) {}
+    }
+
     @FunctionalInterface
     public interface BinWriter {
         void write(DataOutputStream out) throws IOException;
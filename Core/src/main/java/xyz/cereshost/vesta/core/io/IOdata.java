@@ -2,6 +2,9 @@ package xyz.cereshost.vesta.core.io;
 
 import ai.djl.Device;
 import ai.djl.Model;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
 import ai.djl.util.Pair;
 import com.google.gson.JsonIOException;
 import lombok.SneakyThrows;
@@ -14,11 +17,21 @@ import xyz.cereshost.vesta.common.packet.Utils;
 import xyz.cereshost.vesta.common.Vesta;
 import xyz.cereshost.vesta.core.ia.VestaEngine;
 import xyz.cereshost.vesta.core.utils.BuilderData;
+import xyz.cereshost.vesta.core.ia.blocks.QuantizableLinear;
+import xyz.cereshost.vesta.core.ia.utils.FeatureWindows;
+import xyz.cereshost.vesta.core.ia.utils.Int8ParameterStore;
+import xyz.cereshost.vesta.core.ia.utils.Int8Weights;
+import xyz.cereshost.vesta.core.ia.utils.TrainingCache;
 import xyz.cereshost.vesta.core.ia.utils.TrainingData;
 import xyz.cereshost.vesta.core.ia.utils.XNormalizer;
 import xyz.cereshost.vesta.core.ia.utils.YNormalizer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.FloatBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
@@ -35,6 +48,10 @@ public class IOdata {
     public static final String NORMALIZER_DIR = "normalizers";
     public static final String CACHE_DIR = "E:\\data";
     public static final int TRAINING_CACHE_MAGIC = 0x54425631;
+    public static final int TRAINING_CACHE_VERSION = 2;
+    private static final int TRAINING_CACHE_HEADER_BYTES = 7 * Integer.BYTES;
+    public static final int INT8_MODEL_MAGIC = 0x54424938;
+    public static final int INT8_MODEL_VERSION = 1;
 
     public static void saveOut(@NotNull Path path, String json, String name) throws IOException {
         Path file = path.resolve(name + ".json");
@@ -56,6 +73,21 @@ public class IOdata {
         if (X == null || X.length == 0 || y == null || y.length == 0) {
             throw new IllegalArgumentException("Empty training cache");
         }
+        return saveTrainingCache(dir, symbol, month, useZip, out -> writeTrainingCache(X, y, out));
+    }
+
+    /**
+     * Igual que {@link #saveTrainingCache(Path, Symbol, int, float[][][], float[][], boolean)} pero escribe cada
+     * muestra directamente desde las ventanas, sin materializar el {@code float[][][]}.
+     */
+    public static Path saveTrainingCache(Path dir, Symbol symbol, int month, FeatureWindows windows, boolean useZip) throws IOException {
+        if (windows == null || windows.samples() == 0) {
+            throw new IllegalArgumentException("Empty training cache");
+        }
+        return saveTrainingCache(dir, symbol, month, useZip, out -> writeTrainingCache(windows, out));
+    }
+
+    private static Path saveTrainingCache(Path dir, Symbol symbol, int month, boolean useZip, CacheWriter writer) throws IOException {
         Files.createDirectories(dir);
         String extension = useZip ? "zip" : "bin";
         String fileName = String.format(Locale.ROOT, "%s-%d-%s.%s", symbol, month, UUID.randomUUID(), extension);
@@ -69,7 +101,7 @@ public class IOdata {
             zipOut.setLevel(Deflater.BEST_SPEED);
             zipOut.putNextEntry(new ZipEntry("cache.bin"));
             DataOutputStream out = new DataOutputStream(zipOut);
-            writeTrainingCache(X, y, out);
+            writer.write(out);
             out.flush();
             zipOut.closeEntry();
             }
@@ -78,50 +110,83 @@ public class IOdata {
                     Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING),
                     (1 << 20) * BUFFER_READ_MB
             ))) {
-                writeTrainingCache(X, y, out);
+                writer.write(out);
                 out.flush();
             }
         }
         return file;
     }
 
-    private static void writeTrainingCache(float[][][] X, float[][] y, DataOutputStream out) throws IOException {
-        out.writeInt(TRAINING_CACHE_MAGIC);
-        out.writeInt(1);
-        int xSamples = X.length;
-        int seqLen = X[0].length;
-        int features = X[0][0].length;
-        int ySamples = y.length;
-        int yCols = y[0].length;
-        out.writeInt(xSamples);
-        out.writeInt(seqLen);
-        out.writeInt(features);
-        out.writeInt(ySamples);
-        out.writeInt(yCols);
+    @FunctionalInterface
+    private interface CacheWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
 
-        if (xSamples == 0 || yCols == 0) {
-            return;
+    private static void writeTrainingCache(FeatureWindows windows, DataOutputStream out) throws IOException {
+        float[][] y = windows.getY();
+        writeTrainingCacheHeader(out, windows.samples(), windows.getLookBack(), windows.getFeatures(), y[0].length);
+        float[] rows = windows.getRows();
+        ByteBuffer buffer = ByteBuffer.allocate(windows.sampleLength() * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        FloatBuffer floats = buffer.asFloatBuffer();
+        for (int s = 0; s < windows.samples(); s++) {
+            floats.clear();
+            floats.put(rows, windows.offset(s), windows.sampleLength());
+            out.write(buffer.array(), 0, buffer.capacity());
         }
+        writeLittleEndian(y, out);
+    }
 
+    private static void writeTrainingCache(float[][][] X, float[][] y, DataOutputStream out) throws IOException {
+        int seqLen = X[0].length;
+        int features = X[0][0].length;
+        writeTrainingCacheHeader(out, X.length, seqLen, features, y[0].length);
+        ByteBuffer buffer = ByteBuffer.allocate(seqLen * features * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        FloatBuffer floats = buffer.asFloatBuffer();
         for (float[][] seq : X) {
-            for (int j = 0; j < seqLen; j++) {
-                float[] row = seq[j];
-                if (row.length == 0) break;
-                for (int k = 0; k < features; k++) {
-                    out.writeFloat(row[k]);
-                }
+            floats.clear();
+            for (float[] row : seq) {
+                floats.put(row, 0, features);
             }
+            out.write(buffer.array(), 0, buffer.capacity());
         }
+        writeLittleEndian(y, out);
+    }
 
+    /**
+     * Cabecera de la versión {@value #TRAINING_CACHE_VERSION}: siete {@code int} big-endian seguidos de X e y como
+     * bloques de {@code float} little-endian, así el archivo se puede mapear directamente.
+     */
+    private static void writeTrainingCacheHeader(DataOutputStream out, int samples, int seqLen, int features, int yCols) throws IOException {
+        out.writeInt(TRAINING_CACHE_MAGIC);
+        out.writeInt(TRAINING_CACHE_VERSION);
+        out.writeInt(samples);
+        out.writeInt(seqLen);
+        out.writeInt(features);
+        out.writeInt(samples);
+        out.writeInt(yCols);
+    }
+
+    private static void writeLittleEndian(float[][] y, DataOutputStream out) throws IOException {
+        int yCols = y[0].length;
+        ByteBuffer buffer = ByteBuffer.allocate(yCols * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        FloatBuffer floats = buffer.asFloatBuffer();
         for (float[] row : y) {
-            if (row.length == 0) break;
-            for (int j = 0; j < yCols; j++) {
-                out.writeFloat(row[j]);
-            }
+            floats.clear();
+            floats.put(row, 0, yCols);
+            out.write(buffer.array(), 0, buffer.capacity());
         }
     }
 
     public static Pair<float[][][], float[][]> loadTrainingCache(Path file) throws IOException {
+        return mapTrainingCache(file).toPair();
+    }
+
+    /**
+     * Abre una caché de entrenamiento sin pasar por arrays anidados. Las cachés {@code .bin} de la versión
+     * {@value #TRAINING_CACHE_VERSION} se mapean en modo privado: se puede escribir en los buffers sin modificar el
+     * archivo. Los {@code .zip}, la versión 1 y las cachés de sólo lectura se leen a memoria.
+     */
+    public static TrainingCache mapTrainingCache(Path file) throws IOException {
         String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
 
         if (name.endsWith(".zip")) {
@@ -133,9 +198,42 @@ public class IOdata {
                 }
 
                 DataInputStream in = new DataInputStream(zipIn);
-                Pair<float[][][], float[][]> pair = readTrainingCache(in, file);
+                TrainingCache cache = readTrainingCache(in, file);
                 zipIn.closeEntry();
-                return pair;
+                return cache;
+            }
+        }
+
+        FileChannel channel = openForPrivateMap(file);
+        if (channel != null) {
+            try (channel) {
+                ByteBuffer header = ByteBuffer.allocate(TRAINING_CACHE_HEADER_BYTES);
+                if (channel.read(header, 0) < TRAINING_CACHE_HEADER_BYTES) {
+                    throw new IOException("Cache invalida: " + file);
+                }
+                header.flip();
+                if (header.getInt() != TRAINING_CACHE_MAGIC) {
+                    throw new IOException("Cache invalida: " + file);
+                }
+                if (header.getInt() == TRAINING_CACHE_VERSION) {
+                    int samples = header.getInt();
+                    int seqLen = header.getInt();
+                    int features = header.getInt();
+                    int ySamples = header.getInt();
+                    int yCols = header.getInt();
+                    long xBytes = (long) samples * seqLen * features * Float.BYTES;
+                    long yBytes = (long) ySamples * yCols * Float.BYTES;
+                    if (ySamples != samples || channel.size() < TRAINING_CACHE_HEADER_BYTES + xBytes + yBytes) {
+                        throw new IOException("Cache truncada: " + file);
+                    }
+                    MappedByteBuffer x = channel.map(FileChannel.MapMode.PRIVATE, TRAINING_CACHE_HEADER_BYTES, xBytes);
+                    MappedByteBuffer y = channel.map(FileChannel.MapMode.PRIVATE, TRAINING_CACHE_HEADER_BYTES + xBytes, yBytes);
+                    return new TrainingCache(
+                            x.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer(),
+                            y.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer(),
+                            samples, seqLen, features, yCols
+                    );
+                }
             }
         }
 
@@ -144,13 +242,29 @@ public class IOdata {
         }
     }
 
-    private static Pair<float[][][], float[][]> readTrainingCache(DataInputStream in, Path file) throws IOException {
+    /**
+     * El modo privado necesita el canal en escritura, aunque los cambios nunca llegan al archivo. Si la caché o su
+     * carpeta son de sólo lectura devuelve {@code null} y se lee a memoria.
+     */
+    private static @Nullable FileChannel openForPrivateMap(Path file) throws IOException {
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (AccessDeniedException | ReadOnlyFileSystemException e) {
+            return null;
+        } catch (FileSystemException e) {
+            // EROFS llega como FileSystemException genérica
+            if (Files.isReadable(file) && !Files.isWritable(file)) return null;
+            throw e;
+        }
+    }
+
+    private static TrainingCache readTrainingCache(DataInputStream in, Path file) throws IOException {
         int magic = in.readInt();
         if (magic != TRAINING_CACHE_MAGIC) {
             throw new IOException("Cache invalida: " + file);
         }
         int version = in.readInt();
-        if (version != 1) {
+        if (version != 1 && version != TRAINING_CACHE_VERSION) {
             throw new IOException("Cache version invalida: " + version);
         }
         int xSamples = in.readInt();
@@ -158,33 +272,33 @@ public class IOdata {
         int features = in.readInt();
         int ySamples = in.readInt();
         int yCols = in.readInt();
-
-        float[][][] X = new float[xSamples][seqLen][features];
-        float[][] y = new float[ySamples][yCols];
-
-        if (xSamples == 0 ||  seqLen == 0 || features == 0 || ySamples == 0 || yCols == 0) {
-            return new Pair<>(X, y);
+        if (ySamples != xSamples) {
+            throw new IOException("Cache invalida: " + file);
         }
 
-        try {
-            for (int i = 0; i < xSamples; i++) {
-                float[][] seq = X[i];
-                for (int j = 0; j < seqLen; j++) {
-                    float[] row = seq[j];
-                    for (int k = 0; k < features; k++) {
-                        row[k] = in.readFloat();
-                    }
-                }
-            }
+        FloatBuffer x = FloatBuffer.allocate(xSamples * seqLen * features);
+        FloatBuffer y = FloatBuffer.allocate(ySamples * yCols);
+        if (version == 1) {
+            // La versión 1 escribía floats big-endian de uno en uno
+            try {
+                while (x.hasRemaining()) x.put(in.readFloat());
+                while (y.hasRemaining()) y.put(in.readFloat());
+            } catch (EOFException ignored) {}
+        } else {
+            readLittleEndian(in, x);
+            readLittleEndian(in, y);
+        }
+        return new TrainingCache(x.clear(), y.clear(), xSamples, seqLen, features, yCols);
+    }
 
-            for (int i = 0; i < ySamples; i++) {
-                float[] row = y[i];
-                for (int j = 0; j < yCols; j++) {
-                    row[j] = in.readFloat();
-                }
-            }
-        } catch (EOFException ignored) {}
-        return new Pair<>(X, y);
+    private static void readLittleEndian(DataInputStream in, FloatBuffer dst) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        while (dst.hasRemaining()) {
+            int bytes = Math.min(buffer.capacity(), dst.remaining() * Float.BYTES);
+            in.readFully(buffer.array(), 0, bytes);
+            buffer.clear().limit(bytes);
+            dst.put(buffer.asFloatBuffer());
+        }
     }
 
 
@@ -256,7 +370,6 @@ public class IOdata {
         try {
             // Crear instancia del modelo
             Model model = Model.newInstance(Main.NAME_MODEL, device, "PyTorch");
-            VestaEngine.setRootManager(model.getNDManager());
             // Asignar la arquitectura (IMPORTANTE)
             model.setBlock(VestaEngine.getSequentialBlock());
 
@@ -292,6 +405,100 @@ public class IOdata {
         Vesta.info("✅ Modelo guardado en: " + modelDir);
     }
 
+    /**
+     * Guarda los pesos {@code int8} de {@code store} junto al modelo, como {@code <nombre>.int8}
+     */
+    public static void saveQuantizedModel(Model model, Int8ParameterStore store) throws IOException {
+        Path file = quantizedModelFile(model.getName());
+        Files.createDirectories(file.getParent());
+        writeQuantizedModel(file, store);
+        Vesta.info("✅ Modelo int8 guardado en: " + file);
+    }
+
+    /**
+     * Carga los pesos {@code int8} del modelo ya cargado con {@link #loadModel(Device)}; los parámetros que no se
+     * cuantizan (LayerNorm, etc.) siguen saliendo del checkpoint {@code FLOAT32}.
+     */
+    public static Int8ParameterStore loadQuantizedModel(Model model) throws IOException {
+        Path file = quantizedModelFile(model.getName());
+        if (!Files.exists(file)) throw new FileNotFoundException("Modelo int8 no encontrado: " + file);
+        Int8ParameterStore store = readQuantizedModel(file, model.getBlock(), model.getNDManager());
+        Vesta.info("✅ Modelo int8 cargado: %d capas", store.getWeights().size());
+        return store;
+    }
+
+    /**
+     * Archivo de los pesos {@code int8} de un modelo, en el directorio del checkpoint: {@code models/<nombre>/<nombre>.int8}
+     */
+    public static Path quantizedModelFile(String modelName) {
+        return MODEL_DIR.resolve(modelName).resolve(modelName + ".int8");
+    }
+
+    /**
+     * Cabecera de tres {@code int} (magic, versión, capas) y por capa: entradas, salidas, si tiene bias, las escalas,
+     * el bias y los pesos {@code [salidas, entradas]} por filas.
+     */
+    public static void writeQuantizedModel(Path file, Int8ParameterStore store) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)))) {
+            out.writeInt(INT8_MODEL_MAGIC);
+            out.writeInt(INT8_MODEL_VERSION);
+            out.writeInt(store.getWeights().size());
+            for (Int8Weights weights : store.getWeights().values()) {
+                float[] bias = weights.getBias();
+                out.writeInt(weights.getInputs());
+                out.writeInt(weights.getOutputs());
+                out.writeBoolean(bias != null);
+                for (float scale : weights.getScales()) out.writeFloat(scale);
+                if (bias != null) {
+                    for (float b : bias) out.writeFloat(b);
+                }
+                out.write(weights.getQuantized());
+            }
+        }
+    }
+
+    /**
+     * @param block bloque con la misma arquitectura con la que se guardó
+     */
+    public static Int8ParameterStore readQuantizedModel(Path file, Block block, NDManager manager) throws IOException {
+        List<QuantizableLinear> layers = Int8ParameterStore.layers(block);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != INT8_MODEL_MAGIC) {
+                throw new IOException("Modelo int8 invalido: " + file);
+            }
+            int version = in.readInt();
+            if (version != INT8_MODEL_VERSION) {
+                throw new IOException("Modelo int8 version invalida: " + version);
+            }
+            int count = in.readInt();
+            if (count != layers.size()) {
+                throw new IOException("El modelo int8 tiene " + count + " capas y la arquitectura " + layers.size());
+            }
+            Map<QuantizableLinear, Int8Weights> weights = new LinkedHashMap<>();
+            for (QuantizableLinear layer : layers) {
+                int inputs = in.readInt();
+                int outputs = in.readInt();
+                Shape shape = layer.getParameters().get("weight").getArray().getShape();
+                if (shape.get(0) != outputs || shape.get(1) != inputs) {
+                    throw new IOException("Capa int8 [" + outputs + ", " + inputs + "] no coincide con " + shape);
+                }
+                boolean hasBias = in.readBoolean();
+                float[] scales = new float[outputs];
+                for (int o = 0; o < outputs; o++) scales[o] = in.readFloat();
+                float[] bias = null;
+                if (hasBias) {
+                    bias = new float[outputs];
+                    for (int o = 0; o < outputs; o++) bias[o] = in.readFloat();
+                }
+                byte[] quantized = new byte[inputs * outputs];
+                in.readFully(quantized);
+                weights.put(layer, new Int8Weights(inputs, outputs, quantized, scales, bias));
+            }
+            return new Int8ParameterStore(manager, weights);
+        }
+    }
+
     /**
      * Guardar propiedades del modelo
      */
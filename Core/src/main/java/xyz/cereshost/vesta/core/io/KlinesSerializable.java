@@ -6,6 +6,7 @@ import xyz.cereshost.vesta.core.market.Volumen;
 import xyz.cereshost.vesta.core.market.Candle;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 public class KlinesSerializable implements ParseSerializable<Candle> {
@@ -13,31 +14,66 @@ public class KlinesSerializable implements ParseSerializable<Candle> {
     private static final int META_MAGIC_TIME_UNIT = 0x54554D31; // "TUM1"
     private TimeFrameMarket timeFrameMarket = null;
 
+    private final BinCodec.TimeDelta timeDelta = new BinCodec.TimeDelta();
+    private double previousClose;
+    private double previousQuoteVolume;
+    private double previousBaseVolume;
+    private double previousTakerBuyQuoteVolume;
+    private int version = IOMarket.BIN_VERSION;
+
     @Override
     public void writeMetaDataBin(DataOutput out, @NotNull Candle source) throws IOException {
         TimeFrameMarket sourceTimeUnit = source.getTimeUnit();
         out.writeInt(META_MAGIC_TIME_UNIT);
         out.writeInt(sourceTimeUnit.ordinal());
+        resetCodec();
     }
 
     @Override
     public void writeBin(DataOutput out, Candle candle) throws IOException {
+        // El open se compara con el cierre anterior y high/low/close con el open de la misma vela.
+        // Los campos derivados del volumen no se guardan, se recalculan al leer
         Volumen vol = candle.getVolumen();
-        out.writeLong(candle.getOpenTime());
-        out.writeDouble(candle.getOpen());
-        out.writeDouble(candle.getHigh());
-        out.writeDouble(candle.getLow());
-        out.writeDouble(candle.getClose());
-        out.writeDouble(vol.quoteVolume());
-        out.writeDouble(vol.baseVolume());
-        out.writeDouble(vol.takerBuyQuoteVolume());
-        out.writeDouble(vol.sellQuoteVolume());
-        out.writeDouble(vol.deltaUSDT());
-        out.writeDouble(vol.buyRatio());
+        BinCodec.writeVarLong(out, timeDelta.encode(candle.getOpenTime()));
+        BinCodec.writeDecimal(out, candle.getOpen(), previousClose);
+        BinCodec.writeDecimal(out, candle.getHigh(), candle.getOpen());
+        BinCodec.writeDecimal(out, candle.getLow(), candle.getOpen());
+        BinCodec.writeDecimal(out, candle.getClose(), candle.getOpen());
+        BinCodec.writeDecimal(out, vol.quoteVolume(), previousQuoteVolume);
+        BinCodec.writeDecimal(out, vol.baseVolume(), previousBaseVolume);
+        BinCodec.writeDecimal(out, vol.takerBuyQuoteVolume(), previousTakerBuyQuoteVolume);
+        previousClose = candle.getClose();
+        previousQuoteVolume = vol.quoteVolume();
+        previousBaseVolume = vol.baseVolume();
+        previousTakerBuyQuoteVolume = vol.takerBuyQuoteVolume();
     }
 
     @Override
     public Candle readBin(DataInputStream in) throws IOException {
+        if (version == 1) {
+            return readBinLegacy(in);
+        }
+        long openTime = timeDelta.decode(BinCodec.readVarLong(in));
+        double open = BinCodec.readDecimal(in, previousClose);
+        double high = BinCodec.readDecimal(in, open);
+        double low = BinCodec.readDecimal(in, open);
+        double close = BinCodec.readDecimal(in, open);
+        previousClose = close;
+        previousQuoteVolume = BinCodec.readDecimal(in, previousQuoteVolume);
+        previousBaseVolume = BinCodec.readDecimal(in, previousBaseVolume);
+        previousTakerBuyQuoteVolume = BinCodec.readDecimal(in, previousTakerBuyQuoteVolume);
+        return new Candle(
+                Objects.requireNonNull(timeFrameMarket),
+                openTime,
+                open,
+                high,
+                low,
+                close,
+                buildVolumen(previousQuoteVolume, previousBaseVolume, previousTakerBuyQuoteVolume)
+        );
+    }
+
+    private @NotNull Candle readBinLegacy(@NotNull DataInputStream in) throws IOException {
         long openTime = in.readLong();
         double open = in.readDouble();
         double high = in.readDouble();
@@ -62,7 +98,9 @@ public class KlinesSerializable implements ParseSerializable<Candle> {
     }
 
     @Override
-    public void readMetaDataBin(DataInputStream in) throws IOException {
+    public void readMetaDataBin(DataInputStream in, int version) throws IOException {
+        this.version = version;
+        resetCodec();
         if (!in.markSupported()) {
             return;
         }
@@ -81,30 +119,93 @@ public class KlinesSerializable implements ParseSerializable<Candle> {
         }
     }
 
+    private void resetCodec() {
+        timeDelta.reset();
+        previousClose = 0;
+        previousQuoteVolume = 0;
+        previousBaseVolume = 0;
+        previousTakerBuyQuoteVolume = 0;
+    }
+
     @Override
     public int getMagic() {
         return 0x4B4C4E31;
     }
 
     @Override
-    public Candle parseLine(String line) {
-        String[] p = line.split(",");
-        double quoteVolume = Double.parseDouble(p[7]);
-        double takerBuyQuoteVolume = Double.parseDouble(p[10]);
+    public int getRecordWidth() {
+        return Double.BYTES * 7;
+    }
+
+    @Override
+    public long timeOf(Candle source) {
+        return source.getOpenTime();
+    }
+
+    @Override
+    public int getMappedMeta(@NotNull Candle source) {
+        return source.getTimeUnit().ordinal();
+    }
+
+    @Override
+    public void readMappedMeta(int meta) {
+        TimeFrameMarket[] values = TimeFrameMarket.values();
+        if (meta >= 0 && meta < values.length) {
+            timeFrameMarket = values[meta];
+        }
+    }
+
+    @Override
+    public void writeRecord(ByteBuffer out, Candle candle) {
+        // Los campos derivados del volumen se recalculan al leer
+        Volumen vol = candle.getVolumen();
+        out.putDouble(candle.getOpen());
+        out.putDouble(candle.getHigh());
+        out.putDouble(candle.getLow());
+        out.putDouble(candle.getClose());
+        out.putDouble(vol.quoteVolume());
+        out.putDouble(vol.baseVolume());
+        out.putDouble(vol.takerBuyQuoteVolume());
+    }
 
-        long openTime = Long.parseLong(p[0]);
-        long closeTime = Long.parseLong(p[6]);
+    @Override
+    public Candle readRecord(ByteBuffer in, int offset, long time) {
+        double quoteVolume = in.getDouble(offset + 32);
+        double takerBuyQuoteVolume = in.getDouble(offset + 48);
+        return new Candle(
+                Objects.requireNonNull(timeFrameMarket),
+                time,
+                in.getDouble(offset),
+                in.getDouble(offset + 8),
+                in.getDouble(offset + 16),
+                in.getDouble(offset + 24),
+                buildVolumen(quoteVolume, in.getDouble(offset + 40), takerBuyQuoteVolume)
+        );
+    }
+
+    @Override
+    public Candle parseRow(CsvTokenizer row) {
+        double quoteVolume = row.getDouble(7);
+        double takerBuyQuoteVolume = row.getDouble(10);
+
+        long openTime = row.getLong(0);
+        long closeTime = row.getLong(6);
         return new Candle(
                 TimeFrameMarket.parse(openTime, closeTime),
                 openTime, // Open time
-                Double.parseDouble(p[1]), // Open
-                Double.parseDouble(p[2]), // High
-                Double.parseDouble(p[3]), // Low
-                Double.parseDouble(p[4]), // Close
-                new Volumen(quoteVolume, Double.parseDouble(p[5]), takerBuyQuoteVolume,
-                        quoteVolume - takerBuyQuoteVolume,
-                        takerBuyQuoteVolume - (quoteVolume - takerBuyQuoteVolume),
-                        (quoteVolume == 0) ? 0 : takerBuyQuoteVolume / quoteVolume)
+                row.getDouble(1), // Open
+                row.getDouble(2), // High
+                row.getDouble(3), // Low
+                row.getDouble(4), // Close
+                buildVolumen(quoteVolume, row.getDouble(5), takerBuyQuoteVolume)
         );
     }
+
+    static @NotNull Volumen buildVolumen(double quoteVolume, double baseVolume, double takerBuyQuoteVolume) {
+        double sellQuoteVolume = quoteVolume - takerBuyQuoteVolume;
+        return new Volumen(quoteVolume, baseVolume, takerBuyQuoteVolume,
+                sellQuoteVolume,
+                takerBuyQuoteVolume - sellQuoteVolume,
+                (quoteVolume == 0) ? 0 : takerBuyQuoteVolume / quoteVolume);
+    }
 }
@@ -0,0 +1,202 @@
+package xyz.cereshost.vesta.core.io;
+
+import lombok.Getter;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Archivo de mercado sin comprimir con registros de ancho fijo, leído con {@link FileChannel#map}.
+ * <p>
+ * Estructura (little endian):
+ * <pre>
+ *  int magic | int version | int recordWidth | int meta
+ *  long count | long minTime | long maxTime
+ *  int indexStride | int indexCount | long[indexCount] índice disperso
+ *  registros: long time + payload del {@link IOMarket.SerializableMapped}
+ * </pre>
+ * El índice guarda el tiempo de cada {@code indexStride} registros, por lo que buscar
+ * una ventana son dos búsquedas binarias sin deserializar nada.
+ */
+@Getter
+public final class MappedMarketFile {
+
+    static final int MAPPED_VERSION = 1;
+    private static final int HEADER_BYTES = 48;
+    private static final int INDEX_STRIDE = 4_096;
+
+    private final int magic;
+    private final int recordWidth;
+    private final int meta;
+    private final int count;
+    private final long minTime;
+    private final long maxTime;
+    private final int indexStride;
+    private final long[] index;
+    private final int dataOffset;
+    private final ByteBuffer buffer;
+
+    private MappedMarketFile(@NotNull ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        this.magic = buffer.getInt(0);
+        int version = buffer.getInt(4);
+        if (version != MAPPED_VERSION) {
+            throw new IOException("Version de archivo mapeado no soportada: " + version);
+        }
+        this.recordWidth = buffer.getInt(8);
+        this.meta = buffer.getInt(12);
+        this.count = Math.toIntExact(buffer.getLong(16));
+        this.minTime = buffer.getLong(24);
+        this.maxTime = buffer.getLong(32);
+        this.indexStride = buffer.getInt(40);
+        int indexCount = buffer.getInt(44);
+        this.index = new long[indexCount];
+        for (int i = 0; i < indexCount; i++) {
+            index[i] = buffer.getLong(HEADER_BYTES + i * Long.BYTES);
+        }
+        this.dataOffset = HEADER_BYTES + indexCount * Long.BYTES;
+        if ((long) dataOffset + (long) count * recordWidth > buffer.capacity()) {
+            throw new IOException("Archivo mapeado truncado");
+        }
+    }
+
+    @Contract("_, _ -> new")
+    public static <T> @NotNull MappedMarketFile open(@NotNull File file, @NotNull IOMarket.SerializableMapped<T> serializable) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archivo mapeado demasiado grande: " + file);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        MappedMarketFile store = new MappedMarketFile(mapped);
+        if (store.magic != serializable.getMagic() || store.recordWidth != Long.BYTES + serializable.getRecordWidth()) {
+            throw new IOException("El archivo mapeado no corresponde al tipo esperado: " + file);
+        }
+        serializable.readMappedMeta(store.meta);
+        return store;
+    }
+
+    /**
+     * Escribe los registros (ya ordenados por tiempo) de forma atómica.
+     */
+    public static <T> void write(@NotNull File file, @NotNull IOMarket.SerializableMapped<T> serializable, @NotNull Collection<T> sources) throws IOException {
+        int recordWidth = Long.BYTES + serializable.getRecordWidth();
+        int count = sources.size();
+        int indexCount = (count + INDEX_STRIDE - 1) / INDEX_STRIDE;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + indexCount * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.position(HEADER_BYTES);
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        int meta = 0;
+        int i = 0;
+        for (T source : sources) {
+            long time = serializable.timeOf(source);
+            if (i == 0) meta = serializable.getMappedMeta(source);
+            if (i % INDEX_STRIDE == 0) header.putLong(time);
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+            i++;
+        }
+        header.putInt(0, serializable.getMagic());
+        header.putInt(4, MAPPED_VERSION);
+        header.putInt(8, recordWidth);
+        header.putInt(12, meta);
+        header.putLong(16, count);
+        header.putLong(24, count == 0 ? 0 : minTime);
+        header.putLong(32, count == 0 ? 0 : maxTime);
+        header.putInt(40, INDEX_STRIDE);
+        header.putInt(44, indexCount);
+        header.flip();
+
+        Path parent = file.getParentFile() == null ? Path.of(".") : file.getParentFile().toPath();
+        Path temp = Files.createTempFile(parent, file.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, header);
+                ByteBuffer chunk = ByteBuffer.allocateDirect(recordWidth * INDEX_STRIDE).order(ByteOrder.LITTLE_ENDIAN);
+                for (T source : sources) {
+                    if (chunk.remaining() < recordWidth) {
+                        chunk.flip();
+                        writeFully(channel, chunk);
+                        chunk.clear();
+                    }
+                    chunk.putLong(serializable.timeOf(source));
+                    serializable.writeRecord(chunk, source);
+                }
+                chunk.flip();
+                writeFully(channel, chunk);
+            }
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public int recordOffset(int index) {
+        return dataOffset + index * recordWidth;
+    }
+
+    public long getTime(int index) {
+        return buffer.getLong(recordOffset(index));
+    }
+
+    /**
+     * Primer registro con tiempo mayor o igual a {@code target}.
+     */
+    public int lowerBound(long target) {
+        if (count == 0 || target <= minTime) return 0;
+        if (target > maxTime) return count;
+        // Bloque del índice disperso: último cuyo primer tiempo es menor que target
+        int lo = 0, hi = index.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index[mid] < target) lo = mid + 1;
+            else hi = mid;
+        }
+        int block = Math.max(0, lo - 1);
+        int from = block * indexStride;
+        int to = Math.min(count, from + indexStride);
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (getTime(mid) < target) from = mid + 1;
+            else to = mid;
+        }
+        return from;
+    }
+
+    /**
+     * Lee los registros en {@code [startTime, endTime)}.
+     */
+    public <T> @NotNull List<T> read(@NotNull IOMarket.SerializableMapped<T> serializable, long startTime, long endTime) {
+        int from = lowerBound(startTime);
+        int to = Math.max(from, lowerBound(endTime));
+        List<T> list = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int offset = recordOffset(i);
+            list.add(serializable.readRecord(buffer, offset + Long.BYTES, buffer.getLong(offset)));
+        }
+        return list;
+    }
+
+    private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
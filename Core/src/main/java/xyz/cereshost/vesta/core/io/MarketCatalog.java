@@ -0,0 +1,327 @@
+package xyz.cereshost.vesta.core.io;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.cereshost.vesta.common.Vesta;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Catálogo en disco de los días disponibles para un símbolo y tipo de dato. Por cada día guarda
+ * el archivo, su formato, el número de registros, el rango de tiempo, el tamaño y la fecha del archivo y un
+ * checksum, para poder planificar cargas sin consultar el sistema de archivos día a día. El checksum solo se
+ * vuelve a calcular si el tamaño o la fecha ya no coinciden (ver {@link #verify(DayEntry, File)}).
+ * <p>
+ * Cada cambio se añade al final del archivo, así que catalogar un día no cuesta más cuanto más días haya. Al cargar,
+ * si hay muchas entradas pisadas o la última quedó a medias, el archivo se reescribe completo en un temporal y se
+ * mueve de forma atómica.
+ */
+public class MarketCatalog {
+
+    private static final int CATALOG_MAGIC = 0x43415431; // "CAT1"
+    private static final int CATALOG_VERSION = 3;
+    /**
+     * Marca de día borrado en lugar del formato
+     */
+    private static final int REMOVED = 0xFF;
+    private static final ConcurrentHashMap<Path, MarketCatalog> CATALOGS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final TreeMap<LocalDate, EnumMap<Format, DayEntry>> days = new TreeMap<>();
+
+    private MarketCatalog(@NotNull Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Devuelve el catálogo de {@code file}, cargándolo la primera vez. Hay una sola instancia por archivo.
+     */
+    public static @NotNull MarketCatalog of(@NotNull File file) {
+        return CATALOGS.computeIfAbsent(file.toPath().toAbsolutePath().normalize(), path -> load(path.toFile()));
+    }
+
+    /**
+     * Lee el catálogo desde disco sin pasar por la instancia compartida.
+     */
+    public static @NotNull MarketCatalog load(@NotNull File file) {
+        MarketCatalog catalog = new MarketCatalog(file.toPath().toAbsolutePath().normalize());
+        catalog.read();
+        return catalog;
+    }
+
+    public synchronized @Nullable DayEntry get(@NotNull LocalDate date, @NotNull Format format) {
+        EnumMap<Format, DayEntry> entries = days.get(date);
+        return entries == null ? null : entries.get(format);
+    }
+
+    /**
+     * Entrada del binario de origen del día ({@code .bin} antes que {@code .bin.zst}).
+     */
+    public synchronized @Nullable DayEntry get(@NotNull LocalDate date) {
+        EnumMap<Format, DayEntry> entries = days.get(date);
+        if (entries == null) {
+            return null;
+        }
+        DayEntry raw = entries.get(Format.BIN);
+        return raw != null ? raw : entries.get(Format.BIN_ZST);
+    }
+
+    public synchronized void put(@NotNull DayEntry entry) throws IOException {
+        days.computeIfAbsent(entry.date(), k -> new EnumMap<>(Format.class)).put(entry.format(), entry);
+        append(out -> writeEntry(out, entry));
+    }
+
+    public synchronized void remove(@NotNull LocalDate date) throws IOException {
+        if (days.remove(date) != null) {
+            append(out -> writeRemoved(out, date, REMOVED));
+        }
+    }
+
+    /**
+     * Quita solo la entrada de {@code format}, por ejemplo cuando su archivo ya no está en disco.
+     */
+    public synchronized void remove(@NotNull LocalDate date, @NotNull Format format) throws IOException {
+        EnumMap<Format, DayEntry> entries = days.get(date);
+        if (entries == null || entries.remove(format) == null) {
+            return;
+        }
+        if (entries.isEmpty()) {
+            days.remove(date);
+        }
+        append(out -> writeRemoved(out, date, format.ordinal() | 0x80));
+    }
+
+    /**
+     * Indica si {@code file} sigue siendo el archivo de {@code entry}. Si el tamaño y la fecha coinciden no se lee;
+     * si cambiaron se compara el checksum y, si es el mismo contenido, se guardan el tamaño y la fecha nuevos.
+     */
+    public synchronized boolean verify(@NotNull DayEntry entry, @NotNull File file) throws IOException {
+        long size = file.length();
+        long modified = file.lastModified();
+        if (size == entry.size() && modified == entry.modified()) {
+            return true;
+        }
+        if (!file.exists() || checksum(file) != entry.checksum()) {
+            return false;
+        }
+        put(new DayEntry(entry.date(), entry.fileName(), entry.format(), entry.records(), entry.minTime(), entry.maxTime(),
+                size, modified, entry.checksum()));
+        return true;
+    }
+
+    /**
+     * Días de {@code [from, to]} sin binario de origen en el catálogo.
+     */
+    public synchronized @NotNull List<LocalDate> findMissingDays(@NotNull LocalDate from, @NotNull LocalDate to) {
+        List<LocalDate> missing = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (get(date) == null) {
+                missing.add(date);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Indica si el día puede tener datos en {@code [fromTime, toTime)}. Los días que no están
+     * en el catálogo se consideran candidatos.
+     */
+    public synchronized boolean mayOverlap(@NotNull LocalDate date, long fromTime, long toTime) {
+        DayEntry entry = get(date);
+        if (entry == null || entry.records() == 0) {
+            return entry == null;
+        }
+        return entry.minTime() < toTime && entry.maxTime() >= fromTime;
+    }
+
+    public synchronized int size() {
+        return days.size();
+    }
+
+    private void read() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        int records = 0;
+        boolean compact;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != CATALOG_MAGIC || in.readInt() != CATALOG_VERSION) {
+                // Las versiones anteriores no guardaban tamaño ni fecha; los días se vuelven a catalogar al cargarlos
+                // y el archivo se reescribe para no añadir entradas detrás de otra cabecera
+                Vesta.info("Catalogo con formato desconocido, se reconstruye: " + file);
+                compact = true;
+            } else {
+                int kind;
+                while ((kind = in.read()) != -1) {
+                    records++;
+                    readRecord(in, kind);
+                }
+                compact = records > 2 * days.values().stream().mapToInt(Map::size).sum() + 16;
+            }
+        } catch (EOFException e) {
+            // Un cambio que no se terminó de escribir; los anteriores siguen valiendo
+            Vesta.info("Catalogo con la ultima entrada a medias, se descarta: " + file);
+            compact = true;
+        } catch (IOException | RuntimeException e) {
+            Vesta.info("Catalogo corrupto, se reconstruye: " + file + " (" + e.getMessage() + ")");
+            days.clear();
+            compact = true;
+        }
+        if (compact) {
+            try {
+                save();
+            } catch (IOException e) {
+                Vesta.info("No se pudo compactar el catalogo: " + e.getMessage());
+            }
+        }
+    }
+
+    private void readRecord(@NotNull DataInputStream in, int kind) throws IOException {
+        LocalDate date = LocalDate.ofEpochDay(in.readInt());
+        if (kind == REMOVED) {
+            days.remove(date);
+        } else if ((kind & 0x80) != 0) {
+            EnumMap<Format, DayEntry> entries = days.get(date);
+            if (entries != null && entries.remove(Format.values()[kind & 0x7F]) != null && entries.isEmpty()) {
+                days.remove(date);
+            }
+        } else {
+            readEntry(in, date, kind);
+        }
+    }
+
+    private void readEntry(@NotNull DataInputStream in, @NotNull LocalDate date, int format) throws IOException {
+        DayEntry entry = new DayEntry(
+                date,
+                in.readUTF(),
+                Format.values()[format],
+                in.readLong(),
+                in.readLong(),
+                in.readLong(),
+                in.readLong(),
+                in.readLong(),
+                in.readLong()
+        );
+        days.computeIfAbsent(entry.date(), k -> new EnumMap<>(Format.class)).put(entry.format(), entry);
+    }
+
+    private void append(@NotNull EntryWriter writer) throws IOException {
+        if (!Files.exists(file)) {
+            save();
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)))) {
+            writer.write(out);
+        }
+    }
+
+    private void save() throws IOException {
+        Path parent = file.getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(CATALOG_MAGIC);
+                out.writeInt(CATALOG_VERSION);
+                for (EnumMap<Format, DayEntry> entries : days.values()) {
+                    for (DayEntry entry : entries.values()) {
+                        writeEntry(out, entry);
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeEntry(@NotNull DataOutputStream out, @NotNull DayEntry entry) throws IOException {
+        out.writeByte(entry.format().ordinal());
+        out.writeInt((int) entry.date().toEpochDay());
+        out.writeUTF(entry.fileName());
+        out.writeLong(entry.records());
+        out.writeLong(entry.minTime());
+        out.writeLong(entry.maxTime());
+        out.writeLong(entry.size());
+        out.writeLong(entry.modified());
+        out.writeLong(entry.checksum());
+    }
+
+    private static void writeRemoved(@NotNull DataOutputStream out, @NotNull LocalDate date, int kind) throws IOException {
+        out.writeByte(kind);
+        out.writeInt((int) date.toEpochDay());
+    }
+
+    @FunctionalInterface
+    private interface EntryWriter {
+        void write(@NotNull DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * CRC32C del contenido del archivo tal como está en disco.
+     */
+    public static long checksum(@NotNull File file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    public enum Format {
+        BIN,
+        BIN_ZST,
+        MBIN
+    }
+
+    /**
+     * @param fileName ruta relativa a la carpeta del catálogo
+     * @param size     tamaño del archivo al catalogarlo
+     * @param modified {@link File#lastModified()} al catalogarlo
+     */
+    public record DayEntry(LocalDate date, String fileName, Format format, long records, long minTime, long maxTime,
+                           long size, long modified, long checksum) {
+
+        /**
+         * Entrada de {@code file} tal como está ahora en disco
+         */
+        public static @NotNull DayEntry of(@NotNull LocalDate date, @NotNull String fileName, @NotNull Format format,
+                                           long records, long minTime, long maxTime, @NotNull File file) throws IOException {
+            return new DayEntry(date, fileName, format, records, minTime, maxTime, file.length(), file.lastModified(), MarketCatalog.checksum(file));
+        }
+    }
+
+    /**
+     * Acumula registros y rango de tiempo mientras se escribe un archivo.
+     */
+    public static final class Stats {
+        private long records;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+
+        public void accept(long time) {
+            records++;
+            if (time < minTime) minTime = time;
+            if (time > maxTime) maxTime = time;
+        }
+
+        public @NotNull DayEntry toEntry(@NotNull LocalDate date, @NotNull String fileName, @NotNull Format format, @NotNull File file) throws IOException {
+            return DayEntry.of(date, fileName, format, records,
+                    records == 0 ? 0 : minTime,
+                    records == 0 ? 0 : maxTime,
+                    file);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package xyz.cereshost.vesta.core.io;
+
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.common.Vesta;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Descargas de archivos de data.binance.vision con {@link HttpClient} asíncrono.
+ * <ul>
+ *     <li>Como mucho {@code maxConcurrent} peticiones en vuelo, el resto espera sin ocupar hilos.</li>
+ *     <li>Dos peticiones del mismo archivo comparten la misma descarga.</li>
+ *     <li>Los archivos a medias ({@code .part}) se reanudan con {@code Range}.</li>
+ *     <li>Se verifica el SHA-256 publicado en {@code .CHECKSUM} antes de mover el archivo a su sitio.</li>
+ * </ul>
+ */
+public class MarketDownloader {
+
+    public static final URI BINANCE_VISION = URI.create("https://data.binance.vision/");
+    private static final String EXT_PART = ".part";
+    private static final String EXT_CHECKSUM = ".CHECKSUM";
+    private static final long RETRY_BACKOFF_MS = 1_000;
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final Executor executor;
+    private final int maxAttempts;
+    private final ConcurrentHashMap<Path, CompletableFuture<File>> inFlight = new ConcurrentHashMap<>();
+    private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private int permits;
+
+    public MarketDownloader(@NotNull URI baseUri, int maxConcurrent, int maxAttempts, @NotNull Executor executor) {
+        this.baseUri = baseUri;
+        this.executor = executor;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.permits = Math.max(1, maxConcurrent);
+        this.client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(15))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * Descarga {@code path} (relativo a la URL base) en {@code target}. Si ya hay una descarga
+     * en curso para el mismo archivo se devuelve esa.
+     */
+    public @NotNull CompletableFuture<File> download(@NotNull String path, @NotNull File target) {
+        if (target.exists() && target.length() > 0) {
+            return CompletableFuture.completedFuture(target);
+        }
+        Path key = target.toPath().toAbsolutePath().normalize();
+        CompletableFuture<File> promise = new CompletableFuture<>();
+        CompletableFuture<File> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            return existing;
+        }
+        attempt(baseUri.resolve(path), target, 1).whenComplete((file, error) -> {
+            inFlight.remove(key, promise);
+            if (error != null) {
+                promise.completeExceptionally(unwrap(error));
+            } else {
+                promise.complete(file);
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Igual que {@link #download} pero bloquea hasta terminar.
+     */
+    public @NotNull File downloadBlocking(@NotNull String path, @NotNull File target) throws IOException {
+        try {
+            return download(path, target).join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Fallo al descargar " + path, cause);
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    private @NotNull CompletableFuture<File> attempt(@NotNull URI uri, @NotNull File target, int attempt) {
+        return fetch(uri, target).handle((file, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(file);
+            }
+            Throwable cause = unwrap(error);
+            if (cause instanceof FileNotFoundException || attempt >= maxAttempts) {
+                return CompletableFuture.<File>failedFuture(cause);
+            }
+            Vesta.info("🔁 Reintentando descarga (%d/%d) %s: %s", attempt + 1, maxAttempts, uri, cause.getMessage());
+            Executor delayed = CompletableFuture.delayedExecutor(RETRY_BACKOFF_MS * attempt, TimeUnit.MILLISECONDS, executor);
+            return CompletableFuture.supplyAsync(() -> null, delayed)
+                    .thenCompose(ignored -> attempt(uri, target, attempt + 1));
+        }).thenCompose(future -> future);
+    }
+
+    private @NotNull CompletableFuture<File> fetch(@NotNull URI uri, @NotNull File target) {
+        Path part = new File(target.getParentFile(), target.getName() + EXT_PART).toPath();
+        long offset = part.toFile().length();
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(Duration.ofMinutes(5)).GET();
+        if (offset > 0) {
+            request.header("Range", "bytes=" + offset + "-");
+        }
+        return withPermit(() -> client.sendAsync(request.build(), info -> switch (info.statusCode()) {
+            case 206 -> HttpResponse.BodySubscribers.ofFile(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            case 200 -> HttpResponse.BodySubscribers.ofFile(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            default -> HttpResponse.BodySubscribers.replacing(part);
+        })).thenCompose(response -> switch (response.statusCode()) {
+            // 416: el .part ya estaba completo
+            case 200, 206, 416 -> fetchChecksum(uri).thenApplyAsync(expected -> {
+                try {
+                    verifyAndMove(part, target, expected);
+                    return target;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+            case 404 -> CompletableFuture.failedFuture(new FileNotFoundException("No existe en el servidor: " + uri));
+            default -> CompletableFuture.failedFuture(new IOException("HTTP " + response.statusCode() + " al descargar " + uri));
+        });
+    }
+
+    /**
+     * Devuelve el hash publicado o {@code null} si el servidor no tiene {@code .CHECKSUM}.
+     */
+    private @NotNull CompletableFuture<String> fetchChecksum(@NotNull URI uri) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri + EXT_CHECKSUM)).timeout(Duration.ofMinutes(1)).GET().build();
+        return withPermit(() -> client.sendAsync(request, HttpResponse.BodyHandlers.ofString()))
+                .thenApply(response -> {
+                    if (response.statusCode() != 200 || response.body().isBlank()) {
+                        return null;
+                    }
+                    // Formato sha256sum: "<hash>  <nombre>"
+                    return response.body().trim().split("\\s+")[0].toLowerCase(Locale.ROOT);
+                });
+    }
+
+    private static void verifyAndMove(@NotNull Path part, @NotNull File target, String expected) throws IOException {
+        if (!Files.exists(part)) {
+            throw new IOException("Descarga vacia: " + part);
+        }
+        if (expected != null) {
+            String actual = sha256(part);
+            if (!actual.equals(expected)) {
+                Files.deleteIfExists(part);
+                throw new IOException("Checksum invalido para " + target.getName() + " (esperado " + expected + ", obtenido " + actual + ")");
+            }
+        }
+        Files.move(part, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static @NotNull String sha256(@NotNull Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <R> @NotNull CompletableFuture<R> withPermit(@NotNull Supplier<CompletableFuture<R>> request) {
+        return acquire().thenCompose(ignored -> request.get()).whenComplete((result, error) -> release());
+    }
+
+    private synchronized @NotNull CompletableFuture<Void> acquire() {
+        if (permits > 0) {
+            permits--;
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> ticket = new CompletableFuture<>();
+        waiting.addLast(ticket);
+        return ticket;
+    }
+
+    private void release() {
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            next = waiting.pollFirst();
+            if (next == null) {
+                permits++;
+            }
+        }
+        if (next != null) {
+            next.completeAsync(() -> null, executor);
+        }
+    }
+
+    private static @NotNull Throwable unwrap(@NotNull Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
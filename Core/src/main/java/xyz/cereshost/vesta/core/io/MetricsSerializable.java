@@ -6,30 +6,59 @@ import xyz.cereshost.vesta.core.market.Metric;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class MetricsSerializable implements ParseSerializable<Metric> {
 
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final BinCodec.TimeDelta timeDelta = new BinCodec.TimeDelta();
+    private final double[] previous = new double[4];
+    private int version = IOMarket.BIN_VERSION;
 
     @Override
     public void writeMetaDataBin(DataOutput out, @NotNull Metric source) throws IOException {
-
+        resetCodec();
     }
 
     @Override
     public void writeBin(DataOutput out, Metric source) throws IOException {
-        out.writeLong(source.getOpenTime());
-        out.writeDouble(source.getSumOpenInterest());
-        out.writeDouble(source.getSumOpenInterestValue());
-        out.writeDouble(source.getCountTopTradesLongShortRatio());
-        out.writeDouble(source.getCountTradesLongShortRatio());
+        BinCodec.writeVarLong(out, timeDelta.encode(source.getOpenTime()));
+        writeField(out, 0, source.getSumOpenInterest());
+        writeField(out, 1, source.getSumOpenInterestValue());
+        writeField(out, 2, source.getCountTopTradesLongShortRatio());
+        writeField(out, 3, source.getCountTradesLongShortRatio());
     }
 
     @Override
     public Metric readBin(DataInputStream in) throws IOException {
+        if (version == 1) {
+            return readBinLegacy(in);
+        }
+        long createTime = timeDelta.decode(BinCodec.readVarLong(in));
+        return new Metric(
+                createTime,
+                readField(in, 0),
+                readField(in, 1),
+                readField(in, 2),
+                readField(in, 3)
+        );
+    }
+
+    private void writeField(DataOutput out, int field, double value) throws IOException {
+        BinCodec.writeDecimal(out, value, previous[field]);
+        previous[field] = value;
+    }
+
+    private double readField(DataInputStream in, int field) throws IOException {
+        return previous[field] = BinCodec.readDecimal(in, previous[field]);
+    }
+
+    private void resetCodec() {
+        timeDelta.reset();
+        Arrays.fill(previous, 0);
+    }
+
+    private @NotNull Metric readBinLegacy(@NotNull DataInputStream in) throws IOException {
         long createTime = in.readLong();
         double sumOpenInterest = in.readDouble();
         double sumOpenInterestValue = in.readDouble();
@@ -45,8 +74,9 @@ public class MetricsSerializable implements ParseSerializable<Metric> {
     }
 
     @Override
-    public void readMetaDataBin(DataInputStream in) throws IOException {
-
+    public void readMetaDataBin(DataInputStream in, int version) throws IOException {
+        this.version = version;
+        resetCodec();
     }
 
     @Override
@@ -55,15 +85,42 @@ public class MetricsSerializable implements ParseSerializable<Metric> {
     }
 
     @Override
-    public Metric parseLine(String line) {
-        String[] p = line.split(",");
-        long createTime = LocalDateTime.parse(p[0], DATE_FORMATTER).toInstant(ZoneOffset.UTC).toEpochMilli();
+    public int getRecordWidth() {
+        return Double.BYTES * 4;
+    }
+
+    @Override
+    public long timeOf(Metric source) {
+        return source.getOpenTime();
+    }
+
+    @Override
+    public void writeRecord(ByteBuffer out, Metric source) {
+        out.putDouble(source.getSumOpenInterest());
+        out.putDouble(source.getSumOpenInterestValue());
+        out.putDouble(source.getCountTopTradesLongShortRatio());
+        out.putDouble(source.getCountTradesLongShortRatio());
+    }
+
+    @Override
+    public Metric readRecord(ByteBuffer in, int offset, long time) {
         return new Metric(
-                createTime,
-                Double.parseDouble(p[2]),
-                Double.parseDouble(p[3]),
-                Double.parseDouble(p[4]),
-                Double.parseDouble(p[6])
+                time,
+                in.getDouble(offset),
+                in.getDouble(offset + 8),
+                in.getDouble(offset + 16),
+                in.getDouble(offset + 24)
+        );
+    }
+
+    @Override
+    public Metric parseRow(CsvTokenizer row) {
+        return new Metric(
+                row.getUtcDateTimeMillis(0),
+                row.getDouble(2),
+                row.getDouble(3),
+                row.getDouble(4),
+                row.getDouble(6)
         );
     }
 }
@@ -1,4 +1,49 @@
 package xyz.cereshost.vesta.core.io;
 
-public interface ParseSerializable<T> extends IOMarket.SerializableBin<T>, IOMarket.SerializableCSV<T> {
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.core.ia.VestaEngine;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+
+public interface ParseSerializable<T> extends IOMarket.SerializableBin<T>, IOMarket.SerializableCSV<T>, IOMarket.SerializableMapped<T> {
+
+    /**
+     * Parsea un bloque CSV. La codificación binaria depende del registro anterior, así que
+     * el bloque se parsea en paralelo pero se escribe en orden desde el hilo escritor.
+     * Los tipos con muchas filas pueden sobreescribirlo para no crear objetos.
+     */
+    default @NotNull ParsedChunk parseChunk(byte @NotNull [] chunk, int length) {
+        List<T> sources = new ArrayList<>();
+        CsvTokenizer row = new CsvTokenizer(chunk, 0, length);
+        while (row.nextRow()) {
+            T source = parseRow(row);
+            if (source != null) {
+                sources.add(source);
+            }
+        }
+        return (out, stats) -> {
+            for (T source : sources) {
+                writeBin(out, source);
+                stats.accept(timeOf(source));
+            }
+        };
+    }
+
+    /**
+     * Parsea un bloque CSV en {@link VestaEngine#EXECUTOR_AUXILIAR_BUILD}.
+     */
+    default FutureTask<ParsedChunk> submitChunkBin(byte[] chunk, int length) {
+        FutureTask<ParsedChunk> task = new FutureTask<>(() -> parseChunk(chunk, length));
+        VestaEngine.EXECUTOR_AUXILIAR_BUILD.execute(task);
+        return task;
+    }
+
+    @FunctionalInterface
+    interface ParsedChunk {
+        void writeBin(DataOutput out, MarketCatalog.Stats stats) throws IOException;
+    }
 }
@@ -2,36 +2,75 @@ package xyz.cereshost.vesta.core.io;
 
 import org.jetbrains.annotations.NotNull;
 import xyz.cereshost.vesta.core.market.Trade;
+import xyz.cereshost.vesta.core.market.TradeTape;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 public class TradeSerializable implements ParseSerializable<Trade> {
 
+    // Las cantidades de Binance tienen pocos decimales, se guardan como entero si el redondeo es exacto
+    private static final double QTY_SCALE = 10_000;
+
+    private final BinCodec.TimeDelta timeDelta = new BinCodec.TimeDelta();
+    private float previousPrice;
+    private int version = IOMarket.BIN_VERSION;
+
     @Override
     public void writeMetaDataBin(DataOutput out, @NotNull Trade source) throws IOException {
-
+        resetCodec();
     }
 
     @Override
-    public void writeBin(@NotNull DataOutput out, Trade trade) throws IOException {
-        out.writeLong(trade.time());
-        out.writeDouble(trade.price());
-        out.writeDouble(trade.qty());
-        out.writeBoolean(trade.isBuyerMaker());
+    public void writeBin(@NotNull DataOutput out, @NotNull Trade trade) throws IOException {
+        writeBin(out, trade.time(), trade.price(), trade.qty(), trade.isBuyerMaker());
+    }
+
+    /**
+     * Formato v2: delta de la delta del tiempo con el flag de maker en el bit bajo,
+     * XOR del precio contra el anterior y la cantidad como varint escalado.
+     */
+    public void writeBin(@NotNull DataOutput out, long time, float price, float qty, boolean isBuyerMaker) throws IOException {
+        BinCodec.writeVarLong(out, timeDelta.encode(time) << 1 | (isBuyerMaker ? 1 : 0));
+        BinCodec.writeXorFloat(out, price, previousPrice);
+        previousPrice = price;
+        long scaled = Math.round(qty * QTY_SCALE);
+        if ((float) (scaled / QTY_SCALE) == qty && scaled >= 0) {
+            BinCodec.writeVarLong(out, scaled << 1);
+        } else {
+            BinCodec.writeVarLong(out, Integer.toUnsignedLong(Float.floatToRawIntBits(qty)) << 1 | 1);
+        }
     }
 
     @Override
     public Trade readBin(@NotNull DataInputStream in) throws IOException {
-        long time = in.readLong();
-        double price = in.readDouble();
-        double qty = in.readDouble();
-        boolean isBuyerMaker = in.readBoolean();
-        return new Trade(time, (float) price, (float) qty, isBuyerMaker);
+        if (version == 1) {
+            long time = in.readLong();
+            double price = in.readDouble();
+            double qty = in.readDouble();
+            boolean isBuyerMaker = in.readBoolean();
+            return new Trade(time, (float) price, (float) qty, isBuyerMaker);
+        }
+        long head = BinCodec.readVarLong(in);
+        long time = timeDelta.decode(head >>> 1);
+        float price = BinCodec.readXorFloat(in, previousPrice);
+        previousPrice = price;
+        long rawQty = BinCodec.readVarLong(in);
+        float qty = (rawQty & 1) == 0
+                ? (float) ((rawQty >>> 1) / QTY_SCALE)
+                : Float.intBitsToFloat((int) (rawQty >>> 1));
+        return new Trade(time, price, qty, (head & 1) != 0);
     }
 
     @Override
-    public void readMetaDataBin(DataInputStream in) throws IOException {
+    public void readMetaDataBin(DataInputStream in, int version) throws IOException {
+        this.version = version;
+        resetCodec();
+    }
 
+    private void resetCodec() {
+        timeDelta.reset();
+        previousPrice = 0;
     }
 
     @Override
@@ -40,23 +79,75 @@ public class TradeSerializable implements ParseSerializable<Trade> {
     }
 
     @Override
-    public Trade parseLine(@NotNull String line) {
-        int p0 = line.indexOf(',');
-        int p1 = line.indexOf(',', p0 + 1);
-        int p2 = line.indexOf(',', p1 + 1);
-        int p3 = line.indexOf(',', p2 + 1);
-        int p4 = line.indexOf(',', p3 + 1);
-        int p5 = line.indexOf(',', p4 + 1);
-        if (p0 <= 0 || p1 <= 0 || p2 <= 0 || p3 <= 0 || p4 <= 0) {
-            return null;
+    public int getRecordWidth() {
+        return Float.BYTES * 2 + 1;
+    }
+
+    @Override
+    public long timeOf(Trade source) {
+        return source.time();
+    }
+
+    @Override
+    public void writeRecord(ByteBuffer out, Trade trade) {
+        out.putFloat(trade.price());
+        out.putFloat(trade.qty());
+        out.put((byte) (trade.isBuyerMaker() ? 1 : 0));
+    }
+
+    @Override
+    public Trade readRecord(ByteBuffer in, int offset, long time) {
+        return new Trade(time, in.getFloat(offset), in.getFloat(offset + 4), in.get(offset + 8) != 0);
+    }
+
+    /**
+     * Copia los trades de {@code [startTime, endTime)} directamente a columnas sin crear {@link Trade}.
+     */
+    public static @NotNull TradeTape readTape(@NotNull MappedMarketFile file, long startTime, long endTime) {
+        int from = file.lowerBound(startTime);
+        int to = Math.max(from, file.lowerBound(endTime));
+        ByteBuffer buffer = file.getBuffer();
+        TradeTape tape = new TradeTape(to - from);
+        for (int i = from; i < to; i++) {
+            int offset = file.recordOffset(i);
+            tape.append(buffer.getLong(offset),
+                    buffer.getFloat(offset + 8),
+                    buffer.getFloat(offset + 12),
+                    buffer.get(offset + 16) != 0
+            );
         }
-        if (p5 == -1) p5 = line.length(); // Por si es la ultima columna
+        return tape;
+    }
 
+    @Override
+    public Trade parseRow(@NotNull CsvTokenizer row) {
+        if (row.getFieldCount() < 6) {
+            return null;
+        }
         return new Trade(
-                Long.parseLong(line.substring(p3 + 1, p4)),        // time (col 4)
-                Float.parseFloat(line.substring(p0 + 1, p1)),     // price (col 1)
-                Float.parseFloat(line.substring(p1 + 1, p2)),     // qty (col 2)
-                "true".equals(line.substring(p4 + 1, p5)) // isBuyerMaker (col 5)
+                row.getLong(4),        // time (col 4)
+                row.getFloat(1),     // price (col 1)
+                row.getFloat(2),     // qty (col 2)
+                row.getBoolean(5) // isBuyerMaker (col 5)
         );
     }
+
+    @Override
+    public @NotNull ParsedChunk parseChunk(byte @NotNull [] chunk, int length) {
+        // Directo a columnas, sin crear un Trade por fila
+        TradeTape tape = new TradeTape(length / 48);
+        CsvTokenizer row = new CsvTokenizer(chunk, 0, length);
+        while (row.nextRow()) {
+            if (row.getFieldCount() < 6) {
+                continue;
+            }
+            tape.append(row.getLong(4), row.getFloat(1), row.getFloat(2), row.getBoolean(5));
+        }
+        return (out, stats) -> {
+            for (int i = 0; i < tape.size(); i++) {
+                writeBin(out, tape.getTime(i), tape.getPrice(i), tape.getQty(i), tape.isBuyerMaker(i));
+                stats.accept(tape.getTime(i));
+            }
+        };
+    }
 }
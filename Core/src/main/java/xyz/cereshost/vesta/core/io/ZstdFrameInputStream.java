@@ -0,0 +1,180 @@
+package xyz.cereshost.vesta.core.io;
+
+import com.github.luben.zstd.Zstd;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Lee un archivo escrito por {@link ZstdFrameOutputStream} descomprimiendo los frames en paralelo
+ * y entregándolos en orden como un único flujo.
+ * <p>
+ * Solo se mantienen {@code lookahead} frames en vuelo. Si el frame que toca aún no ha empezado
+ * en el executor, lo descomprime el propio hilo lector, así que no hay bloqueo aunque el lector
+ * corra dentro del mismo pool.
+ */
+public class ZstdFrameInputStream extends InputStream {
+
+    private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final ExecutorService executor;
+    private final long[] offsets;
+    private final int[] compressedSizes;
+    private final int[] rawSizes;
+    private final int lookahead;
+    private final Deque<FutureTask<byte[]>> inFlight = new ArrayDeque<>();
+    private int nextToSubmit;
+    private byte[] current = new byte[0];
+    private int position;
+
+    public ZstdFrameInputStream(@NotNull File file, @NotNull ExecutorService executor) throws IOException {
+        this(file, executor, Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public ZstdFrameInputStream(@NotNull File file, @NotNull ExecutorService executor, int lookahead) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.executor = executor;
+        this.lookahead = Math.max(1, lookahead);
+        try {
+            long size = channel.size();
+            ByteBuffer trailer = readAt(size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            if (trailer.getInt() != ZstdFrameOutputStream.FRAMED_MAGIC) {
+                throw new IOException("Trailer de frames zstd invalido: " + file);
+            }
+            int frameCount = readAt(indexOffset, Integer.BYTES).getInt();
+            ByteBuffer index = readAt(indexOffset + Integer.BYTES, frameCount * (Long.BYTES + Integer.BYTES * 2));
+            this.offsets = new long[frameCount];
+            this.compressedSizes = new int[frameCount];
+            this.rawSizes = new int[frameCount];
+            for (int i = 0; i < frameCount; i++) {
+                offsets[i] = index.getLong();
+                compressedSizes[i] = index.getInt();
+                rawSizes[i] = index.getInt();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        fillPipeline();
+    }
+
+    /**
+     * Comprueba si el archivo usa el formato por frames (frente a un único stream zstd).
+     */
+    public static boolean isFramed(@NotNull File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < Integer.BYTES * 2 + TRAILER_BYTES) {
+                return false;
+            }
+            ByteBuffer head = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(head, 0);
+            return head.flip().getInt() == ZstdFrameOutputStream.FRAMED_MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int getFrameCount() {
+        return offsets.length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte @NotNull [] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int chunk = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, chunk);
+        position += chunk;
+        return chunk;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FutureTask<byte[]> task : inFlight) {
+            task.cancel(false);
+        }
+        inFlight.clear();
+        channel.close();
+    }
+
+    private boolean ensureData() throws IOException {
+        while (position >= current.length) {
+            FutureTask<byte[]> task = inFlight.pollFirst();
+            if (task == null) {
+                return false;
+            }
+            // Si el executor aún no lo ha tomado, se descomprime aquí mismo
+            task.run();
+            try {
+                current = task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Lectura de frames interrumpida", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Error descomprimiendo frame zstd", e.getCause());
+            }
+            position = 0;
+            fillPipeline();
+        }
+        return true;
+    }
+
+    private void fillPipeline() {
+        while (inFlight.size() < lookahead && nextToSubmit < offsets.length) {
+            int frame = nextToSubmit++;
+            FutureTask<byte[]> task = new FutureTask<>(() -> decompressFrame(frame));
+            inFlight.addLast(task);
+            executor.execute(task);
+        }
+    }
+
+    private byte @NotNull [] decompressFrame(int frame) throws IOException {
+        ByteBuffer compressed = readAt(offsets[frame] + Integer.BYTES * 2, compressedSizes[frame]);
+        byte[] raw = Zstd.decompress(compressed.array(), rawSizes[frame]);
+        if (raw.length != rawSizes[frame]) {
+            throw new IOException("Frame zstd truncado: " + frame);
+        }
+        return raw;
+    }
+
+    private @NotNull ByteBuffer readAt(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Fin de archivo inesperado en frames zstd");
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,191 @@
+package xyz.cereshost.vesta.core.io;
+
+import com.github.luben.zstd.Zstd;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Escribe un {@code .bin.zst} partido en frames zstd independientes más un índice de frames al final,
+ * para que {@link ZstdFrameInputStream} pueda descomprimirlos en paralelo.
+ * <p>
+ * Estructura:
+ * <pre>
+ *  int FRAMED_MAGIC | int FRAMED_VERSION
+ *  frames: int compressedLen | int rawLen | bytes
+ *  índice: int frameCount | (long offset | int compressedLen | int rawLen) * frameCount
+ *  trailer: long indexOffset | int FRAMED_MAGIC
+ * </pre>
+ * Los frames se cortan por tamaño sin comprimir; el lector los concatena en orden,
+ * así que no necesitan coincidir con el límite de un registro.
+ * <p>
+ * Con executor se comprimen hasta {@code maxInFlight} frames a la vez y se escriben en orden. Igual que en
+ * {@link ZstdFrameInputStream}, si el frame que toca escribir aún no ha empezado lo comprime el propio hilo que
+ * escribe, así que no se bloquea aunque corra dentro del mismo pool.
+ */
+public class ZstdFrameOutputStream extends OutputStream {
+
+    static final int FRAMED_MAGIC = 0x565A4631; // "VZF1"
+    static final int FRAMED_VERSION = 1;
+    // La codificación v2 ocupa ~4-6 bytes por trade, así que 4 MB son ~1M de trades por frame y un día
+    // se parte en varios frames que se pueden descomprimir en paralelo
+    static final int DEFAULT_FRAME_BYTES = 4 << 20;
+
+    private final DataOutputStream out;
+    private final int level;
+    private final int frameBytes;
+    @Nullable
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<PendingFrame> inFlight = new ArrayDeque<>();
+    // Buffers de frames ya escritos, para no reservar un buffer nuevo por frame
+    private final Deque<byte[]> spare = new ArrayDeque<>();
+    private final List<long[]> frames = new ArrayList<>();
+    private byte[] buffer;
+    private int position;
+    private long written;
+    private boolean closed;
+
+    /**
+     * Comprime cada frame en el hilo que escribe
+     */
+    public ZstdFrameOutputStream(@NotNull OutputStream out, int level) throws IOException {
+        this(out, level, DEFAULT_FRAME_BYTES, null, 1);
+    }
+
+    public ZstdFrameOutputStream(@NotNull OutputStream out, int level, @NotNull ExecutorService executor) throws IOException {
+        this(out, level, DEFAULT_FRAME_BYTES, executor, Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * @param executor    donde se comprimen los frames, o {@code null} para hacerlo en el hilo que escribe
+     * @param maxInFlight frames sin escribir como máximo, cada uno con su buffer de {@code frameBytes}
+     */
+    public ZstdFrameOutputStream(@NotNull OutputStream out, int level, int frameBytes,
+                                 @Nullable ExecutorService executor, int maxInFlight) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.level = level;
+        this.frameBytes = Math.max(1 << 10, frameBytes);
+        this.executor = executor;
+        this.maxInFlight = executor == null ? 1 : Math.max(1, maxInFlight);
+        this.buffer = new byte[this.frameBytes];
+        this.out.writeInt(FRAMED_MAGIC);
+        this.out.writeInt(FRAMED_VERSION);
+        this.written = Integer.BYTES * 2;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position == buffer.length) {
+            flushFrame();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte @NotNull [] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (position == buffer.length) {
+                flushFrame();
+            }
+            int chunk = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, chunk);
+            position += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    private void flushFrame() throws IOException {
+        if (position == 0) {
+            return;
+        }
+        byte[] raw = buffer;
+        int length = position;
+        FutureTask<Compressed> task = new FutureTask<>(() -> compress(raw, length, level));
+        inFlight.addLast(new PendingFrame(raw, length, task));
+        if (executor != null) {
+            executor.execute(task);
+        }
+        byte[] next = spare.pollFirst();
+        buffer = next != null ? next : new byte[frameBytes];
+        position = 0;
+        while (inFlight.size() >= maxInFlight) {
+            writeNextFrame();
+        }
+    }
+
+    private void writeNextFrame() throws IOException {
+        PendingFrame frame = inFlight.removeFirst();
+        // Si el executor aún no lo ha tomado, se comprime aquí mismo
+        frame.task().run();
+        Compressed compressed;
+        try {
+            compressed = frame.task().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Escritura de frames interrumpida", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException("Error comprimiendo frame zstd", e.getCause());
+        }
+        frames.add(new long[]{written, compressed.size(), frame.rawLength()});
+        out.writeInt(compressed.size());
+        out.writeInt(frame.rawLength());
+        out.write(compressed.data(), 0, compressed.size());
+        written += Integer.BYTES * 2 + compressed.size();
+        spare.addLast(frame.raw());
+    }
+
+    private static @NotNull Compressed compress(byte @NotNull [] raw, int length, int level) throws IOException {
+        byte[] compressed = new byte[(int) Zstd.compressBound(length)];
+        long size = Zstd.compressByteArray(compressed, 0, compressed.length, raw, 0, length, level);
+        if (Zstd.isError(size)) {
+            throw new IOException("Error comprimiendo frame zstd: " + Zstd.getErrorName(size));
+        }
+        return new Compressed(compressed, (int) size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushFrame();
+            while (!inFlight.isEmpty()) {
+                writeNextFrame();
+            }
+            long indexOffset = written;
+            out.writeInt(frames.size());
+            for (long[] frame : frames) {
+                out.writeLong(frame[0]);
+                out.writeInt((int) frame[1]);
+                out.writeInt((int) frame[2]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(FRAMED_MAGIC);
+            out.flush();
+        } finally {
+            for (PendingFrame frame : inFlight) {
+                frame.task().cancel(false);
+            }
+            inFlight.clear();
+            out.close();
+        }
+    }
+
+    private record PendingFrame(byte[] raw, int rawLength, FutureTask<Compressed> task) {}
+
+    private record Compressed(byte[] data, int size) {}
+}
@@ -7,10 +7,29 @@ public class LoadDataMethodLocalRange extends LoadDataMethodLocal {
 
     private final int startDay;
     private final int endDay;
+    private final boolean useMappedStore;
+    private final long fromTime;
+    private final long toTime;
 
     public LoadDataMethodLocalRange(boolean loadTrades, int startDay, int endDay) {
+        this(loadTrades, startDay, endDay, false);
+    }
+
+    public LoadDataMethodLocalRange(boolean loadTrades, int startDay, int endDay, boolean useMappedStore) {
+        this(loadTrades, startDay, endDay, useMappedStore, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param useMappedStore lee desde los archivos {@code .mbin} mapeados en memoria
+     * @param fromTime inicio de la ventana (inclusive), solo con {@code useMappedStore}
+     * @param toTime fin de la ventana (exclusivo), solo con {@code useMappedStore}
+     */
+    public LoadDataMethodLocalRange(boolean loadTrades, int startDay, int endDay, boolean useMappedStore, long fromTime, long toTime) {
         super(loadTrades);
         this.startDay = startDay;
         this.endDay = endDay;
+        this.useMappedStore = useMappedStore;
+        this.fromTime = fromTime;
+        this.toTime = toTime;
     }
 }
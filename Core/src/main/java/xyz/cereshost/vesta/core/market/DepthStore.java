@@ -0,0 +1,325 @@
+package xyz.cereshost.vesta.core.market;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Historial de snapshots del libro de órdenes fuera del heap. Cada día UTC vive en su propio
+ * {@link ByteBuffer} directo con registros de ancho fijo:
+ * <pre>
+ *  long time | double bestBid | double bestAsk | double bidLiq | double askLiq | double mid | double spread |
+ *  levels x (float bidPrice, float bidQty) | levels x (float askPrice, float askQty)
+ * </pre>
+ * Los agregados de {@link Candle.DepthCandle} se calculan una vez al ingerir sobre todos los niveles,
+ * los niveles guardados se truncan a {@code levels}. Los snapshots deben llegar en orden de tiempo;
+ * para juntar dos historiales desordenados entre sí está {@link #appendAll(DepthStore)}.
+ */
+public class DepthStore {
+
+    private static final long DAY_MS = 86_400_000L;
+    private static final int HEADER_BYTES = Long.BYTES + Double.BYTES * 6;
+    private static final int INITIAL_RECORDS = 256;
+
+    private final int levels;
+    private final int recordWidth;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private long lastTime = Long.MIN_VALUE;
+    private int size;
+
+    public DepthStore(int levels) {
+        if (levels <= 0) {
+            throw new IllegalArgumentException("levels debe ser positivo");
+        }
+        this.levels = levels;
+        this.recordWidth = HEADER_BYTES + levels * 2 * Float.BYTES * 2;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Tiempo del último snapshot, o {@link Long#MIN_VALUE} si está vacío
+     */
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    public @NotNull Collection<Segment> getSegments() {
+        return Collections.unmodifiableCollection(segments.values());
+    }
+
+    public void append(@NotNull Depth depth) {
+        append(depth.getDate(), depth);
+    }
+
+    /**
+     * Añade {@code depth} bajo el tiempo {@code time}, que puede diferir del sello del snapshot
+     * (p. ej. alineado al inicio de vela).
+     */
+    public void append(long time, @NotNull Depth depth) {
+        Segment segment = segmentFor(time);
+        int offset = segment.reserve();
+        ByteBuffer buffer = segment.buffer;
+        double bidLiq = writeSide(buffer, offset + HEADER_BYTES, depth.getBids());
+        double askLiq = writeSide(buffer, offset + HEADER_BYTES + levels * 2 * Float.BYTES, depth.getAsks());
+        double bestBid = depth.getBids().isEmpty() ? Double.NaN : depth.getBids().peekFirst().price();
+        double bestAsk = depth.getAsks().isEmpty() ? Double.NaN : depth.getAsks().peekFirst().price();
+        buffer.putLong(offset, time);
+        buffer.putDouble(offset + 8, bestBid);
+        buffer.putDouble(offset + 16, bestAsk);
+        buffer.putDouble(offset + 24, bidLiq);
+        buffer.putDouble(offset + 32, askLiq);
+        buffer.putDouble(offset + 40, (bestBid + bestAsk) / 2.0);
+        buffer.putDouble(offset + 48, bestAsk - bestBid);
+    }
+
+    /**
+     * Agregados del último snapshot con tiempo {@code <= time}, o {@code null} si no hay ninguno
+     * o si a ese snapshot le falta un lado del libro.
+     */
+    public @Nullable Candle.DepthCandle floorDepthCandle(long time) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(Math.floorDiv(time, DAY_MS));
+        while (entry != null) {
+            Segment segment = entry.getValue();
+            int index = segment.floorIndex(time);
+            if (index >= 0) {
+                return segment.getDepthCandle(index);
+            }
+            entry = segments.lowerEntry(entry.getKey());
+        }
+        return null;
+    }
+
+    /**
+     * Añade los snapshots de {@code other}. Si empiezan después del último de este historial (días consecutivos)
+     * se copian los registros tal cual; si no, se mezclan los dos en orden. Igual que al juntar conjuntos, un
+     * snapshot idéntico al anterior con el mismo tiempo no se repite.
+     */
+    public void appendAll(@NotNull DepthStore other) {
+        if (other.levels != levels) {
+            throw new IllegalArgumentException("Niveles distintos: " + other.levels + " != " + levels);
+        }
+        if (other.isEmpty()) {
+            return;
+        }
+        Cursor right = new Cursor(other);
+        if (isEmpty() || right.time() >= lastTime) {
+            for (; right.valid(); right.next()) {
+                copyRecord(right.segment, right.index);
+            }
+            return;
+        }
+        DepthStore merged = new DepthStore(levels);
+        Cursor left = new Cursor(this);
+        while (left.valid() || right.valid()) {
+            Cursor next = !right.valid() || (left.valid() && left.time() <= right.time()) ? left : right;
+            merged.copyRecord(next.segment, next.index);
+            next.next();
+        }
+        segments.clear();
+        segments.putAll(merged.segments);
+        size = merged.size;
+        lastTime = merged.lastTime;
+    }
+
+    /**
+     * Copia de los snapshots con tiempo en {@code [fromTime, toTime)}
+     */
+    public @NotNull DepthStore copyRange(long fromTime, long toTime) {
+        DepthStore copy = new DepthStore(levels);
+        for (Cursor cursor = new Cursor(this); cursor.valid() && cursor.time() < toTime; cursor.next()) {
+            if (cursor.time() >= fromTime) {
+                copy.copyRecord(cursor.segment, cursor.index);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Descarta los snapshots con tiempo anterior a {@code time}. Los días completos se sueltan sin copiar.
+     */
+    public void trimBefore(long time) {
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            int keep = segment.floorIndex(time - 1) + 1;
+            if (keep == 0) {
+                break;
+            }
+            size -= keep;
+            if (keep == segment.count) {
+                iterator.remove();
+                continue;
+            }
+            segment.buffer.put(0, segment.buffer, keep * recordWidth, (segment.count - keep) * recordWidth);
+            segment.count -= keep;
+            break;
+        }
+        if (segments.isEmpty()) {
+            lastTime = Long.MIN_VALUE;
+        }
+    }
+
+    public void clear() {
+        segments.clear();
+        size = 0;
+        lastTime = Long.MIN_VALUE;
+    }
+
+    private void copyRecord(@NotNull Segment source, int index) {
+        long time = source.getTime(index);
+        if (time == lastTime) {
+            Segment last = segments.lastEntry().getValue();
+            if (last.buffer.slice((last.count - 1) * recordWidth, recordWidth)
+                    .equals(source.buffer.slice(index * recordWidth, recordWidth))) {
+                return;
+            }
+        }
+        Segment segment = segmentFor(time);
+        segment.buffer.put(segment.reserve(), source.buffer, index * recordWidth, recordWidth);
+    }
+
+    private @NotNull Segment segmentFor(long time) {
+        if (time < lastTime) {
+            throw new IllegalArgumentException("Snapshot fuera de orden: " + time + " < " + lastTime);
+        }
+        lastTime = time;
+        size++;
+        return segments.computeIfAbsent(Math.floorDiv(time, DAY_MS), day -> new Segment());
+    }
+
+    private double writeSide(@NotNull ByteBuffer buffer, int offset, @NotNull Collection<Depth.OrderLevel> side) {
+        double liquidity = 0;
+        int level = 0;
+        for (Depth.OrderLevel order : side) {
+            liquidity += order.price() * order.qty();
+            if (level < levels) {
+                buffer.putFloat(offset + level * 8, (float) order.price());
+                buffer.putFloat(offset + level * 8 + 4, (float) order.qty());
+                level++;
+            }
+        }
+        for (; level < levels; level++) {
+            buffer.putFloat(offset + level * 8, 0f);
+            buffer.putFloat(offset + level * 8 + 4, 0f);
+        }
+        return liquidity;
+    }
+
+    /**
+     * Recorre los snapshots de un historial en orden
+     */
+    private static final class Cursor {
+        private final Iterator<Segment> segments;
+        private Segment segment;
+        private int index;
+
+        Cursor(@NotNull DepthStore store) {
+            this.segments = store.segments.values().iterator();
+            this.segment = segments.hasNext() ? segments.next() : null;
+            skipEmpty();
+        }
+
+        boolean valid() {
+            return segment != null;
+        }
+
+        long time() {
+            return segment.getTime(index);
+        }
+
+        void next() {
+            index++;
+            skipEmpty();
+        }
+
+        private void skipEmpty() {
+            while (segment != null && index >= segment.count) {
+                segment = segments.hasNext() ? segments.next() : null;
+                index = 0;
+            }
+        }
+    }
+
+    /**
+     * Snapshots de un día UTC. Los índices son relativos al segmento.
+     */
+    public final class Segment {
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(recordWidth * INITIAL_RECORDS).order(ByteOrder.nativeOrder());
+        private int count;
+
+        public int size() {
+            return count;
+        }
+
+        public long getTime(int index) {
+            return buffer.getLong(index * recordWidth);
+        }
+
+        public float getBidPrice(int index, int level) {
+            return buffer.getFloat(index * recordWidth + HEADER_BYTES + level * 8);
+        }
+
+        public float getBidQty(int index, int level) {
+            return buffer.getFloat(index * recordWidth + HEADER_BYTES + level * 8 + 4);
+        }
+
+        public float getAskPrice(int index, int level) {
+            return buffer.getFloat(index * recordWidth + HEADER_BYTES + levels * 8 + level * 8);
+        }
+
+        public float getAskQty(int index, int level) {
+            return buffer.getFloat(index * recordWidth + HEADER_BYTES + levels * 8 + level * 8 + 4);
+        }
+
+        public @Nullable Candle.DepthCandle getDepthCandle(int index) {
+            int offset = index * recordWidth;
+            double bestBid = buffer.getDouble(offset + 8);
+            double bestAsk = buffer.getDouble(offset + 16);
+            if (Double.isNaN(bestBid) || Double.isNaN(bestAsk)) {
+                return null;
+            }
+            return new Candle.DepthCandle(bestBid, bestAsk,
+                    buffer.getDouble(offset + 24),
+                    buffer.getDouble(offset + 32),
+                    buffer.getDouble(offset + 40),
+                    buffer.getDouble(offset + 48));
+        }
+
+        /**
+         * Último índice con tiempo {@code <= time}, o {@code -1}. Con tiempos repetidos gana el último.
+         */
+        public int floorIndex(long time) {
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (getTime(mid) <= time) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo - 1;
+        }
+
+        private int reserve() {
+            int required = (count + 1) * recordWidth;
+            if (required > buffer.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(required, buffer.capacity() * 2)).order(ByteOrder.nativeOrder());
+                grown.put(0, buffer, 0, count * recordWidth);
+                buffer = grown;
+            }
+            return count++ * recordWidth;
+        }
+    }
+}
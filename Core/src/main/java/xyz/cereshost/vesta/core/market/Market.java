@@ -3,6 +3,7 @@ package xyz.cereshost.vesta.core.market;
 import lombok.Getter;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -17,8 +18,8 @@ public class Market {
     public Market(@NotNull Symbol symbol, TimeFrameMarket timeFrameMarket) {
         this.symbol = symbol;
         this.timeFrameMarket = timeFrameMarket;
-        this.trades = new LinkedHashSet<>(10_000);
-        this.depths = new LinkedHashSet<>();
+        this.trades = new TradeTape(10_000);
+        this.depthStore = new DepthStore(DEPTH_STORE_LEVELS);
         this.candles = new LinkedHashSet<>(1_000);
         this.metrics = new LinkedHashSet<>();
     }
@@ -33,83 +34,280 @@ public class Market {
     @Getter
     private final Symbol symbol;
     @Getter
-    private LinkedHashSet<Trade> trades;
+    private TradeTape trades;
     @Getter
     private LinkedHashSet<Candle> candles;
-    @Getter
-    private LinkedHashSet<Depth> depths;
+    /**
+     * Snapshots del libro fuera del heap, ingeridos directamente al añadirlos
+     */
+    private DepthStore depthStore;
+    /**
+     * Snapshots anteriores al último del store, pendientes de mezclarse todos juntos en {@link #flushLateDepths()}
+     */
+    private final ArrayList<LateDepth> lateDepths = new ArrayList<>();
     @Getter
     private LinkedHashSet<Metric> metrics;
+    // Cada colección recuerda si está en orden temporal para que concat pueda anexar y sortd no reordene
+    private transient boolean candlesOrdered = true;
+    private transient boolean metricsOrdered = true;
 
 
     public void concat(@NotNull Market market) {
         if (!this.symbol.equals(market.symbol)) {
             throw new IllegalArgumentException("Symbols don't match");
         }
-        this.trades.addAll(market.trades);
-        this.depths.addAll(market.depths);
-        this.candles.addAll(market.candles);
-        this.metrics.addAll(market.metrics);
+        this.trades.merge(market.trades);
+        this.depthStore.appendAll(market.getDepthStore());
+        if (candlesOrdered && market.candlesOrdered) {
+            this.candles = mergeOrdered(candles, market.candles, Candle::getOpenTime);
+        } else {
+            this.candles.addAll(market.candles);
+            candlesOrdered = false;
+        }
+        if (metricsOrdered && market.metricsOrdered) {
+            this.metrics = mergeOrdered(metrics, market.metrics, Metric::getOpenTime);
+        } else {
+            this.metrics.addAll(market.metrics);
+            metricsOrdered = false;
+        }
     }
 
-    public synchronized void addTrade(Collection<Trade> trade) {
-        Iterator<Trade> iterator = trade.iterator();
-        while (iterator.hasNext()) {
-            this.trades.add(iterator.next());
-            iterator.remove();
+    /**
+     * Anexa de {@code market} solo lo posterior a lo último de este mercado, para el loop en vivo donde cada fetch
+     * repite parte del anterior. La última vela y la última métrica se sustituyen si llegan actualizadas; nada de lo
+     * anterior se vuelve a recorrer ni a copiar. Ambos mercados deben estar en orden temporal.
+     */
+    public synchronized void appendNewer(@NotNull Market market) {
+        if (!this.symbol.equals(market.symbol)) {
+            throw new IllegalArgumentException("Symbols don't match");
+        }
+        if (!candlesOrdered || !metricsOrdered || !market.candlesOrdered || !market.metricsOrdered) {
+            concat(market);
+            return;
+        }
+        if (!trades.isEmpty() && !market.trades.isEmpty()) {
+            trades.sort();
+            market.trades.sort();
+            int from = market.trades.lowerBound(trades.getLastTime() + 1);
+            trades.merge(market.trades.copyRange(from, market.trades.size()));
+        } else {
+            trades.merge(market.trades);
+        }
+        long lastDepth = depthStore.getLastTime();
+        DepthStore newerDepths = market.getDepthStore();
+        depthStore.appendAll(lastDepth == Long.MIN_VALUE ? newerDepths : newerDepths.copyRange(lastDepth + 1, Long.MAX_VALUE));
+        appendNewer(candles, market.candles, Candle::getOpenTime);
+        appendNewer(metrics, market.metrics, Metric::getOpenTime);
+        // Las cachés se vuelven a construir con lo nuevo en el siguiente build
+        if (metricByTimeFrame != null) metricByTimeFrame.clear();
+        candleList = null;
+    }
+
+    private static <T> void appendNewer(@NotNull LinkedHashSet<T> target, @NotNull LinkedHashSet<T> source, @NotNull TimeAccessor<T> accessor) {
+        long last = target.isEmpty() ? Long.MIN_VALUE : accessor.time(target.getLast());
+        // Solo se recorre la cola de source, la parte que ya está en target se corta al llegar a last
+        ArrayDeque<T> fresh = new ArrayDeque<>();
+        for (T item : source.reversed()) {
+            if (accessor.time(item) < last) break;
+            fresh.addFirst(item);
+        }
+        for (T item : fresh) {
+            if (accessor.time(item) == last) {
+                // La que seguía abierta en el fetch anterior: gana la actualizada
+                target.remove(target.getLast());
+            }
+            target.add(item);
         }
     }
 
-    public synchronized void setTrade(LinkedHashSet<Trade> trades) {
+    /**
+     * Mezcla dos conjuntos ya ordenados en tiempo lineal. Si {@code source} empieza después del último
+     * elemento de {@code target} (el caso normal al cargar días consecutivos) solo se anexa.
+     * Los duplicados se descartan igual que en {@link LinkedHashSet#addAll}.
+     */
+    private static <T> @NotNull LinkedHashSet<T> mergeOrdered(@NotNull LinkedHashSet<T> target,
+                                                             @NotNull LinkedHashSet<T> source,
+                                                             @NotNull TimeAccessor<T> accessor
+    ) {
+        if (source.isEmpty()) {
+            return target;
+        }
+        if (target.isEmpty() || accessor.time(source.getFirst()) > accessor.time(target.getLast())) {
+            target.addAll(source);
+            return target;
+        }
+        LinkedHashSet<T> merged = new LinkedHashSet<>(Math.max(16, (int) ((target.size() + source.size()) / 0.75f) + 1));
+        Iterator<T> left = target.iterator();
+        Iterator<T> right = source.iterator();
+        T a = left.next();
+        T b = right.next();
+        while (a != null && b != null) {
+            if (accessor.time(b) < accessor.time(a)) {
+                merged.add(b);
+                b = right.hasNext() ? right.next() : null;
+            } else {
+                merged.add(a);
+                a = left.hasNext() ? left.next() : null;
+            }
+        }
+        for (; a != null; a = left.hasNext() ? left.next() : null) merged.add(a);
+        for (; b != null; b = right.hasNext() ? right.next() : null) merged.add(b);
+        return merged;
+    }
+
+    private static <T> boolean isOrdered(@NotNull Iterable<T> source, @NotNull TimeAccessor<T> accessor) {
+        long last = Long.MIN_VALUE;
+        for (T item : source) {
+            long time = accessor.time(item);
+            if (time < last) {
+                return false;
+            }
+            last = time;
+        }
+        return true;
+    }
+
+    public synchronized void addTrade(Collection<Trade> trade) {
+        this.trades.addAll(trade);
+    }
+
+    public synchronized void setTrade(TradeTape trades) {
         this.trades = trades;
     }
 
     public synchronized void addDepth(Depth tickMarker) {
-        this.depths.add(tickMarker);
+        long time = depthTime(tickMarker);
+        if (time >= depthStore.getLastTime()) {
+            depthStore.append(time, tickMarker);
+            return;
+        }
+        // Mezclar cada snapshot atrasado copiaría el historial entero; se juntan y se mezclan una vez al leer
+        lateDepths.add(new LateDepth(time, tickMarker));
+    }
+
+    /**
+     * Snapshots del libro, con los que llegaron fuera de orden ya mezclados
+     */
+    public synchronized @NotNull DepthStore getDepthStore() {
+        flushLateDepths();
+        return depthStore;
+    }
+
+    /**
+     * Descarta los snapshots con sello anterior a {@code minTime}
+     */
+    public synchronized void trimDepthsBefore(long minTime) {
+        // minTime va alineado a la vela, así que el sello < minTime es lo mismo que el tiempo guardado < minTime - ms
+        long cutoff = minTime - timeFrameMarket.getMilliseconds();
+        lateDepths.removeIf(late -> late.time() < cutoff);
+        depthStore.trimBefore(cutoff);
+    }
+
+    private void flushLateDepths() {
+        if (lateDepths.isEmpty()) {
+            return;
+        }
+        // Orden estable: con el mismo tiempo se conserva el orden de llegada
+        lateDepths.sort(Comparator.comparingLong(LateDepth::time));
+        DepthStore batch = new DepthStore(DEPTH_STORE_LEVELS);
+        for (LateDepth late : lateDepths) {
+            batch.append(late.time(), late.depth());
+        }
+        lateDepths.clear();
+        depthStore.appendAll(batch);
+    }
+
+    private record LateDepth(long time, @NotNull Depth depth) {}
+
+    /**
+     * Depth llega con sello posterior al cierre de la vela; lo alineamos al minuto previo.
+     */
+    private long depthTime(@NotNull Depth depth) {
+        long ms = timeFrameMarket.getMilliseconds();
+        long shifted = depth.getDate() - ms;
+        return (Math.max(0L, shifted) / ms) * ms;
     }
 
     public synchronized void addCandles(Collection<Candle> candle) {
+        long last = candles.isEmpty() ? Long.MIN_VALUE : candles.getLast().getOpenTime();
         Iterator<Candle> iterator = candle.iterator();
         while (iterator.hasNext()) {
-            this.candles.add(iterator.next());
+            Candle next = iterator.next();
+            if (next.getOpenTime() < last) {
+                candlesOrdered = false;
+            }
+            last = next.getOpenTime();
+            this.candles.add(next);
             iterator.remove();
         }
     }
 
     public synchronized void setCandles(LinkedHashSet<Candle> candle) {
         this.candles = candle;
+        this.candlesOrdered = isOrdered(candle, Candle::getOpenTime);
     }
 
     public synchronized void addMetrics(Collection<Metric> metrics) {
+        long last = this.metrics.isEmpty() ? Long.MIN_VALUE : this.metrics.getLast().getOpenTime();
         Iterator<Metric> iterator = metrics.iterator();
         while (iterator.hasNext()) {
-            this.metrics.add(iterator.next());
+            Metric next = iterator.next();
+            if (next.getOpenTime() < last) {
+                metricsOrdered = false;
+            }
+            last = next.getOpenTime();
+            this.metrics.add(next);
             iterator.remove();
         }
     }
 
     public synchronized void setMetrics(LinkedHashSet<Metric> metrics) {
         this.metrics = metrics;
+        this.metricsOrdered = isOrdered(metrics, Metric::getOpenTime);
     }
 
+    /**
+     * Ordena solo las colecciones que han perdido el orden; tras cargar días consecutivos no hace nada.
+     */
     public synchronized void sortd(){
         int chunkSize = 10_000;
-        trades = sortd(trades, chunkSize, Trade::time);
-        depths = sortd(depths, chunkSize, Depth::getDate);
-        candles = sortd(candles, chunkSize, Candle::getOpenTime);
-        metrics = sortd(metrics, chunkSize, Metric::getOpenTime);
+        trades.sort();
+        if (!candlesOrdered) {
+            candles = sortd(candles, chunkSize, Candle::getOpenTime);
+            candlesOrdered = true;
+        }
+        if (!metricsOrdered) {
+            metrics = sortd(metrics, chunkSize, Metric::getOpenTime);
+            metricsOrdered = true;
+        }
     }
 
     public interface TimeAccessor<T> {
         long time(T item);
     }
 
-    @Contract(pure = true)
+    /**
+     * Ordena {@code source} por tiempo vaciándolo. Si ya es un {@link LinkedHashSet} ordenado se devuelve el mismo
+     * set, así que quien llama no debe seguir usando {@code source} como si fuera otra colección.
+     */
     public static <T> LinkedHashSet<T> sortd(Collection<T> source, int chunkSize, TimeAccessor<T> accessor) {
         if (source == null || source.isEmpty()) {
             return new LinkedHashSet<>();
         }
 
+        if (isOrdered(source, accessor)) {
+            // Ya viene ordenado: se evita la copia intermedia y la ordenación
+            if (source instanceof LinkedHashSet<T> set) {
+                return set;
+            }
+            LinkedHashSet<T> sorted = new LinkedHashSet<>(Math.max(16, (int) (source.size() / 0.75f) + 1));
+            for (Iterator<T> it = source.iterator(); it.hasNext(); ) {
+                sorted.add(it.next());
+                it.remove();
+            }
+            return sorted;
+        }
+
         int safeChunkSize = Math.max(1, chunkSize);
         List<T> all = new ArrayList<>(source.size());
         Deque<T> batch = new ArrayDeque<>();
@@ -140,39 +338,20 @@ public class Market {
         return sorted;
     }
 
-    @Getter private transient NavigableMap<Long, List<Trade>> tradesByTimeFrame;
-    @Getter private transient NavigableMap<Long, Depth> depthByTimeFrame;
+    private transient boolean tradeCacheReady;
     @Getter private transient NavigableMap<Long, Metric> metricByTimeFrame;
 
-    public void buildTradeCache() {
-        if ((tradesByTimeFrame == null || tradesByTimeFrame.isEmpty()) && !trades.isEmpty()) {
-            final LinkedHashMap<Long, List<Trade>> map = new LinkedHashMap<>();
-            Iterator<Trade> it = trades.iterator();
-            while (it.hasNext()) {
-                Trade t = it.next();
-
-                long minute = (t.time() / timeFrameMarket.getMilliseconds()) * timeFrameMarket.getMilliseconds();
-                map.computeIfAbsent(minute, k -> new ArrayList<>(20)).add(t);
-                it.remove();
-            }
-            tradesByTimeFrame = new TreeMap<>();
-            tradesByTimeFrame.putAll(map);
-        }
+    public synchronized void buildTradeCache() {
+        // Índice plano por vela sobre la cinta ordenada: una ventana alineada son dos lecturas de arreglo
+        trades.sort();
+        trades.buildBucketIndex(timeFrameMarket.getMilliseconds());
+        tradeCacheReady = true;
     }
 
-    public void buildDepthCache() {
-        if ((depthByTimeFrame == null || depthByTimeFrame.isEmpty()) && !depths.isEmpty()){
-            NavigableMap<Long, Depth> depthByMinute = new TreeMap<>();
-            for (Depth d : getDepths()) {
-                // Depth llega con sello posterior al cierre de la vela; lo alineamos al minuto previo.
-                long shifted = d.getDate() - timeFrameMarket.getMilliseconds();
-                long minute = (Math.max(0L, shifted) / timeFrameMarket.getMilliseconds()) * timeFrameMarket.getMilliseconds();
-                depthByMinute.put(minute, d);
-            }
-            depthByTimeFrame = new TreeMap<>();
-            depthByTimeFrame.putAll(depthByMinute);
-        }
-    }
+    /**
+     * Niveles por lado que se conservan en {@link DepthStore}; los agregados usan el libro completo.
+     */
+    public static final int DEPTH_STORE_LEVELS = 20;
 
     public void buildMetricsCache() {
         if ((metricByTimeFrame == null || metricByTimeFrame.isEmpty()) && !metrics.isEmpty()) {
@@ -181,8 +360,7 @@ public class Market {
 
             NavigableMap<Long, Metric> metricByFiveMinute = new TreeMap<>();
             for (Metric metric : metrics) {
-                long aligned = (metric.getOpenTime() / sourceMs) * sourceMs;
-                metricByFiveMinute.put(aligned, copyMetricWithTime(metric, aligned));
+                indexMetric(metricByFiveMinute, metric);
             }
 
             NavigableMap<Long, Metric> targetMap = new TreeMap<>();
@@ -219,17 +397,68 @@ public class Market {
         }
     }
 
-    public List<Trade> getTradesInWindow(long startTime, long endTime) {
-        if (tradesByTimeFrame == null) {
+    /**
+     * Lo mismo que {@code getMetricByTimeFrame().floorEntry(time)} tras {@link #buildMetricsCache()}, pero resuelto
+     * sobre el índice de 5 minutos para un solo instante, así que no hace falta construir la caché de toda la serie.
+     *
+     * @param metricByFiveMinute métricas alineadas a 5 minutos, ver {@link #indexMetric(NavigableMap, Metric)}
+     * @param time               inicio de vela alineado a {@code targetMs}
+     */
+    public static @Nullable Metric metricAt(@NotNull NavigableMap<Long, Metric> metricByFiveMinute, long time, long targetMs) {
+        long sourceMs = FIVE_MINUTE.getMilliseconds();
+        if (targetMs == sourceMs) {
+            Map.Entry<Long, Metric> floor = metricByFiveMinute.floorEntry(time);
+            return floor == null ? null : floor.getValue();
+        }
+        if (targetMs < sourceMs) {
+            Map.Entry<Long, Metric> floor = metricByFiveMinute.floorEntry(time);
+            if (floor == null) {
+                return null;
+            }
+            // Si el bloque de 5 minutos de time no existe, la última vela cubierta es la final del bloque anterior
+            long covered = time < floor.getKey() + sourceMs ? time : floor.getKey() + sourceMs - targetMs;
+            return copyMetricWithTime(floor.getValue(), covered);
+        }
+        Long last = metricByFiveMinute.floorKey((time / targetMs) * targetMs + targetMs - 1);
+        if (last == null) {
+            return null;
+        }
+        long bucket = (last / targetMs) * targetMs;
+        MetricAccumulator accumulator = new MetricAccumulator();
+        for (Metric metric : metricByFiveMinute.subMap(bucket, bucket + targetMs).values()) {
+            accumulator.add(metric);
+        }
+        return accumulator.buildAverage(bucket);
+    }
+
+    /**
+     * Añade {@code metric} al índice de 5 minutos que usan {@link #buildMetricsCache()} y {@link #metricAt}
+     */
+    public static void indexMetric(@NotNull NavigableMap<Long, Metric> metricByFiveMinute, @NotNull Metric metric) {
+        long sourceMs = FIVE_MINUTE.getMilliseconds();
+        long aligned = (metric.getOpenTime() / sourceMs) * sourceMs;
+        metricByFiveMinute.put(aligned, copyMetricWithTime(metric, aligned));
+    }
+
+    public TradeTape.Slice getTradesInWindow(long startTime, long endTime) {
+        requireTradeCache();
+        // Vista sin copia sobre la cinta ordenada, ya en orden cronológico
+        return trades.window(startTime, endTime);
+    }
+
+    /**
+     * Índice en {@link #getTrades()} del primer trade con tiempo mayor o igual a {@code time}.
+     * Para bucles calientes que recorren la cinta sin crear un {@link TradeTape.Slice}.
+     */
+    public int getTradeIndexAt(long time) {
+        requireTradeCache();
+        return trades.lowerBound(time);
+    }
+
+    private void requireTradeCache() {
+        if (!tradeCacheReady) {
             throw new IllegalStateException("TradesByMinuteCache has not been initialized");
         }
-        // Devuelve todos los trades que ocurrieron en ese minuto
-        // subMap devuelve una vista, values() la colección, y flatMap las une
-        return tradesByTimeFrame.subMap(startTime, true, endTime, false)
-                .values().stream()
-                .flatMap(List::stream)
-                .sorted(Comparator.comparingLong(Trade::time)) // Asegurar orden cronológico
-                .toList();
     }
 
     public List<Candle> candleList = null;
@@ -268,30 +497,26 @@ public class Market {
         long startTime = selectedCandles.getFirst().getOpenTime();
         long endTimeExclusive = selectedCandles.getLast().getOpenTime() + timeFrameMarket.getMilliseconds();
 
-        copy.candles = new LinkedHashSet<>(selectedCandles);
-        copy.trades = new LinkedHashSet<>(
-                trades.stream()
-                        .filter(t -> t.time() >= startTime && t.time() < endTimeExclusive)
-                        .sorted(Comparator.comparingLong(Trade::time))
-                        .toList()
-        );
-        copy.depths = new LinkedHashSet<>(
-                depths.stream()
-                        .filter(d -> d.getDate() >= startTime && d.getDate() < endTimeExclusive)
-                        .sorted(Comparator.comparingLong(Depth::getDate))
-                        .toList()
-        );
+        copy.setCandles(new LinkedHashSet<>(selectedCandles));
+        trades.sort();
+        TradeTape.Slice window = trades.window(startTime, endTimeExclusive);
+        copy.trades = trades.copyRange(window.from(), window.to());
+        // Los tiempos guardados van una vela por detrás del sello
+        long ms = timeFrameMarket.getMilliseconds();
+        copy.depthStore = getDepthStore().copyRange(startTime - ms, endTimeExclusive - ms);
 
         return copy;
     }
 
     public void clear(){
         trades.clear();
-        depths.clear();
+        depthStore.clear();
+        lateDepths.clear();
         candles.clear();
         metrics.clear();
-        if (tradesByTimeFrame != null) tradesByTimeFrame.clear();
-        if (depthByTimeFrame != null) depthByTimeFrame.clear();
+        tradeCacheReady = false;
+        candlesOrdered = true;
+        metricsOrdered = true;
         if (metricByTimeFrame != null) metricByTimeFrame.clear();
     }
 
@@ -0,0 +1,410 @@
+package xyz.cereshost.vesta.core.market;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Almacén columnar de trades. Guarda cada campo en su propio arreglo primitivo
+ * para evitar un {@link Trade} y una entrada de hash por operación.
+ * <p>
+ * Las consultas por ventana de tiempo requieren que la cinta esté ordenada,
+ * ver {@link #sort()}.
+ */
+public class TradeTape {
+
+    private static final int DEFAULT_CAPACITY = 1_024;
+
+    private long[] time;
+    private float[] price;
+    private float[] qty;
+    private BitSet buyerMaker;
+    private int size;
+    private boolean sorted = true;
+    // Índice por buckets de tiempo: bucketStart[b] es el primer trade con tiempo >= bucketOrigin + b * bucketMs.
+    // Se descarta en cualquier modificación de la cinta
+    private int[] bucketStart;
+    private long bucketOrigin;
+    private long bucketMs;
+
+    public TradeTape() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TradeTape(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.time = new long[capacity];
+        this.price = new float[capacity];
+        this.qty = new float[capacity];
+        this.buyerMaker = new BitSet(capacity);
+    }
+
+    /**
+     * Construye una cinta vaciando la colección de origen.
+     */
+    @Contract("_ -> new")
+    public static @NotNull TradeTape of(@NotNull Collection<Trade> trades) {
+        TradeTape tape = new TradeTape(trades.size());
+        tape.addAll(trades);
+        return tape;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    public long getTime(int index) {
+        return time[index];
+    }
+
+    public float getPrice(int index) {
+        return price[index];
+    }
+
+    public float getQty(int index) {
+        return qty[index];
+    }
+
+    public boolean isBuyerMaker(int index) {
+        return buyerMaker.get(index);
+    }
+
+    /**
+     * Materializa un {@link Trade}. Solo para código frío; los bucles calientes
+     * deben leer las columnas directamente.
+     */
+    public @NotNull Trade getTrade(int index) {
+        return new Trade(time[index], price[index], qty[index], buyerMaker.get(index));
+    }
+
+    public long getFirstTime() {
+        return time[0];
+    }
+
+    public long getLastTime() {
+        return time[size - 1];
+    }
+
+    public void append(long time, float price, float qty, boolean isBuyerMaker) {
+        bucketStart = null;
+        ensureCapacity(size + 1);
+        if (size > 0 && time < this.time[size - 1]) {
+            sorted = false;
+        }
+        this.time[size] = time;
+        this.price[size] = price;
+        this.qty[size] = qty;
+        if (isBuyerMaker) buyerMaker.set(size);
+        size++;
+    }
+
+    public void append(@NotNull Trade trade) {
+        append(trade.time(), trade.price(), trade.qty(), trade.isBuyerMaker());
+    }
+
+    /**
+     * Añade los trades vaciando la colección de origen.
+     */
+    public void addAll(@NotNull Collection<Trade> trades) {
+        ensureCapacity(size + trades.size());
+        Iterator<Trade> iterator = trades.iterator();
+        while (iterator.hasNext()) {
+            append(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Mezcla otra cinta en esta manteniendo el orden temporal. Los trades de {@code other}
+     * idénticos a uno ya presente se descartan, igual que hacía el {@code LinkedHashSet}.
+     */
+    public void merge(@NotNull TradeTape other) {
+        if (other.isEmpty()) {
+            return;
+        }
+        bucketStart = null;
+        sort();
+        other.sort();
+        if (isEmpty() || other.getFirstTime() > getLastTime()) {
+            appendRange(other, 0, other.size);
+            return;
+        }
+
+        int total = size + other.size;
+        long[] newTime = new long[total];
+        float[] newPrice = new float[total];
+        float[] newQty = new float[total];
+        BitSet newBuyerMaker = new BitSet(total);
+
+        int i = 0, j = 0, k = 0;
+        while (i < size || j < other.size) {
+            boolean takeThis = j >= other.size || (i < size && time[i] <= other.time[j]);
+            if (takeThis) {
+                newTime[k] = time[i];
+                newPrice[k] = price[i];
+                newQty[k] = qty[i];
+                if (buyerMaker.get(i)) newBuyerMaker.set(k);
+                i++;
+                k++;
+            } else {
+                if (!containsEqual(other.time[j], other.price[j], other.qty[j], other.buyerMaker.get(j))) {
+                    newTime[k] = other.time[j];
+                    newPrice[k] = other.price[j];
+                    newQty[k] = other.qty[j];
+                    if (other.buyerMaker.get(j)) newBuyerMaker.set(k);
+                    k++;
+                }
+                j++;
+            }
+        }
+        this.time = newTime;
+        this.price = newPrice;
+        this.qty = newQty;
+        this.buyerMaker = newBuyerMaker;
+        this.size = k;
+    }
+
+    /**
+     * Ordena la cinta por tiempo de forma estable. No hace nada si ya está ordenada.
+     */
+    public void sort() {
+        if (sorted) {
+            return;
+        }
+        bucketStart = null;
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        mergeSort(order, new int[size], 0, size);
+
+        long[] newTime = new long[Math.max(16, size)];
+        float[] newPrice = new float[newTime.length];
+        float[] newQty = new float[newTime.length];
+        BitSet newBuyerMaker = new BitSet(newTime.length);
+        for (int i = 0; i < size; i++) {
+            int src = order[i];
+            newTime[i] = time[src];
+            newPrice[i] = price[src];
+            newQty[i] = qty[src];
+            if (buyerMaker.get(src)) newBuyerMaker.set(i);
+        }
+        this.time = newTime;
+        this.price = newPrice;
+        this.qty = newQty;
+        this.buyerMaker = newBuyerMaker;
+        this.sorted = true;
+    }
+
+    /**
+     * Construye el índice por buckets de {@code bucketMs}. Con él, {@link #lowerBound} sobre un tiempo
+     * alineado al bucket es una lectura de arreglo; el resto solo busca dentro de su bucket.
+     */
+    public void buildBucketIndex(long bucketMs) {
+        requireSorted();
+        if (bucketMs <= 0) {
+            throw new IllegalArgumentException("bucketMs debe ser positivo");
+        }
+        if (isEmpty()) {
+            bucketStart = null;
+            return;
+        }
+        long origin = Math.floorDiv(time[0], bucketMs) * bucketMs;
+        int buckets = Math.toIntExact((time[size - 1] - origin) / bucketMs + 1);
+        int[] starts = new int[buckets + 1];
+        int index = 0;
+        for (int b = 0; b <= buckets; b++) {
+            long bucketTime = origin + b * bucketMs;
+            while (index < size && time[index] < bucketTime) index++;
+            starts[b] = index;
+        }
+        this.bucketOrigin = origin;
+        this.bucketMs = bucketMs;
+        this.bucketStart = starts;
+    }
+
+    public boolean hasBucketIndex() {
+        return bucketStart != null;
+    }
+
+    /**
+     * Primer índice cuyo tiempo es mayor o igual a {@code target}.
+     */
+    public int lowerBound(long target) {
+        requireSorted();
+        int[] starts = bucketStart;
+        if (starts != null) {
+            if (target <= bucketOrigin) {
+                return 0;
+            }
+            long bucket = (target - bucketOrigin) / bucketMs;
+            if (bucket >= starts.length - 1) {
+                return size;
+            }
+            int b = (int) bucket;
+            if (bucketOrigin + b * bucketMs == target) {
+                return starts[b];
+            }
+            return lowerBound(target, starts[b], starts[b + 1]);
+        }
+        return lowerBound(target, 0, size);
+    }
+
+    private int lowerBound(long target, int from, int to) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (time[mid] < target) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Vista sin copia de los trades en {@code [startTime, endTime)}.
+     */
+    public @NotNull Slice window(long startTime, long endTime) {
+        int from = lowerBound(startTime);
+        int to = Math.max(from, lowerBound(endTime));
+        return new Slice(this, from, to);
+    }
+
+    @Contract("_, _ -> new")
+    public @NotNull TradeTape copyRange(int from, int to) {
+        TradeTape copy = new TradeTape(to - from);
+        copy.appendRange(this, from, to);
+        return copy;
+    }
+
+    /**
+     * Elimina los trades anteriores a {@code minTime}.
+     */
+    public void trimBefore(long minTime) {
+        if (isEmpty()) {
+            return;
+        }
+        sort();
+        int cut = lowerBound(minTime);
+        if (cut == 0) {
+            return;
+        }
+        bucketStart = null;
+        int remaining = size - cut;
+        System.arraycopy(time, cut, time, 0, remaining);
+        System.arraycopy(price, cut, price, 0, remaining);
+        System.arraycopy(qty, cut, qty, 0, remaining);
+        buyerMaker = buyerMaker.get(cut, size);
+        size = remaining;
+    }
+
+    public void clear() {
+        bucketStart = null;
+        size = 0;
+        sorted = true;
+        buyerMaker.clear();
+    }
+
+    private void appendRange(@NotNull TradeTape source, int from, int to) {
+        int length = to - from;
+        if (length <= 0) {
+            return;
+        }
+        bucketStart = null;
+        ensureCapacity(size + length);
+        if (size > 0 && source.time[from] < time[size - 1]) {
+            sorted = false;
+        }
+        System.arraycopy(source.time, from, time, size, length);
+        System.arraycopy(source.price, from, price, size, length);
+        System.arraycopy(source.qty, from, qty, size, length);
+        for (int i = source.buyerMaker.nextSetBit(from); i >= 0 && i < to; i = source.buyerMaker.nextSetBit(i + 1)) {
+            buyerMaker.set(size + i - from);
+        }
+        sorted &= source.sorted || (from == to - 1);
+        size += length;
+    }
+
+    private boolean containsEqual(long t, float p, float q, boolean maker) {
+        for (int i = lowerBound(t); i < size && time[i] == t; i++) {
+            if (price[i] == p && qty[i] == q && buyerMaker.get(i) == maker) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= time.length) {
+            return;
+        }
+        int capacity = Math.max(required, time.length + (time.length >> 1));
+        time = Arrays.copyOf(time, capacity);
+        price = Arrays.copyOf(price, capacity);
+        qty = Arrays.copyOf(qty, capacity);
+    }
+
+    private void requireSorted() {
+        if (!sorted) {
+            throw new IllegalStateException("TradeTape is not sorted");
+        }
+    }
+
+    private void mergeSort(int[] order, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(order, buffer, from, mid);
+        mergeSort(order, buffer, mid, to);
+        if (time[order[mid - 1]] <= time[order[mid]]) {
+            return;
+        }
+        System.arraycopy(order, from, buffer, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            order[k++] = time[buffer[j]] < time[buffer[i]] ? buffer[j++] : buffer[i++];
+        }
+        while (i < mid) order[k++] = buffer[i++];
+        while (j < to) order[k++] = buffer[j++];
+    }
+
+    /**
+     * Rango contiguo de una {@link TradeTape}. Los índices son relativos al inicio del rango.
+     */
+    public record Slice(@NotNull TradeTape tape, int from, int to) {
+
+        public int size() {
+            return to - from;
+        }
+
+        public boolean isEmpty() {
+            return to <= from;
+        }
+
+        public long getTime(int index) {
+            return tape.time[from + index];
+        }
+
+        public float getPrice(int index) {
+            return tape.price[from + index];
+        }
+
+        public float getQty(int index) {
+            return tape.qty[from + index];
+        }
+
+        public boolean isBuyerMaker(int index) {
+            return tape.buyerMaker.get(from + index);
+        }
+    }
+}
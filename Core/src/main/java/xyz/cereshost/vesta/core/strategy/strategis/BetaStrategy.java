@@ -9,7 +9,7 @@ import xyz.cereshost.vesta.core.market.DireccionOperation;
 import xyz.cereshost.vesta.core.trading.TradingManager;
 import xyz.cereshost.vesta.core.trading.TypeOrder;
 import xyz.cereshost.vesta.core.utils.StrategyUtils;
-import xyz.cereshost.vesta.core.utils.candle.CandleIndicators;
+import xyz.cereshost.vesta.core.utils.candle.CandleColumns;
 import xyz.cereshost.vesta.core.utils.candle.CandlesBuilder;
 import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
 
@@ -21,7 +21,7 @@ public class BetaStrategy implements TradingStrategy, TradingStrategyConfigurabl
 
     @Override
     public void executeStrategy(@NotNull Optional<PredictionEngine.SequenceCandlesPrediction> pred, @NotNull SequenceCandles visibleCandles, @NotNull TradingManager manager) {
-        CandleIndicators candle = visibleCandles.getCandleLast();
+        CandleColumns.Cursor candle = visibleCandles.cursor().last();
         manager.getOpenPosition().ifPresent(position -> {
             for (TradingManager.OrderAlgo orderAlgo : manager.getLimitAlgos()){
                 double diffPercent = candle.getDiffPercent();
@@ -5,7 +5,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import xyz.cereshost.vesta.core.market.Candle;
 import xyz.cereshost.vesta.core.market.Market;
-import xyz.cereshost.vesta.core.market.Trade;
+import xyz.cereshost.vesta.core.market.TradeTape;
 import xyz.cereshost.vesta.core.ia.PredictionEngine;
 import xyz.cereshost.vesta.core.io.IOMarket;
 import xyz.cereshost.vesta.core.io.setup.LoadDataMethodLocalRange;
@@ -36,7 +36,7 @@ public class BackTestEngine {
     public BackTestEngine(int to, int from, @Nullable PredictionEngine engine, @NotNull TradingStrategy strategy) {
         this.marketMaster = IOMarket.loadMarket(
                 strategy.getMarketMaster(),
-                new LoadDataMethodLocalRange(true, to, from), true
+                new LoadDataMethodLocalRange(true, to, from, true), true
         );
         this.balance = 6;
         this.manager = new TradingManagerBackTest(this);
@@ -75,7 +75,9 @@ public class BackTestEngine {
         lastPrice = currentPrice;
         ProgressBar progressBar = new ProgressBar(totalSamples - 1);
 
-        Candle startCandle = allCandles.subSequence(lookBack, lookBack + 1).getFirst();
+        // Las ventanas del bucle comparten esta vista columnar
+        allCandles.columns();
+        Candle startCandle = allCandles.get(lookBack);
         this.currentTime = startCandle.getOpenTime();
         this.currentPrice = startCandle.getOpen();
         // Loop principal
@@ -169,16 +171,18 @@ public class BackTestEngine {
      * Simula la vida del trade usando el mercado de 1 minuto.
      */
     private void simulateOneTick(@NotNull Candle candle, @NotNull TradingManagerBackTest manager, @NotNull ExecutorCandles executorCandles) {
-        List<Trade> trades = marketMaster.getTradesInWindow(candle.getOpenTime(), candle.getCloseTime());
-        if (trades.isEmpty()) {
+        TradeTape trades = marketMaster.getTrades();
+        int from = marketMaster.getTradeIndexAt(candle.getOpenTime());
+        int to = marketMaster.getTradeIndexAt(candle.getCloseTime());
+        if (to <= from) {
             currentPrice = candle.getClose();
             currentTime = candle.getOpenTime();
             return;
         }
         Optional<TradingManager.OpenPosition> optional = manager.getOpenPosition();
-        for (Trade trade : trades) {
-            currentPrice = trade.price();
-            currentTime = trade.time();
+        for (int t = from; t < to; t++) {
+            currentPrice = trades.getPrice(t);
+            currentTime = trades.getTime(t);
             if (optional.isPresent()){
                 TradingManager.OpenPosition openPosition = optional.get();
                 for (TradingManager.OrderAlgo orderAlgo : manager.getLimitAlgos()){
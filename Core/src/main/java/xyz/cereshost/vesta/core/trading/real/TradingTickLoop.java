@@ -18,6 +18,7 @@ import xyz.cereshost.vesta.core.strategy.TradingStrategy;
 import xyz.cereshost.vesta.core.strategy.TradingStrategyConfigurable;
 import xyz.cereshost.vesta.core.trading.TradingManager;
 import xyz.cereshost.vesta.core.trading.real.api.BinanceApi;
+import xyz.cereshost.vesta.core.utils.candle.IncrementalCandlesBuilder;
 import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
 
 import java.io.BufferedReader;
@@ -56,6 +57,23 @@ public final class TradingTickLoop implements Notifiable {
     private final Market localWarmupMarket;
     @Nullable
     private final Market recentMarket;
+    /**
+     * Estado de los indicadores entre ticks; {@code null} si la estrategia usa indicadores que solo existen en ta4j
+     */
+    @Nullable
+    private IncrementalCandlesBuilder incrementalBuilder;
+    private boolean incrementalChecked = false;
+    /**
+     * Warmup más reciente más lo que llega en cada tick; solo se vuelve a juntar entero al recargar el warmup
+     */
+    @Nullable
+    private Market tickMarket;
+    private volatile boolean warmupReloaded = false;
+    /**
+     * Apertura de la vela previa al último hueco grande de {@link #tickMarket}; el hueco sigue dentro mientras esa
+     * vela no se haya recortado
+     */
+    private long lastGapStart = Long.MIN_VALUE;
 
 
     private static final ScheduledExecutorService WORKERS = Executors.newSingleThreadScheduledExecutor(r -> {
@@ -109,10 +127,7 @@ public final class TradingTickLoop implements Notifiable {
         if (localWarmupMarket != null) {
             WORKERS.scheduleAtFixedRate(() -> {
                 try {
-                    synchronized (localWarmupMarket) {
-                        localWarmupMarket.clear();
-                        localWarmupMarket.concat(IOMarket.loadMarketsRecentDays(typeMarket, LOCAL_ZIP_WARMUP_DAYS, false));
-                    }
+                    reloadWarmup();
                 } catch (InterruptedException | IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -165,7 +180,7 @@ public final class TradingTickLoop implements Notifiable {
         counter++;
         executor.execute(() -> {
             try {
-                market.set(loadMarket());
+                market.set(nextTickMarket());
             } catch (InterruptedException | IOException e) {
                 stop(e);
             } finally {
@@ -192,24 +207,21 @@ public final class TradingTickLoop implements Notifiable {
             config = StrategyConfig.builder().build();
         }
 
-        if (hasLargeGap(tickMarket, MAX_ALLOWED_GAP_MS)) {
+        if (hasLargeGap(tickMarket)) {
             if ((counter % 10) == 0 && localWarmupMarket != null) {
-                synchronized (localWarmupMarket) {
-                    localWarmupMarket.clear();
-                    localWarmupMarket.concat(IOMarket.loadMarketsRecentDays(typeMarket, LOCAL_ZIP_WARMUP_DAYS, false));
-                }
+                reloadWarmup();
             }
             return;
         }
         int lookBack = engine != null ? engine.getLookBack() : config.getLookBack();
-        SequenceCandles allCandles = strategy.getBuilder().build(tickMarket);
+        SequenceCandles allCandles = buildCandles(tickMarket);
         if (allCandles.size() <= lookBack + 1) {
             Vesta.warning("Histórico insuficiente para tick: %d velas", allCandles.size());
             return;
         }
 //        ChartUtils.showCandleChart("temporal", allCandles, "?");
 
-        Vesta.info("💰 Precio del %s: %.2f", typeMarket.symbol(), allCandles.getCandleLast().getClose());
+        Vesta.info("💰 Precio del %s: %.2f", typeMarket.symbol(), allCandles.getLast().getClose());
 
         Optional<PredictionEngine.SequenceCandlesPrediction> result;
         int endExclusive = allCandles.size() - 1;
@@ -222,33 +234,76 @@ public final class TradingTickLoop implements Notifiable {
         strategy.executeStrategy(result, allCandles, manager);
     }
 
-    private static boolean hasLargeGap(@NotNull Market market, long maxGapMs) {
-        Iterator<Candle> iterator = market.getCandles().iterator();
-        if (!iterator.hasNext()) {
+    /**
+     * Solo procesa las velas nuevas si la estrategia lo permite; si no, recalcula toda la serie.
+     */
+    private @NotNull SequenceCandles buildCandles(@NotNull Market tickMarket) {
+        if (!incrementalChecked) {
+            incrementalChecked = true;
+            long ms = typeMarket.timeFrameMarket().getMilliseconds();
+            incrementalBuilder = strategy.getBuilder().incremental((int) (TimeUnit.DAYS.toMillis(LOCAL_ZIP_WARMUP_DAYS + 1) / ms));
+            if (incrementalBuilder == null) {
+                Vesta.info("La estrategia usa indicadores sin versión incremental, se recalcula la serie en cada tick.");
+            }
+        }
+        if (incrementalBuilder == null) {
+            return strategy.getBuilder().build(tickMarket);
+        }
+        return incrementalBuilder.update(tickMarket, closedBefore(tickMarket));
+    }
+
+    /**
+     * Binance devuelve la vela que se está formando como la última de las klines, así que se toma como abierta la
+     * más nueva del fetch. El reloj local no sirve: el fetch ya terminó y puede ir adelantado respecto al servidor,
+     * y una vela abierta quedaría fija en el estado de los indicadores.
+     */
+    private static long closedBefore(@NotNull Market tickMarket) {
+        if (tickMarket.getCandles().isEmpty()) {
+            return Long.MIN_VALUE;
+        }
+        long ms = tickMarket.getTimeFrameMarket().getMilliseconds();
+        return (tickMarket.getCandles().getLast().getOpenTime() / ms) * ms;
+    }
+
+    private boolean hasLargeGap(@NotNull Market market) {
+        if (market.getCandles().isEmpty() || market.getCandles().getFirst().getOpenTime() > lastGapStart) {
             return false;
         }
-        long prev = iterator.next().getOpenTime();
-        long maxGap = 0;
-        while (iterator.hasNext()) {
-            long current = iterator.next().getOpenTime();
-            long gap = current - prev;
-            if (gap > maxGap) {
-                maxGap = gap;
+        Vesta.warning("Hueco temporal tras la vela %d (umbral %.2f minutos). Se omite estrategia.",
+                lastGapStart, MAX_ALLOWED_GAP_MS / 60_000.0);
+        return true;
+    }
+
+    /**
+     * Busca huecos solo entre las velas posteriores a {@code after} y la anterior a ellas.
+     */
+    private void scanGaps(@NotNull Market market, long after) {
+        long next = Long.MIN_VALUE;
+        for (Candle candle : market.getCandles().reversed()) {
+            long current = candle.getOpenTime();
+            if (next != Long.MIN_VALUE && next - current >= MAX_ALLOWED_GAP_MS) {
+                lastGapStart = Math.max(lastGapStart, current);
+                Vesta.warning("Hueco temporal detectado: %.2f minutos (umbral %.2f).",
+                        (next - current) / 60_000.0, MAX_ALLOWED_GAP_MS / 60_000.0);
             }
-            prev = current;
+            if (current <= after) break;
+            next = current;
         }
-        if (maxGap >= maxGapMs) {
-            Vesta.warning("Hueco temporal detectado: %.2f minutos (umbral %.2f). Se omite estrategia.",
-                    maxGap / 60_000.0, maxGapMs / 60_000.0);
-            return true;
+    }
+
+    private void reloadWarmup() throws IOException, InterruptedException {
+        if (localWarmupMarket == null) return;
+        synchronized (localWarmupMarket) {
+            localWarmupMarket.clear();
+            localWarmupMarket.concat(IOMarket.loadMarketsRecentDays(typeMarket, LOCAL_ZIP_WARMUP_DAYS, false));
         }
-        return false;
+        warmupReloaded = true;
     }
 
     private static void trimMarketToWindow(@NotNull Market market, long minOpenTime) {
         trimSetByTime(market.getCandles(), Candle::getOpenTime, minOpenTime);
-        trimSetByTime(market.getTrades(), Trade::time, minOpenTime);
-        trimSetByTime(market.getDepths(), Depth::getDate, minOpenTime);
+        market.getTrades().trimBefore(minOpenTime);
+        market.trimDepthsBefore(minOpenTime);
     }
 
     private static <T> void trimSetByTime(@NotNull LinkedHashSet<T> set,
@@ -299,15 +354,44 @@ public final class TradingTickLoop implements Notifiable {
         }
     }
 
-    @Contract(pure = true, value = "-> new")
-    public Market loadMarket() throws IOException, InterruptedException {
+    /**
+     * Mercado del tick: a partir del anterior solo se anexan las velas nuevas del fetch y se buscan huecos entre
+     * ellas. Se junta entero la primera vez y cada vez que se recarga el warmup.
+     */
+    private @NotNull Market nextTickMarket() throws IOException, InterruptedException {
+        if (tickMarket == null || warmupReloaded) {
+            warmupReloaded = false;
+            tickMarket = loadMarket();
+            lastGapStart = Long.MIN_VALUE;
+            scanGaps(tickMarket, Long.MIN_VALUE);
+            return tickMarket;
+        }
+        Market liveMarket = fetchLive();
+        long after = tickMarket.getCandles().isEmpty() ? Long.MIN_VALUE : tickMarket.getCandles().getLast().getOpenTime();
+        tickMarket.appendNewer(liveMarket);
+        scanGaps(tickMarket, after);
+        // Lo mismo que cubre el warmup más el día en vivo, para que no crezca entre recargas
+        trimMarketToWindow(tickMarket, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(LOCAL_ZIP_WARMUP_DAYS + 1));
+        return tickMarket;
+    }
+
+    /**
+     * Velas recientes de Binance, anexadas también a la ventana de un día que se usa al juntar el mercado entero
+     */
+    private @NotNull Market fetchLive() throws IOException, InterruptedException {
         Market liveMarket = IOMarket.loadMarket(typeMarket, new LoadDataMethodBinance(5, 30, 10));
         if (recentMarket != null) {
             synchronized (recentMarket) {
-                recentMarket.concat(liveMarket);
+                recentMarket.appendNewer(liveMarket);
                 trimMarketToWindow(recentMarket, System.currentTimeMillis() - RECENT_WINDOW_MS);
             }
         }
+        return liveMarket;
+    }
+
+    @Contract(pure = true, value = "-> new")
+    public Market loadMarket() throws IOException, InterruptedException {
+        Market liveMarket = fetchLive();
 
         Market merged = new Market(typeMarket);
         if (localWarmupMarket == null || localWarmupMarket.getCandles().isEmpty()) {
@@ -8,15 +8,18 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import xyz.cereshost.vesta.common.Vesta;
 import xyz.cereshost.vesta.core.market.Market;
+import xyz.cereshost.vesta.core.market.Metric;
 import xyz.cereshost.vesta.core.market.Symbol;
 import xyz.cereshost.vesta.core.market.TypeMarket;
 import xyz.cereshost.vesta.core.ia.VestaEngine;
+import xyz.cereshost.vesta.core.ia.utils.FeatureWindows;
 import xyz.cereshost.vesta.core.ia.utils.TrainingData;
 import xyz.cereshost.vesta.core.io.IOMarket;
 import xyz.cereshost.vesta.core.io.IOdata;
 import xyz.cereshost.vesta.core.io.setup.LoadDataMethodLocalIndex;
-import xyz.cereshost.vesta.core.utils.candle.CandleIndicators;
+import xyz.cereshost.vesta.core.utils.candle.CandleColumns;
 import xyz.cereshost.vesta.core.utils.candle.CandlesBuilder;
+import xyz.cereshost.vesta.core.utils.candle.IndicatorKey;
 import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
 
 import java.io.IOException;
@@ -26,6 +29,7 @@ import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -43,6 +47,8 @@ public class BuilderData {
     public static final int OUTPUTS = 1;
     public static final String TREND_EFFICIENCY_KEY = "trend_er_15";
     public static final String TREND_ADX_KEY = "trend_adx_15";
+    public static final IndicatorKey TREND_EFFICIENCY = IndicatorKey.of(TREND_EFFICIENCY_KEY);
+    public static final IndicatorKey TREND_ADX = IndicatorKey.of(TREND_ADX_KEY);
 
     public static @NotNull TrainingData buildTrainingData(@NotNull List<TypeMarket> typeMarkets, int maxMonth, int offset, CandlesBuilder candlesBuilder) {
         List<PairCache> cacheEntries = new ArrayList<>();
@@ -50,6 +56,11 @@ public class BuilderData {
         List<CompletableFuture<Object>> waitingCacheSave = new ArrayList<>();
 
 
+        // Las descargas van por delante del parseo; cada día se une a su descarga si aún no terminó
+        for (TypeMarket typeMarket : typeMarkets) {
+            IOMarket.prefetchMonths(typeMarket, offset + 1, maxMonth + offset, false);
+        }
+
         ProgressBar progressBar = new ProgressBar(maxMonth * typeMarkets.size());
         for (TypeMarket typeMarket : typeMarkets) {
             final Symbol symbol = typeMarket.symbol();
@@ -96,34 +107,27 @@ public class BuilderData {
                                 Vesta.warning("(idx:%d) insuficiente historial: " + candlesThisMonth.size() + " velas", currentMonth);
                                 return new MonthMarketCache(0, 0, 0, 0, candlesThisMonth, false);
                             }
-                            Pair<float[][][], float[][]> pair = BuilderData.buildPair(candlesThisMonth, LOOK_BACK);
-
-                            AtomicReference<float[][][]> Xraw = new AtomicReference<>(pair.getKey());
-                            AtomicReference<float[][]> yraw = new AtomicReference<>(pair.getValue());
+                            AtomicReference<FeatureWindows> windows = new AtomicReference<>(BuilderData.buildWindows(candlesThisMonth, LOOK_BACK));
 
-                            if (Xraw.get().length == 0) {
+                            if (windows.get().samples() == 0) {
                                 return new MonthMarketCache(0, 0, 0, 0, candlesThisMonth, false);
                             }
 
-                            int samples = Xraw.get().length;
-                            int seqLen = Xraw.get()[0].length;
-                            int features = Xraw.get()[0][0].length;
-                            int yCols = yraw.get()[0].length;
+                            int samples = windows.get().samples();
+                            int seqLen = windows.get().getLookBack();
+                            int features = windows.get().getFeatures();
+                            int yCols = OUTPUTS;
                             if (maxMonth < 6) {
                                 candlesThisMonth.clear();
                             }
-                            pair = null;
                             // Guarda el resultado del pair
                             MonthMarketCache cache = new MonthMarketCache(samples, seqLen, features, yCols, candlesThisMonth, true);
                             waitingCacheSave.add(CompletableFuture.supplyAsync(() -> {
                                 try {
-                                    Path path = IOdata.saveTrainingCache(IOdata.createTrainingCacheDir(typeMarkets), typeMarket.symbol(), currentMonth, Xraw.get(), yraw.get(), false);
+                                    Path path = IOdata.saveTrainingCache(IOdata.createTrainingCacheDir(typeMarkets), typeMarket.symbol(), currentMonth, windows.get(), false);
                                     cache.setCacheFile(path);
                                 } catch (IOException ignored) {}
-                                Arrays.fill(Xraw.get(), null);
-                                Arrays.fill(yraw.get(), null);
-                                Xraw.set(null);
-                                yraw.set(null);
+                                windows.set(null);
                                 return new Object();
                             }, VestaEngine.EXECUTOR_WRITE_CACHE_BUILD));
                             return cache;
@@ -225,75 +229,92 @@ public class BuilderData {
 
     @Contract("_, _-> new")
     public static @NotNull Pair<float[][][], float[][]> buildPair(@NotNull SequenceCandles candles, int lookBack) {
+        FeatureWindows windows = buildWindows(candles, lookBack);
+        return new Pair<>(windows.toArray(), windows.getY());
+    }
+
+    /**
+     * Calcula las features de cada vela una sola vez y expone las muestras como ventanas sobre esa tabla.
+     * Las muestras son las mismas y en el mismo orden que {@link #buildPair(SequenceCandles, int)}.
+     */
+    @Contract("_, _-> new")
+    public static @NotNull FeatureWindows buildWindows(@NotNull SequenceCandles candles, int lookBack) {
         int n = candles.size();
         int samples = n - lookBack - TREND_LABEL_WINDOW;
 
-        if (samples <= 0) return new Pair<>(new float[0][0][0], new float[0][0]);
+        if (samples <= 0) return FeatureWindows.empty(FEATURES, lookBack, OUTPUTS);
 
-        int validSamples = 0;
-        for (int i = 0; i < samples; i++) {
-            if (!hasValidFeatureWindow(candles, i, lookBack)) {
-                continue;
-            }
-            float[] outputs = buildTrendOutputs1(candles, i + lookBack, TREND_LABEL_WINDOW);
-            if (outputs.length != OUTPUTS) {
-                continue;
+        CandleColumns.Cursor curr = candles.cursor();
+        CandleColumns.Cursor prev = candles.cursor();
+        int efficiencyColumn = candles.column(TREND_EFFICIENCY);
+
+        // missing[k] = velas sin métricas antes de k, para validar cada ventana en O(1)
+        int[] missing = new int[n + 1];
+        for (int k = 0; k < n; k++) {
+            missing[k + 1] = missing[k] + (curr.at(k).getMetrics() == null ? 1 : 0);
+        }
+
+        // La fila k son las features de la vela k respecto a la k - 1, la fila 0 no se usa
+        float[] rows = new float[n * FEATURES];
+        for (int k = 1; k < n; k++) {
+            if (missing[k + 1] == missing[k - 1]) {
+                buildTrendInputs(curr.at(k), prev.at(k - 1), efficiencyColumn, rows, k * FEATURES);
             }
-            validSamples++;
         }
-        if (validSamples <= 0) return new Pair<>(new float[0][0][0], new float[0][0]);
 
-        float[][][] X = new float[validSamples][lookBack][FEATURES];
-        float[][] y = new float[validSamples][OUTPUTS];
-        int idx = 0;
+        int[] starts = new int[samples];
+        float[][] y = new float[samples][];
+        int validSamples = 0;
         for (int i = 0; i < samples; i++) {
-            if (!hasValidFeatureWindow(candles, i, lookBack)) {
+            // Cada vela de la ventana es curr o prev de algún paso
+            if (missing[i + lookBack + 1] != missing[i]) {
                 continue;
             }
-
-            float[] outputs = buildTrendOutputs1(candles, i + lookBack, TREND_LABEL_WINDOW);
+            float[] outputs = buildTrendOutputs1(curr, i + lookBack, TREND_LABEL_WINDOW);
             if (outputs.length != OUTPUTS) {
-
                 continue;
             }
-
-            for (int j = 0; j < lookBack; j++) {
-                X[idx][j] = buildTrendInputs(
-                        candles.getCandle(i + j + 1),
-                        candles.getCandle(i + j)
-                );
-            }
-            y[idx] = outputs;
-            idx++;
+            starts[validSamples] = i + 1;
+            y[validSamples] = outputs;
+            validSamples++;
         }
+        if (validSamples <= 0) return FeatureWindows.empty(FEATURES, lookBack, OUTPUTS);
 
-        return new Pair<>(X, y);
+        return new FeatureWindows(rows, FEATURES, lookBack, Arrays.copyOf(starts, validSamples), Arrays.copyOf(y, validSamples));
     }
 
     public static int count = 0;
 
     public final static int FEATURES = 8;
 
-    public static float @NotNull [] buildTrendInputs(@NotNull CandleIndicators curr, @NotNull CandleIndicators prev) {
+    public static float @NotNull [] buildTrendInputs(@NotNull CandleColumns.Cursor curr, @NotNull CandleColumns.Cursor prev, int efficiencyColumn) {
         if (curr.getMetrics() == null || prev.getMetrics() == null) return new float[0];
-        List<Float> fList = new ArrayList<>();
-        fList.add(safeDiffPercent(curr.getClose(), prev.getClose()));
-        fList.add(safeDiffPercent(curr.getHigh(), prev.getHighBody()));
-        fList.add(safeDiffPercent(curr.getLow(), prev.getLowBody()));
-        fList.add(safeDiffPercent(curr.getVolumen().baseVolume(), prev.getVolumen().baseVolume()));
-        fList.add(safeDiffPercent(curr.getMetrics().getCountTopTradesLongShortRatio(), prev.getMetrics().getCountTopTradesLongShortRatio()));
-        fList.add(safeDiffPercent(curr.getMetrics().getCountTradesLongShortRatio(), prev.getMetrics().getCountTradesLongShortRatio()));
-        fList.add(safeDiffPercent(curr.getMetrics().getSumOpenInterest(), prev.getMetrics().getSumOpenInterest()));
-        fList.add(clamp01(safeDiv(curr.get(TREND_EFFICIENCY_KEY), 100D)));
-
-        float[] f = new float[fList.size()];
-        for (int i = 0; i < fList.size(); i++) {
-            float v = fList.get(i);
-            f[i] = Float.isFinite(v) ? v : 0f;
-        }
+        float[] f = new float[FEATURES];
+        buildTrendInputs(curr, prev, efficiencyColumn, f, 0);
         return f;
     }
 
+    /**
+     * Escribe las {@link #FEATURES} entradas de la vela {@code curr} en {@code out} desde {@code offset}.
+     * Las dos velas deben tener métricas.
+     * @param efficiencyColumn columna de {@link #TREND_EFFICIENCY_KEY} o {@code -1} si no existe
+     */
+    public static void buildTrendInputs(@NotNull CandleColumns.Cursor curr, @NotNull CandleColumns.Cursor prev, int efficiencyColumn, float @NotNull [] out, int offset) {
+        Metric currMetrics = Objects.requireNonNull(curr.getMetrics());
+        Metric prevMetrics = Objects.requireNonNull(prev.getMetrics());
+        out[offset] = safeDiffPercent(curr.getClose(), prev.getClose());
+        out[offset + 1] = safeDiffPercent(curr.getHigh(), prev.getHighBody());
+        out[offset + 2] = safeDiffPercent(curr.getLow(), prev.getLowBody());
+        out[offset + 3] = safeDiffPercent(curr.getBaseVolume(), prev.getBaseVolume());
+        out[offset + 4] = safeDiffPercent(currMetrics.getCountTopTradesLongShortRatio(), prevMetrics.getCountTopTradesLongShortRatio());
+        out[offset + 5] = safeDiffPercent(currMetrics.getCountTradesLongShortRatio(), prevMetrics.getCountTradesLongShortRatio());
+        out[offset + 6] = safeDiffPercent(currMetrics.getSumOpenInterest(), prevMetrics.getSumOpenInterest());
+        out[offset + 7] = efficiencyColumn < 0 ? 0f : clamp01(safeDiv(curr.get(efficiencyColumn), 100D));
+        for (int i = offset; i < offset + FEATURES; i++) {
+            if (!Float.isFinite(out[i])) out[i] = 0f;
+        }
+    }
+
     public CandlesBuilder getProfierCandlesBuilder() {
         return new CandlesBuilder()
                 .addERIndicator(TREND_EFFICIENCY_KEY, TREND_LABEL_WINDOW)
@@ -341,38 +362,29 @@ public class BuilderData {
         return Double.isFinite(value) ? (float) value : 0f;
     }
 
-    private static boolean hasValidFeatureWindow(@NotNull SequenceCandles candles, int startIndex, int lookBack) {
-        for (int j = 0; j < lookBack; j++) {
-            CandleIndicators curr = candles.getCandle(startIndex + j + 1);
-            CandleIndicators prev = candles.getCandle(startIndex + j);
-            if (curr.getMetrics() == null || prev.getMetrics() == null) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private static float @NotNull [] buildTrendOutputs1(@NotNull SequenceCandles candles, int anchorIndex, int futureWindow) {
-        if (anchorIndex < 0 || anchorIndex + futureWindow >= candles.size()) {
+    private static float @NotNull [] buildTrendOutputs1(@NotNull CandleColumns.Cursor cursor, int anchorIndex, int futureWindow) {
+        if (anchorIndex < 0 || anchorIndex + futureWindow >= cursor.getSize()) {
             return new float[0];
         }
         float[] result = new float[1];
         double diffTotal = 0;
         for (int step = 1; step <= futureWindow; step++) {
-            diffTotal += candles.getCandle(anchorIndex + step).getDiffPercent();
+            diffTotal += cursor.at(anchorIndex + step).getDiffPercent();
         }
         result[0] = (float) Math.tanh(diffTotal);
         return result;
     }
 
 
-    private static float @NotNull [] buildTrendOutputs0(@NotNull SequenceCandles candles, int anchorIndex, int futureWindow) {
-        if (anchorIndex < 0 || anchorIndex + futureWindow >= candles.size()) {
+    private static float @NotNull [] buildTrendOutputs0(@NotNull CandleColumns.Cursor cursor, int anchorIndex, int futureWindow) {
+        if (anchorIndex < 0 || anchorIndex + futureWindow >= cursor.getSize()) {
             return new float[0];
         }
 
-        CandleIndicators anchor = candles.getCandle(anchorIndex);
+        CandleColumns.Cursor anchor = cursor.at(anchorIndex);
         double anchorClose = anchor.getClose();
+        double anchorEfficiency = anchor.get(TREND_EFFICIENCY);
+        double anchorAdx = anchor.get(TREND_ADX);
         if (!Double.isFinite(anchorClose) || anchorClose <= 0D) {
             return new float[]{0f, 0f};
         }
@@ -383,7 +395,7 @@ public class BuilderData {
         double pathMovement = 0D;
 
         for (int step = 1; step <= futureWindow; step++) {
-            double close = candles.getCandle(anchorIndex + step).getClose();
+            double close = cursor.at(anchorIndex + step).getClose();
             if (!Double.isFinite(close) || close <= 0D) {
                 return new float[]{0f, 0f};
             }
@@ -404,8 +416,8 @@ public class BuilderData {
         }
 
         double efficiency = clamp01(Math.abs(previousClose - anchorClose) / pathMovement);
-        double efficiencyIndicator = clamp01(safeDiv(anchor.get(TREND_EFFICIENCY_KEY), 100D));
-        double adxStrength = clamp01((anchor.get(TREND_ADX_KEY) - 15D) / 25D);
+        double efficiencyIndicator = clamp01(safeDiv(anchorEfficiency, 100D));
+        double adxStrength = clamp01((anchorAdx - 15D) / 25D);
         double dominantRatio = Math.max(upMoves, downMoves) / (double) futureWindow;
         double consistency = clamp01((dominantRatio - 0.70D) / 0.30D);
         double directionalBias = clamp01((Math.abs(upMoves - downMoves) / (double) futureWindow - 0.20D) / 0.80D);
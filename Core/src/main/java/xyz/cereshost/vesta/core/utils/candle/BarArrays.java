@@ -0,0 +1,40 @@
+package xyz.cereshost.vesta.core.utils.candle;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.core.market.Candle;
+
+import java.util.Collection;
+
+/**
+ * OHLCV en arreglos primitivos paralelos, en el mismo orden que las barras de la serie.
+ * Es la entrada de {@link PrimitiveIndicators}.
+ *
+ * @param volume volumen base (el mismo que usa ta4j como {@code volume})
+ * @param quoteVolume volumen en la moneda de cotización
+ */
+public record BarArrays(long[] openTime, double[] open, double[] high, double[] low, double[] close, double[] volume, double[] quoteVolume) {
+
+    public int size() {
+        return close.length;
+    }
+
+    @Contract("_ -> new")
+    public static @NotNull BarArrays of(@NotNull Collection<? extends Candle> candles) {
+        int size = candles.size();
+        BarArrays bars = new BarArrays(new long[size], new double[size], new double[size], new double[size],
+                new double[size], new double[size], new double[size]);
+        int i = 0;
+        for (Candle cs : candles) {
+            bars.openTime[i] = cs.getOpenTime();
+            bars.open[i] = cs.getOpen();
+            bars.high[i] = cs.getHigh();
+            bars.low[i] = cs.getLow();
+            bars.close[i] = cs.getClose();
+            bars.volume[i] = cs.getVolumen().baseVolume();
+            bars.quoteVolume[i] = cs.getVolumen().quoteVolume();
+            i++;
+        }
+        return bars;
+    }
+}
@@ -0,0 +1,248 @@
+package xyz.cereshost.vesta.core.utils.candle;
+
+import lombok.Getter;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.cereshost.vesta.core.market.Candle;
+import xyz.cereshost.vesta.core.market.Metric;
+import xyz.cereshost.vesta.core.utils.BiDictionary;
+
+import java.util.List;
+
+/**
+ * Vista columnar de un {@link SequenceCandles}: el OHLCV va en arrays primitivos y los indicadores en una matriz
+ * {@code double[]} por filas ({@code fila * columnas + columna}). Esa matriz es la misma en la que
+ * {@link CandlesBuilder#build} escribe los indicadores de las velas, así que solo se copia si la lista se modificó y
+ * sus filas ya no son consecutivas.
+ * <p>
+ * Los nombres de los indicadores se resuelven una sola vez a un {@code int} con {@link #column(String)} (o con un
+ * {@link IndicatorKey}) y luego se leen con un {@link Cursor}, que se reutiliza entre filas, así que recorrer la
+ * serie no crea objetos.
+ * </p>
+ *
+ * @see SequenceCandles#columns()
+ * @see SequenceCandles#cursor()
+ */
+public final class CandleColumns {
+
+    @Getter
+    private final int size;
+    @Getter
+    private final int columns;
+    private final BiDictionary<String, Byte> dictionary;
+    private final IndicatorKey.Columns keyColumns;
+    private final long[] openTime;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] baseVolume;
+    /**
+     * Las velas originales, solo para los campos poco usados (métricas, profundidad, volumen completo)
+     */
+    private final Candle[] candles;
+    /**
+     * La matriz de {@link CandlesBuilder#build} cuando las filas siguen en orden, si no una copia
+     */
+    private final double[] matrix;
+    private final int base;
+
+    private CandleColumns(@NotNull IndicatorKey.Columns keyColumns, @NotNull BiDictionary<String, Byte> dictionary, int size, int columns,
+                          double @NotNull [] matrix, int base) {
+        this.keyColumns = keyColumns;
+        this.dictionary = dictionary;
+        this.size = size;
+        this.columns = columns;
+        this.openTime = new long[size];
+        this.open = new double[size];
+        this.high = new double[size];
+        this.low = new double[size];
+        this.close = new double[size];
+        this.baseVolume = new double[size];
+        this.candles = new Candle[size];
+        this.matrix = matrix;
+        this.base = base;
+    }
+
+    @Contract("_, _, _ -> new")
+    static @NotNull CandleColumns of(@NotNull IndicatorKey.Columns keyColumns, @NotNull BiDictionary<String, Byte> dictionary,
+                                     @NotNull List<SequenceCandles.CandleContainer> containers) {
+        int size = containers.size();
+        int columns = containers.isEmpty() ? 0 : containers.getFirst().columns();
+        double[] shared = sharedMatrix(containers, columns);
+        CandleColumns cc = shared != null
+                ? new CandleColumns(keyColumns, dictionary, size, columns, shared, containers.getFirst().offset())
+                : new CandleColumns(keyColumns, dictionary, size, columns, new double[size * columns], 0);
+        int row = 0;
+        for (SequenceCandles.CandleContainer container : containers) {
+            cc.openTime[row] = container.getOpenTime();
+            cc.open[row] = container.getOpen();
+            cc.high[row] = container.getHigh();
+            cc.low[row] = container.getLow();
+            cc.close[row] = container.getClose();
+            cc.baseVolume[row] = container.getVolumen().baseVolume();
+            cc.candles[row] = container;
+            if (shared == null) System.arraycopy(container.matrix(), container.offset(), cc.matrix, row * columns, columns);
+            row++;
+        }
+        return cc;
+    }
+
+    /**
+     * La matriz que comparten las velas si sus filas son consecutivas, o {@code null} si hay que copiarlas (velas de
+     * distintos orígenes, o la lista se reordenó o se le quitaron velas del medio).
+     */
+    private static double @Nullable [] sharedMatrix(@NotNull List<SequenceCandles.CandleContainer> containers, int columns) {
+        if (containers.isEmpty()) return null;
+        double[] matrix = containers.getFirst().matrix();
+        int offset = containers.getFirst().offset();
+        for (SequenceCandles.CandleContainer container : containers) {
+            if (container.matrix() != matrix || container.offset() != offset || container.columns() != columns) return null;
+            offset += columns;
+        }
+        return matrix;
+    }
+
+    /**
+     * Resuelve el nombre de un indicador a su columna en la matriz.
+     * @return la columna o {@code -1} si el indicador no existe
+     */
+    public int column(@NotNull String key) {
+        Byte column = dictionary.getRight(key);
+        return column == null || column >= columns ? -1 : column;
+    }
+
+    /**
+     * @see #column(String)
+     */
+    public int column(@NotNull IndicatorKey key) {
+        int column = keyColumns.column(key);
+        return column >= columns ? -1 : column;
+    }
+
+    public double get(int row, int column) {
+        return matrix[base + row * columns + column];
+    }
+
+    public long getOpenTime(int row) {
+        return openTime[row];
+    }
+
+    public double getClose(int row) {
+        return close[row];
+    }
+
+    @Contract(value = " -> new", pure = true)
+    public @NotNull Cursor cursor() {
+        return new Cursor(0, size);
+    }
+
+    @Contract(value = "_, _ -> new", pure = true)
+    @NotNull Cursor cursor(int offset, int length) {
+        return new Cursor(offset, length);
+    }
+
+    /**
+     * Puntero reutilizable sobre una fila de {@link CandleColumns}. Las filas son relativas a la ventana con la
+     * que se creó, igual que los índices de {@link SequenceCandles#subSequence(int, int)}.
+     * <p>
+     * No es thread-safe, cada hilo debe usar su propio cursor.
+     * </p>
+     */
+    public final class Cursor {
+        private final int offset;
+        @Getter
+        private final int size;
+        private int row;
+
+        private Cursor(int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        /**
+         * Mueve el cursor a la fila {@code index} de la ventana.
+         */
+        @Contract("_ -> this")
+        public @NotNull Cursor at(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            this.row = offset + index;
+            return this;
+        }
+
+        @Contract("-> this")
+        public @NotNull Cursor last() {
+            return at(size - 1);
+        }
+
+        public int index() {
+            return row - offset;
+        }
+
+        public long getOpenTime() {
+            return openTime[row];
+        }
+
+        public double getOpen() {
+            return open[row];
+        }
+
+        public double getHigh() {
+            return high[row];
+        }
+
+        public double getLow() {
+            return low[row];
+        }
+
+        public double getClose() {
+            return close[row];
+        }
+
+        public double getBaseVolume() {
+            return baseVolume[row];
+        }
+
+        public double getHighBody() {
+            return Math.max(open[row], close[row]);
+        }
+
+        public double getLowBody() {
+            return Math.min(open[row], close[row]);
+        }
+
+        public double getDiffPercent() {
+            return ((close[row] - open[row]) / open[row]) * 100;
+        }
+
+        public @Nullable Metric getMetrics() {
+            return candles[row].getMetrics();
+        }
+
+        public @Nullable Candle.DepthCandle getDepth() {
+            return candles[row].getDepth();
+        }
+
+        public @NotNull Candle getCandle() {
+            return candles[row];
+        }
+
+        /**
+         * @param column columna resuelta con {@link CandleColumns#column(String)}
+         */
+        public double get(int column) {
+            return matrix[base + row * columns + column];
+        }
+
+        /**
+         * Igual que {@link CandleIndicators#get(String)}, si el indicador no existe devuelve {@code 0}.
+         */
+        public double get(@NotNull IndicatorKey key) {
+            int column = column(key);
+            return column < 0 ? 0.0 : matrix[base + row * columns + column];
+        }
+    }
+}
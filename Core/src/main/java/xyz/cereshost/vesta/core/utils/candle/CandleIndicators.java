@@ -4,17 +4,18 @@ import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
 import xyz.cereshost.vesta.core.market.Candle;
 
-import java.util.HashMap;
 
 /**
  * Contiene el OHLCV y los indicadores técnicos previamente asígnados de {@link CandlesBuilder}.
  *
  * <p>
  * Esta clase está pensada para el acceso a indicadores técnicos en {@link TradingStrategySimple TradingStrategy},
- * no está pensado usar para guardar en grandes cantidades ya qué cada clase contiene un {@link HashMap} como key es un
- * {@link String} previamente asignado en {@link CandlesBuilder} a diferencia de {@link xyz.cereshost.vesta.core.utils.candle.SequenceCandles.CandleContainer CandleContainer}
+ * no está pensado usar para guardar en grandes cantidades ya qué cada clase copia el OHLCV a diferencia de
+ * {@link xyz.cereshost.vesta.core.utils.candle.SequenceCandles.CandleContainer CandleContainer}. Los indicadores se
+ * buscan por el {@link String} asignado en {@link CandlesBuilder}; en bucles usa {@link SequenceCandles#cursor()}.
  * </p>
  *
  * @see CandlesBuilder
@@ -28,13 +29,17 @@ import java.util.HashMap;
 @EqualsAndHashCode(callSuper = true)
 public final class CandleIndicators extends Candle {
     @Getter(AccessLevel.NONE)
-    private final HashMap<String, Double> indicador;
+    private final SequenceCandles.CandleContainer container;
     @Getter
     private final SequenceCandles sequenceCandles;
 
-    public CandleIndicators(Candle candle, HashMap<String, Double> indicador, SequenceCandles sequenceCandles) {
-        super(candle);
-        this.indicador = indicador;
+    public CandleIndicators(Candle candle, double[] indicador, SequenceCandles sequenceCandles) {
+        this(new SequenceCandles.CandleContainer(candle, indicador), sequenceCandles);
+    }
+
+    CandleIndicators(SequenceCandles.CandleContainer container, SequenceCandles sequenceCandles) {
+        super(container);
+        this.container = container;
         this.sequenceCandles = sequenceCandles;
     }
 
@@ -44,8 +49,19 @@ public final class CandleIndicators extends Candle {
             case "high" -> getHigh();
             case "low" -> getLow();
             case "close" -> getClose();
-            default -> indicador.getOrDefault(keyIndicador, 0.0);
+            default -> {
+                int column = sequenceCandles.column(keyIndicador);
+                yield column < 0 || column >= container.columns() ? 0.0 : container.indicador(column);
+            }
         };
     }
 
+    /**
+     * Como {@link #get(String)} pero sin buscar el nombre, solo indicadores de {@link CandlesBuilder}.
+     */
+    public double get(@NotNull IndicatorKey key) {
+        int column = sequenceCandles.column(key);
+        return column < 0 || column >= container.columns() ? 0.0 : container.indicador(column);
+    }
+
 }
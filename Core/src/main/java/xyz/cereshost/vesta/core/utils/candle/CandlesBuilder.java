@@ -1,8 +1,10 @@
 package xyz.cereshost.vesta.core.utils.candle;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.ta4j.core.BaseBar;
 import org.ta4j.core.BaseBarSeries;
 import org.ta4j.core.BaseBarSeriesBuilder;
@@ -20,7 +22,6 @@ import org.ta4j.core.num.DecimalNum;
 import org.ta4j.core.num.Num;
 import xyz.cereshost.vesta.common.Vesta;
 import xyz.cereshost.vesta.core.market.Candle;
-import xyz.cereshost.vesta.core.market.Depth;
 import xyz.cereshost.vesta.core.market.Market;
 import xyz.cereshost.vesta.core.market.Metric;
 import xyz.cereshost.vesta.core.utils.BuilderData;
@@ -31,64 +32,112 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
 @Getter
 @SuppressWarnings("unused")
 public class CandlesBuilder {
 
-    private final HashMap<String, BiFunction<IndicatorData, Collection<AbstractIndicator<Num>>, Indicator<Num>>> indicators = new HashMap<>();
+    private final HashMap<String, BiFunction<IndicatorData, Collection<AbstractIndicator<Num>>, Indicator<Num>>> indicators = new LinkedHashMap<>();
+    /**
+     * Implementación sobre {@code double[]} de cada indicador; los que no la tienen se calculan con ta4j
+     */
+    private final HashMap<String, PrimitiveIndicator> primitives = new HashMap<>();
+    /**
+     * Estado por barra de cada indicador para {@link IncrementalCandlesBuilder}
+     */
+    private final HashMap<String, Supplier<StreamingIndicators.State>> streaming = new HashMap<>();
+    private Backend backend = Backend.PRIMITIVE;
+    /**
+     * Periodos corto y largo de cada MACD agregado, por clave, de los que parten la señal y el histograma
+     */
+    @Getter(AccessLevel.NONE)
+    private final HashMap<String, int[]> macdPeriods = new HashMap<>();
+    /**
+     * Clave del último MACD agregado, para la señal y el histograma sin clave explícita
+     */
+    @Getter(AccessLevel.NONE)
+    private String lastMACD;
 
     @Contract(value = "_, _ -> this")
     public synchronized CandlesBuilder addIndicator(String key, BiFunction<IndicatorData, Collection<AbstractIndicator<Num>>, Indicator<Num>> indicator) {
         indicators.put(key, indicator);
+        primitives.remove(key);
+        streaming.remove(key);
         return this;
     }
 
+    /**
+     * Motor con el que se calculan los indicadores. {@link Backend#TA4J} queda como referencia para comparar resultados.
+     */
+    @Contract(value = "_ -> this")
+    public synchronized CandlesBuilder withBackend(@NotNull Backend backend) {
+        this.backend = backend;
+        return this;
+    }
+
+    private void put(String key,
+                     BiFunction<IndicatorData, Collection<AbstractIndicator<Num>>, Indicator<Num>> indicator,
+                     PrimitiveIndicator primitive,
+                     Supplier<StreamingIndicators.State> state
+    ) {
+        indicators.put(key, indicator);
+        primitives.put(key, primitive);
+        streaming.put(key, state);
+    }
+
     @Contract(value = "_, _ -> this")
     public synchronized CandlesBuilder addSMAIndicator(String key, int barCount) {
-        indicators.put(key, (data, indicators) -> new SMAIndicator(data.closes(), barCount));
+        put(key, (data, indicators) -> new SMAIndicator(data.closes(), barCount), bars -> PrimitiveIndicators.sma(bars.close(), barCount),
+                () -> StreamingIndicators.sma(barCount));
         return this;
     }
 
     @Contract(value = "_, _ -> this")
     public synchronized CandlesBuilder addVWAIndicator(String key, int barCount) {
-        indicators.put(key, (data, indicators) -> new VWAPIndicator(data.series(), barCount));
+        put(key, (data, indicators) -> new VWAPIndicator(data.series(), barCount), bars -> PrimitiveIndicators.vwap(bars, barCount),
+                () -> StreamingIndicators.vwap(barCount));
         return this;
     }
 
     @Contract(value = "_, _, _ -> this")
     public synchronized CandlesBuilder addKalmanFilterIndicator(String key, double processNoise, double measurementNoise) {
-        indicators.put(key, (data, indicators) -> new KalmanFilterIndicator(data.closes(), processNoise, measurementNoise));
+        put(key, (data, indicators) -> new KalmanFilterIndicator(data.closes(), processNoise, measurementNoise), bars -> PrimitiveIndicators.kalman(bars.close(), processNoise, measurementNoise),
+                () -> StreamingIndicators.kalman(processNoise, measurementNoise));
         return this;
     }
 
     @Contract(value = "_, _, -> this")
     public synchronized CandlesBuilder addEMAIndicator(String key, int barCount) {
-        indicators.put(key, (data, indicators) -> new EMAIndicator(data.closes(), barCount));
+        put(key, (data, indicators) -> new EMAIndicator(data.closes(), barCount), bars -> PrimitiveIndicators.ema(bars.close(), barCount),
+                () -> StreamingIndicators.ema(barCount));
         return this;
     }
 
     @Contract(value = "_, _ -> this")
     public synchronized CandlesBuilder addWMAIndicator(String key, int barCount) {
-        indicators.put(key, (data, indicators) -> new WMAIndicator(data.closes(), barCount));
+        put(key, (data, indicators) -> new WMAIndicator(data.closes(), barCount), bars -> PrimitiveIndicators.wma(bars.close(), barCount),
+                () -> StreamingIndicators.wma(barCount));
         return this;
     }
 
     @Contract(value = "_, _ -> this")
     public synchronized CandlesBuilder addATRIndicator(String key, int barCount) {
-        indicators.put(key, (data, indicators) -> new ATRIndicator(data.series(), barCount));
+        put(key, (data, indicators) -> new ATRIndicator(data.series(), barCount), bars -> PrimitiveIndicators.atr(bars, barCount),
+                () -> StreamingIndicators.atr(barCount));
         return this;
     }
 
     @Contract(value = "_, -> this")
     public synchronized CandlesBuilder addOBVIndicator(String key) {
-        indicators.put(key, (data, indicators) -> new OnBalanceVolumeIndicator(data.series()));
+        put(key, (data, indicators) -> new OnBalanceVolumeIndicator(data.series()), PrimitiveIndicators::obv,
+                StreamingIndicators::obv);
         return this;
     }
 
     @Contract(value = "_, _ -> this")
     public synchronized CandlesBuilder addERIndicator(String key, int barCount) {
-        indicators.put(key, (data, indicators) -> new CachedIndicator<>(data.closes()) {
+        put(key, (data, indicators) -> new CachedIndicator<>(data.closes()) {
             @Override
             protected Num calculate(int index) {
                 int length = Math.min(Math.max(barCount, 1), index);
@@ -117,46 +166,107 @@ public class CandlesBuilder {
             public int getCountOfUnstableBars() {
                 return Math.max(barCount, 1);
             }
-        });
+        }, bars -> PrimitiveIndicators.efficiencyRatio(bars.close(), barCount),
+                () -> StreamingIndicators.efficiencyRatio(barCount));
         return this;
     }
 
     @Contract(value = "_, _, _ -> this")
     public synchronized CandlesBuilder addADXIndicator(String key, int DXBarCount, int barCount) {
-        indicators.put(key, (data, indicators) -> new ADXIndicator(data.series(), DXBarCount, barCount));
+        put(key, (data, indicators) -> new ADXIndicator(data.series(), DXBarCount, barCount), bars -> PrimitiveIndicators.adx(bars, DXBarCount, barCount),
+                () -> StreamingIndicators.adx(DXBarCount, barCount));
         return this;
     }
 
     @Contract(value = "_, _ -> this")
     public synchronized CandlesBuilder addRSIIndicator(String key, int barCount) {
-        indicators.put(key, (data, indicators) -> new RSIIndicator(data.closes(), barCount));
+        put(key, (data, indicators) -> new RSIIndicator(data.closes(), barCount), bars -> PrimitiveIndicators.rsi(bars.close(), barCount),
+                () -> StreamingIndicators.rsi(barCount));
         return this;
     }
 
     @Contract(value = "_, _, _ -> this")
     public synchronized CandlesBuilder addSuperTrendIndicator(String key, int barCount, float multiplier) {
-        indicators.put(key, (data, indicators) -> new SuperTrendIndicator(data.series(), barCount, multiplier));
+        put(key, (data, indicators) -> new SuperTrendIndicator(data.series(), barCount, multiplier), bars -> PrimitiveIndicators.superTrend(bars, barCount, multiplier),
+                () -> StreamingIndicators.superTrend(barCount, multiplier));
         return this;
     }
 
     @Contract(value = "_, _, _ -> this")
     public synchronized CandlesBuilder addMACDIndicator(String key, int shortBarCount, int longBarCount) {
-        indicators.put(key, (data, indicators) -> new MACDIndicator(data.closes(), shortBarCount, longBarCount));
+        macdPeriods.put(key, new int[]{shortBarCount, longBarCount});
+        lastMACD = key;
+        put(key, (data, indicators) -> new MACDIndicator(data.closes(), shortBarCount, longBarCount),
+                bars -> PrimitiveIndicators.macd(bars.close(), shortBarCount, longBarCount),
+                () -> StreamingIndicators.macd(shortBarCount, longBarCount));
         return this;
     }
 
+    /**
+     * Histograma del último MACD agregado
+     */
     @Contract(value = "_, _ -> this")
     public synchronized CandlesBuilder addMACDHistogramIndicator(String key, int barCount) {
-        indicators.put(key, (data, indicators) -> searchIndicador(indicators, MACDIndicator.class).getHistogram(barCount));
+        return addMACDHistogramIndicator(key, lastMACD, barCount);
+    }
+
+    /**
+     * Histograma del MACD agregado con {@code macdKey}; los dos motores parten de los mismos periodos
+     */
+    @Contract(value = "_, _, _ -> this")
+    public synchronized CandlesBuilder addMACDHistogramIndicator(String key, String macdKey, int barCount) {
+        int[] macd = macdPeriods(macdKey);
+        put(key, (data, indicators) -> new MACDIndicator(data.closes(), macd[0], macd[1]).getHistogram(barCount),
+                bars -> PrimitiveIndicators.macdHistogram(PrimitiveIndicators.macd(bars.close(), macd[0], macd[1]), barCount),
+                () -> StreamingIndicators.macdHistogram(macd[0], macd[1], barCount));
         return this;
     }
 
+    /**
+     * Línea de señal del último MACD agregado
+     */
     @Contract(value = "_, _ -> this")
     public synchronized CandlesBuilder addMACDSignalIndicator(String key, int barCount) {
-        indicators.put(key, (data, indicators) -> searchIndicador(indicators, MACDIndicator.class).getSignalLine(barCount));
+        return addMACDSignalIndicator(key, lastMACD, barCount);
+    }
+
+    /**
+     * Línea de señal del MACD agregado con {@code macdKey}; los dos motores parten de los mismos periodos
+     */
+    @Contract(value = "_, _, _ -> this")
+    public synchronized CandlesBuilder addMACDSignalIndicator(String key, String macdKey, int barCount) {
+        int[] macd = macdPeriods(macdKey);
+        put(key, (data, indicators) -> new MACDIndicator(data.closes(), macd[0], macd[1]).getSignalLine(barCount),
+                bars -> PrimitiveIndicators.macdSignal(PrimitiveIndicators.macd(bars.close(), macd[0], macd[1]), barCount),
+                () -> StreamingIndicators.macdSignal(macd[0], macd[1], barCount));
         return this;
     }
 
+    private int @NotNull [] macdPeriods(@Nullable String macdKey) {
+        int[] periods = macdKey == null ? null : macdPeriods.get(macdKey);
+        if (periods == null) {
+            throw new IllegalArgumentException("No se encontró el indicador MACD " + macdKey);
+        }
+        return periods;
+    }
+
+    /**
+     * Crea un {@link IncrementalCandlesBuilder} con los indicadores actuales, o {@code null} si alguno
+     * solo existe en ta4j o si el motor es {@link Backend#TA4J}.
+     * @param capacity velas que conserva la ventana
+     */
+    @Contract(pure = true)
+    public synchronized @Nullable IncrementalCandlesBuilder incremental(int capacity) {
+        if (backend != Backend.PRIMITIVE || !streaming.keySet().containsAll(indicators.keySet())) {
+            return null;
+        }
+        LinkedHashMap<String, Supplier<StreamingIndicators.State>> states = new LinkedHashMap<>();
+        for (String key : indicators.keySet()) {
+            states.put(key, streaming.get(key));
+        }
+        return new IncrementalCandlesBuilder(states, capacity);
+    }
+
     /**
      * Crea una instancia de {@link SequenceCandles} a partir de {@link Market}
      * (se debe asegurar el orden temporal antes de llamar el tiempo)
@@ -169,7 +279,6 @@ public class CandlesBuilder {
     @NotNull
     @Contract(pure = true, value = "_, -> new")
     public SequenceCandles build(@NotNull Market market) {
-        BaseBarSeries series = new BaseBarSeriesBuilder().withName(market.getSymbol().toString()).build();
         NavigableMap<Long, Candle> candleByUnitTime = new TreeMap<>();
         long ms = market.getTimeFrameMarket().getMilliseconds();
 
@@ -178,40 +287,18 @@ public class CandlesBuilder {
             candleByUnitTime.put(minute, cs);
         }
 
-        market.buildDepthCache();
         market.buildMetricsCache();
 
-        // Crea las barras de la libreria ta4j
-        for (Map.Entry<Long, Candle> entry : candleByUnitTime.entrySet()) {
-            long minute = entry.getKey();
-            Candle cs = entry.getValue();
-            try {
-                series.addBar(new BaseBar(Duration.ofMillis(ms),
-                        Instant.ofEpochMilli(minute),
-                        Instant.ofEpochMilli(minute + ms),
-                        DecimalNum.valueOf(cs.getOpen()),
-                        DecimalNum.valueOf(cs.getHigh()),
-                        DecimalNum.valueOf(cs.getLow()),
-                        DecimalNum.valueOf(cs.getClose()),
-                        DecimalNum.valueOf(cs.getVolumen().baseVolume()),
-                        DecimalNum.valueOf(cs.getVolumen().quoteVolume()),
-                        0
-                ));
-            } catch (Exception e) {
-                Vesta.sendErrorException("Error al crear la velas", e);
-            }
-        }
-
-        ClosePriceIndicator closes = new ClosePriceIndicator(series);
-
         // Crea un diccionario para optimizar espacio en memoria asignada un String a un byte
         byte byteKey = 0;
         ConcurrentHashBiDictionary<String, Byte> dictionary = new ConcurrentHashBiDictionary<>();
+        double[][] values;
         synchronized (indicators) {
             for (String key : indicators.keySet()) {
                 dictionary.add(key, byteKey);
                 byteKey++;
             }
+            values = computeIndicators(market, candleByUnitTime, dictionary);
         }
 
         long startMinute = candleByUnitTime.firstKey();
@@ -219,23 +306,12 @@ public class CandlesBuilder {
         long step = market.getTimeFrameMarket().getMilliseconds();
 
         List<SequenceCandles.CandleContainer> candles = new ArrayList<>();
+        // Una sola matriz por filas para todas las velas, la misma que luego lee CandleColumns
+        int columns = values.length;
+        double[] matrix = new double[candleByUnitTime.size() * columns];
+        int row = 0;
         int index = 0;
         ProgressBar progressBar = new ProgressBar((int) ((endMinute - startMinute) / step) + 1);
-        // Crear una vez la instancia de los indicadores técnicos
-        Map<String, Indicator<Num>> indicatorsInstanced = new HashMap<>();
-        synchronized (indicators) {
-            for (Map.Entry<String, BiFunction<IndicatorData, Collection<AbstractIndicator<Num>>, Indicator<Num>>> entry : this.indicators.entrySet()) {
-                indicatorsInstanced.put(entry.getKey(), entry.getValue().apply(
-                        new IndicatorData(series, closes),
-                        // Colección de indicadores
-                        indicatorsInstanced.values().stream().filter(indicators ->
-                                // Primero filtra las instancias
-                                indicators instanceof AbstractIndicator<Num>).map(indicators ->
-                                // Realiza el Cast
-                                (AbstractIndicator<Num>) indicators).toList()
-                ));
-            }
-        }
         for (long minute = startMinute; minute <= endMinute; minute += step) {
             progressBar.increaseValue();
             if (progressBar.getFinalValue() > 5_000){
@@ -243,44 +319,16 @@ public class CandlesBuilder {
             }
             Candle cs = candleByUnitTime.get(minute);
             if (cs != null){
-                if (market.getDepthByTimeFrame() != null){
-                    Map.Entry<Long, Depth> floor = market.getDepthByTimeFrame().floorEntry(minute);
-                    Depth depth = floor != null ? floor.getValue() : null;
-                    if (depth != null) {
-                        double bidLiq, askLiq, mid , spread;
-                        bidLiq = depth.getBids().stream()
-                                .mapToDouble(o -> o.price() * o.qty())
-                                .sum();
-
-                        askLiq = depth.getAsks().stream()
-                                .mapToDouble(o -> o.price() * o.qty())
-                                .sum();
-
-                        if (!depth.getBids().isEmpty() && !depth.getAsks().isEmpty()) {
-                            double bestBid = depth.getBids().peekFirst().price();
-                            double bestAsk = depth.getAsks().peekFirst().price();
-                            mid = (bestBid + bestAsk) / 2.0;
-                            spread = bestAsk - bestBid;
-                            cs.setDepth(new Candle.DepthCandle(bestBid, bestAsk, bidLiq, askLiq, mid, spread));
-                        }
-                    }
-                }
-
-                if (market.getMetricByTimeFrame() != null){
-                    Map.Entry<Long, Metric> floor = market.getMetricByTimeFrame().floorEntry(minute);
-                    Metric metric = floor != null ? floor.getValue() : null;
-                    if (metric != null){
-                        cs.setMetrics(metric);
-                    }
-                }
+                attachMarketData(market, cs, minute);
 
-                double[] indicator = new double[indicatorsInstanced.size()];
+                int offset = row * columns;
                 try {
-                    for (Map.Entry<String, Indicator<Num>> entry : indicatorsInstanced.entrySet()) {
-                        byte key = dictionary.getRight(entry.getKey());
-                        indicator[key] = checkDouble(entry.getValue().getValue(index).doubleValue());
+                    for (int key = 0; key < columns; key++) {
+                        matrix[offset + key] = checkDouble(values[key][index]);
                     }
-                    candles.add(new SequenceCandles.CandleContainer(cs, indicator));
+                    // Una vela descartada deja su fila para la siguiente
+                    candles.add(new SequenceCandles.CandleContainer(cs, matrix, offset, columns));
+                    row++;
                 } catch (IllegalArgumentException ignored) {}
                 finally {
                     index++;
@@ -290,6 +338,95 @@ public class CandlesBuilder {
         return new SequenceCandles(dictionary, candles);
     }
 
+    /**
+     * Calcula cada indicador completo, indexado por la clave del diccionario y por barra.
+     * Con {@link Backend#PRIMITIVE} solo se arma la serie de ta4j si algún indicador no tiene versión primitiva.
+     */
+    private double[] @NotNull [] computeIndicators(@NotNull Market market, @NotNull NavigableMap<Long, Candle> candleByUnitTime, @NotNull ConcurrentHashBiDictionary<String, Byte> dictionary) {
+        double[][] values = new double[indicators.size()][];
+        BarArrays bars = BarArrays.of(candleByUnitTime.values());
+        boolean needsTa4j = false;
+        for (String key : indicators.keySet()) {
+            PrimitiveIndicator primitive = backend == Backend.PRIMITIVE ? primitives.get(key) : null;
+            if (primitive != null) {
+                values[dictionary.getRight(key)] = primitive.compute(bars);
+            } else {
+                needsTa4j = true;
+            }
+        }
+        if (!needsTa4j) {
+            return values;
+        }
+
+        BaseBarSeries series = new BaseBarSeriesBuilder().withName(market.getSymbol().toString()).build();
+        long ms = market.getTimeFrameMarket().getMilliseconds();
+        // Crea las barras de la libreria ta4j
+        for (Map.Entry<Long, Candle> entry : candleByUnitTime.entrySet()) {
+            long minute = entry.getKey();
+            Candle cs = entry.getValue();
+            try {
+                series.addBar(new BaseBar(Duration.ofMillis(ms),
+                        Instant.ofEpochMilli(minute),
+                        Instant.ofEpochMilli(minute + ms),
+                        DecimalNum.valueOf(cs.getOpen()),
+                        DecimalNum.valueOf(cs.getHigh()),
+                        DecimalNum.valueOf(cs.getLow()),
+                        DecimalNum.valueOf(cs.getClose()),
+                        DecimalNum.valueOf(cs.getVolumen().baseVolume()),
+                        DecimalNum.valueOf(cs.getVolumen().quoteVolume()),
+                        0
+                ));
+            } catch (Exception e) {
+                Vesta.sendErrorException("Error al crear la velas", e);
+            }
+        }
+
+        ClosePriceIndicator closes = new ClosePriceIndicator(series);
+        // Crear una vez la instancia de los indicadores técnicos
+        Map<String, Indicator<Num>> indicatorsInstanced = new HashMap<>();
+        for (Map.Entry<String, BiFunction<IndicatorData, Collection<AbstractIndicator<Num>>, Indicator<Num>>> entry : this.indicators.entrySet()) {
+            indicatorsInstanced.put(entry.getKey(), entry.getValue().apply(
+                    new IndicatorData(series, closes),
+                    // Colección de indicadores
+                    indicatorsInstanced.values().stream().filter(indicators ->
+                            // Primero filtra las instancias
+                            indicators instanceof AbstractIndicator<Num>).map(indicators ->
+                            // Realiza el Cast
+                            (AbstractIndicator<Num>) indicators).toList()
+            ));
+        }
+        for (Map.Entry<String, Indicator<Num>> entry : indicatorsInstanced.entrySet()) {
+            byte key = dictionary.getRight(entry.getKey());
+            if (values[key] != null) continue;
+            double[] column = new double[series.getBarCount()];
+            for (int i = 0; i < column.length; i++) {
+                column[i] = entry.getValue().getValue(i).doubleValue();
+            }
+            values[key] = column;
+        }
+        return values;
+    }
+
+    /**
+     * Asigna a la vela el último snapshot de profundidad y la última métrica hasta {@code minute}.
+     * La caché de métricas de {@link Market} debe estar construida.
+     */
+    static void attachMarketData(@NotNull Market market, @NotNull Candle cs, long minute) {
+        // Agregados precalculados al ingerir el snapshot
+        Candle.DepthCandle depth = market.getDepthStore().floorDepthCandle(minute);
+        if (depth != null) {
+            cs.setDepth(depth);
+        }
+
+        if (market.getMetricByTimeFrame() != null){
+            Map.Entry<Long, Metric> floor = market.getMetricByTimeFrame().floorEntry(minute);
+            Metric metric = floor != null ? floor.getValue() : null;
+            if (metric != null){
+                cs.setMetrics(metric);
+            }
+        }
+    }
+
     private double checkDouble(double d) throws IllegalArgumentException{
         return BuilderData.checkDouble(d);
     }
@@ -299,14 +436,24 @@ public class CandlesBuilder {
         return new SequenceCandles(new ConcurrentHashBiDictionary<>(), new ArrayList<>(5_000));
     }
 
-    private static <T extends Indicator<Num>> T searchIndicador(@NotNull Collection<AbstractIndicator<Num>> collection, @NotNull Class<T> clazz){
-        for (AbstractIndicator<Num> indicator : collection) {
-            if (clazz.isInstance(indicator)){
-                return clazz.cast(indicator);
-            }
-        }
-        throw new IllegalArgumentException("No se encontró el indicador " + clazz.getSimpleName());
+    public record IndicatorData(BaseBarSeries series, ClosePriceIndicator closes){}
+
+    /**
+     * Indicador calculado de una vez sobre toda la serie.
+     */
+    @FunctionalInterface
+    public interface PrimitiveIndicator {
+        double @NotNull [] compute(@NotNull BarArrays bars);
     }
 
-    public record IndicatorData(BaseBarSeries series, ClosePriceIndicator closes){}
+    public enum Backend {
+        /**
+         * {@link PrimitiveIndicators} sobre {@code double[]}, con ta4j solo para los indicadores sin versión primitiva
+         */
+        PRIMITIVE,
+        /**
+         * Todo con ta4j y {@link DecimalNum}
+         */
+        TA4J
+    }
 }
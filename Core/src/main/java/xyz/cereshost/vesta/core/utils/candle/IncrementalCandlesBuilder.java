@@ -0,0 +1,194 @@
+package xyz.cereshost.vesta.core.utils.candle;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.core.market.Candle;
+import xyz.cereshost.vesta.core.market.Market;
+import xyz.cereshost.vesta.core.market.Metric;
+import xyz.cereshost.vesta.core.utils.ConcurrentHashBiDictionary;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Versión con estado de {@link CandlesBuilder#build(Market)} para el loop en vivo. Guarda el estado de cada
+ * indicador, las últimas {@code capacity} velas y un índice propio de métricas, así que cerrar una vela nueva cuesta
+ * O(indicadores) sin importar cuántas velas de warmup haya: del mercado solo se leen las velas y métricas nuevas, y
+ * la profundidad y las métricas se buscan solo para las velas que se evalúan.
+ * <p>
+ * Solo las velas cerradas modifican el estado; las que siguen abiertas se evalúan sobre una copia y se
+ * vuelven a calcular en la siguiente llamada.
+ * </p>
+ *
+ * @see CandlesBuilder#incremental(int)
+ */
+public class IncrementalCandlesBuilder {
+
+    private final ConcurrentHashBiDictionary<String, Byte> dictionary = new ConcurrentHashBiDictionary<>();
+    private final StreamingIndicators.State[] states;
+    private final int capacity;
+    /**
+     * Velas cerradas. Solo se escribe a partir de {@code end} y al llenarse se pasa la ventana a un array nuevo, así
+     * que las ventanas ya devueltas nunca cambian y no hace falta copiarlas.
+     */
+    private SequenceCandles.CandleContainer[] closed;
+    private int end;
+    private long lastOpenTime = Long.MIN_VALUE;
+    private final NavigableMap<Long, Metric> metricByFiveMinute = new TreeMap<>();
+
+    IncrementalCandlesBuilder(@NotNull LinkedHashMap<String, Supplier<StreamingIndicators.State>> indicators, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity debe ser positivo");
+        }
+        this.states = new StreamingIndicators.State[indicators.size()];
+        this.capacity = capacity;
+        this.closed = new SequenceCandles.CandleContainer[capacity * 2];
+        byte key = 0;
+        for (Map.Entry<String, Supplier<StreamingIndicators.State>> entry : indicators.entrySet()) {
+            dictionary.add(entry.getKey(), key);
+            states[key] = entry.getValue().get();
+            key++;
+        }
+    }
+
+    /**
+     * Avanza con las velas de {@code market} posteriores a la última procesada y devuelve la ventana actual.
+     * (se debe asegurar el orden temporal de las velas)
+     * @param closedBefore las velas que cierran después de este instante se consideran abiertas
+     * @return una instancia nueva, de solo lectura, con las velas cerradas de la ventana más las abiertas
+     */
+    @Contract("_, _ -> new")
+    public synchronized @NotNull SequenceCandles update(@NotNull Market market, long closedBefore) {
+        long ms = market.getTimeFrameMarket().getMilliseconds();
+        indexNewMetrics(market);
+
+        // Solo se recorre la cola del conjunto: lo anterior ya está en el estado
+        ArrayDeque<Candle> pending = new ArrayDeque<>();
+        long newest = Long.MAX_VALUE;
+        for (Candle cs : market.getCandles().reversed()) {
+            long minute = (cs.getOpenTime() / ms) * ms;
+            if (minute <= lastOpenTime) break;
+            // Con minutos repetidos gana la última vela, igual que en el builder completo
+            if (minute == newest) continue;
+            newest = minute;
+            pending.addFirst(cs);
+        }
+
+        while (!pending.isEmpty()) {
+            Candle cs = pending.peekFirst();
+            long minute = (cs.getOpenTime() / ms) * ms;
+            if (minute + ms > closedBefore) break;
+            pending.pollFirst();
+            attachMarketData(market, cs, minute, ms);
+            SequenceCandles.CandleContainer container = evaluate(states, cs);
+            if (container != null) push(container);
+            lastOpenTime = minute;
+        }
+
+        List<SequenceCandles.CandleContainer> open = new ArrayList<>(pending.size());
+        if (!pending.isEmpty()) {
+            StreamingIndicators.State[] preview = new StreamingIndicators.State[states.length];
+            for (int i = 0; i < states.length; i++) {
+                preview[i] = states[i].copy();
+            }
+            for (Candle cs : pending) {
+                attachMarketData(market, cs, (cs.getOpenTime() / ms) * ms, ms);
+                SequenceCandles.CandleContainer container = evaluate(preview, cs);
+                if (container != null) open.add(container);
+            }
+        }
+        return new SequenceCandles(dictionary, new Window(closed, end - size(), size(), open));
+    }
+
+    /**
+     * Velas cerradas en la ventana.
+     */
+    public synchronized int size() {
+        return Math.min(end, capacity);
+    }
+
+    /**
+     * Solo las métricas posteriores a las ya indexadas; la última se vuelve a leer por si llegó actualizada.
+     */
+    private void indexNewMetrics(@NotNull Market market) {
+        Long last = metricByFiveMinute.isEmpty() ? null : metricByFiveMinute.lastKey();
+        ArrayDeque<Metric> fresh = new ArrayDeque<>();
+        for (Metric metric : market.getMetrics().reversed()) {
+            if (last != null && metric.getOpenTime() < last) break;
+            fresh.addFirst(metric);
+        }
+        for (Metric metric : fresh) {
+            Market.indexMetric(metricByFiveMinute, metric);
+        }
+    }
+
+    /**
+     * Igual que {@link CandlesBuilder#attachMarketData}, con búsquedas puntuales en lugar de las cachés completas.
+     */
+    private void attachMarketData(@NotNull Market market, @NotNull Candle cs, long minute, long ms) {
+        Candle.DepthCandle depth = market.getDepthStore().floorDepthCandle(minute);
+        if (depth != null) {
+            cs.setDepth(depth);
+        }
+        Metric metric = Market.metricAt(metricByFiveMinute, minute, ms);
+        if (metric != null) {
+            cs.setMetrics(metric);
+        }
+    }
+
+    public synchronized long getLastOpenTime() {
+        return lastOpenTime;
+    }
+
+    private static SequenceCandles.CandleContainer evaluate(StreamingIndicators.State @NotNull [] states, @NotNull Candle cs) {
+        double[] indicator = new double[states.length];
+        boolean valid = true;
+        // Todos los estados avanzan aunque la vela se descarte por NaN
+        for (int key = 0; key < states.length; key++) {
+            indicator[key] = states[key].update(cs);
+            valid &= Double.isFinite(indicator[key]);
+        }
+        // Mismo criterio que BuilderData.checkDouble en el builder completo
+        return valid ? new SequenceCandles.CandleContainer(cs, indicator) : null;
+    }
+
+    private void push(@NotNull SequenceCandles.CandleContainer container) {
+        if (end == closed.length) {
+            // Una copia de la ventana cada capacity velas
+            SequenceCandles.CandleContainer[] next = new SequenceCandles.CandleContainer[capacity * 2];
+            int keep = capacity - 1;
+            System.arraycopy(closed, end - keep, next, 0, keep);
+            closed = next;
+            end = keep;
+        }
+        closed[end++] = container;
+    }
+
+    /**
+     * Vista inmutable de las velas cerradas de {@code closed} seguidas de las abiertas
+     */
+    private static final class Window extends AbstractList<SequenceCandles.CandleContainer> implements RandomAccess {
+        private final SequenceCandles.CandleContainer[] closed;
+        private final int from;
+        private final int closedSize;
+        private final List<SequenceCandles.CandleContainer> open;
+
+        Window(SequenceCandles.CandleContainer @NotNull [] closed, int from, int closedSize, @NotNull List<SequenceCandles.CandleContainer> open) {
+            this.closed = closed;
+            this.from = from;
+            this.closedSize = closedSize;
+            this.open = open;
+        }
+
+        @Override
+        public SequenceCandles.CandleContainer get(int index) {
+            Objects.checkIndex(index, size());
+            return index < closedSize ? closed[from + index] : open.get(index - closedSize);
+        }
+
+        @Override
+        public int size() {
+            return closedSize + open.size();
+        }
+    }
+}
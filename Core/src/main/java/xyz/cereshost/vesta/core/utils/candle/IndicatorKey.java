@@ -0,0 +1,90 @@
+package xyz.cereshost.vesta.core.utils.candle;
+
+import lombok.Getter;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.core.utils.BiDictionary;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Referencia precompilada a un indicador de {@link CandlesBuilder}. Se declara una vez como constante y cada
+ * {@link SequenceCandles} guarda la columna resuelta en su propia {@link Columns}, así que leer el indicador no busca el
+ * {@link String} en cada vela, aunque se alternen secuencias con diccionarios distintos.
+ * <pre>{@code
+ * private static final IndicatorKey EMA_FAST = IndicatorKey.of("kappa_ema_fast");
+ * double ema = cursor.get(EMA_FAST);
+ * }</pre>
+ *
+ * @see CandleColumns.Cursor#get(IndicatorKey)
+ * @see CandleIndicators#get(IndicatorKey)
+ */
+public final class IndicatorKey {
+
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    @Getter
+    private final String name;
+    /**
+     * Posición de la clave en {@link Columns}
+     */
+    private final int id;
+
+    private IndicatorKey(@NotNull String name) {
+        this.name = name;
+        this.id = IDS.getAndIncrement();
+    }
+
+    @Contract(value = "_ -> new", pure = true)
+    public static @NotNull IndicatorKey of(@NotNull String name) {
+        return new IndicatorKey(name);
+    }
+
+    /**
+     * Columna del indicador en el diccionario o {@code -1} si no existe.
+     */
+    int column(@NotNull BiDictionary<String, Byte> dictionary) {
+        Byte column = dictionary.getRight(name);
+        return column == null ? -1 : column;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Columnas ya resueltas de las claves en un diccionario, indexadas por clave. La comparten una secuencia, sus
+     * subsecuencias y su {@link CandleColumns}.
+     */
+    static final class Columns {
+
+        private final BiDictionary<String, Byte> dictionary;
+        /**
+         * Columna + 1, {@code 0} si la clave aún no se resolvió
+         */
+        private volatile int[] resolved = new int[0];
+
+        Columns(@NotNull BiDictionary<String, Byte> dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        int column(@NotNull IndicatorKey key) {
+            int[] r = resolved;
+            if (key.id < r.length && r[key.id] != 0) return r[key.id] - 1;
+            int column = key.column(dictionary);
+            // Solo se guardan las columnas encontradas, el diccionario puede crecer con addAll
+            if (column >= 0) {
+                synchronized (this) {
+                    r = resolved;
+                    if (key.id >= r.length) r = Arrays.copyOf(r, Math.max(key.id + 1, r.length * 2));
+                    else r = r.clone();
+                    r[key.id] = column + 1;
+                    resolved = r;
+                }
+            }
+            return column;
+        }
+    }
+}
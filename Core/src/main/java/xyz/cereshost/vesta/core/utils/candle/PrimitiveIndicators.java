@@ -0,0 +1,296 @@
+package xyz.cereshost.vesta.core.utils.candle;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Indicadores técnicos sobre {@code double[]} en una sola pasada, sin crear objetos por barra.
+ * <p>
+ * Replican la semántica de ta4j 0.22 (incluidos los {@link Double#NaN} de las barras inestables)
+ * para que {@link CandlesBuilder} descarte las mismas velas con cualquiera de los dos motores.
+ * Las diferencias quedan en el redondeo de {@code double} frente a {@code DecimalNum}.
+ * </p>
+ */
+@UtilityClass
+public class PrimitiveIndicators {
+
+    /**
+     * Media simple sobre las últimas {@code min(barCount, i + 1)} barras.
+     */
+    public double @NotNull [] sma(double @NotNull [] source, int barCount) {
+        double[] out = new double[source.length];
+        double sum = 0;
+        for (int i = 0; i < source.length; i++) {
+            sum += source[i];
+            if (i >= barCount) {
+                sum -= source[i - barCount];
+            }
+            out[i] = sum / Math.min(barCount, i + 1);
+        }
+        return out;
+    }
+
+    /**
+     * Media exponencial con multiplicador {@code 2 / (barCount + 1)}. {@code NaN} en las primeras {@code barCount} barras.
+     */
+    public double @NotNull [] ema(double @NotNull [] source, int barCount) {
+        return exponential(source, barCount, 2.0 / (barCount + 1));
+    }
+
+    /**
+     * Media modificada de Wilder, multiplicador {@code 1 / barCount}.
+     */
+    public double @NotNull [] mma(double @NotNull [] source, int barCount) {
+        return exponential(source, barCount, 1.0 / barCount);
+    }
+
+    private double @NotNull [] exponential(double @NotNull [] source, int barCount, double multiplier) {
+        double[] out = new double[source.length];
+        for (int i = 0; i < source.length; i++) {
+            double value = source[i];
+            if (i < barCount || Double.isNaN(value)) {
+                out[i] = Double.NaN;
+                continue;
+            }
+            double prev = i == 0 ? Double.NaN : out[i - 1];
+            // La primera barra válida siembra la media
+            out[i] = Double.isNaN(prev) ? value : prev + (value - prev) * multiplier;
+        }
+        return out;
+    }
+
+    /**
+     * Media ponderada lineal. Mantiene la suma ponderada y la suma simple para avanzar en O(1).
+     */
+    public double @NotNull [] wma(double @NotNull [] source, int barCount) {
+        double[] out = new double[source.length];
+        double weighted = 0;
+        double sum = 0;
+        for (int i = 0; i < source.length; i++) {
+            int length = i < barCount ? i + 1 : barCount;
+            if (i < barCount) {
+                // La ventana crece: los pesos anteriores se conservan y el nuevo entra con el mayor
+                weighted += length * source[i];
+                sum += source[i];
+            } else {
+                weighted += barCount * source[i] - sum;
+                sum += source[i] - source[i - barCount];
+            }
+            out[i] = i == 0 ? source[0] : weighted / (length * (length + 1) / 2);
+        }
+        return out;
+    }
+
+    public double @NotNull [] trueRange(@NotNull BarArrays bars) {
+        double[] out = new double[bars.size()];
+        for (int i = 0; i < out.length; i++) {
+            double range = Math.abs(bars.high()[i] - bars.low()[i]);
+            if (i == 0) {
+                out[i] = range;
+                continue;
+            }
+            double prevClose = bars.close()[i - 1];
+            out[i] = Math.max(range, Math.max(Math.abs(bars.high()[i] - prevClose), Math.abs(prevClose - bars.low()[i])));
+        }
+        return out;
+    }
+
+    public double @NotNull [] atr(@NotNull BarArrays bars, int barCount) {
+        return mma(trueRange(bars), barCount);
+    }
+
+    public double @NotNull [] rsi(double @NotNull [] source, int barCount) {
+        double[] gain = new double[source.length];
+        double[] loss = new double[source.length];
+        for (int i = 1; i < source.length; i++) {
+            double change = source[i] - source[i - 1];
+            gain[i] = change > 0 ? change : 0;
+            loss[i] = change < 0 ? -change : 0;
+        }
+        double[] avgGain = mma(gain, barCount);
+        double[] avgLoss = mma(loss, barCount);
+        double[] out = new double[source.length];
+        for (int i = 0; i < out.length; i++) {
+            if (i < barCount) {
+                out[i] = Double.NaN;
+            } else if (avgLoss[i] == 0) {
+                out[i] = avgGain[i] == 0 ? 0 : 100;
+            } else {
+                out[i] = 100 - 100 / (1 + avgGain[i] / avgLoss[i]);
+            }
+        }
+        return out;
+    }
+
+    public double @NotNull [] adx(@NotNull BarArrays bars, int diBarCount, int adxBarCount) {
+        int size = bars.size();
+        double[] plusDM = new double[size];
+        double[] minusDM = new double[size];
+        for (int i = 1; i < size; i++) {
+            double up = bars.high()[i] - bars.high()[i - 1];
+            double down = bars.low()[i - 1] - bars.low()[i];
+            plusDM[i] = up > down && up > 0 ? up : 0;
+            minusDM[i] = down > up && down > 0 ? down : 0;
+        }
+        double[] atr = atr(bars, diBarCount);
+        double[] avgPlus = mma(plusDM, diBarCount);
+        double[] avgMinus = mma(minusDM, diBarCount);
+        double[] dx = new double[size];
+        for (int i = 0; i < size; i++) {
+            double plusDI = atr[i] == 0 ? 0 : avgPlus[i] / atr[i] * 100;
+            double minusDI = atr[i] == 0 ? 0 : avgMinus[i] / atr[i] * 100;
+            double sum = plusDI + minusDI;
+            dx[i] = sum == 0 ? 0 : Math.abs(plusDI - minusDI) / sum * 100;
+        }
+        return mma(dx, adxBarCount);
+    }
+
+    public double @NotNull [] macd(double @NotNull [] source, int shortBarCount, int longBarCount) {
+        if (shortBarCount > longBarCount) {
+            throw new IllegalArgumentException("Long term period count must be greater than short term period count");
+        }
+        double[] shortEma = ema(source, shortBarCount);
+        double[] longEma = ema(source, longBarCount);
+        double[] out = new double[source.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = shortEma[i] - longEma[i];
+        }
+        return out;
+    }
+
+    public double @NotNull [] macdSignal(double @NotNull [] macd, int barCount) {
+        return ema(macd, barCount);
+    }
+
+    public double @NotNull [] macdHistogram(double @NotNull [] macd, int barCount) {
+        double[] signal = macdSignal(macd, barCount);
+        double[] out = new double[macd.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = macd[i] - signal[i];
+        }
+        return out;
+    }
+
+    /**
+     * SuperTrend sobre las bandas {@code mediana ± multiplier * ATR}, que solo se relajan cuando el cierre las cruza.
+     */
+    public double @NotNull [] superTrend(@NotNull BarArrays bars, int barCount, double multiplier) {
+        int size = bars.size();
+        double[] atr = atr(bars, barCount);
+        double[] upper = new double[size];
+        double[] lower = new double[size];
+        double[] out = new double[size];
+        for (int i = 0; i < size; i++) {
+            double median = (bars.high()[i] + bars.low()[i]) / 2;
+            double upperBand = median + multiplier * atr[i];
+            double lowerBand = median - multiplier * atr[i];
+            if (i == 0 || Double.isNaN(upperBand) || Double.isNaN(upper[i - 1])) {
+                upper[i] = upperBand;
+            } else {
+                upper[i] = upperBand < upper[i - 1] || bars.close()[i - 1] > upper[i - 1] ? upperBand : upper[i - 1];
+            }
+            if (i == 0 || Double.isNaN(lowerBand) || Double.isNaN(lower[i - 1])) {
+                lower[i] = lowerBand;
+            } else {
+                lower[i] = lowerBand > lower[i - 1] || bars.close()[i - 1] < lower[i - 1] ? lowerBand : lower[i - 1];
+            }
+
+            if (Double.isNaN(lower[i]) || Double.isNaN(upper[i])) {
+                out[i] = Double.NaN;
+            } else if (i == 0 || Double.isNaN(out[i - 1])) {
+                out[i] = lower[i];
+            } else if (!Double.isNaN(upper[i - 1]) && out[i - 1] == upper[i - 1]) {
+                out[i] = bars.close()[i] <= upper[i] ? upper[i] : lower[i];
+            } else if (!Double.isNaN(lower[i - 1]) && out[i - 1] == lower[i - 1]) {
+                out[i] = bars.close()[i] >= lower[i] ? lower[i] : upper[i];
+            } else {
+                out[i] = lower[i];
+            }
+        }
+        return out;
+    }
+
+    public double @NotNull [] obv(@NotNull BarArrays bars) {
+        double[] out = new double[bars.size()];
+        for (int i = 1; i < out.length; i++) {
+            double prevClose = bars.close()[i - 1];
+            double close = bars.close()[i];
+            if (prevClose > close) {
+                out[i] = out[i - 1] - bars.volume()[i];
+            } else if (prevClose < close) {
+                out[i] = out[i - 1] + bars.volume()[i];
+            } else {
+                out[i] = out[i - 1];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * VWAP móvil con el precio típico {@code (high + low + close) / 3}.
+     */
+    public double @NotNull [] vwap(@NotNull BarArrays bars, int barCount) {
+        int size = bars.size();
+        double[] typical = new double[size];
+        double[] out = new double[size];
+        double priceVolume = 0;
+        double volume = 0;
+        for (int i = 0; i < size; i++) {
+            typical[i] = (bars.high()[i] + bars.low()[i] + bars.close()[i]) / 3;
+            priceVolume += typical[i] * bars.volume()[i];
+            volume += bars.volume()[i];
+            if (i >= barCount) {
+                int old = i - barCount;
+                priceVolume -= typical[old] * bars.volume()[old];
+                volume -= bars.volume()[old];
+            }
+            out[i] = i == 0 ? typical[0] : priceVolume / volume;
+        }
+        return out;
+    }
+
+    /**
+     * Filtro de Kalman escalar de nivel constante (A = H = 1, P0 = 1) que ignora las entradas no finitas.
+     */
+    public double @NotNull [] kalman(double @NotNull [] source, double processNoise, double measurementNoise) {
+        double[] out = new double[source.length];
+        if (source.length == 0) {
+            return out;
+        }
+        double state = Double.isFinite(source[0]) ? source[0] : 0;
+        double error = 1;
+        for (int i = 0; i < source.length; i++) {
+            double measurement = source[i];
+            if (!Double.isFinite(measurement)) {
+                out[i] = Double.NaN;
+                continue;
+            }
+            error += processNoise;
+            double gain = error / (error + measurementNoise);
+            state += gain * (measurement - state);
+            error = (1 - gain) * error;
+            out[i] = state;
+        }
+        return out;
+    }
+
+    /**
+     * Efficiency Ratio de Kaufman en porcentaje: cambio neto entre la suma de cambios absolutos.
+     */
+    public double @NotNull [] efficiencyRatio(double @NotNull [] source, int barCount) {
+        int window = Math.max(barCount, 1);
+        double[] out = new double[source.length];
+        double sumOfChanges = 0;
+        for (int i = 1; i < source.length; i++) {
+            sumOfChanges += Math.abs(source[i] - source[i - 1]);
+            if (i > window) {
+                sumOfChanges -= Math.abs(source[i - window] - source[i - window - 1]);
+            }
+            int length = Math.min(window, i);
+            double netChange = Math.abs(source[i] - source[i - length]);
+            // El acumulado puede arrastrar un residuo mínimo cuando la ventana es plana
+            out[i] = sumOfChanges <= 0 || netChange == 0 ? 0 : (netChange / sumOfChanges) * 100;
+        }
+        return out;
+    }
+}
@@ -4,16 +4,23 @@ import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
-import lombok.experimental.Delegate;
+import lombok.ToString;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import xyz.cereshost.vesta.core.market.Candle;
 import xyz.cereshost.vesta.core.utils.ConcurrentHashBiDictionary;
 import xyz.cereshost.vesta.core.utils.BiDictionary;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * Una lista de {@link CandleContainer} con indicadores técnicos ya computados.
@@ -24,23 +31,86 @@ import java.util.List;
  * se asignó previamente en {@link CandlesBuilder}.
  * </p>
  * La implementación de {@link List} depende de {@link CandlesBuilder} al crear la instancia.
+ * <p>
+ * Para recorridos largos (entrenamiento, backtest, estrategias) usa {@link #cursor()} con columnas resueltas por
+ * {@link #column(String)}: lee de una vista columnar que se construye una vez y que comparten todas las
+ * {@link #subSequence(int, int) subsecuencias}, sin crear objetos por acceso. Cualquier cambio en la lista, también
+ * desde una subsecuencia o un {@link #subList(int, int)}, descarta esa vista.
+ * </p>
  *
+ * @see CandleColumns
  * @see CandlesBuilder
  * @see CandleIndicators
  * @see CandleContainer
  *
  * @author Ceres
  */
-public class SequenceCandles implements List<SequenceCandles.CandleContainer> {
+public class SequenceCandles extends AbstractList<SequenceCandles.CandleContainer> implements RandomAccess {
 
     private final BiDictionary<String, Byte> dictionary;
 
-    @Delegate
     private final List<CandleContainer> candlesContainer;
 
+    /**
+     * Secuencia de la que se tomó esta subsecuencia, o {@code null} si es la raíz
+     */
+    private final @Nullable SequenceCandles parent;
+    private final int offset;
+    private @Nullable CandleColumns columns;
+    private final IndicatorKey.Columns keyColumns;
+
     public SequenceCandles(BiDictionary<String, Byte> dictionary, List<CandleContainer> candlesContainer) {
+        this(dictionary, candlesContainer, null, 0);
+    }
+
+    private SequenceCandles(BiDictionary<String, Byte> dictionary, List<CandleContainer> candlesContainer, @Nullable SequenceCandles parent, int offset) {
         this.dictionary = dictionary;
         this.candlesContainer = candlesContainer;
+        this.parent = parent;
+        this.offset = offset;
+        this.keyColumns = parent == null ? new IndicatorKey.Columns(dictionary) : parent.keyColumns;
+    }
+
+    /**
+     * Vista columnar de la secuencia raíz. Se construye en el primer acceso y se vuelve a construir después de
+     * cualquier cambio en la lista.
+     */
+    public @NotNull CandleColumns columns() {
+        if (parent != null) return parent.columns();
+        CandleColumns cc = columns;
+        // El tamaño cubre cambios hechos sobre la lista original sin pasar por esta clase
+        if (cc == null || cc.getSize() != candlesContainer.size()) {
+            cc = CandleColumns.of(keyColumns, dictionary, candlesContainer);
+            columns = cc;
+        }
+        return cc;
+    }
+
+    private void invalidateColumns() {
+        (parent == null ? this : parent).columns = null;
+    }
+
+    /**
+     * Un cursor sobre esta secuencia; los índices son los mismos que los de {@link #get(int)}.
+     */
+    @Contract(value = " -> new")
+    public @NotNull CandleColumns.Cursor cursor() {
+        return columns().cursor(offset, candlesContainer.size());
+    }
+
+    /**
+     * @see CandleColumns#column(String)
+     */
+    public int column(@NotNull String key) {
+        Byte column = dictionary.getRight(key);
+        return column == null ? -1 : column;
+    }
+
+    /**
+     * @see CandleColumns#column(String)
+     */
+    public int column(@NotNull IndicatorKey key) {
+        return keyColumns.column(key);
     }
 
     public CandleContainer getLast(int i) {
@@ -57,11 +127,7 @@ public class SequenceCandles implements List<SequenceCandles.CandleContainer> {
 
     public CandleIndicators getCandle(int index) {
         CandleContainer candleContainer = candlesContainer.get(index);
-        HashMap<String, Double> map = new HashMap<>();
-        for (byte key = 0; key < candleContainer.indicador().length; key++) {
-            map.put(dictionary.getLeft(key), candleContainer.indicador()[key]);
-        }
-        return new CandleIndicators(candleContainer, map, this);
+        return new CandleIndicators(candleContainer, this);
     }
 
     public SequenceCandles copy(){
@@ -69,22 +135,110 @@ public class SequenceCandles implements List<SequenceCandles.CandleContainer> {
     }
 
     public SequenceCandles subSequence(int fromIndex, int toIndex) {
-        return new SequenceCandles(dictionary, candlesContainer.subList(fromIndex, toIndex));
+        return new SequenceCandles(dictionary, candlesContainer.subList(fromIndex, toIndex), parent == null ? this : parent, offset + fromIndex);
     }
 
     public List<Candle> toCandlesSimple() {
         return new ArrayList<>(candlesContainer);
     }
 
+    @Override
+    public CandleContainer get(int index) {
+        return candlesContainer.get(index);
+    }
+
+    @Override
+    public int size() {
+        return candlesContainer.size();
+    }
+
+    // Todos los cambios pasan por aquí: los de AbstractList (iteradores, subList) acaban en set/add/remove
+
+    @Override
+    public CandleContainer set(int index, CandleContainer element) {
+        invalidateColumns();
+        return candlesContainer.set(index, element);
+    }
+
+    @Override
+    public void add(int index, CandleContainer element) {
+        invalidateColumns();
+        modCount++;
+        candlesContainer.add(index, element);
+    }
+
+    @Override
+    public CandleContainer remove(int index) {
+        invalidateColumns();
+        modCount++;
+        return candlesContainer.remove(index);
+    }
+
     @Override
     public boolean addAll(@NotNull Collection<? extends CandleContainer> c) {
         if (c instanceof SequenceCandles sequenceCandles) {
             this.dictionary.addAll(sequenceCandles.dictionary);
-            this.dictionary.addAll(sequenceCandles.dictionary);
         }
+        invalidateColumns();
+        modCount++;
         return candlesContainer.addAll(c);
     }
 
+    @Override
+    public boolean addAll(int index, @NotNull Collection<? extends CandleContainer> c) {
+        invalidateColumns();
+        modCount++;
+        return candlesContainer.addAll(index, c);
+    }
+
+    @Override
+    public boolean removeAll(@NotNull Collection<?> c) {
+        invalidateColumns();
+        modCount++;
+        return candlesContainer.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(@NotNull Collection<?> c) {
+        invalidateColumns();
+        modCount++;
+        return candlesContainer.retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(@NotNull Predicate<? super CandleContainer> filter) {
+        invalidateColumns();
+        modCount++;
+        return candlesContainer.removeIf(filter);
+    }
+
+    @Override
+    public void replaceAll(@NotNull UnaryOperator<CandleContainer> operator) {
+        invalidateColumns();
+        candlesContainer.replaceAll(operator);
+    }
+
+    @Override
+    public void sort(@Nullable Comparator<? super CandleContainer> c) {
+        invalidateColumns();
+        modCount++;
+        candlesContainer.sort(c);
+    }
+
+    @Override
+    public void clear() {
+        invalidateColumns();
+        modCount++;
+        candlesContainer.clear();
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        invalidateColumns();
+        modCount++;
+        candlesContainer.subList(fromIndex, toIndex).clear();
+    }
+
     public static SequenceCandles empty(){
         return new SequenceCandles(new ConcurrentHashBiDictionary<>(), new ArrayList<>(5_000));
     }
@@ -103,16 +257,57 @@ public class SequenceCandles implements List<SequenceCandles.CandleContainer> {
     @Data
     @EqualsAndHashCode(callSuper = true)
     public static final class CandleContainer extends Candle {
+        /**
+         * Matriz por filas donde están los indicadores de esta vela, desde {@link #offset}; con
+         * {@link CandlesBuilder#build} la comparten todas las velas y {@link CandleColumns} la usa sin copiarla.
+         */
+        @Getter(AccessLevel.NONE)
+        @EqualsAndHashCode.Exclude
+        @ToString.Exclude
+        private final double[] matrix;
+        @Getter(AccessLevel.NONE)
+        @EqualsAndHashCode.Exclude
+        @ToString.Exclude
+        private final int offset;
         @Getter(AccessLevel.NONE)
-        private final double[] indicador;
+        @EqualsAndHashCode.Exclude
+        @ToString.Exclude
+        private final int columns;
 
         public CandleContainer(Candle candle, double[] indicador) {
+            this(candle, indicador, 0, indicador.length);
+        }
+
+        CandleContainer(Candle candle, double[] matrix, int offset, int columns) {
             super(candle);
-            this.indicador = indicador;
+            this.matrix = matrix;
+            this.offset = offset;
+            this.columns = columns;
         }
 
+        /**
+         * Copia de los indicadores de la vela; para leer uno usa {@link #indicador(int)}.
+         */
+        @EqualsAndHashCode.Include
+        @ToString.Include
         public double[] indicador() {
-            return indicador;
+            return Arrays.copyOfRange(matrix, offset, offset + columns);
+        }
+
+        public double indicador(int column) {
+            return matrix[offset + column];
+        }
+
+        public int columns() {
+            return columns;
+        }
+
+        double[] matrix() {
+            return matrix;
+        }
+
+        int offset() {
+            return offset;
         }
 
     }
@@ -0,0 +1,632 @@
+package xyz.cereshost.vesta.core.utils.candle;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.core.market.Candle;
+
+/**
+ * Versión con estado de {@link PrimitiveIndicators}: cada {@link State} avanza una barra por llamada en O(1)
+ * (O(barCount) como mucho al copiar) y da el mismo valor que el cálculo completo en esa barra.
+ *
+ * @see IncrementalCandlesBuilder
+ */
+@UtilityClass
+public class StreamingIndicators {
+
+    /**
+     * Estado de un indicador. {@link #copy()} permite evaluar una vela que aún no ha cerrado sin tocar el original.
+     */
+    public interface State {
+        double update(@NotNull Candle candle);
+
+        @NotNull State copy();
+    }
+
+    public @NotNull State sma(int barCount) {
+        return new Sma(barCount);
+    }
+
+    public @NotNull State ema(int barCount) {
+        return close(new Exponential(barCount, 2.0 / (barCount + 1)));
+    }
+
+    public @NotNull State wma(int barCount) {
+        return new Wma(barCount);
+    }
+
+    public @NotNull State atr(int barCount) {
+        return new Atr(barCount);
+    }
+
+    public @NotNull State rsi(int barCount) {
+        return new Rsi(barCount);
+    }
+
+    public @NotNull State adx(int diBarCount, int adxBarCount) {
+        return new Adx(diBarCount, adxBarCount);
+    }
+
+    public @NotNull State macd(int shortBarCount, int longBarCount) {
+        return new Macd(shortBarCount, longBarCount, 0, Macd.LINE);
+    }
+
+    public @NotNull State macdSignal(int shortBarCount, int longBarCount, int barCount) {
+        return new Macd(shortBarCount, longBarCount, barCount, Macd.SIGNAL);
+    }
+
+    public @NotNull State macdHistogram(int shortBarCount, int longBarCount, int barCount) {
+        return new Macd(shortBarCount, longBarCount, barCount, Macd.HISTOGRAM);
+    }
+
+    public @NotNull State superTrend(int barCount, double multiplier) {
+        return new SuperTrend(barCount, multiplier);
+    }
+
+    public @NotNull State obv() {
+        return new Obv();
+    }
+
+    public @NotNull State vwap(int barCount) {
+        return new Vwap(barCount);
+    }
+
+    public @NotNull State kalman(double processNoise, double measurementNoise) {
+        return new Kalman(processNoise, measurementNoise);
+    }
+
+    public @NotNull State efficiencyRatio(int barCount) {
+        return new EfficiencyRatio(barCount);
+    }
+
+    private @NotNull State close(@NotNull Exponential exponential) {
+        return new State() {
+            @Override
+            public double update(@NotNull Candle candle) {
+                return exponential.next(candle.getClose());
+            }
+
+            @Override
+            public @NotNull State copy() {
+                return close(exponential.copy());
+            }
+        };
+    }
+
+    /**
+     * EMA/MMA de ta4j: {@code NaN} durante las primeras {@code barCount} barras y la primera válida siembra la media.
+     */
+    private static final class Exponential {
+        private final int barCount;
+        private final double multiplier;
+        private int index;
+        private double prev = Double.NaN;
+
+        private Exponential(int barCount, double multiplier) {
+            this.barCount = barCount;
+            this.multiplier = multiplier;
+        }
+
+        static Exponential mma(int barCount) {
+            return new Exponential(barCount, 1.0 / barCount);
+        }
+
+        double next(double value) {
+            double out;
+            if (index++ < barCount || Double.isNaN(value)) {
+                out = Double.NaN;
+            } else {
+                out = Double.isNaN(prev) ? value : prev + (value - prev) * multiplier;
+            }
+            prev = out;
+            return out;
+        }
+
+        Exponential copy() {
+            Exponential copy = new Exponential(barCount, multiplier);
+            copy.index = index;
+            copy.prev = prev;
+            return copy;
+        }
+    }
+
+    /**
+     * Últimos {@code capacity} valores; {@link #push} devuelve el que sale o {@code NaN}.
+     */
+    private static final class Ring {
+        private final double[] data;
+        private int head;
+        private int count;
+
+        private Ring(int capacity) {
+            this.data = new double[capacity];
+        }
+
+        double push(double value) {
+            double evicted = count == data.length ? data[head] : Double.NaN;
+            data[head] = value;
+            head = (head + 1) % data.length;
+            if (count < data.length) count++;
+            return evicted;
+        }
+
+        /**
+         * {@code back = 0} es el último valor.
+         */
+        double get(int back) {
+            return data[Math.floorMod(head - 1 - back, data.length)];
+        }
+
+        Ring copy() {
+            Ring copy = new Ring(data.length);
+            System.arraycopy(data, 0, copy.data, 0, data.length);
+            copy.head = head;
+            copy.count = count;
+            return copy;
+        }
+    }
+
+    private static final class TrueRange {
+        private double prevClose = Double.NaN;
+
+        double next(@NotNull Candle candle) {
+            double range = Math.abs(candle.getHigh() - candle.getLow());
+            double out = Double.isNaN(prevClose) ? range : Math.max(range,
+                    Math.max(Math.abs(candle.getHigh() - prevClose), Math.abs(prevClose - candle.getLow())));
+            prevClose = candle.getClose();
+            return out;
+        }
+
+        TrueRange copy() {
+            TrueRange copy = new TrueRange();
+            copy.prevClose = prevClose;
+            return copy;
+        }
+    }
+
+    private static final class Sma implements State {
+        private final int barCount;
+        private Ring window;
+        private double sum;
+        private int index;
+
+        private Sma(int barCount) {
+            this.barCount = barCount;
+            this.window = new Ring(barCount);
+        }
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            double evicted = window.push(candle.getClose());
+            sum += candle.getClose();
+            if (!Double.isNaN(evicted)) sum -= evicted;
+            return sum / Math.min(barCount, ++index);
+        }
+
+        @Override
+        public @NotNull State copy() {
+            Sma copy = new Sma(barCount);
+            copy.window = window.copy();
+            copy.sum = sum;
+            copy.index = index;
+            return copy;
+        }
+    }
+
+    private static final class Wma implements State {
+        private final int barCount;
+        private Ring window;
+        private double weighted;
+        private double sum;
+        private int index;
+
+        private Wma(int barCount) {
+            this.barCount = barCount;
+            this.window = new Ring(barCount);
+        }
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            double value = candle.getClose();
+            int i = index++;
+            int length = i < barCount ? i + 1 : barCount;
+            double evicted = window.push(value);
+            if (i < barCount) {
+                weighted += length * value;
+                sum += value;
+            } else {
+                weighted += barCount * value - sum;
+                sum += value - evicted;
+            }
+            return i == 0 ? value : weighted / (length * (length + 1) / 2);
+        }
+
+        @Override
+        public @NotNull State copy() {
+            Wma copy = new Wma(barCount);
+            copy.window = window.copy();
+            copy.weighted = weighted;
+            copy.sum = sum;
+            copy.index = index;
+            return copy;
+        }
+    }
+
+    private static final class Atr implements State {
+        private final int barCount;
+        private TrueRange trueRange = new TrueRange();
+        private Exponential average;
+
+        private Atr(int barCount) {
+            this.barCount = barCount;
+            this.average = Exponential.mma(barCount);
+        }
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            return average.next(trueRange.next(candle));
+        }
+
+        @Override
+        public @NotNull State copy() {
+            Atr copy = new Atr(barCount);
+            copy.trueRange = trueRange.copy();
+            copy.average = average.copy();
+            return copy;
+        }
+    }
+
+    private static final class Rsi implements State {
+        private final int barCount;
+        private Exponential avgGain;
+        private Exponential avgLoss;
+        private double prevClose = Double.NaN;
+        private int index;
+
+        private Rsi(int barCount) {
+            this.barCount = barCount;
+            this.avgGain = Exponential.mma(barCount);
+            this.avgLoss = Exponential.mma(barCount);
+        }
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            double change = Double.isNaN(prevClose) ? 0 : candle.getClose() - prevClose;
+            prevClose = candle.getClose();
+            double gain = avgGain.next(change > 0 ? change : 0);
+            double loss = avgLoss.next(change < 0 ? -change : 0);
+            if (index++ < barCount) {
+                return Double.NaN;
+            }
+            if (loss == 0) {
+                return gain == 0 ? 0 : 100;
+            }
+            return 100 - 100 / (1 + gain / loss);
+        }
+
+        @Override
+        public @NotNull State copy() {
+            Rsi copy = new Rsi(barCount);
+            copy.avgGain = avgGain.copy();
+            copy.avgLoss = avgLoss.copy();
+            copy.prevClose = prevClose;
+            copy.index = index;
+            return copy;
+        }
+    }
+
+    private static final class Adx implements State {
+        private final int diBarCount;
+        private final int adxBarCount;
+        private TrueRange trueRange = new TrueRange();
+        private Exponential atr;
+        private Exponential avgPlus;
+        private Exponential avgMinus;
+        private Exponential avgDx;
+        private double prevHigh = Double.NaN;
+        private double prevLow = Double.NaN;
+
+        private Adx(int diBarCount, int adxBarCount) {
+            this.diBarCount = diBarCount;
+            this.adxBarCount = adxBarCount;
+            this.atr = Exponential.mma(diBarCount);
+            this.avgPlus = Exponential.mma(diBarCount);
+            this.avgMinus = Exponential.mma(diBarCount);
+            this.avgDx = Exponential.mma(adxBarCount);
+        }
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            double plusDM = 0;
+            double minusDM = 0;
+            if (!Double.isNaN(prevHigh)) {
+                double up = candle.getHigh() - prevHigh;
+                double down = prevLow - candle.getLow();
+                plusDM = up > down && up > 0 ? up : 0;
+                minusDM = down > up && down > 0 ? down : 0;
+            }
+            prevHigh = candle.getHigh();
+            prevLow = candle.getLow();
+            double range = atr.next(trueRange.next(candle));
+            double plus = avgPlus.next(plusDM);
+            double minus = avgMinus.next(minusDM);
+            double plusDI = range == 0 ? 0 : plus / range * 100;
+            double minusDI = range == 0 ? 0 : minus / range * 100;
+            double sum = plusDI + minusDI;
+            return avgDx.next(sum == 0 ? 0 : Math.abs(plusDI - minusDI) / sum * 100);
+        }
+
+        @Override
+        public @NotNull State copy() {
+            Adx copy = new Adx(diBarCount, adxBarCount);
+            copy.trueRange = trueRange.copy();
+            copy.atr = atr.copy();
+            copy.avgPlus = avgPlus.copy();
+            copy.avgMinus = avgMinus.copy();
+            copy.avgDx = avgDx.copy();
+            copy.prevHigh = prevHigh;
+            copy.prevLow = prevLow;
+            return copy;
+        }
+    }
+
+    private static final class Macd implements State {
+        private static final int LINE = 0;
+        private static final int SIGNAL = 1;
+        private static final int HISTOGRAM = 2;
+
+        private final int shortBarCount;
+        private final int longBarCount;
+        private final int signalBarCount;
+        private final int output;
+        private Exponential shortEma;
+        private Exponential longEma;
+        private Exponential signal;
+
+        private Macd(int shortBarCount, int longBarCount, int signalBarCount, int output) {
+            if (shortBarCount > longBarCount) {
+                throw new IllegalArgumentException("Long term period count must be greater than short term period count");
+            }
+            this.shortBarCount = shortBarCount;
+            this.longBarCount = longBarCount;
+            this.signalBarCount = signalBarCount;
+            this.output = output;
+            this.shortEma = new Exponential(shortBarCount, 2.0 / (shortBarCount + 1));
+            this.longEma = new Exponential(longBarCount, 2.0 / (longBarCount + 1));
+            this.signal = new Exponential(signalBarCount, 2.0 / (signalBarCount + 1));
+        }
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            double line = shortEma.next(candle.getClose()) - longEma.next(candle.getClose());
+            if (output == LINE) {
+                return line;
+            }
+            double signalValue = signal.next(line);
+            return output == SIGNAL ? signalValue : line - signalValue;
+        }
+
+        @Override
+        public @NotNull State copy() {
+            Macd copy = new Macd(shortBarCount, longBarCount, signalBarCount, output);
+            copy.shortEma = shortEma.copy();
+            copy.longEma = longEma.copy();
+            copy.signal = signal.copy();
+            return copy;
+        }
+    }
+
+    private static final class SuperTrend implements State {
+        private final int barCount;
+        private final double multiplier;
+        private Atr atr;
+        private double prevUpper = Double.NaN;
+        private double prevLower = Double.NaN;
+        private double prevTrend = Double.NaN;
+        private double prevClose = Double.NaN;
+        private boolean first = true;
+
+        private SuperTrend(int barCount, double multiplier) {
+            this.barCount = barCount;
+            this.multiplier = multiplier;
+            this.atr = new Atr(barCount);
+        }
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            double range = atr.update(candle);
+            double median = (candle.getHigh() + candle.getLow()) / 2;
+            double upperBand = median + multiplier * range;
+            double lowerBand = median - multiplier * range;
+            double upper;
+            double lower;
+            if (first || Double.isNaN(upperBand) || Double.isNaN(prevUpper)) {
+                upper = upperBand;
+            } else {
+                upper = upperBand < prevUpper || prevClose > prevUpper ? upperBand : prevUpper;
+            }
+            if (first || Double.isNaN(lowerBand) || Double.isNaN(prevLower)) {
+                lower = lowerBand;
+            } else {
+                lower = lowerBand > prevLower || prevClose < prevLower ? lowerBand : prevLower;
+            }
+
+            double trend;
+            if (Double.isNaN(lower) || Double.isNaN(upper)) {
+                trend = Double.NaN;
+            } else if (first || Double.isNaN(prevTrend)) {
+                trend = lower;
+            } else if (!Double.isNaN(prevUpper) && prevTrend == prevUpper) {
+                trend = candle.getClose() <= upper ? upper : lower;
+            } else if (!Double.isNaN(prevLower) && prevTrend == prevLower) {
+                trend = candle.getClose() >= lower ? lower : upper;
+            } else {
+                trend = lower;
+            }
+            first = false;
+            prevUpper = upper;
+            prevLower = lower;
+            prevTrend = trend;
+            prevClose = candle.getClose();
+            return trend;
+        }
+
+        @Override
+        public @NotNull State copy() {
+            SuperTrend copy = new SuperTrend(barCount, multiplier);
+            copy.atr = (Atr) atr.copy();
+            copy.prevUpper = prevUpper;
+            copy.prevLower = prevLower;
+            copy.prevTrend = prevTrend;
+            copy.prevClose = prevClose;
+            copy.first = first;
+            return copy;
+        }
+    }
+
+    private static final class Obv implements State {
+        private double prevClose = Double.NaN;
+        private double obv;
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            double close = candle.getClose();
+            if (prevClose > close) {
+                obv -= candle.getVolumen().baseVolume();
+            } else if (prevClose < close) {
+                obv += candle.getVolumen().baseVolume();
+            }
+            prevClose = close;
+            return obv;
+        }
+
+        @Override
+        public @NotNull State copy() {
+            Obv copy = new Obv();
+            copy.prevClose = prevClose;
+            copy.obv = obv;
+            return copy;
+        }
+    }
+
+    private static final class Vwap implements State {
+        private final int barCount;
+        private Ring priceVolumes;
+        private Ring volumes;
+        private double priceVolume;
+        private double volume;
+        private boolean first = true;
+
+        private Vwap(int barCount) {
+            this.barCount = barCount;
+            this.priceVolumes = new Ring(barCount);
+            this.volumes = new Ring(barCount);
+        }
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            double typical = (candle.getHigh() + candle.getLow() + candle.getClose()) / 3;
+            double base = candle.getVolumen().baseVolume();
+            priceVolume += typical * base;
+            volume += base;
+            double evictedPriceVolume = priceVolumes.push(typical * base);
+            double evictedVolume = volumes.push(base);
+            if (!Double.isNaN(evictedVolume)) {
+                priceVolume -= evictedPriceVolume;
+                volume -= evictedVolume;
+            }
+            if (first) {
+                first = false;
+                return typical;
+            }
+            return priceVolume / volume;
+        }
+
+        @Override
+        public @NotNull State copy() {
+            Vwap copy = new Vwap(barCount);
+            copy.priceVolumes = priceVolumes.copy();
+            copy.volumes = volumes.copy();
+            copy.priceVolume = priceVolume;
+            copy.volume = volume;
+            copy.first = first;
+            return copy;
+        }
+    }
+
+    private static final class Kalman implements State {
+        private final double processNoise;
+        private final double measurementNoise;
+        private double state;
+        private double error = 1;
+        private boolean initialized;
+
+        private Kalman(double processNoise, double measurementNoise) {
+            this.processNoise = processNoise;
+            this.measurementNoise = measurementNoise;
+        }
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            double measurement = candle.getClose();
+            if (!initialized) {
+                initialized = true;
+                state = Double.isFinite(measurement) ? measurement : 0;
+            }
+            if (!Double.isFinite(measurement)) {
+                return Double.NaN;
+            }
+            error += processNoise;
+            double gain = error / (error + measurementNoise);
+            state += gain * (measurement - state);
+            error = (1 - gain) * error;
+            return state;
+        }
+
+        @Override
+        public @NotNull State copy() {
+            Kalman copy = new Kalman(processNoise, measurementNoise);
+            copy.state = state;
+            copy.error = error;
+            copy.initialized = initialized;
+            return copy;
+        }
+    }
+
+    private static final class EfficiencyRatio implements State {
+        private final int window;
+        private Ring closes;
+        private Ring changes;
+        private double sumOfChanges;
+
+        private EfficiencyRatio(int barCount) {
+            this.window = Math.max(barCount, 1);
+            this.closes = new Ring(window + 1);
+            this.changes = new Ring(window);
+        }
+
+        @Override
+        public double update(@NotNull Candle candle) {
+            double close = candle.getClose();
+            boolean first = closes.count == 0;
+            closes.push(close);
+            if (first) {
+                return 0;
+            }
+            double change = Math.abs(close - closes.get(1));
+            sumOfChanges += change;
+            double evicted = changes.push(change);
+            if (!Double.isNaN(evicted)) sumOfChanges -= evicted;
+            double netChange = Math.abs(close - closes.get(closes.count - 1));
+            return sumOfChanges <= 0 || netChange == 0 ? 0 : (netChange / sumOfChanges) * 100;
+        }
+
+        @Override
+        public @NotNull State copy() {
+            EfficiencyRatio copy = new EfficiencyRatio(window);
+            copy.closes = closes.copy();
+            copy.changes = changes.copy();
+            copy.sumOfChanges = sumOfChanges;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package xyz.cereshost.vesta;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.core.market.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Velas de un minuto para los tests: paseo aleatorio desde 3000 con pasos gaussianos de 4
+ * y volumen repartido a partes iguales entre compra y venta.
+ */
+@UtilityClass
+public class TestCandles {
+
+    public static final long START = 1735689600000L;
+    public static final long MINUTE = 60_000L;
+
+    public static @NotNull List<Candle> randomWalk(@NotNull Random random, int size) {
+        return randomWalk(random, size, false);
+    }
+
+    /**
+     * @param flatStretches si es {@code true}, 5 de cada 97 velas cierran igual que abren
+     *                      (para cubrir divisiones por cero en RSI, DX y ER)
+     */
+    public static @NotNull List<Candle> randomWalk(@NotNull Random random, int size, boolean flatStretches) {
+        List<Candle> candles = new ArrayList<>(size);
+        double close = 3000;
+        for (int i = 0; i < size; i++) {
+            double open = close;
+            close = flatStretches && i % 97 < 5 ? open : open + random.nextGaussian() * 4;
+            double high = Math.max(open, close) + random.nextDouble() * 2;
+            double low = Math.min(open, close) - random.nextDouble() * 2;
+            double base = 10 + random.nextDouble() * 90;
+            candles.add(new Candle(TimeFrameMarket.ONE_MINUTE, START + i * MINUTE, open, high, low, close,
+                    new Volumen(base * close, base, base * close / 2, base * close / 2, 0, 0.5)));
+        }
+        return candles;
+    }
+
+    public static @NotNull Market randomMarket(long seed, int size) {
+        return randomMarket(seed, size, false);
+    }
+
+    public static @NotNull Market randomMarket(long seed, int size, boolean flatStretches) {
+        Market market = new Market(Symbol.valueOf("ETHUSDC"));
+        market.addCandles(randomWalk(new Random(seed), size, flatStretches));
+        return market;
+    }
+}
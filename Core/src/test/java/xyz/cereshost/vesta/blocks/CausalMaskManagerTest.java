@@ -0,0 +1,106 @@
+package xyz.cereshost.vesta.blocks;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.ia.blocks.CausalMaskManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CausalMaskManagerTest {
+
+    @Test
+    void sameShapeReusesMasksUntilReclaim() throws Exception {
+        CausalMaskManager masks = new CausalMaskManager();
+        try (NDManager manager = NDManager.newBaseManager()) {
+            NDArray[] first = masks.getMaskAndDerived(manager, 4, DataType.FLOAT32);
+            assertArrayEquals(new float[]{
+                    1, 0, 0, 0,
+                    1, 1, 0, 0,
+                    1, 1, 1, 0,
+                    1, 1, 1, 1}, first[0].toFloatArray());
+            assertArrayEquals(new float[]{0, 1, 1, 1, 0, 0, 1, 1, 0, 0, 0, 1, 0, 0, 0, 0}, first[1].toFloatArray());
+
+            // Muchos forwards en paralelo con la misma forma reciben los mismos arrays
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<NDArray>> futures = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    futures.add(executor.submit(() -> masks.getMaskAndDerived(manager, 4, DataType.FLOAT32)[0]));
+                }
+                for (Future<NDArray> future : futures) {
+                    assertSame(first[0], future.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertNotSame(first[0], masks.getMaskAndDerived(manager, 5, DataType.FLOAT32)[0]);
+
+            float[] mask = first[0].toFloatArray();
+            masks.reclaim(manager);
+            assertTrue(first[0].isReleased());
+            NDArray[] again = masks.getMaskAndDerived(manager, 4, DataType.FLOAT32);
+            assertNotSame(first[0], again[0]);
+            assertArrayEquals(mask, again[0].toFloatArray());
+        }
+    }
+
+    @Test
+    void reclaimingOneOwnerLeavesTheOtherAlive() throws Exception {
+        CausalMaskManager masks = new CausalMaskManager();
+        try (NDManager trainer = NDManager.newBaseManager(); NDManager predictor = NDManager.newBaseManager()) {
+            NDArray[] own = masks.getMaskAndDerived(trainer, 6, DataType.FLOAT32);
+            NDArray[] other = masks.getMaskAndDerived(predictor, 6, DataType.FLOAT32);
+            assertNotSame(own[0], other[0]);
+
+            // El otro dueño sigue haciendo forwards en su hilo mientras el primero libera las suyas
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Float> reads = executor.submit(() -> {
+                    float sum = 0;
+                    for (int i = 0; i < 200; i++) {
+                        NDArray[] read = masks.getMaskAndDerived(predictor, 6, DataType.FLOAT32);
+                        assertSame(other[0], read[0]);
+                        sum += read[0].sum().getFloat();
+                    }
+                    return sum;
+                });
+                masks.reclaim(trainer);
+                assertEquals(200 * 21f, reads.get());
+            } finally {
+                executor.shutdown();
+            }
+
+            assertTrue(own[0].isReleased());
+            assertFalse(other[0].isReleased());
+            assertFalse(other[1].isReleased());
+            assertSame(other[0], masks.getMaskAndDerived(predictor, 6, DataType.FLOAT32)[0]);
+            masks.reclaim(predictor);
+            assertTrue(other[0].isReleased());
+        }
+    }
+
+    @Test
+    void blocksDoNotShareMasks() {
+        CausalMaskManager first = new CausalMaskManager();
+        CausalMaskManager second = new CausalMaskManager();
+        try (NDManager manager = NDManager.newBaseManager()) {
+            NDArray[] own = first.getMaskAndDerived(manager, 4, DataType.FLOAT32);
+            NDArray[] other = second.getMaskAndDerived(manager, 4, DataType.FLOAT32);
+            assertNotSame(own[0], other[0]);
+
+            first.reclaim(manager);
+            assertTrue(own[0].isReleased());
+            assertFalse(other[0].isReleased());
+            second.reclaim();
+            assertTrue(other[0].isReleased());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package xyz.cereshost.vesta.blocks;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.training.ParameterStore;
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.ia.blocks.ScaledDotProductAttentionOptimizableBlock;
+import xyz.cereshost.vesta.core.ia.blocks.TemporalTransformerBlock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FusedQkvTest {
+
+    @Test
+    void checkpointsLoadInEitherLayout() throws Exception {
+        try (NDManager manager = NDManager.newBaseManager()) {
+            Shape shape = new Shape(3, 7, 5);
+            NDArray input = manager.randomNormal(shape);
+            ParameterStore ps = new ParameterStore(manager, false);
+
+            TemporalTransformerBlock separate = transformer(false);
+            separate.initialize(manager, DataType.FLOAT32, shape);
+            float[] expected = separate.forward(ps, new NDList(input), false).singletonOrThrow().toFloatArray();
+
+            // Checkpoint con key, query y value separados cargado en un bloque empaquetado
+            TemporalTransformerBlock fused = transformer(true);
+            copyParameters(manager, separate, fused);
+            assertArrayEquals(expected, fused.forward(ps, new NDList(input), false).singletonOrThrow().toFloatArray(), 1e-5f);
+
+            // Y de vuelta
+            TemporalTransformerBlock again = transformer(false);
+            copyParameters(manager, fused, again);
+            assertArrayEquals(expected, again.forward(ps, new NDList(input), false).singletonOrThrow().toFloatArray(), 1e-5f);
+        }
+    }
+
+    @Test
+    void separateInputsUseTheirPartOfThePackedWeight() {
+        try (NDManager manager = NDManager.newBaseManager()) {
+            Shape shape = new Shape(2, 4, 8);
+            ScaledDotProductAttentionOptimizableBlock attention = ScaledDotProductAttentionOptimizableBlock.builder()
+                    .setEmbeddingSize(8)
+                    .setHeadCount(2)
+                    .optAttentionProbsDropoutProb(0f)
+                    .optFusedQkv(true)
+                    .build();
+            attention.initialize(manager, DataType.FLOAT32, shape);
+            ParameterStore ps = new ParameterStore(manager, false);
+            NDArray input = manager.randomNormal(shape);
+
+            float[] self = attention.forward(ps, new NDList(input), false).singletonOrThrow().toFloatArray();
+            float[] split = attention.forward(ps, new NDList(input, input, input), false).singletonOrThrow().toFloatArray();
+            assertArrayEquals(self, split, 1e-5f);
+        }
+    }
+
+    private static TemporalTransformerBlock transformer(boolean fusedQkv) {
+        return TemporalTransformerBlock.builder()
+                .setModelDim(8)
+                .setNumHeads(2)
+                .setFeedForwardDim(16)
+                .setDropoutRate(0f)
+                .setAttentionProbsDropoutProb(0f)
+                .setMaxSequenceLength(7)
+                .setFusedQkv(fusedQkv)
+                .build();
+    }
+
+    private static void copyParameters(NDManager manager, Block from, Block to) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        from.saveParameters(new DataOutputStream(bytes));
+        to.loadParameters(manager, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
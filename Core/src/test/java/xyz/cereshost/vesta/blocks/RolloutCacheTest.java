@@ -0,0 +1,88 @@
+package xyz.cereshost.vesta.blocks;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.training.ParameterStore;
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.ia.blocks.RolloutCache;
+import xyz.cereshost.vesta.core.ia.blocks.TemporalTransformerBlock;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RolloutCacheTest {
+
+    @Test
+    void shiftedWindowsMatchFullForward() {
+        shiftedWindowsMatchFullForward(false);
+    }
+
+    @Test
+    void shiftedWindowsMatchFullForwardWithFusedQkv() {
+        shiftedWindowsMatchFullForward(true);
+    }
+
+    private static void shiftedWindowsMatchFullForward(boolean fusedQkv) {
+        try (NDManager manager = NDManager.newBaseManager()) {
+            int batch = 2, seq = 10, features = 6, steps = 6;
+            TemporalTransformerBlock block = TemporalTransformerBlock.builder()
+                    .setModelDim(16)
+                    .setNumHeads(4)
+                    .setFeedForwardDim(32)
+                    .setDropoutRate(0.0f)
+                    .setMaxSequenceLength(seq)
+                    .setFusedQkv(fusedQkv)
+                    .build();
+            block.initialize(manager, DataType.FLOAT32, new Shape(batch, seq, features));
+            ParameterStore ps = new ParameterStore(manager, false);
+
+            Random random = new Random(59);
+            float[] series = new float[batch * (seq + steps) * features];
+            for (int i = 0; i < series.length; i++) series[i] = (float) random.nextGaussian();
+
+            float[][] expected = new float[steps][];
+            for (int step = 0; step < steps; step++) {
+                try (NDManager scope = manager.newSubManager()) {
+                    expected[step] = block.forward(ps, new NDList(window(scope, series, batch, seq, features, step)), false)
+                            .singletonOrThrow().toFloatArray();
+                }
+            }
+
+            try (RolloutCache cache = RolloutCache.open(manager)) {
+                for (int step = 0; step < steps; step++) {
+                    try (NDManager scope = manager.newSubManager()) {
+                        float[] actual = block.forward(ps, new NDList(window(scope, series, batch, seq, features, step)), false)
+                                .singletonOrThrow().toFloatArray();
+                        assertArrayEquals(expected[step], actual, 1e-4f, "paso " + step);
+                    }
+                }
+                assertEquals(1, cache.getFullSteps());
+                assertEquals(steps - 1, cache.getIncrementalSteps());
+
+                // Una ventana que no es la anterior desplazada se recalcula entera
+                try (NDManager scope = manager.newSubManager()) {
+                    float[] actual = block.forward(ps, new NDList(window(scope, series, batch, seq, features, 0)), false)
+                            .singletonOrThrow().toFloatArray();
+                    assertArrayEquals(expected[0], actual, 1e-4f);
+                }
+                assertEquals(2, cache.getFullSteps());
+            }
+        }
+    }
+
+    /**
+     * Ventana de {@code seq} filas desde {@code start} en cada serie del batch.
+     */
+    private static NDArray window(NDManager manager, float[] series, int batch, int seq, int features, int start) {
+        int length = series.length / batch;
+        float[] out = new float[batch * seq * features];
+        for (int b = 0; b < batch; b++) {
+            System.arraycopy(series, b * length + start * features, out, b * seq * features, seq * features);
+        }
+        return manager.create(out, new Shape(batch, seq, features));
+    }
+}
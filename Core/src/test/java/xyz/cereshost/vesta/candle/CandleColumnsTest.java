@@ -0,0 +1,105 @@
+package xyz.cereshost.vesta.candle;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.TestCandles;
+import xyz.cereshost.vesta.core.market.*;
+import xyz.cereshost.vesta.core.utils.candle.CandleColumns;
+import xyz.cereshost.vesta.core.utils.candle.CandleIndicators;
+import xyz.cereshost.vesta.core.utils.candle.CandlesBuilder;
+import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CandleColumnsTest {
+
+    @Test
+    void cursorMatchesCandleIndicators() {
+        SequenceCandles candles = new CandlesBuilder()
+                .addEMAIndicator("ema", 12)
+                .addRSIIndicator("rsi", 14)
+                .build(TestCandles.randomMarket(11, 200));
+        int ema = candles.column("ema");
+        int rsi = candles.column("rsi");
+        assertEquals(-1, candles.column("no_existe"));
+
+        CandleColumns.Cursor cursor = candles.cursor();
+        for (int i = 0; i < candles.size(); i++) {
+            CandleIndicators expected = candles.getCandle(i);
+            cursor.at(i);
+            assertEquals(expected.getOpenTime(), cursor.getOpenTime());
+            assertEquals(expected.getClose(), cursor.getClose());
+            assertEquals(expected.getLowBody(), cursor.getLowBody());
+            assertEquals(expected.getVolumen().baseVolume(), cursor.getBaseVolume());
+            assertEquals(expected.get("ema"), cursor.get(ema));
+            assertEquals(expected.get("rsi"), cursor.get(rsi));
+        }
+    }
+
+    @Test
+    void subSequenceSharesColumns() {
+        SequenceCandles candles = new CandlesBuilder().addSMAIndicator("sma", 5).build(TestCandles.randomMarket(11, 100));
+        SequenceCandles window = candles.subSequence(10, 40).subSequence(5, 20);
+        assertSame(candles.columns(), window.columns());
+
+        CandleColumns.Cursor cursor = window.cursor();
+        assertEquals(15, cursor.getSize());
+        assertEquals(candles.get(15).getOpenTime(), cursor.at(0).getOpenTime());
+        assertEquals(candles.get(29).getOpenTime(), cursor.last().getOpenTime());
+        assertThrows(IndexOutOfBoundsException.class, () -> cursor.at(15));
+    }
+
+    @Test
+    void mutationsWithTheSameSizeRebuildColumns() {
+        SequenceCandles candles = new CandlesBuilder().addSMAIndicator("sma", 5).build(TestCandles.randomMarket(11, 60));
+        int sma = candles.column("sma");
+        CandleColumns before = candles.columns();
+
+        candles.set(0, candles.get(1));
+        assertNotSame(before, candles.columns());
+        assertEquals(candles.get(1).getOpenTime(), candles.cursor().at(0).getOpenTime());
+
+        // Desde una subsecuencia y desde un subList también se invalida la raíz
+        SequenceCandles window = candles.subSequence(10, 20);
+        window.set(0, candles.get(30));
+        assertEquals(candles.get(30).getOpenTime(), candles.cursor().at(10).getOpenTime());
+        candles.subList(20, 25).set(1, candles.get(40));
+        assertEquals(candles.get(40).getOpenTime(), candles.cursor().at(21).getOpenTime());
+
+        candles.sort(Comparator.comparingLong(Candle::getOpenTime).reversed());
+        CandleColumns.Cursor cursor = candles.cursor();
+        for (int i = 0; i < candles.size(); i++) {
+            assertEquals(candles.get(i).getOpenTime(), cursor.at(i).getOpenTime());
+            assertEquals(candles.getCandle(i).get("sma"), cursor.get(sma));
+        }
+    }
+
+    @Test
+    void removalsKeepReadingTheRightRows() {
+        SequenceCandles candles = new CandlesBuilder().addEMAIndicator("ema", 12).addSMAIndicator("sma", 5).build(TestCandles.randomMarket(11, 120));
+        List<double[]> rows = new ArrayList<>();
+        for (SequenceCandles.CandleContainer container : candles) rows.add(container.indicador());
+        int ema = candles.column("ema");
+        int sma = candles.column("sma");
+
+        // indicador() es una copia, no toca lo que leen las columnas
+        candles.get(0).indicador()[ema] = Double.NaN;
+        assertEquals(rows.get(0)[ema], candles.cursor().at(0).get(ema));
+
+        // Quitar del principio deja las filas consecutivas, quitar del medio no
+        candles.subList(0, 7).clear();
+        rows.subList(0, 7).clear();
+        candles.remove(50);
+        rows.remove(50);
+        CandleColumns.Cursor cursor = candles.cursor();
+        for (int i = 0; i < candles.size(); i++) {
+            cursor.at(i);
+            assertEquals(rows.get(i)[ema], cursor.get(ema));
+            assertEquals(rows.get(i)[sma], cursor.get(sma));
+            assertEquals(rows.get(i)[sma], candles.getCandle(i).get("sma"));
+        }
+    }
+}
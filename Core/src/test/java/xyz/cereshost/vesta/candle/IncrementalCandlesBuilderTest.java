@@ -0,0 +1,136 @@
+package xyz.cereshost.vesta.candle;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.TestCandles;
+import xyz.cereshost.vesta.core.market.*;
+import xyz.cereshost.vesta.core.utils.candle.CandlesBuilder;
+import xyz.cereshost.vesta.core.utils.candle.IncrementalCandlesBuilder;
+import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncrementalCandlesBuilderTest {
+
+    private static final long START = 1735689600000L;
+    private static final long MINUTE = 60_000L;
+
+    @Test
+    void incrementalMatchesFullBuild() {
+        List<Candle> candles = TestCandles.randomWalk(new Random(5), 500);
+        IncrementalCandlesBuilder incremental = builder().incremental(1_000);
+        assertNotNull(incremental);
+
+        SequenceCandles last = null;
+        for (int end = 100; end <= candles.size(); end += 37) {
+            // La última vela sigue abierta: entra en la ventana pero no en el estado
+            long closedBefore = START + end * MINUTE - 1;
+            last = incremental.update(market(candles.subList(0, end)), closedBefore);
+            assertEquals(START + (end - 2) * MINUTE, incremental.getLastOpenTime());
+            assertSequenceEquals(builder().build(market(candles.subList(0, end))), last);
+        }
+        last = incremental.update(market(candles), Long.MAX_VALUE);
+        assertSequenceEquals(builder().build(market(candles)), last);
+    }
+
+    @Test
+    void windowKeepsOnlyLastCandles() {
+        List<Candle> candles = TestCandles.randomWalk(new Random(5), 300);
+        IncrementalCandlesBuilder incremental = builder().incremental(50);
+        assertNotNull(incremental);
+        SequenceCandles window = incremental.update(market(candles), Long.MAX_VALUE);
+        SequenceCandles full = builder().build(market(candles));
+
+        assertEquals(50, window.size());
+        assertSequenceEquals(full.subSequence(full.size() - 50, full.size()), window);
+        assertNull(builder().addIndicator("custom", (data, indicators) -> data.closes()).incremental(50));
+    }
+
+    @Test
+    void metricsMatchFullBuildAndWindowsDoNotChange() {
+        List<Candle> candles = TestCandles.randomWalk(new Random(5), 300);
+        List<Metric> metrics = randomMetrics(300);
+        IncrementalCandlesBuilder incremental = builder().incremental(40);
+        assertNotNull(incremental);
+
+        SequenceCandles first = incremental.update(market(candles.subList(0, 120), metrics), Long.MAX_VALUE);
+        long firstOpenTime = first.getFirst().getOpenTime();
+        for (int end = 121; end <= candles.size(); end += 7) {
+            SequenceCandles window = incremental.update(market(candles.subList(0, end), metrics), Long.MAX_VALUE);
+            SequenceCandles full = builder().build(market(candles.subList(0, end), metrics));
+            assertEquals(full.getLast().getOpenTime(), window.getLast().getOpenTime());
+            for (int i = 1; i <= window.size(); i++) {
+                assertEquals(full.get(full.size() - i).getMetrics(), window.get(window.size() - i).getMetrics());
+            }
+        }
+        // La ventana del primer tick sigue igual aunque el buffer ya se haya rotado
+        assertEquals(40, first.size());
+        assertEquals(firstOpenTime, first.getFirst().getOpenTime());
+        assertThrows(UnsupportedOperationException.class, () -> first.set(0, first.get(1)));
+    }
+
+    @Test
+    void metricAtMatchesTheTimeFrameCache() {
+        List<Metric> metrics = randomMetrics(600);
+        for (TimeFrameMarket timeFrame : List.of(TimeFrameMarket.ONE_MINUTE, TimeFrameMarket.FIVE_MINUTE, TimeFrameMarket.FIFTEEN_MINUTES)) {
+            Market market = new Market(Symbol.valueOf("ETHUSDC"), timeFrame);
+            market.addMetrics(new ArrayList<>(metrics));
+            market.buildMetricsCache();
+            NavigableMap<Long, Metric> index = new TreeMap<>();
+            metrics.forEach(metric -> Market.indexMetric(index, metric));
+            long ms = timeFrame.getMilliseconds();
+            for (long time = START - ms; time < START + 700 * MINUTE; time += ms) {
+                Map.Entry<Long, Metric> expected = market.getMetricByTimeFrame().floorEntry(time);
+                assertEquals(expected == null ? null : expected.getValue(), Market.metricAt(index, time, ms), timeFrame + " " + time);
+            }
+        }
+    }
+
+    private static List<Metric> randomMetrics(int minutes) {
+        Random random = new Random(9);
+        List<Metric> metrics = new ArrayList<>();
+        for (int i = 0; i < minutes / 5; i++) {
+            // Huecos de algunos bloques de 5 minutos, como en los datos reales
+            if (i % 11 == 3 || i % 11 == 4) continue;
+            metrics.add(new Metric(START + i * 5 * MINUTE, random.nextDouble() * 1e6, random.nextDouble() * 1e9,
+                    random.nextDouble() * 3, random.nextDouble() * 3));
+        }
+        return metrics;
+    }
+
+    private static void assertSequenceEquals(SequenceCandles expected, SequenceCandles actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getOpenTime(), actual.get(i).getOpenTime());
+            for (String key : List.of("ema", "rsi", "adx", "macd_hist", "super_trend", "vwap", "er")) {
+                assertEquals(expected.getCandle(i).get(key), actual.getCandle(i).get(key), 1e-9, key);
+            }
+        }
+    }
+
+    private static CandlesBuilder builder() {
+        return new CandlesBuilder()
+                .addEMAIndicator("ema", 12)
+                .addRSIIndicator("rsi", 14)
+                .addADXIndicator("adx", 14, 10)
+                .addMACDIndicator("macd", 12, 26)
+                .addMACDHistogramIndicator("macd_hist", 9)
+                .addSuperTrendIndicator("super_trend", 10, 3f)
+                .addVWAIndicator("vwap", 20)
+                .addERIndicator("er", 10);
+    }
+
+    private static Market market(List<Candle> candles) {
+        return market(candles, List.of());
+    }
+
+    private static Market market(List<Candle> candles, List<Metric> metrics) {
+        Market market = new Market(Symbol.valueOf("ETHUSDC"));
+        // addCandles y addMetrics vacían la colección que reciben
+        market.addCandles(new ArrayList<>(candles));
+        long end = candles.getLast().getOpenTime();
+        market.addMetrics(new ArrayList<>(metrics.stream().filter(metric -> metric.getOpenTime() <= end).toList()));
+        return market;
+    }
+}
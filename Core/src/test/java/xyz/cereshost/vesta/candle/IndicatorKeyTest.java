@@ -0,0 +1,38 @@
+package xyz.cereshost.vesta.candle;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.TestCandles;
+import xyz.cereshost.vesta.core.market.*;
+import xyz.cereshost.vesta.core.utils.candle.CandleColumns;
+import xyz.cereshost.vesta.core.utils.candle.CandlesBuilder;
+import xyz.cereshost.vesta.core.utils.candle.IndicatorKey;
+import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndicatorKeyTest {
+
+    private static final IndicatorKey EMA = IndicatorKey.of("ema");
+    private static final IndicatorKey RSI = IndicatorKey.of("rsi");
+    private static final IndicatorKey MISSING = IndicatorKey.of("no_existe");
+
+    @Test
+    void keyFollowsEachDictionary() {
+        Market market = TestCandles.randomMarket(13, 300);
+        // Mismo nombre en columnas distintas: la clave se vuelve a resolver al cambiar de secuencia
+        SequenceCandles a = new CandlesBuilder().addEMAIndicator("ema", 12).addRSIIndicator("rsi", 14).build(market);
+        SequenceCandles b = new CandlesBuilder().addRSIIndicator("rsi", 14).addEMAIndicator("ema", 12).build(market);
+        assertNotEquals(a.column(EMA), b.column(EMA));
+
+        for (SequenceCandles candles : List.of(a, b, a)) {
+            CandleColumns.Cursor cursor = candles.cursor();
+            for (int i = 0; i < candles.size(); i++) {
+                assertEquals(candles.getCandle(i).get("ema"), cursor.at(i).get(EMA));
+                assertEquals(candles.getCandle(i).get("rsi"), candles.getCandle(i).get(RSI));
+                assertEquals(0.0, cursor.get(MISSING));
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package xyz.cereshost.vesta.candle;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.TestCandles;
+import xyz.cereshost.vesta.core.market.*;
+import xyz.cereshost.vesta.core.utils.candle.CandleIndicators;
+import xyz.cereshost.vesta.core.utils.candle.CandlesBuilder;
+import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveIndicatorsParityTest {
+
+    private static final String[] KEYS = {"sma", "ema", "wma", "atr", "rsi", "adx", "macd", "macd_fast", "macd_signal", "macd_hist",
+            "super_trend", "obv", "vwap", "kalman", "er"};
+
+    @Test
+    void primitiveBackendMatchesTa4j() {
+        Market market = TestCandles.randomMarket(3, 700, true);
+        SequenceCandles primitive = builder().build(market);
+        SequenceCandles reference = builder().withBackend(CandlesBuilder.Backend.TA4J).build(market);
+
+        // Las mismas barras inestables se descartan con los dos motores
+        assertEquals(reference.size(), primitive.size());
+        assertTrue(primitive.size() > 600);
+        for (int i = 0; i < primitive.size(); i++) {
+            CandleIndicators expected = reference.getCandle(i);
+            CandleIndicators actual = primitive.getCandle(i);
+            assertEquals(expected.getOpenTime(), actual.getOpenTime());
+            for (String key : KEYS) {
+                double e = expected.get(key);
+                double a = actual.get(key);
+                assertEquals(e, a, 1e-7 * Math.max(1, Math.abs(e)), key + " en la vela " + i);
+            }
+        }
+    }
+
+    private static CandlesBuilder builder() {
+        return new CandlesBuilder()
+                .addSMAIndicator("sma", 20)
+                .addEMAIndicator("ema", 12)
+                .addWMAIndicator("wma", 9)
+                .addATRIndicator("atr", 14)
+                .addRSIIndicator("rsi", 14)
+                .addADXIndicator("adx", 14, 10)
+                .addMACDIndicator("macd", 12, 26)
+                .addMACDIndicator("macd_fast", 5, 13)
+                // La señal y el histograma salen del MACD de su clave aunque no sea el último agregado
+                .addMACDSignalIndicator("macd_signal", "macd", 9)
+                .addMACDHistogramIndicator("macd_hist", "macd", 9)
+                .addSuperTrendIndicator("super_trend", 10, 3f)
+                .addOBVIndicator("obv")
+                .addVWAIndicator("vwap", 20)
+                .addKalmanFilterIndicator("kalman", 1e-4, 1e-3)
+                .addERIndicator("er", 10);
+    }
+}
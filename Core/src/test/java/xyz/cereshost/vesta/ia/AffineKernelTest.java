@@ -0,0 +1,75 @@
+package xyz.cereshost.vesta.ia;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.ia.utils.AffineKernel;
+import xyz.cereshost.vesta.core.ia.utils.EngineUtils;
+import xyz.cereshost.vesta.core.ia.utils.XNormalizer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AffineKernelTest {
+
+    @Test
+    void inPlaceMatchesTransformBitForBit() {
+        assertTrue(AffineKernel.SIMD, "Los tests corren con --add-modules jdk.incubator.vector");
+        // 13 features para que las filas no coincidan con el ancho del vector
+        int samples = 37, lookBack = 11, features = 13;
+        float[][][] X = random(samples, lookBack, features, 41);
+        XNormalizer normalizer = new XNormalizer();
+        normalizer.fit(X);
+        float[] expected = EngineUtils.flatten3DArray(normalizer.transform(X));
+
+        float[] flat = EngineUtils.flatten3DArray(X);
+        normalizer.transformInPlace(flat, features);
+        assertArrayEquals(expected, flat);
+
+        // Buffer directo, como el mapeo de la caché, con una vista que no empieza en 0
+        FloatBuffer direct = ByteBuffer.allocateDirect((flat.length + features) * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        direct.position(features);
+        direct.put(EngineUtils.flatten3DArray(X));
+        FloatBuffer view = direct.flip().position(features).slice();
+        normalizer.transformInPlace(view, features);
+        float[] fromDirect = new float[flat.length];
+        view.get(0, fromDirect);
+        assertArrayEquals(expected, fromDirect);
+
+        normalizer.transformInPlace(X);
+        assertArrayEquals(expected, EngineUtils.flatten3DArray(X));
+    }
+
+    @Test
+    void simdAndScalarAgree() {
+        Random random = new Random(43);
+        for (int features : new int[]{1, 3, 8, 16, 30}) {
+            float[] center = new float[features];
+            float[] scale = new float[features];
+            for (int f = 0; f < features; f++) {
+                center[f] = (float) random.nextGaussian();
+                scale[f] = 0.1f + random.nextFloat();
+            }
+            float[] a = new float[features * 101];
+            for (int i = 0; i < a.length; i++) a[i] = (float) random.nextGaussian() * 10;
+            float[] b = a.clone();
+            new AffineKernel(center, scale, true).apply(a, 0, a.length);
+            new AffineKernel(center, scale, false).apply(b, 0, b.length);
+            assertArrayEquals(b, a, "features=" + features);
+        }
+    }
+
+    private static float[][][] random(int samples, int lookBack, int features, long seed) {
+        Random random = new Random(seed);
+        float[][][] X = new float[samples][lookBack][features];
+        for (float[][] sample : X) {
+            for (float[] row : sample) {
+                for (int f = 0; f < features; f++) row[f] = (float) (random.nextGaussian() * (f + 1));
+            }
+        }
+        return X;
+    }
+}
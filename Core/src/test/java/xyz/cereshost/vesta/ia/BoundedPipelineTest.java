@@ -0,0 +1,92 @@
+package xyz.cereshost.vesta.ia;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.ia.utils.BoundedPipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedPipelineTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Test
+    void keepsOrderAndStaysBounded() throws InterruptedException {
+        AtomicInteger produced = new AtomicInteger();
+        List<Integer> discarded = new ArrayList<>();
+        BoundedPipeline<String> pipeline = BoundedPipeline.<Integer>source("fuente", 2, produced::getAndIncrement)
+                .then("doble", 2, i -> i * 2)
+                .then("texto", 1, i -> "#" + i)
+                .onDiscard(s -> discarded.add(Integer.parseInt(s.substring(1))))
+                .start(executor);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("#" + (i * 2), pipeline.take());
+        }
+        // Sin consumidor la cadena se llena y se detiene: colas (2 + 2 + 1) y uno retenido por etapa
+        Thread.sleep(200);
+        int ahead = produced.get() - 20;
+        assertTrue(ahead <= 2 + 2 + 1 + 3, "adelantados: " + ahead);
+
+        List<BoundedPipeline.StageStats> stats = pipeline.stats();
+        assertEquals(3, stats.size());
+        assertTrue(stats.getFirst().saturatedNanos() > 0);
+        pipeline.close();
+        // El siguiente que no se tomó y el que la última etapa tenía retenido
+        assertTrue(discarded.contains(40));
+    }
+
+    @Test
+    void failuresReachTheConsumer() throws InterruptedException {
+        AtomicInteger produced = new AtomicInteger();
+        try (BoundedPipeline<Integer> pipeline = BoundedPipeline.<Integer>source("fuente", 1, () -> {
+                    int i = produced.getAndIncrement();
+                    return i < 5 ? i : null;
+                })
+                .then("falla", 1, i -> {
+                    if (i == 3) throw new IllegalArgumentException("tres");
+                    return i;
+                })
+                .start(executor)) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i, pipeline.take());
+            }
+            IllegalStateException e = assertThrows(IllegalStateException.class, pipeline::take);
+            assertInstanceOf(IllegalArgumentException.class, e.getCause());
+            // El error se queda para los siguientes take()
+            assertThrows(IllegalStateException.class, pipeline::take);
+        }
+
+        try (BoundedPipeline<Integer> pipeline = BoundedPipeline.<Integer>source("fuente", 1, () -> null).start(executor)) {
+            assertNull(pipeline.take());
+            assertNull(pipeline.take());
+        }
+    }
+
+    @Test
+    void closeWaitsForStagesThatNeverStarted() throws InterruptedException {
+        // Un solo hilo: la fuente lo ocupa y las etapas siguientes quedan en la cola del executor
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        AtomicInteger applied = new AtomicInteger();
+        List<Integer> discarded = new ArrayList<>();
+        BoundedPipeline<Integer> pipeline = BoundedPipeline.<Integer>source("fuente", 1, () -> 1)
+                .then("nunca", 1, i -> {
+                    applied.incrementAndGet();
+                    return i;
+                })
+                .onDiscard(discarded::add)
+                .start(single);
+        Thread.sleep(50);
+        pipeline.close();
+        single.shutdown();
+        assertTrue(single.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(0, applied.get());
+        assertTrue(discarded.isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package xyz.cereshost.vesta.ia;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.TestCandles;
+import xyz.cereshost.vesta.core.ia.utils.FeatureWindows;
+import xyz.cereshost.vesta.core.market.*;
+import xyz.cereshost.vesta.core.utils.BuilderData;
+import xyz.cereshost.vesta.core.utils.ConcurrentHashBiDictionary;
+import xyz.cereshost.vesta.core.utils.candle.CandleColumns;
+import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FeatureWindowsTest {
+
+    private static final int LOOK_BACK = 12;
+
+    @Test
+    void windowsMatchPerSampleInputs() {
+        SequenceCandles candles = randomCandles(200);
+        FeatureWindows windows = BuilderData.buildWindows(candles, LOOK_BACK);
+        float[][][] X = windows.toArray();
+
+        // Las ventanas que tocan una vela sin métricas se descartan
+        int expectedSamples = 0;
+        CandleColumns.Cursor cursor = candles.cursor();
+        int samples = candles.size() - LOOK_BACK - BuilderData.TREND_LABEL_WINDOW;
+        for (int i = 0; i < samples; i++) {
+            boolean valid = true;
+            for (int j = 0; j <= LOOK_BACK; j++) {
+                valid &= cursor.at(i + j).getMetrics() != null;
+            }
+            if (!valid) continue;
+
+            assertEquals(i + 1, windows.offset(expectedSamples) / windows.getFeatures());
+            CandleColumns.Cursor curr = candles.cursor();
+            CandleColumns.Cursor prev = candles.cursor();
+            for (int j = 0; j < LOOK_BACK; j++) {
+                float[] expected = BuilderData.buildTrendInputs(curr.at(i + j + 1), prev.at(i + j), candles.column(BuilderData.TREND_EFFICIENCY));
+                assertArrayEquals(expected, X[expectedSamples][j]);
+            }
+            expectedSamples++;
+        }
+        assertEquals(expectedSamples, windows.samples());
+        assertTrue(expectedSamples > 0 && expectedSamples < samples);
+
+        float[] flat = new float[windows.sampleLength() + 3];
+        windows.copySample(1, flat, 3);
+        for (int j = 0; j < LOOK_BACK; j++) {
+            for (int k = 0; k < windows.getFeatures(); k++) {
+                assertEquals(X[1][j][k], flat[3 + j * windows.getFeatures() + k]);
+            }
+        }
+    }
+
+    private static SequenceCandles randomCandles(int size) {
+        Random random = new Random(17);
+        ConcurrentHashBiDictionary<String, Byte> dictionary = new ConcurrentHashBiDictionary<>();
+        dictionary.add(BuilderData.TREND_EFFICIENCY_KEY, (byte) 0);
+        List<SequenceCandles.CandleContainer> containers = new ArrayList<>();
+        List<Candle> candles = TestCandles.randomWalk(random, size);
+        for (int i = 0; i < size; i++) {
+            Candle candle = candles.get(i);
+            // Un hueco de métricas en medio de la serie
+            if (i < 90 || i > 95) {
+                candle.setMetrics(new Metric(candle.getOpenTime(), 1e6 + random.nextDouble() * 1e4, 0,
+                        1 + random.nextDouble(), 1 + random.nextDouble()));
+            }
+            containers.add(new SequenceCandles.CandleContainer(candle, new double[]{random.nextDouble() * 100}));
+        }
+        return new SequenceCandles(dictionary, containers);
+    }
+}
@@ -0,0 +1,165 @@
+package xyz.cereshost.vesta.ia;
+
+import ai.djl.Device;
+import ai.djl.Model;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.nn.LambdaBlock;
+import ai.djl.nn.SequentialBlock;
+import ai.djl.training.ParameterStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.cereshost.vesta.core.ia.blocks.QuantizableLinear;
+import xyz.cereshost.vesta.core.ia.blocks.TemporalTransformerBlock;
+import xyz.cereshost.vesta.core.ia.utils.AffineKernel;
+import xyz.cereshost.vesta.core.ia.utils.Int8ParameterStore;
+import xyz.cereshost.vesta.core.ia.utils.Int8Weights;
+import xyz.cereshost.vesta.core.ia.utils.QuantizationCheck;
+import xyz.cereshost.vesta.core.ia.utils.TrainingCache;
+import xyz.cereshost.vesta.core.io.IOdata;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Int8QuantizationTest {
+
+    private static final int SEQ = 6, FEATURES = 5;
+    // Suficiente para que la capa del medio pase por el kernel int8 con pocas filas
+    private static final int HIDDEN = 1024;
+
+    @Test
+    void eachRowRoundsWithinHalfItsScale() {
+        int outputs = 7, inputs = 33;
+        float[] weight = random(outputs * inputs, 3);
+        // Una fila de ceros no debe dividir por cero
+        for (int k = 0; k < inputs; k++) weight[2 * inputs + k] = 0f;
+        Int8Weights quantized = Int8Weights.quantize(weight, null, outputs);
+        float[] restored = quantized.dequantize();
+        for (int o = 0; o < outputs; o++) {
+            float scale = quantized.getScales()[o];
+            for (int k = o * inputs; k < (o + 1) * inputs; k++) {
+                assertEquals(weight[k], restored[k], scale / 2f + 1e-7f, "peso " + k);
+            }
+        }
+        for (int k = 2 * inputs; k < 3 * inputs; k++) assertEquals(0f, restored[k]);
+    }
+
+    @Test
+    void simdAndScalarMatchTheDequantizedProduct() {
+        assertTrue(AffineKernel.SIMD, "Los tests corren con --add-modules jdk.incubator.vector");
+        // Entradas y salidas que no son múltiplo del ancho del vector ni de las 4 filas por bloque
+        int outputs = 13, inputs = 37;
+        Int8Weights simd = Int8Weights.quantize(random(outputs * inputs, 5), random(outputs, 6), outputs);
+        assertTrue(simd.isSimd());
+        Int8Weights scalar = new Int8Weights(inputs, outputs, simd.getQuantized(), simd.getScales(), simd.getBias(), false);
+        float[] weight = simd.dequantize();
+        for (int rows : new int[]{1, 3, 4, 9}) {
+            float[] x = random(rows * inputs, rows);
+            float[] fast = simd.apply(x, rows);
+            float[] slow = scalar.apply(x, rows);
+            for (int r = 0; r < rows; r++) {
+                for (int o = 0; o < outputs; o++) {
+                    double expected = simd.getBias()[o];
+                    for (int k = 0; k < inputs; k++) expected += (double) weight[o * inputs + k] * x[r * inputs + k];
+                    assertEquals(expected, fast[r * outputs + o], 1e-4, "simd fila " + r);
+                    assertEquals(expected, slow[r * outputs + o], 1e-4, "escalar fila " + r);
+                }
+            }
+        }
+    }
+
+    @Test
+    void quantizedModelIsTheSameByEitherPathAndStaysClose(@TempDir Path dir) throws IOException {
+        try (NDManager manager = NDManager.newBaseManager(Device.cpu())) {
+            Block block = model();
+            block.initialize(manager, DataType.FLOAT32, new Shape(1, SEQ, FEATURES));
+            Int8ParameterStore int8 = Int8ParameterStore.quantize(block, manager);
+            assertEquals(9, int8.getWeights().size(), "6 lineales del transformer y 3 del head");
+
+            int batch = QuantizableLinear.MAX_INT8_ROWS + 3;
+            float[] x = random(batch * SEQ * FEATURES, 17);
+            // Con batch grande todo va por el matmul nativo con los pesos redondeados
+            float[] nativePath = forward(block, int8, manager, x, batch);
+            float[] window = new float[SEQ * FEATURES];
+            for (int b = 0; b < batch; b++) {
+                System.arraycopy(x, b * window.length, window, 0, window.length);
+                assertEquals(nativePath[b], forward(block, int8, manager, window, 1)[0], 1e-4f, "ventana " + b);
+            }
+
+            TrainingCache validation = new TrainingCache(FloatBuffer.wrap(x), FloatBuffer.allocate(batch), batch, SEQ, FEATURES, 1);
+            QuantizationCheck.Report report = QuantizationCheck.run(block, int8, validation, batch, 4, 2);
+            assertEquals(batch, report.samples());
+            // Pesos al azar y un head sin activaciones acumulan el redondeo; una escala mal puesta da órdenes más
+            assertTrue(report.relativeError() < 0.1f, report.toString());
+
+            Path file = dir.resolve("model.int8");
+            IOdata.writeQuantizedModel(file, int8);
+            Int8ParameterStore loaded = IOdata.readQuantizedModel(file, block, manager);
+            assertArrayEquals(nativePath, forward(block, loaded, manager, x, batch));
+            assertThrows(IOException.class, () -> IOdata.readQuantizedModel(file, new SequentialBlock()
+                    .add(QuantizableLinear.builder().setUnits(1).build()), manager));
+        }
+    }
+
+    @Test
+    void savedQuantizedModelLoadsBack() throws IOException {
+        String name = "int8-roundtrip-" + System.nanoTime();
+        Path file = IOdata.quantizedModelFile(name);
+        try (Model model = Model.newInstance(name, Device.cpu())) {
+            NDManager manager = model.getNDManager();
+            Block block = model();
+            block.initialize(manager, DataType.FLOAT32, new Shape(1, SEQ, FEATURES));
+            model.setBlock(block);
+            Int8ParameterStore int8 = Int8ParameterStore.quantize(block, manager);
+
+            IOdata.saveQuantizedModel(model, int8);
+            assertTrue(Files.exists(file));
+            Int8ParameterStore loaded = IOdata.loadQuantizedModel(model);
+            float[] x = random(2 * SEQ * FEATURES, 23);
+            assertArrayEquals(forward(block, int8, manager, x, 2), forward(block, loaded, manager, x, 2));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.getParent());
+        }
+    }
+
+    private static float[] forward(Block block, ParameterStore store, NDManager manager, float[] x, int batch) {
+        // El transformer se queda con su entrada hasta el siguiente forward, así que se crea cada vez
+        try (NDManager scope = manager.newSubManager()) {
+            return block.forward(store, new NDList(scope.create(x, new Shape(batch, SEQ, FEATURES))), false)
+                    .singletonOrThrow().toFloatArray();
+        }
+    }
+
+    private static Block model() {
+        return new SequentialBlock()
+                .add(TemporalTransformerBlock.builder()
+                        .setModelDim(16)
+                        .setNumHeads(2)
+                        .setFeedForwardDim(32)
+                        .setDropoutRate(0f)
+                        .setAttentionProbsDropoutProb(0f)
+                        .setMaxSequenceLength(SEQ)
+                        .setFusedQkv(true)
+                        .build())
+                .add(new LambdaBlock(list -> new NDList(list.singletonOrThrow().get(":, -1, :"))))
+                .add(QuantizableLinear.builder().setUnits(HIDDEN).build())
+                .add(QuantizableLinear.builder().setUnits(HIDDEN).build())
+                .add(QuantizableLinear.builder().setUnits(1).build());
+    }
+
+    private static float[] random(int size, long seed) {
+        Random random = new Random(seed);
+        float[] values = new float[size];
+        for (int i = 0; i < size; i++) values[i] = (float) random.nextGaussian();
+        return values;
+    }
+}
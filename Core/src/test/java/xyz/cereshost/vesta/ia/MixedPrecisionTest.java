@@ -0,0 +1,151 @@
+package xyz.cereshost.vesta.ia;
+
+import ai.djl.Device;
+import ai.djl.Model;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.nn.LambdaBlock;
+import ai.djl.nn.Parameter;
+import ai.djl.nn.SequentialBlock;
+import ai.djl.nn.core.Linear;
+import ai.djl.training.DefaultTrainingConfig;
+import ai.djl.training.GradientCollector;
+import ai.djl.training.ParameterStore;
+import ai.djl.training.Trainer;
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.ia.PredictionEngine;
+import xyz.cereshost.vesta.core.ia.VestaLoss;
+import xyz.cereshost.vesta.core.ia.blocks.MixedPrecisionBlock;
+import xyz.cereshost.vesta.core.ia.blocks.TemporalTransformerBlock;
+import xyz.cereshost.vesta.core.ia.utils.Precision;
+import xyz.cereshost.vesta.core.ia.utils.PrecisionParameterStore;
+import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static xyz.cereshost.vesta.ia.TestPrediction.randomCandles;
+
+public class MixedPrecisionTest {
+
+    private static final Shape INPUT = new Shape(4, 6, 5);
+
+    @Test
+    void cpuFallsBackToSupportedPrecision() {
+        Device cpu = Device.cpu();
+        assertEquals(Precision.FP32, Precision.FP32.resolve(cpu));
+        assertEquals(Precision.BF16.isSupported(cpu) ? Precision.BF16 : Precision.FP32, Precision.BF16.resolve(cpu));
+        // PyTorch no tiene matmul FLOAT16 en CPU
+        assertNotEquals(Precision.FP16, Precision.FP16.resolve(cpu));
+        assertTrue(Precision.FP16.resolve(cpu).isSupported(cpu));
+    }
+
+    @Test
+    void bf16StaysCloseToFp32OrIsRejected() {
+        Device cpu = Device.cpu();
+        try (NDManager manager = NDManager.newBaseManager(cpu)) {
+            Block inner = model();
+            inner.initialize(manager, DataType.FLOAT32, INPUT);
+            NDArray input = manager.randomNormal(INPUT);
+            ParameterStore ps = new ParameterStore(manager, false);
+            float[] expected = inner.forward(ps, new NDList(input), false).singletonOrThrow().toFloatArray();
+            Block bf16 = MixedPrecisionBlock.wrap(inner, Precision.BF16);
+
+            if (!Precision.BF16.isSupported(cpu)) {
+                // DJL 0.26 aborta el proceso al crear un BFLOAT16: se rechaza antes de tocar el engine
+                assertEquals(Precision.FP32, Precision.BF16.resolve(cpu));
+                assertThrows(IllegalStateException.class, () -> bf16.forward(ps, new NDList(input), false));
+                ParameterStore cast = new PrecisionParameterStore(ps, DataType.BFLOAT16);
+                Parameter weight = inner.getParameters().valueAt(0);
+                assertThrows(IllegalStateException.class, () -> cast.getValue(weight, cpu, false));
+                // El modelo sigue sano después del rechazo; el transformer se queda con su entrada, así que va otra copia
+                NDArray again = manager.create(input.toFloatArray(), INPUT);
+                assertArrayEquals(expected, inner.forward(ps, new NDList(again), false).singletonOrThrow().toFloatArray());
+                return;
+            }
+
+            NDArray output = bf16.forward(ps, new NDList(input), false).singletonOrThrow();
+            assertEquals(DataType.FLOAT32, output.getDataType());
+            float[] actual = output.toFloatArray();
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], actual[i], 0.05f * Math.max(1f, Math.abs(expected[i])), "fila " + i);
+            }
+        }
+    }
+
+    @Test
+    void bf16InferenceMatchesFp32() {
+        try (Model model = TestPrediction.windowModel("bf16-test")) {
+            PredictionEngine fp32 = TestPrediction.engine(model, 61, Precision.FP32);
+            PredictionEngine bf16 = TestPrediction.engine(model, 61, Precision.BF16);
+            // Sin soporte del engine cae a FP32 y da lo mismo
+            assertEquals(Precision.BF16.resolve(model.getNDManager().getDevice()), bf16.getPrecision());
+            List<SequenceCandles> windows = List.of(randomCandles(120, 4), randomCandles(130, 5));
+            List<PredictionEngine.SequenceCandlesPrediction> expected = fp32.predict(windows, 3);
+            List<PredictionEngine.SequenceCandlesPrediction> actual = bf16.predict(windows, 3);
+            for (int i = 0; i < windows.size(); i++) {
+                for (int step = 0; step < 3; step++) {
+                    float value = expected.get(i).get(step).get(0);
+                    assertEquals(value, actual.get(i).get(step).get(0), 0.05f * Math.max(1f, Math.abs(value)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void lossScaleOnlyScalesGradients() {
+        try (Model model = Model.newInstance("mixed-precision", Device.cpu())) {
+            model.setBlock(MixedPrecisionBlock.wrap(model(), Precision.BF16.resolve(Device.cpu())));
+            try (Trainer trainer = model.newTrainer(new DefaultTrainingConfig(new VestaLoss(8f)))) {
+                trainer.initialize(INPUT);
+                NDManager manager = trainer.getManager();
+                // El transformer se queda con su entrada hasta el siguiente forward, así que se crea cada vez
+                float[] input = manager.randomNormal(INPUT).toFloatArray();
+                NDList labels = new NDList(manager.randomNormal(new Shape(INPUT.get(0), 1)));
+                Parameter weight = model.getBlock().getParameters().valueAt(0);
+
+                float scaledLoss;
+                float[] scaled;
+                try (GradientCollector collector = trainer.newGradientCollector()) {
+                    NDArray loss = trainer.getLoss().evaluate(labels, trainer.forward(new NDList(manager.create(input, INPUT))));
+                    collector.backward(loss);
+                    scaledLoss = loss.getFloat();
+                    NDArray gradient = weight.getArray().getGradient();
+                    // Los pesos maestros reciben gradientes en FLOAT32
+                    assertEquals(DataType.FLOAT32, gradient.getDataType());
+                    scaled = gradient.toFloatArray();
+                }
+                try (GradientCollector collector = trainer.newGradientCollector()) {
+                    NDArray loss = new VestaLoss().evaluate(labels, trainer.forward(new NDList(manager.create(input, INPUT))));
+                    collector.backward(loss);
+                    assertEquals(loss.getFloat(), scaledLoss, 1e-5f * Math.max(1f, Math.abs(scaledLoss)));
+                    // Los gradientes se acumulan sobre los del primer backward
+                    float[] accumulated = weight.getArray().getGradient().toFloatArray();
+                    for (int i = 0; i < accumulated.length; i++) {
+                        float plain = accumulated[i] - scaled[i];
+                        assertEquals(plain * 8f, scaled[i], 1e-4f + Math.abs(plain) * 8e-3f);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Block model() {
+        return new SequentialBlock()
+                .add(TemporalTransformerBlock.builder()
+                        .setModelDim(16)
+                        .setNumHeads(2)
+                        .setFeedForwardDim(32)
+                        .setDropoutRate(0f)
+                        .setAttentionProbsDropoutProb(0f)
+                        .setMaxSequenceLength((int) INPUT.get(1))
+                        .setFusedQkv(true)
+                        .build())
+                .add(new LambdaBlock(list -> new NDList(list.singletonOrThrow().get(":, -1, :"))))
+                .add(Linear.builder().setUnits(1).build());
+    }
+}
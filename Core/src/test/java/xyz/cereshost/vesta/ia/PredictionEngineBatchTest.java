@@ -0,0 +1,35 @@
+package xyz.cereshost.vesta.ia;
+
+import ai.djl.Model;
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.ia.PredictionEngine;
+import xyz.cereshost.vesta.core.ia.utils.Precision;
+import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static xyz.cereshost.vesta.ia.TestPrediction.randomCandles;
+
+public class PredictionEngineBatchTest {
+
+    @Test
+    void batchMatchesOneByOne() {
+        try (Model model = TestPrediction.windowModel("batch-test")) {
+            PredictionEngine engine = TestPrediction.engine(model, 53, Precision.FP32);
+
+            List<SequenceCandles> windows = List.of(randomCandles(120, 1), randomCandles(95, 2), randomCandles(150, 3));
+            List<PredictionEngine.SequenceCandlesPrediction> batched = engine.predict(windows, 4);
+            assertEquals(windows.size(), batched.size());
+            for (int i = 0; i < windows.size(); i++) {
+                PredictionEngine.SequenceCandlesPrediction single = engine.predictNextPriceDetail(windows.get(i), 4);
+                assertEquals(4, single.size());
+                for (int step = 0; step < 4; step++) {
+                    assertEquals(single.get(step).get(0), batched.get(i).get(step).get(0), 1e-5f);
+                }
+            }
+            // Cada serie tiene su propia predicción
+            assertNotEquals(batched.get(0).getFirst().get(0), batched.get(1).getFirst().get(0));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package xyz.cereshost.vesta.ia;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.ia.utils.QuantileSketch;
+import xyz.cereshost.vesta.core.ia.utils.XNormalizer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QuantileSketchTest {
+
+    @Test
+    void exactWhileNothingIsCompacted() {
+        Random random = new Random(29);
+        QuantileSketch sketch = new QuantileSketch(1_000);
+        float[] values = new float[999];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) random.nextGaussian();
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+        for (double q : new double[]{0, 0.25, 0.5, 0.75, 1}) {
+            assertEquals(XNormalizer.percentileFromSorted(values, q * 100), sketch.quantile(q));
+        }
+    }
+
+    @Test
+    void mergedPartsStayWithinRankError() {
+        double epsilon = 0.01;
+        Random random = new Random(31);
+        int n = 2_000_000;
+        float[] values = new float[n];
+        QuantileSketch merged = QuantileSketch.forError(epsilon);
+        QuantileSketch again = QuantileSketch.forError(epsilon);
+        QuantileSketch part = null;
+        QuantileSketch partAgain = null;
+        for (int i = 0; i < n; i++) {
+            if (i % 300_000 == 0) {
+                if (part != null) {
+                    merged.merge(part);
+                    again.merge(partAgain);
+                }
+                part = QuantileSketch.forError(epsilon);
+                partAgain = QuantileSketch.forError(epsilon);
+            }
+            // Mezcla de colas pesadas y muchos repetidos, como los cambios porcentuales
+            values[i] = i % 7 == 0 ? 0f : (float) (random.nextGaussian() * Math.exp(random.nextGaussian()));
+            part.add(values[i]);
+            partAgain.add(values[i]);
+        }
+        merged.merge(part);
+        again.merge(partAgain);
+        assertEquals(n, merged.getCount());
+
+        Arrays.sort(values);
+        for (double q : new double[]{0.01, 0.25, 0.5, 0.75, 0.99}) {
+            float estimate = merged.quantile(q);
+            int lo = lowerBound(values, estimate);
+            int hi = upperBound(values, estimate);
+            double rank = q * (n - 1);
+            // El rango del valor devuelto está a menos de epsilon * n del pedido
+            assertTrue(rank >= lo - epsilon * n && rank <= hi + epsilon * n, "q=" + q);
+            // Mismas operaciones, mismo resultado
+            assertEquals(estimate, again.quantile(q));
+        }
+    }
+
+    private static int lowerBound(float[] sorted, float value) {
+        int i = Arrays.binarySearch(sorted, value);
+        if (i < 0) return -i - 1;
+        while (i > 0 && sorted[i - 1] == value) i--;
+        return i;
+    }
+
+    private static int upperBound(float[] sorted, float value) {
+        int i = Arrays.binarySearch(sorted, value);
+        if (i < 0) return -i - 1;
+        while (i < sorted.length - 1 && sorted[i + 1] == value) i++;
+        return i;
+    }
+}
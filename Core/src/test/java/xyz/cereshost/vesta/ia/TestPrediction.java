@@ -0,0 +1,76 @@
+package xyz.cereshost.vesta.ia;
+
+import ai.djl.Model;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.LambdaBlock;
+import ai.djl.nn.SequentialBlock;
+import ai.djl.nn.core.Linear;
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+import xyz.cereshost.vesta.TestCandles;
+import xyz.cereshost.vesta.core.ia.PredictionEngine;
+import xyz.cereshost.vesta.core.ia.VestaEngine;
+import xyz.cereshost.vesta.core.ia.utils.Precision;
+import xyz.cereshost.vesta.core.ia.utils.XNormalizer;
+import xyz.cereshost.vesta.core.ia.utils.YNormalizer;
+import xyz.cereshost.vesta.core.market.Candle;
+import xyz.cereshost.vesta.core.market.Metric;
+import xyz.cereshost.vesta.core.utils.BuilderData;
+import xyz.cereshost.vesta.core.utils.ConcurrentHashBiDictionary;
+import xyz.cereshost.vesta.core.utils.candle.SequenceCandles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Modelo, normalizadores y series para los tests de {@link PredictionEngine}.
+ */
+@UtilityClass
+public class TestPrediction {
+
+    /**
+     * Modelo lineal sobre toda la ventana, para que el rollout cambie la salida en cada paso.
+     */
+    public static @NotNull Model windowModel(@NotNull String name) {
+        int lookBack = VestaEngine.LOOK_BACK;
+        int features = BuilderData.FEATURES;
+        Model model = Model.newInstance(name);
+        model.setBlock(new SequentialBlock()
+                .add(new LambdaBlock(list -> new NDList(list.singletonOrThrow().reshape(-1, (long) lookBack * features))))
+                .add(Linear.builder().setUnits(BuilderData.OUTPUTS).build()));
+        model.getBlock().initialize(model.getNDManager(), DataType.FLOAT32, new Shape(1, lookBack, features));
+        return model;
+    }
+
+    /**
+     * Motor sobre {@code model} con un {@link XNormalizer} ajustado a ventanas gaussianas de {@code seed}
+     * y el {@link YNormalizer} identidad.
+     */
+    public static @NotNull PredictionEngine engine(@NotNull Model model, long seed, @NotNull Precision precision) {
+        int features = BuilderData.FEATURES;
+        float[][][] sample = new float[8][VestaEngine.LOOK_BACK][features];
+        Random random = new Random(seed);
+        for (float[][] window : sample) for (float[] row : window) for (int f = 0; f < features; f++) row[f] = (float) random.nextGaussian();
+        XNormalizer xNormalizer = new XNormalizer();
+        xNormalizer.fit(sample);
+        YNormalizer yNormalizer = new YNormalizer();
+        yNormalizer.fit(new float[][]{{0f}, {1f}});
+        return new PredictionEngine(xNormalizer, yNormalizer, model, precision);
+    }
+
+    public static @NotNull SequenceCandles randomCandles(int size, long seed) {
+        Random random = new Random(seed);
+        ConcurrentHashBiDictionary<String, Byte> dictionary = new ConcurrentHashBiDictionary<>();
+        dictionary.add(BuilderData.TREND_EFFICIENCY_KEY, (byte) 0);
+        List<SequenceCandles.CandleContainer> containers = new ArrayList<>();
+        for (Candle candle : TestCandles.randomWalk(random, size)) {
+            candle.setMetrics(new Metric(candle.getOpenTime(), 1e6 + random.nextDouble() * 1e4, 0,
+                    1 + random.nextDouble(), 1 + random.nextDouble()));
+            containers.add(new SequenceCandles.CandleContainer(candle, new double[]{random.nextDouble() * 100}));
+        }
+        return new SequenceCandles(dictionary, containers);
+    }
+}
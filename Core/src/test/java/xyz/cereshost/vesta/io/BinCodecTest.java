@@ -0,0 +1,176 @@
+package xyz.cereshost.vesta.io;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.io.KlinesSerializable;
+import xyz.cereshost.vesta.core.io.MetricsSerializable;
+import xyz.cereshost.vesta.core.io.TradeSerializable;
+import xyz.cereshost.vesta.core.market.Candle;
+import xyz.cereshost.vesta.core.market.Metric;
+import xyz.cereshost.vesta.core.market.TimeFrameMarket;
+import xyz.cereshost.vesta.core.market.Trade;
+import xyz.cereshost.vesta.core.market.Volumen;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinCodecTest {
+
+    @Test
+    void tradesRoundTripAndShrink() throws IOException {
+        Random random = new Random(3);
+        List<Trade> trades = new ArrayList<>();
+        long time = 1735689600000L;
+        float price = 3300.12f;
+        for (int i = 0; i < 20_000; i++) {
+            time += random.nextInt(40);
+            price += (random.nextInt(5) - 2) * 0.01f;
+            float qty = i % 100 == 0 ? random.nextFloat() : random.nextInt(50_000) / 1000f;
+            trades.add(new Trade(time, price, qty, random.nextBoolean()));
+        }
+
+        TradeSerializable writer = new TradeSerializable();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writer.writeMetaDataBin(out, trades.getFirst());
+        for (Trade trade : trades) {
+            writer.writeBin(out, trade);
+        }
+        // v1 ocupaba 25 bytes por trade
+        assertTrue(bytes.size() < trades.size() * 10, "tamaño " + bytes.size());
+
+        TradeSerializable reader = new TradeSerializable();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        reader.readMetaDataBin(in, 2);
+        for (Trade trade : trades) {
+            assertEquals(trade, reader.readBin(in));
+        }
+        assertThrows(EOFException.class, () -> reader.readBin(in));
+    }
+
+    @Test
+    void klinesRecomputeVolumenAndReadLegacy() throws IOException {
+        Candle first = new Candle(TimeFrameMarket.ONE_MINUTE, 1735689600000L, 3300.5, 3302.25, 3299.75, 3301.1,
+                new Volumen(1_000_000.5, 303.02, 600_000.25, 400_000.25, 200_000.0, 600_000.25 / 1_000_000.5));
+        Candle second = new Candle(TimeFrameMarket.ONE_MINUTE, 1735689660000L, 3301.1, 3301.9, 3300.0, 3300.3,
+                new Volumen(0, 0, 0, 0, 0, 0));
+
+        KlinesSerializable writer = new KlinesSerializable();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writer.writeMetaDataBin(out, first);
+        writer.writeBin(out, first);
+        writer.writeBin(out, second);
+
+        KlinesSerializable reader = new KlinesSerializable();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        reader.readMetaDataBin(in, 2);
+        assertCandle(first, reader.readBin(in));
+        assertCandle(second, reader.readBin(in));
+
+        // Formato v1: 11 doubles sin comprimir
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        DataOutputStream legacyOut = new DataOutputStream(legacy);
+        legacyOut.writeInt(0x54554D31);
+        legacyOut.writeInt(TimeFrameMarket.ONE_MINUTE.ordinal());
+        Volumen vol = first.getVolumen();
+        legacyOut.writeLong(first.getOpenTime());
+        for (double value : new double[]{first.getOpen(), first.getHigh(), first.getLow(), first.getClose(),
+                vol.quoteVolume(), vol.baseVolume(), vol.takerBuyQuoteVolume(), vol.sellQuoteVolume(), vol.deltaUSDT(), vol.buyRatio()}) {
+            legacyOut.writeDouble(value);
+        }
+        DataInputStream legacyIn = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(legacy.toByteArray())));
+        reader.readMetaDataBin(legacyIn, 1);
+        assertCandle(first, reader.readBin(legacyIn));
+    }
+
+    @Test
+    void klinesRoundTripAndShrink() throws IOException {
+        Random random = new Random(5);
+        List<Candle> candles = new ArrayList<>();
+        long time = 1735689600000L;
+        long closeTicks = 330_012;
+        for (int i = 0; i < 5_000; i++) {
+            long openTicks = closeTicks + random.nextInt(3) - 1;
+            closeTicks = openTicks + Math.round(random.nextGaussian() * 40);
+            long highTicks = Math.max(openTicks, closeTicks) + random.nextInt(30);
+            long lowTicks = Math.min(openTicks, closeTicks) - random.nextInt(30);
+            double close = closeTicks / 100.0;
+            double baseVolume = random.nextInt(2_000_000) / 1000.0;
+            double quoteVolume = Math.round(baseVolume * close * 1e5) / 1e5;
+            double takerBuyQuoteVolume = Math.round(quoteVolume * random.nextDouble() * 1e5) / 1e5;
+            candles.add(new Candle(TimeFrameMarket.ONE_MINUTE, time, openTicks / 100.0, highTicks / 100.0,
+                    lowTicks / 100.0, close, new Volumen(quoteVolume, baseVolume, takerBuyQuoteVolume,
+                    quoteVolume - takerBuyQuoteVolume, 2 * takerBuyQuoteVolume - quoteVolume,
+                    quoteVolume == 0 ? 0 : takerBuyQuoteVolume / quoteVolume)));
+            time += 60_000;
+        }
+
+        KlinesSerializable writer = new KlinesSerializable();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writer.writeMetaDataBin(out, candles.getFirst());
+        for (Candle candle : candles) {
+            writer.writeBin(out, candle);
+        }
+        // v1 ocupaba 88 bytes por vela
+        assertTrue(bytes.size() < candles.size() * 30, "tamaño " + bytes.size());
+
+        KlinesSerializable reader = new KlinesSerializable();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        reader.readMetaDataBin(in, 2);
+        for (Candle candle : candles) {
+            assertCandle(candle, reader.readBin(in));
+        }
+    }
+
+    @Test
+    void metricsRoundTripAndShrink() throws IOException {
+        Random random = new Random(9);
+        List<Metric> metrics = new ArrayList<>();
+        long time = 1735689600000L;
+        double openInterest = 80_736.453;
+        for (int i = 0; i < 2_000; i++) {
+            openInterest = Math.round((openInterest + random.nextGaussian() * 50) * 1000) / 1000.0;
+            metrics.add(new Metric(time, openInterest, Math.round(openInterest * 3300.12 * 1e8) / 1e8,
+                    Math.round(random.nextDouble() * 3 * 1e4) / 1e4, Math.round(random.nextDouble() * 3 * 1e4) / 1e4));
+            time += 300_000;
+        }
+        // Valores que no son exactos con 8 decimales van en bruto
+        metrics.add(new Metric(time, Math.PI, -0.0, Double.NaN, 1e300));
+
+        MetricsSerializable writer = new MetricsSerializable();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writer.writeMetaDataBin(out, metrics.getFirst());
+        for (Metric metric : metrics) {
+            writer.writeBin(out, metric);
+        }
+        // v1 ocupaba 40 bytes por métrica
+        assertTrue(bytes.size() < metrics.size() * 24, "tamaño " + bytes.size());
+
+        MetricsSerializable reader = new MetricsSerializable();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        reader.readMetaDataBin(in, 2);
+        for (Metric metric : metrics) {
+            Metric actual = reader.readBin(in);
+            assertEquals(metric.getOpenTime(), actual.getOpenTime());
+            assertEquals(metric.getSumOpenInterest(), actual.getSumOpenInterest());
+            assertEquals(metric.getSumOpenInterestValue(), actual.getSumOpenInterestValue());
+            assertEquals(metric.getCountTopTradesLongShortRatio(), actual.getCountTopTradesLongShortRatio());
+            assertEquals(metric.getCountTradesLongShortRatio(), actual.getCountTradesLongShortRatio());
+        }
+    }
+
+    private static void assertCandle(Candle expected, Candle actual) {
+        assertEquals(expected.getOpenTime(), actual.getOpenTime());
+        assertEquals(expected.getOpen(), actual.getOpen());
+        assertEquals(expected.getHigh(), actual.getHigh());
+        assertEquals(expected.getLow(), actual.getLow());
+        assertEquals(expected.getClose(), actual.getClose());
+        assertEquals(expected.getVolumen(), actual.getVolumen());
+    }
+}
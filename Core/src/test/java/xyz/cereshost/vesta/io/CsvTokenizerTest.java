@@ -0,0 +1,78 @@
+package xyz.cereshost.vesta.io;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.io.CsvTokenizer;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvTokenizerTest {
+
+    @Test
+    void parsesFieldsLikeStandardParsers() {
+        String csv = "id,price,qty,quote_qty,time,is_buyer_maker\r\n"
+                + "1,2345.67,0.013,30.49,1735689600123,true\r\n"
+                + "\n"
+                + "2,-0.0001,12,0,1735689600999,false\n";
+        byte[] bytes = csv.getBytes(StandardCharsets.US_ASCII);
+        CsvTokenizer row = new CsvTokenizer(bytes, 0, bytes.length);
+
+        assertTrue(row.nextRow());
+        assertEquals(6, row.getFieldCount());
+        assertEquals(2345.67, row.getDouble(1));
+        assertEquals(0.013f, row.getFloat(2));
+        assertEquals(1735689600123L, row.getLong(4));
+        assertTrue(row.getBoolean(5));
+
+        assertTrue(row.nextRow());
+        assertEquals(-0.0001, row.getDouble(1));
+        assertEquals(12.0, row.getDouble(2));
+        assertFalse(row.getBoolean(5));
+        assertFalse(row.nextRow());
+    }
+
+    @Test
+    void decimalsMatchDoubleParse() {
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            String value = (random.nextInt(100_000)) + "." + String.format("%08d", random.nextInt(100_000_000));
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            CsvTokenizer row = new CsvTokenizer(bytes, 0, bytes.length);
+            assertTrue(row.nextRow());
+            assertEquals(Double.parseDouble(value), row.getDouble(0), value);
+        }
+    }
+
+    @Test
+    void chunksOnlyContainWholeRows() throws Exception {
+        StringBuilder csv = new StringBuilder("open_time,open\n");
+        for (int i = 0; i < 1_000; i++) {
+            csv.append(i).append(',').append(i).append(".5\n");
+        }
+        List<Long> times = new ArrayList<>();
+        CsvTokenizer.readChunks(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.US_ASCII)), 64, (chunk, length) -> {
+            CsvTokenizer row = new CsvTokenizer(chunk, 0, length);
+            while (row.nextRow()) {
+                assertEquals(row.getLong(0) + 0.5, row.getDouble(1));
+                times.add(row.getLong(0));
+            }
+        });
+        assertEquals(1_000, times.size());
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(i, times.get(i));
+        }
+    }
+
+    @Test
+    void parsesUtcDateTime() {
+        byte[] bytes = "2025-01-01 00:05:00,x".getBytes(StandardCharsets.US_ASCII);
+        CsvTokenizer row = new CsvTokenizer(bytes, 0, bytes.length);
+        assertTrue(row.nextRow());
+        assertEquals(1735689900000L, row.getUtcDateTimeMillis(0));
+    }
+}
@@ -0,0 +1,47 @@
+package xyz.cereshost.vesta.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.cereshost.vesta.core.io.MappedMarketFile;
+import xyz.cereshost.vesta.core.io.TradeSerializable;
+import xyz.cereshost.vesta.core.market.Trade;
+import xyz.cereshost.vesta.core.market.TradeTape;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedMarketFileTest {
+
+    @Test
+    void windowReadMatchesWrittenTrades(@TempDir File dir) throws Exception {
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            trades.add(new Trade(1_000L + i * 10L, 100f + i, 0.5f, (i & 1) == 0));
+        }
+        File file = new File(dir, "trades.mbin");
+        TradeSerializable serializable = new TradeSerializable();
+        MappedMarketFile.write(file, serializable, trades);
+
+        MappedMarketFile mapped = MappedMarketFile.open(file, serializable);
+        assertEquals(10_000, mapped.getCount());
+        assertEquals(1_000L, mapped.getMinTime());
+        assertEquals(1_000L + 9_999 * 10L, mapped.getMaxTime());
+
+        // Ventana que cruza el límite del índice disperso
+        long start = 1_000L + 4_090 * 10L;
+        long end = 1_000L + 4_200 * 10L;
+        TradeTape tape = TradeSerializable.readTape(mapped, start, end);
+        assertEquals(110, tape.size());
+        assertEquals(start, tape.getTime(0));
+        assertEquals(100f + 4_090, tape.getPrice(0));
+        assertEquals(trades.get(4_091).isBuyerMaker(), tape.isBuyerMaker(1));
+
+        List<Trade> objects = mapped.read(serializable, start, start + 30);
+        assertEquals(trades.subList(4_090, 4_093), objects);
+        assertEquals(0, mapped.lowerBound(0));
+        assertEquals(10_000, mapped.lowerBound(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,118 @@
+package xyz.cereshost.vesta.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.cereshost.vesta.core.io.MarketCatalog;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarketCatalogTest {
+
+    @Test
+    void entriesSurviveReloadAndPlanWindows(@TempDir File dir) throws Exception {
+        File file = new File(dir, "catalog.bin");
+        MarketCatalog catalog = MarketCatalog.load(file);
+        LocalDate day = LocalDate.of(2025, 1, 2);
+        long start = 1735776000000L;
+        MarketCatalog.Stats stats = new MarketCatalog.Stats();
+        for (int i = 0; i < 1440; i++) {
+            stats.accept(start + i * 60_000L);
+        }
+        File data = new File(dir, "ETHUSDC-1m-2025-01-02.bin.zst");
+        Files.write(data.toPath(), new byte[]{1, 2, 3});
+        catalog.put(stats.toEntry(day, "2025-01/ETHUSDC-1m-2025-01-02.bin.zst", MarketCatalog.Format.BIN_ZST, data));
+        catalog.put(new MarketCatalog.DayEntry(day, "2025-01/ETHUSDC-1m-2025-01-02.mbin", MarketCatalog.Format.MBIN, 1440, start, start + 1439 * 60_000L, 0, 0, 7));
+
+        MarketCatalog reloaded = MarketCatalog.load(file);
+        MarketCatalog.DayEntry entry = reloaded.get(day);
+        assertNotNull(entry);
+        assertEquals(MarketCatalog.Format.BIN_ZST, entry.format());
+        assertEquals(1440, entry.records());
+        assertEquals(start, entry.minTime());
+        assertEquals(start + 1439 * 60_000L, entry.maxTime());
+        assertEquals(3, entry.size());
+        assertEquals(MarketCatalog.checksum(data), entry.checksum());
+        assertNotNull(reloaded.get(day, MarketCatalog.Format.MBIN));
+
+        assertTrue(reloaded.mayOverlap(day, start + 60_000L, start + 120_000L));
+        assertFalse(reloaded.mayOverlap(day, start + 86_400_000L, Long.MAX_VALUE));
+        // Sin entrada: no se puede descartar
+        assertTrue(reloaded.mayOverlap(day.plusDays(1), 0, 1));
+        assertEquals(List.of(day.minusDays(1), day.plusDays(1)), reloaded.findMissingDays(day.minusDays(1), day.plusDays(1)));
+
+        reloaded.remove(day);
+        assertNull(MarketCatalog.load(file).get(day));
+    }
+
+    @Test
+    void appendedChangesSurviveATruncatedTail(@TempDir File dir) throws Exception {
+        File file = new File(dir, "catalog.bin");
+        MarketCatalog catalog = MarketCatalog.load(file);
+        LocalDate first = LocalDate.of(2025, 1, 1);
+        for (int i = 0; i < 30; i++) {
+            LocalDate day = first.plusDays(i);
+            catalog.put(new MarketCatalog.DayEntry(day, day + ".bin.zst", MarketCatalog.Format.BIN_ZST, 1, 0, 0, 0, 0, i));
+        }
+        catalog.put(new MarketCatalog.DayEntry(first, first + ".bin", MarketCatalog.Format.BIN, 1, 0, 0, 0, 0, 99));
+        catalog.remove(first, MarketCatalog.Format.BIN);
+        long complete = file.length();
+
+        // Un cambio que se cortó a mitad de escribir
+        catalog.put(new MarketCatalog.DayEntry(first.plusDays(30), "cortado.bin.zst", MarketCatalog.Format.BIN_ZST, 1, 0, 0, 0, 0, 0));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(complete + 5);
+        }
+
+        MarketCatalog reloaded = MarketCatalog.load(file);
+        assertEquals(30, reloaded.size());
+        assertEquals(MarketCatalog.Format.BIN_ZST, reloaded.get(first).format());
+        assertNull(reloaded.get(first.plusDays(30)));
+        // Al cargar se compacta, así que lo siguiente se añade sobre un archivo entero
+        assertTrue(file.length() < complete);
+        reloaded.remove(first.plusDays(1));
+        assertEquals(29, MarketCatalog.load(file).size());
+    }
+
+    @Test
+    void checksumIsOnlyReadWhenTheFileChanged(@TempDir File dir) throws Exception {
+        File file = new File(dir, "catalog.bin");
+        File data = new File(dir, "2025-01-01.bin.zst");
+        Files.write(data.toPath(), new byte[]{1, 2, 3, 4});
+        LocalDate day = LocalDate.of(2025, 1, 1);
+        MarketCatalog catalog = MarketCatalog.load(file);
+        catalog.put(MarketCatalog.DayEntry.of(day, data.getName(), MarketCatalog.Format.BIN_ZST, 1, 0, 0, data));
+        assertTrue(catalog.verify(catalog.get(day), data));
+
+        // Otra fecha con el mismo contenido: sigue valiendo y se guarda la fecha nueva
+        assertTrue(data.setLastModified(data.lastModified() - 60_000L));
+        assertTrue(catalog.verify(catalog.get(day), data));
+        assertEquals(data.lastModified(), MarketCatalog.load(file).get(day).modified());
+
+        Files.write(data.toPath(), new byte[]{1, 2, 3, 5});
+        assertTrue(data.setLastModified(data.lastModified() + 60_000L));
+        assertFalse(catalog.verify(catalog.get(day), data));
+    }
+
+    @Test
+    void olderCatalogVersionsAreRebuilt(@TempDir File dir) throws Exception {
+        File file = new File(dir, "catalog.bin");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x43415431);
+            out.writeInt(2);
+            out.writeByte(1);
+        }
+        MarketCatalog catalog = MarketCatalog.load(file);
+        assertEquals(0, catalog.size());
+        LocalDate day = LocalDate.of(2025, 1, 1);
+        catalog.put(new MarketCatalog.DayEntry(day, day + ".bin.zst", MarketCatalog.Format.BIN_ZST, 1, 0, 0, 0, 0, 1));
+        assertNotNull(MarketCatalog.load(file).get(day));
+    }
+}
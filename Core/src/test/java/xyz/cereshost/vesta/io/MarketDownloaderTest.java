@@ -0,0 +1,141 @@
+package xyz.cereshost.vesta.io;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.cereshost.vesta.core.io.MarketDownloader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarketDownloaderTest {
+
+    private final byte[] payload = new byte[300_000];
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private volatile String checksum;
+    /**
+     * Si está puesto, el servidor no responde el zip hasta que se abre
+     */
+    private volatile CountDownLatch gate;
+    private HttpServer server;
+    private ExecutorService executor;
+    private MarketDownloader downloader;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        new Random(11).nextBytes(payload);
+        checksum = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(payload));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data/day.zip", this::serveZip);
+        server.createContext("/data/day.zip.CHECKSUM", exchange ->
+                send(exchange, 200, (checksum + "  day.zip").getBytes(StandardCharsets.US_ASCII)));
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        executor = Executors.newFixedThreadPool(2);
+        URI base = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+        downloader = new MarketDownloader(base, 2, 2, executor);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void resumesPartialFileAndVerifiesChecksum(@TempDir File dir) throws Exception {
+        File target = new File(dir, "day.zip");
+        Files.write(new File(dir, "day.zip.part").toPath(), Arrays.copyOf(payload, 100_000));
+
+        downloader.downloadBlocking("data/day.zip", target);
+
+        assertArrayEquals(payload, Files.readAllBytes(target.toPath()));
+        assertEquals(List.of("bytes=100000-"), ranges);
+        assertFalse(new File(dir, "day.zip.part").exists());
+    }
+
+    @Test
+    void concurrentRequestsShareOneDownload(@TempDir File dir) {
+        File target = new File(dir, "day.zip");
+        gate = new CountDownLatch(1);
+        CompletableFuture<File> first = downloader.download("data/day.zip", target);
+        CompletableFuture<File> second = downloader.download("data/day.zip", target);
+        // La primera sigue esperando al servidor, así que la segunda tiene que ser la misma
+        assertSame(first, second);
+        assertEquals(1, downloader.getInFlight());
+        gate.countDown();
+        assertEquals(target, first.join());
+        assertEquals(1, downloads.get());
+    }
+
+    @Test
+    void rejectsBadChecksumAndMissingFiles(@TempDir File dir) {
+        checksum = "00".repeat(32);
+        File target = new File(dir, "day.zip");
+        IOException error = assertThrows(IOException.class, () -> downloader.downloadBlocking("data/day.zip", target));
+        assertTrue(error.getMessage().contains("Checksum"), error.getMessage());
+        assertFalse(target.exists());
+        assertEquals(2, downloads.get());
+
+        assertThrows(FileNotFoundException.class, () -> downloader.downloadBlocking("data/missing.zip", new File(dir, "missing.zip")));
+    }
+
+    private void serveZip(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals("/data/day.zip")) {
+            send(exchange, 404, new byte[0]);
+            return;
+        }
+        downloads.incrementAndGet();
+        CountDownLatch gate = this.gate;
+        try {
+            if (gate != null && !gate.await(10, TimeUnit.SECONDS)) {
+                send(exchange, 503, new byte[0]);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, new byte[0]);
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null) {
+            send(exchange, 200, payload);
+            return;
+        }
+        ranges.add(range);
+        int from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + (payload.length - 1) + "/" + payload.length);
+        send(exchange, 206, Arrays.copyOfRange(payload, from, payload.length));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package xyz.cereshost.vesta.io;
+
+import ai.djl.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.cereshost.vesta.core.ia.utils.EngineUtils;
+import xyz.cereshost.vesta.core.ia.utils.FeatureWindows;
+import xyz.cereshost.vesta.core.ia.utils.TrainingCache;
+import xyz.cereshost.vesta.core.ia.utils.TrainingData;
+import xyz.cereshost.vesta.core.io.IOdata;
+import xyz.cereshost.vesta.core.market.Symbol;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+public class TrainingCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void windowsRoundTripThroughMappedCache() throws IOException {
+        Random random = new Random(23);
+        int bars = 60, features = 5, lookBack = 7;
+        float[] rows = new float[bars * features];
+        for (int i = 0; i < rows.length; i++) rows[i] = (float) random.nextGaussian();
+        int[] starts = new int[40];
+        float[][] y = new float[starts.length][1];
+        for (int s = 0; s < starts.length; s++) {
+            starts[s] = s + 1 + (s / 10);
+            y[s][0] = random.nextFloat();
+        }
+        FeatureWindows windows = new FeatureWindows(rows, features, lookBack, starts, y);
+
+        Path bin = IOdata.saveTrainingCache(dir, Symbol.valueOf("ETHUSDC"), 1, windows, false);
+        Path zip = IOdata.saveTrainingCache(dir, Symbol.valueOf("ETHUSDC"), 1, windows, true);
+        float[][][] expected = windows.toArray();
+        for (Path file : new Path[]{bin, zip}) {
+            TrainingCache cache = IOdata.mapTrainingCache(file);
+            assertEquals(starts.length, cache.getSamples());
+            Pair<float[][][], float[][]> pair = cache.toPair();
+            assertArrayEquals(expected, pair.getKey());
+            assertArrayEquals(y, pair.getValue());
+
+            // Las partes son vistas con los mismos índices que el split de arrays
+            for (int i = 0; i < 3; i++) {
+                Pair<float[][][], float[][]> part = cache.split(3, i).toPair();
+                Pair<float[][][], float[][]> reference = EngineUtils.getSingleSplitWithLabels(expected, y, 3, i);
+                assertArrayEquals(reference.getKey(), part.getKey());
+                assertArrayEquals(reference.getValue(), part.getValue());
+            }
+        }
+
+        // Escribir en el mapeo privado no cambia el archivo
+        TrainingCache cache = IOdata.mapTrainingCache(bin);
+        cache.getX().put(0, Float.NaN);
+        cache.cleanNaNValues();
+        assertEquals(0f, cache.getX().get(0));
+        assertArrayEquals(expected, IOdata.loadTrainingCache(bin).getKey());
+
+        // Sin permiso de escritura no se puede mapear en privado y se lee a memoria
+        assertTrue(bin.toFile().setWritable(false));
+        try {
+            assumeFalse(Files.isWritable(bin), "root ignora los permisos");
+            assertArrayEquals(expected, IOdata.loadTrainingCache(bin).getKey());
+        } finally {
+            bin.toFile().setWritable(true);
+        }
+    }
+
+    @Test
+    void normalizingFromDiskFailsIfAFileCannotBeRead() throws IOException {
+        Random random = new Random(29);
+        int bars = 40, features = 3, lookBack = 5;
+        float[] rows = new float[bars * features];
+        for (int i = 0; i < rows.length; i++) rows[i] = (float) random.nextGaussian();
+        int[] starts = new int[20];
+        float[][] y = new float[starts.length][1];
+        for (int s = 0; s < starts.length; s++) {
+            starts[s] = s;
+            y[s][0] = random.nextFloat();
+        }
+        Path bin = IOdata.saveTrainingCache(dir, Symbol.valueOf("ETHUSDC"), 1, new FeatureWindows(rows, features, lookBack, starts, y), false);
+
+        TrainingData complete = new TrainingData(List.of(bin, bin, bin), starts.length * 3, lookBack, features, 1);
+        complete.prepareNormalize();
+        assertNotNull(complete.getXNormalizer());
+
+        // Un archivo que falla no puede quedar fuera de las estadísticas sin avisar
+        TrainingData missing = new TrainingData(List.of(bin, bin, dir.resolve("no_existe.bin")), starts.length * 3, lookBack, features, 1);
+        assertThrows(IllegalStateException.class, missing::prepareNormalize);
+        assertNull(missing.getXNormalizer());
+    }
+}
@@ -0,0 +1,53 @@
+package xyz.cereshost.vesta.io;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.cereshost.vesta.core.io.ZstdFrameInputStream;
+import xyz.cereshost.vesta.core.io.ZstdFrameOutputStream;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZstdFrameStreamTest {
+
+    @Test
+    void framesAreReassembledInOrder(@TempDir File dir) throws Exception {
+        File file = new File(dir, "data.bin.zst");
+        File serial = new File(dir, "serial.bin.zst");
+        int records = 50_000;
+        // Un solo hilo en el pool: el escritor y el lector tienen que poder avanzar por su cuenta
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        write(new ZstdFrameOutputStream(new FileOutputStream(file), 1, 64 << 10, executor, 3), records);
+        write(new ZstdFrameOutputStream(new FileOutputStream(serial), 1, 64 << 10, null, 1), records);
+        assertTrue(ZstdFrameInputStream.isFramed(file));
+        assertArrayEquals(Files.readAllBytes(serial.toPath()), Files.readAllBytes(file.toPath()));
+
+        try (ZstdFrameInputStream frames = new ZstdFrameInputStream(file, executor, 4);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(frames))) {
+            assertTrue(frames.getFrameCount() > 1);
+            for (int i = 0; i < records; i++) {
+                assertEquals(i * 7L, in.readLong());
+                assertEquals(i * 0.5, in.readDouble());
+                assertEquals((i & 1) == 0, in.readBoolean());
+            }
+            assertThrows(EOFException.class, in::readByte);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void write(@NotNull ZstdFrameOutputStream stream, int records) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(stream)) {
+            for (int i = 0; i < records; i++) {
+                out.writeLong(i * 7L);
+                out.writeDouble(i * 0.5);
+                out.writeBoolean((i & 1) == 0);
+            }
+        }
+    }
+}
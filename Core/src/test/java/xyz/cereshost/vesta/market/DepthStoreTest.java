@@ -0,0 +1,104 @@
+package xyz.cereshost.vesta.market;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.market.Candle;
+import xyz.cereshost.vesta.core.market.Depth;
+import xyz.cereshost.vesta.core.market.DepthStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DepthStoreTest {
+
+    private static final long DAY_MS = 86_400_000L;
+
+    @Test
+    void aggregatesMatchFullBookAndFloorCrossesDays() {
+        DepthStore store = new DepthStore(2);
+        Depth first = depth(1_000, 100, 5);
+        Depth second = depth(DAY_MS + 60_000, 200, 3);
+        store.append(first);
+        store.append(second);
+
+        assertEquals(2, store.getSegments().size());
+        assertNull(store.floorDepthCandle(999));
+
+        // Los agregados cubren los 5 niveles aunque solo se guarden 2
+        Candle.DepthCandle candle = store.floorDepthCandle(DAY_MS + 59_999);
+        assertNotNull(candle);
+        assertEquals(expected(first), candle);
+        assertEquals(expected(second), store.floorDepthCandle(DAY_MS * 2));
+
+        DepthStore.Segment segment = store.getSegments().iterator().next();
+        assertEquals(99.9f, segment.getBidPrice(0, 1));
+        assertEquals(100.2f, segment.getAskPrice(0, 1));
+        assertEquals(2f, segment.getAskQty(0, 1));
+    }
+
+    @Test
+    void repeatedTimesKeepLastAndEmptySideIsSkipped() {
+        DepthStore store = new DepthStore(4);
+        store.append(0, depth(5, 100, 3));
+        store.append(0, depth(6, 110, 3));
+        store.append(60_000, new Depth(60_000, List.of(new Depth.OrderLevel(100, 1)), List.of()));
+        for (int i = 0; i < 600; i++) {
+            store.append(120_000 + i, depth(120_000 + i, 120 + i, 4));
+        }
+
+        assertEquals(110, store.floorDepthCandle(59_999).bidPrice());
+        assertNull(store.floorDepthCandle(60_000));
+        assertEquals(719, store.floorDepthCandle(DAY_MS - 1).bidPrice());
+        assertThrows(IllegalArgumentException.class, () -> store.append(0, depth(0, 1, 1)));
+    }
+
+    @Test
+    void appendAllMergesTrimsAndCopiesRanges() {
+        DepthStore later = new DepthStore(2);
+        DepthStore earlier = new DepthStore(2);
+        for (int i = 0; i < 3; i++) {
+            later.append(DAY_MS + i * 60_000L, depth(DAY_MS + i, 200 + i, 3));
+            earlier.append(i * 60_000L, depth(i, 100 + i, 3));
+        }
+        DepthStore merged = new DepthStore(2);
+        merged.appendAll(later);
+        merged.appendAll(earlier);
+        // Repetir el mismo historial no duplica snapshots
+        merged.appendAll(earlier);
+        assertEquals(6, merged.size());
+        assertEquals(2, merged.getSegments().size());
+        assertEquals(102, merged.floorDepthCandle(DAY_MS - 1).bidPrice());
+        assertEquals(200, merged.floorDepthCandle(DAY_MS).bidPrice());
+
+        DepthStore range = merged.copyRange(60_000, DAY_MS + 60_000);
+        assertEquals(3, range.size());
+        assertNull(range.floorDepthCandle(59_999));
+
+        merged.trimBefore(DAY_MS + 60_000);
+        assertEquals(2, merged.size());
+        assertEquals(1, merged.getSegments().size());
+        assertNull(merged.floorDepthCandle(DAY_MS + 59_999));
+        assertEquals(202, merged.floorDepthCandle(DAY_MS * 2).bidPrice());
+        merged.trimBefore(Long.MAX_VALUE);
+        assertTrue(merged.isEmpty());
+    }
+
+    private static Depth depth(long date, double bestBid, int levels) {
+        List<Depth.OrderLevel> bids = new ArrayList<>();
+        List<Depth.OrderLevel> asks = new ArrayList<>();
+        for (int i = 0; i < levels; i++) {
+            bids.add(new Depth.OrderLevel(bestBid - i * 0.1, 1 + i));
+            asks.add(new Depth.OrderLevel(bestBid + 0.1 + i * 0.1, 1 + i));
+        }
+        return new Depth(date, bids, asks);
+    }
+
+    private static Candle.DepthCandle expected(Depth depth) {
+        double bidLiq = depth.getBids().stream().mapToDouble(o -> o.price() * o.qty()).sum();
+        double askLiq = depth.getAsks().stream().mapToDouble(o -> o.price() * o.qty()).sum();
+        double bestBid = depth.getBids().peekFirst().price();
+        double bestAsk = depth.getAsks().peekFirst().price();
+        return new Candle.DepthCandle(bestBid, bestAsk, bidLiq, askLiq, (bestBid + bestAsk) / 2.0, bestAsk - bestBid);
+    }
+}
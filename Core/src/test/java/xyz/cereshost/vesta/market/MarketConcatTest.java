@@ -0,0 +1,117 @@
+package xyz.cereshost.vesta.market;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.market.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarketConcatTest {
+
+    private static final Symbol SYMBOL = Symbol.valueOf("ETHUSDC");
+
+    @Test
+    void consecutiveDaysAreAppendedInOrder() {
+        Market merged = new Market(SYMBOL);
+        LinkedHashSet<Candle> firstSet = null;
+        for (int day = 0; day < 3; day++) {
+            Market dayMarket = day(day);
+            merged.concat(dayMarket);
+            if (day == 0) firstSet = merged.getCandles();
+        }
+        // Sin re-ordenar: el mismo conjunto, ya en orden
+        assertSame(firstSet, merged.getCandles());
+        merged.sortd();
+        assertSame(firstSet, merged.getCandles());
+        assertOrdered(merged, 3 * 1440);
+    }
+
+    @Test
+    void outOfOrderDaysAreMergedLinearly() {
+        Market merged = new Market(SYMBOL);
+        merged.concat(day(2));
+        merged.concat(day(0));
+        merged.concat(day(1));
+        // Repetir un día no duplica velas
+        merged.concat(day(1));
+        assertOrdered(merged, 3 * 1440);
+    }
+
+    @Test
+    void appendNewerKeepsTheSetAndReplacesTheOpenCandle() {
+        Market merged = day(0);
+        LinkedHashSet<Candle> set = merged.getCandles();
+        long lastOpen = merged.getCandles().getLast().getOpenTime();
+
+        // El fetch en vivo repite las últimas velas y trae la que seguía abierta con otro cierre
+        Market live = new Market(SYMBOL);
+        List<Candle> candles = new ArrayList<>();
+        for (int i = -3; i <= 2; i++) {
+            long openTime = lastOpen + i * 60_000L;
+            double price = i == 0 ? 1 : 3000 + i;
+            candles.add(new Candle(TimeFrameMarket.ONE_MINUTE, openTime, price, price + 1, price - 1, price,
+                    new Volumen(1, 1, 0.5, 0.5, 0, 0.5)));
+        }
+        live.addCandles(candles);
+        merged.appendNewer(live);
+
+        assertSame(set, merged.getCandles());
+        assertOrdered(merged, 1440 + 2);
+        List<Candle> atLastOpen = merged.getCandles().stream().filter(c -> c.getOpenTime() == lastOpen).toList();
+        assertEquals(1, atLastOpen.size());
+        assertEquals(1, atLastOpen.getFirst().getClose());
+    }
+
+    @Test
+    void lateDepthsAreMergedInOrderOnRead() {
+        Market market = new Market(SYMBOL);
+        long start = 1735689600000L;
+        // Cada snapshot se guarda un minuto antes de su sello
+        market.addDepth(depth(start + 5 * 60_000L + 1, 105));
+        market.addDepth(depth(start + 2 * 60_000L + 1, 102));
+        market.addDepth(depth(start + 3 * 60_000L + 1, 103));
+        market.addDepth(depth(start + 6 * 60_000L + 1, 106));
+
+        DepthStore store = market.getDepthStore();
+        assertEquals(4, store.size());
+        assertEquals(102, store.floorDepthCandle(start + 60_000L).bidPrice());
+        assertEquals(103, store.floorDepthCandle(start + 3 * 60_000L).bidPrice());
+        assertEquals(105, store.floorDepthCandle(start + 4 * 60_000L).bidPrice());
+        assertEquals(106, store.floorDepthCandle(start + 5 * 60_000L).bidPrice());
+
+        // Los atrasados que aún no se mezclaron también se recortan
+        market.addDepth(depth(start + 60_000L + 1, 101));
+        market.trimDepthsBefore(start + 3 * 60_000L);
+        assertEquals(3, market.getDepthStore().size());
+        assertNull(market.getDepthStore().floorDepthCandle(start + 2 * 60_000L - 1));
+    }
+
+    private static Market day(int day) {
+        Market market = new Market(SYMBOL);
+        List<Candle> candles = new ArrayList<>();
+        long start = 1735689600000L + day * 86_400_000L;
+        for (int i = 0; i < 1440; i++) {
+            double price = 3000 + i;
+            candles.add(new Candle(TimeFrameMarket.ONE_MINUTE, start + i * 60_000L, price, price + 1, price - 1, price,
+                    new Volumen(1, 1, 0.5, 0.5, 0, 0.5)));
+        }
+        market.addCandles(candles);
+        return market;
+    }
+
+    private static Depth depth(long time, double bid) {
+        return new Depth(time, List.of(new Depth.OrderLevel(bid, 1)), List.of(new Depth.OrderLevel(bid + 0.5, 1)));
+    }
+
+    private static void assertOrdered(Market market, int expected) {
+        assertEquals(expected, market.getCandles().size());
+        long last = Long.MIN_VALUE;
+        for (Candle candle : market.getCandles()) {
+            assertTrue(candle.getOpenTime() > last);
+            last = candle.getOpenTime();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package xyz.cereshost.vesta.market;
+
+import org.junit.jupiter.api.Test;
+import xyz.cereshost.vesta.core.market.TradeTape;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeTapeTest {
+
+    @Test
+    void sortKeepsColumnsAligned() {
+        TradeTape tape = new TradeTape();
+        tape.append(30, 3f, 0.3f, true);
+        tape.append(10, 1f, 0.1f, false);
+        tape.append(20, 2f, 0.2f, true);
+        assertFalse(tape.isSorted());
+
+        tape.sort();
+        assertTrue(tape.isSorted());
+        for (int i = 0; i < tape.size(); i++) {
+            assertEquals((i + 1) * 10L, tape.getTime(i));
+            assertEquals(i + 1f, tape.getPrice(i));
+        }
+        assertFalse(tape.isBuyerMaker(0));
+        assertTrue(tape.isBuyerMaker(1));
+        assertTrue(tape.isBuyerMaker(2));
+    }
+
+    @Test
+    void mergeInterleavesAndDropsDuplicates() {
+        TradeTape a = new TradeTape();
+        a.append(10, 1f, 1f, false);
+        a.append(30, 3f, 1f, false);
+        TradeTape b = new TradeTape();
+        b.append(20, 2f, 1f, true);
+        b.append(30, 3f, 1f, false);
+        b.append(40, 4f, 1f, false);
+
+        a.merge(b);
+        assertEquals(4, a.size());
+        assertArrayEquals(new long[]{10, 20, 30, 40}, times(a));
+        assertTrue(a.isBuyerMaker(1));
+    }
+
+    @Test
+    void windowIsHalfOpen() {
+        TradeTape tape = new TradeTape();
+        for (long t = 0; t < 10; t++) {
+            tape.append(t * 100, t, 1f, false);
+        }
+        TradeTape.Slice slice = tape.window(200, 500);
+        assertEquals(3, slice.size());
+        assertEquals(200, slice.getTime(0));
+        assertEquals(400, slice.getTime(2));
+        assertTrue(tape.window(5_000, 6_000).isEmpty());
+
+        tape.trimBefore(700);
+        assertArrayEquals(new long[]{700, 800, 900}, times(tape));
+    }
+
+    @Test
+    void bucketIndexMatchesBinarySearch() {
+        TradeTape tape = new TradeTape();
+        Random random = new Random(5);
+        long time = 1_000_123;
+        for (int i = 0; i < 5_000; i++) {
+            // Huecos de varios buckets y trades con el mismo tiempo
+            time += random.nextInt(10) == 0 ? random.nextInt(300_000) : random.nextInt(3);
+            tape.append(time, 1f, 1f, false);
+        }
+        int[] expected = new int[2_000];
+        long[] targets = new long[expected.length];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = i % 2 == 0
+                    ? 1_000_000 + random.nextInt((int) (time - 1_000_000 + 120_000))
+                    : (1_000_000 + random.nextInt((int) (time - 1_000_000 + 120_000))) / 60_000 * 60_000;
+            expected[i] = tape.lowerBound(targets[i]);
+        }
+        tape.buildBucketIndex(60_000);
+        assertTrue(tape.hasBucketIndex());
+        for (int i = 0; i < targets.length; i++) {
+            assertEquals(expected[i], tape.lowerBound(targets[i]), "t=" + targets[i]);
+        }
+        tape.append(time + 1, 1f, 1f, false);
+        assertFalse(tape.hasBucketIndex());
+    }
+
+    private static long[] times(TradeTape tape) {
+        long[] out = new long[tape.size()];
+        for (int i = 0; i < out.length; i++) out[i] = tape.getTime(i);
+        return out;
+    }
+}